@@ -0,0 +1,119 @@
+#!/usr/bin/env python3
+#
+# This file is part of the SaferWater plugin for
+# Bukkit servers for Minecraft.
+#
+# Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+#
+# This program is free software: you can redistribute it and/or modify
+# it under the terms of the GNU General Public License as published by
+# the Free Software Foundation, either version 3 of the License, or
+# (at your option) any later version.
+#
+# This program is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+# GNU General Public License for more details.
+#
+# You should have received a copy of the GNU General Public License
+# along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+"""Compares a JMH JSON result against a baseline result.
+
+Each benchmark is matched to the baseline by its name, mode, and parameters.
+The run fails if the average time of any benchmark grew, or its throughput
+shrank, by more than the allowed ratio, or if its normalized allocation rate
+grew by more than the allowed number of bytes per operation. Benchmarks that
+are not in the baseline (such as newly added ones) are reported, but never
+fail the run. If there is no baseline at all, the comparison is skipped.
+"""
+
+import argparse
+import json
+import os
+import sys
+
+ALLOC_METRIC = "gc.alloc.rate.norm"
+
+
+def load(path):
+    """Loads a JMH JSON result, keyed by benchmark, mode, and parameters."""
+    with open(path, encoding="utf-8") as file:
+        results = json.load(file)
+    keyed = {}
+    for result in results:
+        params = tuple(sorted((result.get("params") or {}).items()))
+        keyed[(result["benchmark"], result["mode"], params)] = result
+    return keyed
+
+
+def get_alloc(result):
+    """Gets the normalized allocation rate of a result, if it was profiled."""
+    for name, metric in (result.get("secondaryMetrics") or {}).items():
+        if name.lstrip("·") == ALLOC_METRIC:
+            return metric["score"]
+    return None
+
+
+def describe(key):
+    """Formats a result key for the report."""
+    benchmark, mode, params = key
+    name = benchmark.rsplit(".", 2)
+    name = ".".join(name[-2:])
+    if params:
+        name += " [" + ", ".join(f"{param}={value}" for param, value in params) + "]"
+    return f"{name} ({mode})"
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    parser.add_argument("baseline", help="the JMH JSON result to compare against")
+    parser.add_argument("current", help="the JMH JSON result to check")
+    parser.add_argument("--max-slowdown", type=float, default=0.25,
+                        help="the allowed relative slowdown (default: 0.25)")
+    parser.add_argument("--max-alloc-growth", type=float, default=16.0,
+                        help="the allowed allocation growth, in B/op (default: 16)")
+    args = parser.parse_args()
+
+    if not os.path.isfile(args.baseline):
+        print(f"No baseline at {args.baseline}, skipping the comparison.")
+        return 0
+
+    baseline = load(args.baseline)
+    current = load(args.current)
+    failures = []
+    for key, result in sorted(current.items()):
+        previous = baseline.get(key)
+        if previous is None:
+            print(f"NEW   {describe(key)}")
+            continue
+
+        score = result["primaryMetric"]["score"]
+        previous_score = previous["primaryMetric"]["score"]
+        unit = result["primaryMetric"]["scoreUnit"]
+        if key[1] == "thrpt":
+            regressed = score < previous_score * (1.0 - args.max_slowdown)
+        else:
+            regressed = score > previous_score * (1.0 + args.max_slowdown)
+        status = "SLOW " if regressed else "OK   "
+        print(f"{status} {describe(key)}: {previous_score:.3f} -> {score:.3f} {unit}")
+        if regressed:
+            failures.append(f"{describe(key)} regressed from {previous_score:.3f} to {score:.3f} {unit}")
+
+        alloc = get_alloc(result)
+        previous_alloc = get_alloc(previous)
+        if alloc is not None and previous_alloc is not None and alloc > previous_alloc + args.max_alloc_growth:
+            print(f"ALLOC {describe(key)}: {previous_alloc:.1f} -> {alloc:.1f} B/op")
+            failures.append(f"{describe(key)} allocates {alloc:.1f} B/op, up from {previous_alloc:.1f} B/op")
+
+    if failures:
+        print()
+        print(f"{len(failures)} benchmark regression(s) against the baseline:")
+        for failure in failures:
+            print(f"  {failure}")
+        return 1
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main())
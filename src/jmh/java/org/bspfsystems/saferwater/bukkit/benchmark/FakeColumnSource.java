@@ -0,0 +1,239 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.benchmark;
+
+import org.bspfsystems.saferwater.bukkit.water.BlockSource;
+import org.bspfsystems.saferwater.bukkit.water.ChunkWaterFloor;
+import org.bspfsystems.saferwater.bukkit.water.WaterKind;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents an in-memory stand-in for a {@link World}, in which every X/Z
+ * position has the same single column of blocks.
+ * <p>
+ * Kinds are resolved from the stored {@link Material}s on every read, in the
+ * same way as a live {@link World} is read, so that the cost of classifying
+ * the blocks is part of the measurement. Sections are summarized once, the
+ * first time that a scan asks for one after the column was last changed, as
+ * a captured chunk is.
+ */
+public final class FakeColumnSource implements BlockSource {
+    
+    private final int minY;
+    private final int maxY;
+    private final Material[] materials;
+    private final boolean[] waterlogged;
+    private final int[] lightLevels;
+    
+    private int indexedFloorY;
+    private byte[] sectionKinds;
+    
+    /**
+     * Constructs a new {@link FakeColumnSource}, filled with
+     * {@link Material#AIR}.
+     * 
+     * @param minY The minimum Y (inclusive).
+     * @param maxY The maximum Y (exclusive).
+     */
+    public FakeColumnSource(final int minY, final int maxY) {
+        this.minY = minY;
+        this.maxY = maxY;
+        this.materials = new Material[maxY - minY];
+        this.waterlogged = new boolean[maxY - minY];
+        this.lightLevels = new int[maxY - minY];
+        this.indexedFloorY = ChunkWaterFloor.UNKNOWN;
+        this.fill(minY, maxY - 1, Material.AIR);
+    }
+    
+    /**
+     * Sets the blocks between the given Ys (both inclusive) to the given
+     * {@link Material}, clearing any waterlogging.
+     * 
+     * @param fromY The lowest Y to set.
+     * @param toY The highest Y to set.
+     * @param material The {@link Material} to set.
+     * @return This {@link FakeColumnSource}.
+     */
+    @NotNull
+    public FakeColumnSource fill(final int fromY, final int toY, @NotNull final Material material) {
+        for (int y = fromY; y <= toY; y++) {
+            this.materials[y - this.minY] = material;
+            this.waterlogged[y - this.minY] = false;
+        }
+        this.sectionKinds = null;
+        return this;
+    }
+    
+    /**
+     * Sets the blocks between the given Ys (both inclusive) to the given
+     * {@link Material}, waterlogged.
+     * 
+     * @param fromY The lowest Y to set.
+     * @param toY The highest Y to set.
+     * @param material The waterloggable {@link Material} to set.
+     * @return This {@link FakeColumnSource}.
+     */
+    @NotNull
+    public FakeColumnSource waterlog(final int fromY, final int toY, @NotNull final Material material) {
+        this.fill(fromY, toY, material);
+        for (int y = fromY; y <= toY; y++) {
+            this.waterlogged[y - this.minY] = true;
+        }
+        return this;
+    }
+    
+    /**
+     * Sets the light level of the block at the given Y.
+     * 
+     * @param y The Y of the block.
+     * @param lightLevel The light level (0-15).
+     * @return This {@link FakeColumnSource}.
+     */
+    @NotNull
+    public FakeColumnSource light(final int y, final int lightLevel) {
+        this.lightLevels[y - this.minY] = lightLevel;
+        return this;
+    }
+    
+    /**
+     * Sets the floor Y that is returned as if the column was indexed, or
+     * {@link ChunkWaterFloor#UNKNOWN} if the column must be scanned.
+     * 
+     * @param indexedFloorY The indexed floor Y.
+     */
+    public void setIndexedFloorY(final int indexedFloorY) {
+        this.indexedFloorY = indexedFloorY;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getKind(final int x, final int y, final int z) {
+        if (y < this.minY || y >= this.maxY) {
+            return WaterKind.OTHER;
+        }
+        final byte kind = WaterKind.of(this.materials[y - this.minY]);
+        if (kind != WaterKind.WATERLOGGABLE) {
+            return kind;
+        }
+        return this.waterlogged[y - this.minY] ? WaterKind.WATER : WaterKind.OTHER;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getLightLevel(final int x, final int y, final int z) {
+        if (y < this.minY || y >= this.maxY) {
+            return 0;
+        }
+        return this.lightLevels[y - this.minY];
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All of the light of a {@link FakeColumnSource} is treated as reaching
+     * the block from the sky.
+     */
+    @Override
+    public int getSkyLightLevel(final int x, final int y, final int z) {
+        return this.getLightLevel(x, y, z);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All of the light of a {@link FakeColumnSource} is treated as reaching
+     * the block from the sky, so there is never any block light.
+     */
+    @Override
+    public int getBlockLightLevel(final int x, final int y, final int z) {
+        return 0;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMinHeight() {
+        return this.minY;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getIndexedFloorY(final int x, final int y, final int z) {
+        return this.indexedFloorY;
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every X/Z position has the same column, so a section is summarized
+     * from the 16 blocks of the column within it.
+     */
+    @Override
+    public byte getSectionKind(final int x, final int sectionY, final int z) {
+        
+        if (this.sectionKinds == null) {
+            this.sectionKinds = new byte[this.materials.length >> 4];
+            for (int index = 0; index < this.sectionKinds.length; index++) {
+                this.sectionKinds[index] = this.summarize(this.minY + (index << 4));
+            }
+        }
+        final int offset = (sectionY << 4) - this.minY;
+        if (offset < 0 || (offset & 15) != 0 || (offset >> 4) >= this.sectionKinds.length) {
+            return BlockSource.SECTION_MIXED;
+        }
+        return this.sectionKinds[offset >> 4];
+    }
+    
+    /**
+     * Summarizes the 16 blocks of the column from the given Y upward.
+     * 
+     * @param sectionMinY The lowest Y of the section.
+     * @return The summary of the section.
+     */
+    private byte summarize(final int sectionMinY) {
+        
+        boolean water = false;
+        boolean dry = false;
+        for (int y = sectionMinY; y < sectionMinY + 16; y++) {
+            final byte kind = this.getKind(0, y, 0);
+            if (kind == WaterKind.WATER) {
+                water = true;
+            } else if (kind == WaterKind.CORAL) {
+                return BlockSource.SECTION_MIXED;
+            } else {
+                dry = true;
+            }
+        }
+        if (water && dry) {
+            return BlockSource.SECTION_MIXED;
+        }
+        return water ? BlockSource.SECTION_WATER : BlockSource.SECTION_DRY;
+    }
+}
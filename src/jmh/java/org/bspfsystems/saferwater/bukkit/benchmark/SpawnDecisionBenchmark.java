@@ -0,0 +1,103 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.bspfsystems.saferwater.bukkit.listener.SaferWaterListener;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnFilter;
+import org.bspfsystems.saferwater.bukkit.water.ChunkWaterFloor;
+import org.bspfsystems.saferwater.bukkit.water.ColumnScanner;
+import org.bukkit.entity.Creature;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.entity.CreatureSpawnEvent;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput, average time, and allocation rate of filtered
+ * water spawn decisions, for each {@link WaterScenario}, with and without an
+ * indexed floor.
+ * <p>
+ * These benchmarks drive the {@link SpawnDecider} that
+ * {@link SaferWaterListener#onCreatureSpawn(CreatureSpawnEvent)} delegates
+ * to directly, reading from a {@link FakeColumnSource}. The full path through
+ * the {@link SaferWaterListener} is measured by {@link SpawnListenerBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpawnDecisionBenchmark {
+    
+    @Param({"SHALLOW_LAKE", "DEEP_OCEAN", "CORAL_STACK", "WATERLOGGED_SLABS"})
+    public WaterScenario scenario;
+    
+    @Param({"false", "true"})
+    public boolean indexed;
+    
+    private FakeColumnSource source;
+    private SpawnDecider spawnDecider;
+    private EntityType filteredType;
+    
+    /**
+     * Builds the column of the scenario, and a {@link SpawnDecider} that
+     * filters a single {@link Creature} class.
+     */
+    @Setup
+    public void setup() {
+        
+        final List<Class<? extends Creature>> mobs = SpawnFilterBenchmark.getCreatureClasses(1);
+        this.spawnDecider = new SpawnDecider(SpawnFilter.compile(mobs, SpawnFilter.getDefaultReasons()), 0, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL);
+        this.filteredType = SpawnFilterBenchmark.getFilteredType(this.spawnDecider.getSpawnFilter());
+        
+        this.source = this.scenario.build();
+        if (this.indexed) {
+            this.source.setIndexedFloorY(ColumnScanner.findFloorY(this.source, 0, WaterScenario.SPAWN_Y, 0, this.source.getMinHeight()));
+        } else {
+            this.source.setIndexedFloorY(ChunkWaterFloor.UNKNOWN);
+        }
+    }
+    
+    /**
+     * Decides a filtered water spawn, as done for every filtered
+     * {@link CreatureSpawnEvent}.
+     * 
+     * @return The packed decision.
+     */
+    @Benchmark
+    public long decide() {
+        return this.spawnDecider.decide(this.filteredType, SpawnReason.NATURAL, this.source, 0, WaterScenario.SPAWN_Y, 0);
+    }
+}
@@ -0,0 +1,161 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.bspfsystems.saferwater.bukkit.listener.SaferWaterListener;
+import org.bspfsystems.saferwater.bukkit.listener.SpawnContext;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnFilter;
+import org.bukkit.entity.Creature;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.entity.CreatureSpawnEvent;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput, average time, and allocation rate of the
+ * {@link SpawnFilter} lookups, for different numbers of configured
+ * {@link Creature} classes.
+ * <p>
+ * These benchmarks drive the {@link SpawnDecider} and {@link SpawnFilter}
+ * that {@link SaferWaterListener#onCreatureSpawn(CreatureSpawnEvent)} and
+ * {@link SpawnContext#isWaterSpawnDisabled(Creature)} delegate to directly.
+ * The full path through the {@link SaferWaterListener} is measured by
+ * {@link SpawnListenerBenchmark}.
+ * <p>
+ * The largest {@link #mobCount} is 50, as there are fewer than 100
+ * {@link Creature} {@link EntityType}s; asking for more {@link Creature}
+ * classes than exist fails the setup, rather than silently measuring a
+ * smaller {@link SpawnFilter} under a larger label.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpawnFilterBenchmark {
+    
+    @Param({"1", "10", "50"})
+    public int mobCount;
+    
+    private FakeColumnSource source;
+    private SpawnDecider spawnDecider;
+    private EntityType filteredType;
+    private EntityType unfilteredType;
+    
+    /**
+     * Builds a {@link SpawnDecider} with the configured number of
+     * {@link Creature} classes, and a {@link FakeColumnSource} that is never
+     * read.
+     * 
+     * @throws IllegalStateException If fewer {@link Creature} classes exist
+     *                               than configured.
+     */
+    @Setup
+    public void setup() throws IllegalStateException {
+        
+        final List<Class<? extends Creature>> mobs = SpawnFilterBenchmark.getCreatureClasses(this.mobCount);
+        this.spawnDecider = new SpawnDecider(SpawnFilter.compile(mobs, SpawnFilter.getDefaultReasons()), 0, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL);
+        this.filteredType = SpawnFilterBenchmark.getFilteredType(this.spawnDecider.getSpawnFilter());
+        this.unfilteredType = EntityType.ARMOR_STAND;
+        this.source = WaterScenario.SHALLOW_LAKE.build();
+    }
+    
+    /**
+     * Gets the given number of {@link Creature} classes, in the order of
+     * their {@link EntityType}s.
+     * 
+     * @param count The number of {@link Creature} classes.
+     * @return The {@link Creature} classes.
+     * @throws IllegalStateException If fewer {@link Creature} classes exist
+     *                               than requested.
+     */
+    @NotNull
+    static List<Class<? extends Creature>> getCreatureClasses(final int count) throws IllegalStateException {
+        
+        final List<Class<? extends Creature>> mobs = new ArrayList<Class<? extends Creature>>();
+        for (final EntityType type : EntityType.values()) {
+            final Class<?> entityClass = type.getEntityClass();
+            if (mobs.size() < count && entityClass != null && Creature.class.isAssignableFrom(entityClass)) {
+                mobs.add(entityClass.asSubclass(Creature.class));
+            }
+        }
+        
+        if (mobs.size() < count) {
+            throw new IllegalStateException("Only " + mobs.size() + " Creature classes exist, but " + count + " were requested.");
+        }
+        return mobs;
+    }
+    
+    /**
+     * Gets the first {@link EntityType} that is filtered by the given
+     * {@link SpawnFilter}.
+     * 
+     * @param spawnFilter The {@link SpawnFilter}.
+     * @return The first filtered {@link EntityType}.
+     * @throws IllegalStateException If no {@link EntityType} is filtered.
+     */
+    @NotNull
+    static EntityType getFilteredType(@NotNull final SpawnFilter spawnFilter) throws IllegalStateException {
+        for (final EntityType type : EntityType.values()) {
+            if (spawnFilter.isFiltered(type)) {
+                return type;
+            }
+        }
+        throw new IllegalStateException("No EntityType is filtered.");
+    }
+    
+    /**
+     * Decides a spawn that is not filtered, which never reads any blocks.
+     * 
+     * @return The packed decision.
+     */
+    @Benchmark
+    public long decideUnfiltered() {
+        return this.spawnDecider.decide(this.unfilteredType, SpawnReason.NATURAL, this.source, 0, WaterScenario.SPAWN_Y, 0);
+    }
+    
+    /**
+     * Checks if a spawn is filtered, as done by
+     * {@link SpawnContext#isWaterSpawnDisabled(Creature)}.
+     * 
+     * @return {@code true} if the spawn is filtered, {@code false} otherwise.
+     */
+    @Benchmark
+    public boolean isWaterSpawnDisabled() {
+        return this.spawnDecider.getSpawnFilter().isFiltered(this.filteredType);
+    }
+}
@@ -0,0 +1,582 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.benchmark;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.bspfsystems.saferwater.bukkit.budget.TickBudget;
+import org.bspfsystems.saferwater.bukkit.cache.ChunkBatchCache;
+import org.bspfsystems.saferwater.bukkit.cache.DenialCache;
+import org.bspfsystems.saferwater.bukkit.cache.DenialCacheSettings;
+import org.bspfsystems.saferwater.bukkit.cache.SpawnerCache;
+import org.bspfsystems.saferwater.bukkit.listener.SaferWaterListener;
+import org.bspfsystems.saferwater.bukkit.listener.SpawnContext;
+import org.bspfsystems.saferwater.bukkit.log.DecisionLog;
+import org.bspfsystems.saferwater.bukkit.record.SpawnRecorder;
+import org.bspfsystems.saferwater.bukkit.scheduler.TaskScheduler;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnFilter;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnProfile;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnProfileTable;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnProfiles;
+import org.bspfsystems.saferwater.bukkit.stats.SpawnStats;
+import org.bspfsystems.saferwater.bukkit.water.ChunkWaterFloor;
+import org.bspfsystems.saferwater.bukkit.water.WaterFloorIndex;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Creature;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.CreatureSpawnEvent;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput, average time, and allocation rate of
+ * {@link SaferWaterListener#onCreatureSpawn(CreatureSpawnEvent)} and
+ * {@link SpawnContext#isWaterSpawnDisabled(Creature)}, driven through the
+ * same components that the {@link org.bspfsystems.saferwater.bukkit.SaferWaterPlugin}
+ * runs them with.
+ * <p>
+ * The {@link World}, its single {@link Chunk}, and the spawned
+ * {@link Creature} are stand-ins built from {@link Proxy}s, holding a body of
+ * lit water between {@link #FLOOR_Y} and {@link #SPAWN_Y} over stone, so
+ * every spawn in it is denied. Each call spawns into the next column of the
+ * {@link Chunk}, and the per-tick tasks of the components are run once every
+ * column has been spawned into. The cost of the {@link Proxy} calls (and the
+ * boxing of their results) is part of the measurement, in place of the cost
+ * of the same calls on a live server.
+ * <p>
+ * The spawns are decided either from the {@link WaterFloorIndex} or from the
+ * {@link World} itself, with or without the {@link DenialCache}, and with
+ * either a single {@link SpawnDecider} or a {@link Biome} profile that makes
+ * the {@link SpawnProfileTable} read the {@link Biome} of each spawn.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpawnListenerBenchmark implements SpawnContext {
+    
+    private static final int MIN_Y = -64;
+    private static final int MAX_Y = 320;
+    private static final int CHUNK_X = 1000;
+    private static final int CHUNK_Z = -1000;
+    private static final int FLOOR_Y = 40;
+    private static final int SPAWN_Y = 62;
+    private static final int FLOOR_SKY_LIGHT = 9;
+    private static final int WORLD_LIGHT_LEVEL = 15;
+    private static final long NOON = 6000L;
+    private static final long CAPTURE_TIMEOUT_SECONDS = 10L;
+    
+    @Param({"false", "true"})
+    public boolean indexed;
+    
+    @Param({"false", "true"})
+    public boolean denialCached;
+    
+    @Param({"false", "true"})
+    public boolean biomeProfiles;
+    
+    private List<Runnable> tickTasks;
+    private List<Runnable> captureTasks;
+    private SpawnProfileTable spawnProfileTable;
+    private SpawnStats spawnStats;
+    private WaterFloorIndex waterFloorIndex;
+    private DenialCache denialCache;
+    private ChunkBatchCache chunkBatchCache;
+    private SpawnerCache spawnerCache;
+    private TickBudget tickBudget;
+    private DecisionLog decisionLog;
+    private SpawnRecorder spawnRecorder;
+    private SaferWaterListener listener;
+    
+    private World world;
+    private Chunk chunk;
+    private EntityType filteredType;
+    private Location[] locations;
+    private Location location;
+    private Creature creature;
+    private CreatureSpawnEvent event;
+    private int column;
+    
+    /**
+     * Builds the stand-in {@link World} and {@link Creature}, and starts the
+     * components, indexing the single {@link Chunk} of the {@link World} if
+     * configured to.
+     * 
+     * @throws InterruptedException If interrupted while waiting for the
+     *                              {@link Chunk} to be indexed.
+     * @throws IllegalStateException If the {@link Chunk} was not indexed in
+     *                               time.
+     */
+    @Setup
+    public void setup() throws InterruptedException, IllegalStateException {
+        
+        this.tickTasks = new ArrayList<Runnable>();
+        this.captureTasks = new ArrayList<Runnable>();
+        final File dataFolder = new File(System.getProperty("java.io.tmpdir"), "saferwater-" + UUID.randomUUID());
+        final Plugin plugin = SpawnListenerBenchmark.newPlugin(this.tickTasks, dataFolder);
+        final Plugin indexPlugin = SpawnListenerBenchmark.newPlugin(this.captureTasks, dataFolder);
+        final TaskScheduler scheduler = TaskScheduler.create(plugin, Logger.getAnonymousLogger());
+        
+        final SpawnDecider spawnDecider = new SpawnDecider(SpawnFilter.compile(SpawnFilterBenchmark.getCreatureClasses(1), SpawnFilter.getDefaultReasons()), 0, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL);
+        this.filteredType = SpawnFilterBenchmark.getFilteredType(spawnDecider.getSpawnFilter());
+        final Map<Biome, SpawnProfile> biomes = new EnumMap<Biome, SpawnProfile>(Biome.class);
+        if (this.biomeProfiles) {
+            biomes.put(Biome.DEEP_OCEAN, new SpawnProfile(null, SpawnProfile.INHERIT, SpawnDecider.MAX_LIGHT_LEVEL, Collections.emptyMap()));
+        }
+        
+        this.world = this.newWorld();
+        this.spawnProfileTable = SpawnProfiles.compile(spawnDecider, biomes, Collections.emptyMap()).bind(Collections.singletonList(this.world));
+        this.spawnStats = new SpawnStats();
+        this.waterFloorIndex = new WaterFloorIndex(indexPlugin, TaskScheduler.create(indexPlugin, Logger.getAnonymousLogger()));
+        this.denialCache = new DenialCache(scheduler);
+        this.chunkBatchCache = new ChunkBatchCache(scheduler);
+        this.spawnerCache = new SpawnerCache(scheduler);
+        this.tickBudget = new TickBudget(scheduler);
+        this.decisionLog = new DecisionLog(dataFolder, Logger.getAnonymousLogger());
+        this.spawnRecorder = new SpawnRecorder(dataFolder, Logger.getAnonymousLogger());
+        
+        this.denialCache.configure(new DenialCacheSettings(this.denialCached, DenialCacheSettings.DEFAULT.getMaxEntries(), DenialCacheSettings.DEFAULT.getTtlTicks()));
+        this.waterFloorIndex.start();
+        this.denialCache.start();
+        this.chunkBatchCache.start();
+        this.spawnerCache.start();
+        this.tickBudget.start();
+        if (this.indexed) {
+            this.index();
+        }
+        
+        this.locations = new Location[256];
+        for (int index = 0; index < this.locations.length; index++) {
+            this.locations[index] = new Location(this.world, (CHUNK_X << 4) + (index & 15) + 0.5D, SPAWN_Y, (CHUNK_Z << 4) + (index >> 4) + 0.5D);
+        }
+        this.location = this.locations[0];
+        this.creature = this.newCreature();
+        this.event = new CreatureSpawnEvent(this.creature, SpawnReason.NATURAL);
+        this.listener = new SaferWaterListener(this);
+        this.column = 0;
+    }
+    
+    /**
+     * Indexes the single {@link Chunk} of the {@link World}, and waits for it
+     * to be computed on the background thread of the {@link WaterFloorIndex}.
+     * 
+     * @throws InterruptedException If interrupted while waiting.
+     * @throws IllegalStateException If the {@link Chunk} was not indexed in
+     *                               time.
+     */
+    private void index() throws InterruptedException, IllegalStateException {
+        
+        this.waterFloorIndex.onChunkLoad(this.chunk);
+        for (final Runnable captureTask : this.captureTasks) {
+            captureTask.run();
+        }
+        
+        final int x = CHUNK_X << 4;
+        final int z = CHUNK_Z << 4;
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CAPTURE_TIMEOUT_SECONDS);
+        while (this.waterFloorIndex.getBlockSource(this.world).getIndexedFloorY(x, SPAWN_Y, z) == ChunkWaterFloor.UNKNOWN) {
+            if (System.nanoTime() >= deadline) {
+                throw new IllegalStateException("The chunk was not indexed.");
+            }
+            Thread.sleep(1L);
+        }
+    }
+    
+    /**
+     * Stops the components.
+     */
+    @TearDown
+    public void tearDown() {
+        this.tickBudget.stop();
+        this.spawnerCache.stop();
+        this.chunkBatchCache.stop();
+        this.denialCache.stop();
+        this.waterFloorIndex.stop();
+    }
+    
+    /**
+     * Moves the {@link Creature} to the next column of the {@link Chunk},
+     * running the per-tick tasks of the components once every column has
+     * been spawned into.
+     */
+    private void nextColumn() {
+        this.column = (this.column + 1) & 255;
+        if (this.column == 0) {
+            for (int index = 0; index < this.tickTasks.size(); index++) {
+                this.tickTasks.get(index).run();
+            }
+        }
+        this.location = this.locations[this.column];
+    }
+    
+    /**
+     * Decides a filtered water spawn through the {@link SaferWaterListener},
+     * as done for every {@link CreatureSpawnEvent}.
+     * 
+     * @return {@code true} if the spawn was cancelled, {@code false}
+     *         otherwise.
+     */
+    @Benchmark
+    public boolean onCreatureSpawn() {
+        this.nextColumn();
+        this.event.setCancelled(false);
+        this.listener.onCreatureSpawn(this.event);
+        return this.event.isCancelled();
+    }
+    
+    /**
+     * Checks if the {@link Creature} is filtered, through the
+     * {@link SpawnProfileTable}.
+     * 
+     * @return {@code true} if the {@link Creature} is filtered,
+     *         {@code false} otherwise.
+     */
+    @Benchmark
+    public boolean isWaterSpawnDisabled() {
+        this.nextColumn();
+        return this.isWaterSpawnDisabled(this.creature);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public SpawnProfileTable getSpawnProfileTable() {
+        return this.spawnProfileTable;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public SpawnStats getSpawnStats() {
+        return this.spawnStats;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public WaterFloorIndex getWaterFloorIndex() {
+        return this.waterFloorIndex;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public DenialCache getDenialCache() {
+        return this.denialCache;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public ChunkBatchCache getChunkBatchCache() {
+        return this.chunkBatchCache;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public SpawnerCache getSpawnerCache() {
+        return this.spawnerCache;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public TickBudget getTickBudget() {
+        return this.tickBudget;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public DecisionLog getDecisionLog() {
+        return this.decisionLog;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public SpawnRecorder getSpawnRecorder() {
+        return this.spawnRecorder;
+    }
+    
+    /**
+     * Not called, as no {@link World} is loaded during the benchmark.
+     * 
+     * @param world The loaded {@link World}.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public void onWorldLoad(@NotNull final World world) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("onWorldLoad");
+    }
+    
+    /**
+     * Not called, as no {@link World} is unloaded during the benchmark.
+     * 
+     * @param world The unloaded {@link World}.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public void onWorldUnload(@NotNull final World world) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("onWorldUnload");
+    }
+    
+    /**
+     * Not called, as no commands are sent during the benchmark.
+     * 
+     * @param player The {@link Player} the commands are sent to.
+     * @param commands The names of the commands sent to the {@link Player}.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public void onPlayerCommandSend(@NotNull final Player player, @NotNull final Collection<String> commands) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("onPlayerCommandSend");
+    }
+    
+    /**
+     * Creates the stand-in {@link Creature}, which is always at the current
+     * {@link Location}.
+     * 
+     * @return The stand-in {@link Creature}.
+     */
+    @NotNull
+    private Creature newCreature() {
+        return (Creature) Proxy.newProxyInstance(Creature.class.getClassLoader(), new Class<?>[] {Creature.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getType":
+                    return this.filteredType;
+                case "getLocation":
+                    return this.location;
+                case "getWorld":
+                    return this.world;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+    
+    /**
+     * Creates the stand-in {@link World}, along with its single
+     * {@link Chunk}.
+     * 
+     * @return The stand-in {@link World}.
+     */
+    @NotNull
+    private World newWorld() {
+        
+        final UUID uniqueId = UUID.randomUUID();
+        final Block block = (Block) Proxy.newProxyInstance(Block.class.getClassLoader(), new Class<?>[] {Block.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getLightLevel":
+                case "getLightFromSky":
+                    return (byte) WORLD_LIGHT_LEVEL;
+                case "getLightFromBlocks":
+                    return (byte) 0;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        final ChunkSnapshot snapshot = (ChunkSnapshot) Proxy.newProxyInstance(ChunkSnapshot.class.getClassLoader(), new Class<?>[] {ChunkSnapshot.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getX":
+                    return CHUNK_X;
+                case "getZ":
+                    return CHUNK_Z;
+                case "getWorldName":
+                    return "world";
+                case "isSectionEmpty":
+                    return false;
+                case "getBlockType":
+                    return SpawnListenerBenchmark.getType((Integer) args[1]);
+                case "getBlockSkyLight":
+                    return (Integer) args[1] == FLOOR_Y ? FLOOR_SKY_LIGHT : 0;
+                case "getBlockEmittedLight":
+                    return 0;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        
+        final World world = (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[] {World.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                case "toString":
+                    return "world";
+                case "getUID":
+                    return uniqueId;
+                case "getMinHeight":
+                    return MIN_Y;
+                case "getMaxHeight":
+                    return MAX_Y;
+                case "getTime":
+                    return NOON;
+                case "hasStorm":
+                case "isThundering":
+                    return false;
+                case "isChunkLoaded":
+                    return true;
+                case "getChunkAt":
+                    return this.chunk;
+                case "getType":
+                    return SpawnListenerBenchmark.getType((Integer) args[1]);
+                case "getBiome":
+                    return Biome.OCEAN;
+                case "getBlockAt":
+                    return block;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        
+        this.chunk = (Chunk) Proxy.newProxyInstance(Chunk.class.getClassLoader(), new Class<?>[] {Chunk.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getX":
+                    return CHUNK_X;
+                case "getZ":
+                    return CHUNK_Z;
+                case "getWorld":
+                    return world;
+                case "getChunkSnapshot":
+                    return snapshot;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        return world;
+    }
+    
+    /**
+     * Gets the {@link Material} at the given Y of every column of the
+     * {@link World}.
+     * 
+     * @param y The Y coordinate.
+     * @return The {@link Material}.
+     */
+    @NotNull
+    private static Material getType(final int y) {
+        return y < FLOOR_Y ? Material.STONE : y <= SPAWN_Y ? Material.WATER : Material.AIR;
+    }
+    
+    /**
+     * Creates a stand-in {@link Plugin} of a single-threaded server, whose
+     * repeating tasks are added to the given {@link List} instead of being
+     * run, and that has no {@link World}s of its own.
+     * 
+     * @param timers The {@link List} that receives the repeating tasks.
+     * @param dataFolder The data folder of the {@link Plugin}, which does not
+     *                   exist.
+     * @return The stand-in {@link Plugin}.
+     */
+    @NotNull
+    private static Plugin newPlugin(@NotNull final List<Runnable> timers, @NotNull final File dataFolder) {
+        
+        final BukkitTask task = (BukkitTask) Proxy.newProxyInstance(BukkitTask.class.getClassLoader(), new Class<?>[] {BukkitTask.class}, (proxy, method, args) -> null);
+        final BukkitScheduler scheduler = (BukkitScheduler) Proxy.newProxyInstance(BukkitScheduler.class.getClassLoader(), new Class<?>[] {BukkitScheduler.class}, (proxy, method, args) -> {
+            if (!method.getName().equals("runTaskTimer")) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            timers.add((Runnable) args[1]);
+            return task;
+        });
+        final Server server = (Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[] {Server.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getScheduler":
+                    return scheduler;
+                case "getWorlds":
+                    return Collections.emptyList();
+                case "isPrimaryThread":
+                    return true;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        return (Plugin) Proxy.newProxyInstance(Plugin.class.getClassLoader(), new Class<?>[] {Plugin.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getServer":
+                    return server;
+                case "getDataFolder":
+                    return dataFolder;
+                case "getLogger":
+                    return Logger.getAnonymousLogger();
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
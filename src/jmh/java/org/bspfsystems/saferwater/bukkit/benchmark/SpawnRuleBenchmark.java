@@ -0,0 +1,118 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.bspfsystems.saferwater.bukkit.spawn.LightSource;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnFilter;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnRule;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnRules;
+import org.bspfsystems.saferwater.bukkit.spawn.WaterDepthRule;
+import org.bspfsystems.saferwater.bukkit.spawn.YRangeRule;
+import org.bukkit.entity.Creature;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput, average time, and allocation rate of each
+ * {@link SpawnRule} on its own, and of a whole filtered water spawn decision
+ * with the default {@link SpawnRules} and with every {@link SpawnRule}
+ * enabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpawnRuleBenchmark {
+    
+    @Param({"false", "true"})
+    public boolean allRules;
+    
+    private FakeColumnSource source;
+    private SpawnDecider spawnDecider;
+    private EntityType filteredType;
+    private SpawnRule yRangeRule;
+    private SpawnRule waterDepthRule;
+    
+    /**
+     * Builds the {@link WaterScenario#SHALLOW_LAKE} column, and a
+     * {@link SpawnDecider} that filters a single {@link Creature} class with
+     * either the default {@link SpawnRules} or every {@link SpawnRule}
+     * enabled (none of which exempt the spawn).
+     */
+    @Setup
+    public void setup() {
+        
+        final List<Class<? extends Creature>> mobs = SpawnFilterBenchmark.getCreatureClasses(1);
+        final SpawnRules spawnRules = this.allRules ? new SpawnRules(SpawnFilter.getDefaultReasons(), Collections.emptyList(), 0, 128, LightSource.SKY, 2) : SpawnRules.DEFAULT;
+        this.spawnDecider = new SpawnDecider(spawnRules.compileFilter(mobs), spawnRules, 0, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL);
+        this.filteredType = SpawnFilterBenchmark.getFilteredType(this.spawnDecider.getSpawnFilter());
+        this.source = WaterScenario.SHALLOW_LAKE.build();
+        this.yRangeRule = new YRangeRule(0, 128);
+        this.waterDepthRule = new WaterDepthRule(2);
+    }
+    
+    /**
+     * Decides a filtered water spawn.
+     * 
+     * @return The packed decision.
+     */
+    @Benchmark
+    public long decide() {
+        return this.spawnDecider.decide(this.filteredType, SpawnReason.NATURAL, this.source, 0, WaterScenario.SPAWN_Y, 0);
+    }
+    
+    /**
+     * Checks a spawn against a {@link YRangeRule} on its own.
+     * 
+     * @return {@code true} if the spawn meets the {@link SpawnRule}.
+     */
+    @Benchmark
+    public boolean yRange() {
+        return this.yRangeRule.test(0, WaterScenario.SPAWN_Y, 0, 60);
+    }
+    
+    /**
+     * Checks a spawn against a {@link WaterDepthRule} on its own.
+     * 
+     * @return {@code true} if the spawn meets the {@link SpawnRule}.
+     */
+    @Benchmark
+    public boolean waterDepth() {
+        return this.waterDepthRule.test(0, WaterScenario.SPAWN_Y, 0, 60);
+    }
+}
@@ -0,0 +1,118 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.benchmark;
+
+import org.bukkit.Material;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The columns of water that the spawn decision benchmarks are run against.
+ * Every scenario uses the Overworld height range, and spawns at
+ * {@link #SPAWN_Y}, the top block of water.
+ */
+public enum WaterScenario {
+    
+    /**
+     * A 3-deep lake over stone, with a torch-lit floor.
+     */
+    SHALLOW_LAKE {
+        @NotNull
+        @Override
+        FakeColumnSource build() {
+            return WaterScenario.base(59)
+                    .fill(60, SPAWN_Y, Material.WATER)
+                    .light(60, 7);
+        }
+    },
+    
+    /**
+     * A 90-deep ocean over gravel, with a dark floor.
+     */
+    DEEP_OCEAN {
+        @NotNull
+        @Override
+        FakeColumnSource build() {
+            return WaterScenario.base(-28)
+                    .fill(-29, -28, Material.GRAVEL)
+                    .fill(-27, SPAWN_Y, Material.WATER);
+        }
+    },
+    
+    /**
+     * Alternating coral blocks and water over stone, with a lit floor below
+     * the coral.
+     */
+    CORAL_STACK {
+        @NotNull
+        @Override
+        FakeColumnSource build() {
+            final FakeColumnSource source = WaterScenario.base(39)
+                    .fill(40, SPAWN_Y, Material.WATER)
+                    .light(40, 12);
+            for (int y = 41; y < 56; y += 2) {
+                source.fill(y, y, y % 4 == 1 ? Material.BRAIN_CORAL_BLOCK : Material.DEAD_TUBE_CORAL_BLOCK);
+            }
+            return source;
+        }
+    },
+    
+    /**
+     * Water over a stack of waterlogged slabs, with a lit floor at the lowest
+     * slab.
+     */
+    WATERLOGGED_SLABS {
+        @NotNull
+        @Override
+        FakeColumnSource build() {
+            return WaterScenario.base(49)
+                    .waterlog(50, 54, Material.PRISMARINE_SLAB)
+                    .fill(55, SPAWN_Y, Material.WATER)
+                    .light(50, 3);
+        }
+    };
+    
+    /**
+     * The Y of every spawn.
+     */
+    public static final int SPAWN_Y = 62;
+    
+    private static final int MIN_Y = -64;
+    private static final int MAX_Y = 320;
+    
+    /**
+     * Builds the column of this scenario.
+     * 
+     * @return The column.
+     */
+    @NotNull
+    abstract FakeColumnSource build();
+    
+    /**
+     * Builds a column of stone up to the given Y, with air above it.
+     * 
+     * @param stoneY The highest Y of the stone.
+     * @return The column.
+     */
+    @NotNull
+    private static FakeColumnSource base(final int stoneY) {
+        return new FakeColumnSource(MIN_Y, MAX_Y).fill(MIN_Y, stoneY, Material.STONE);
+    }
+}
@@ -24,37 +24,83 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.bspfsystems.saferwater.bukkit.budget.BudgetFallback;
+import org.bspfsystems.saferwater.bukkit.budget.TickBudget;
+import org.bspfsystems.saferwater.bukkit.budget.TickBudgetSettings;
+import org.bspfsystems.saferwater.bukkit.cache.ChunkBatchCache;
+import org.bspfsystems.saferwater.bukkit.cache.DenialCache;
+import org.bspfsystems.saferwater.bukkit.cache.DenialCacheSettings;
+import org.bspfsystems.saferwater.bukkit.cache.SpawnerCache;
+import org.bspfsystems.saferwater.bukkit.cache.SpawnerCacheSettings;
+import org.bspfsystems.saferwater.bukkit.command.CommandRemovals;
 import org.bspfsystems.saferwater.bukkit.command.SaferWaterTabExecutor;
+import org.bspfsystems.saferwater.bukkit.config.ConfigSnapshot;
+import org.bspfsystems.saferwater.bukkit.config.ConfigWatcher;
+import org.bspfsystems.saferwater.bukkit.config.SpawnProfilesLoader;
+import org.bspfsystems.saferwater.bukkit.jfr.ConfigReloadEvent;
+import org.bspfsystems.saferwater.bukkit.jfr.SaferWaterEvents;
 import org.bspfsystems.saferwater.bukkit.listener.SaferWaterListener;
+import org.bspfsystems.saferwater.bukkit.listener.SpawnContext;
+import org.bspfsystems.saferwater.bukkit.listener.WaterFloorListener;
+import org.bspfsystems.saferwater.bukkit.listener.PreSpawnListener;
+import org.bspfsystems.saferwater.bukkit.log.DecisionLog;
+import org.bspfsystems.saferwater.bukkit.log.DecisionLogSettings;
+import org.bspfsystems.saferwater.bukkit.log.OverflowPolicy;
+import org.bspfsystems.saferwater.bukkit.record.SpawnRecorder;
+import org.bspfsystems.saferwater.bukkit.record.SpawnRecorderSettings;
+import org.bspfsystems.saferwater.bukkit.scan.ChunkScan;
+import org.bspfsystems.saferwater.bukkit.scheduler.TaskScheduler;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnProfileTable;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnProfiles;
+import org.bspfsystems.saferwater.bukkit.stats.SpawnStats;
+import org.bspfsystems.saferwater.bukkit.stats.StatsHistory;
+import org.bspfsystems.saferwater.bukkit.stats.StatsHistorySettings;
+import org.bspfsystems.saferwater.bukkit.sweep.MobSweeper;
+import org.bspfsystems.saferwater.bukkit.sweep.MobSweeperSettings;
+import org.bspfsystems.saferwater.bukkit.water.WaterFloorIndex;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.PluginCommand;
 import org.bukkit.command.TabExecutor;
 import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.YamlConfiguration;
-import org.bukkit.entity.Creature;
+import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.scheduler.BukkitScheduler;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This class is the main entrypoint into Bukkit's framework for the plugin's
  * event handling.
  */
-public final class SaferWaterPlugin extends JavaPlugin {
+public final class SaferWaterPlugin extends JavaPlugin implements SpawnContext {
     
     private Logger logger;
+    private TaskScheduler scheduler;
     
-    private final Set<Class<? extends Creature>> waterSpawnDisabled;
+    private volatile ConfigSnapshot config;
+    private final Object configLock;
+    private final SpawnStats spawnStats;
+    private WaterFloorIndex waterFloorIndex;
+    private DenialCache denialCache;
+    private ChunkBatchCache chunkBatchCache;
+    private SpawnerCache spawnerCache;
+    private TickBudget tickBudget;
+    private DecisionLog decisionLog;
+    private SpawnRecorder spawnRecorder;
+    private MobSweeper mobSweeper;
+    private StatsHistory statsHistory;
+    private ConfigWatcher configWatcher;
+    private volatile CommandRemovals commandRemovals;
+    private ChunkScan chunkScan;
     
     /**
      * Explicitly define the default constructor.
@@ -62,7 +108,9 @@ public final class SaferWaterPlugin extends JavaPlugin {
     public SaferWaterPlugin() {
         super();
         
-        this.waterSpawnDisabled = new HashSet<Class<? extends Creature>>();
+        this.config = ConfigSnapshot.EMPTY;
+        this.configLock = new Object();
+        this.spawnStats = new SpawnStats();
     }
     
     /**
@@ -94,14 +142,107 @@ public final class SaferWaterPlugin extends JavaPlugin {
         this.logger.log(Level.INFO, "//                                                                       //");
         this.logger.log(Level.INFO, "///////////////////////////////////////////////////////////////////////////");
         
-        this.getServer().getPluginManager().registerEvents(new SaferWaterListener(this), this);
+        this.scheduler = TaskScheduler.create(this, this.logger);
+        if (this.scheduler.isRegionized()) {
+            this.logger.log(Level.INFO, "The server is region-threaded; SaferWater tasks will be run on the global and region schedulers.");
+        }
+        
+        SaferWaterEvents.register(this.logger);
+        
+        this.waterFloorIndex = new WaterFloorIndex(this, this.scheduler);
+        this.waterFloorIndex.start();
+        
+        this.denialCache = new DenialCache(this.scheduler);
+        this.denialCache.start();
+        
+        this.chunkBatchCache = new ChunkBatchCache(this.scheduler);
+        this.chunkBatchCache.start();
+        
+        this.spawnerCache = new SpawnerCache(this.scheduler);
+        this.spawnerCache.start();
+        
+        this.tickBudget = new TickBudget(this.scheduler);
+        this.tickBudget.start();
+        
+        this.decisionLog = new DecisionLog(this.getDataFolder(), this.logger);
+        this.decisionLog.start();
+        
+        this.spawnRecorder = new SpawnRecorder(new File(this.getDataFolder(), "recordings"), this.logger);
+        
+        this.mobSweeper = new MobSweeper(this, this.scheduler);
+        
+        this.statsHistory = new StatsHistory(this.getDataFolder(), this.logger, this.scheduler, this.spawnStats);
+        
+        final CommandSender consoleSender = this.getServer().getConsoleSender();
+        this.configWatcher = new ConfigWatcher(this.getDataFolder(), this.logger, () -> this.loadConfig(consoleSender, false));
+        
+        final SaferWaterListener saferWaterListener = new SaferWaterListener(this);
+        this.getServer().getPluginManager().registerEvents(saferWaterListener, this);
+        final PreSpawnListener preSpawnListener = PreSpawnListener.create(saferWaterListener, this.logger);
+        if (preSpawnListener != null) {
+            preSpawnListener.register(this);
+            this.logger.log(Level.INFO, "Pre-spawn events are available; water spawns will be denied before their mobs are created.");
+        }
+        this.getServer().getPluginManager().registerEvents(new WaterFloorListener(this.waterFloorIndex, this.denialCache, this.spawnerCache), this);
         
         final TabExecutor saferWaterTabExecutor = new SaferWaterTabExecutor(this);
         this.registerCommand("saferwater", saferWaterTabExecutor);
+        this.commandRemovals = CommandRemovals.create(this);
         
         this.reloadConfig(this.getServer().getConsoleSender(), false);
     }
     
+    /**
+     * Disables the plugin, stopping any background work and freeing any
+     * indexed data.
+     */
+    @Override
+    public void onDisable() {
+        
+        this.cancelScan();
+        if (this.waterFloorIndex != null) {
+            this.waterFloorIndex.stop();
+            this.waterFloorIndex = null;
+        }
+        if (this.configWatcher != null) {
+            this.configWatcher.stop();
+            this.configWatcher = null;
+        }
+        if (this.denialCache != null) {
+            this.denialCache.stop();
+            this.denialCache = null;
+        }
+        if (this.chunkBatchCache != null) {
+            this.chunkBatchCache.stop();
+            this.chunkBatchCache = null;
+        }
+        if (this.spawnerCache != null) {
+            this.spawnerCache.stop();
+            this.spawnerCache = null;
+        }
+        if (this.tickBudget != null) {
+            this.tickBudget.stop();
+            this.tickBudget = null;
+        }
+        if (this.decisionLog != null) {
+            this.decisionLog.stop();
+            this.decisionLog = null;
+        }
+        if (this.spawnRecorder != null) {
+            this.spawnRecorder.stop();
+            this.spawnRecorder = null;
+        }
+        if (this.mobSweeper != null) {
+            this.mobSweeper.stop();
+            this.mobSweeper = null;
+        }
+        if (this.statsHistory != null) {
+            this.statsHistory.stop();
+            this.statsHistory = null;
+        }
+        SaferWaterEvents.unregister();
+    }
+    
     /**
      * Registers the {@link PluginCommand} with the given name to the given
      * {@link TabExecutor}.
@@ -127,20 +268,280 @@ public final class SaferWaterPlugin extends JavaPlugin {
     }
     
     /**
-     * Checks to see if the specified {@link Creature} is one of the ones that
-     * is not allowed to spawn in certain water conditions.
+     * Gets the current {@link ConfigSnapshot}.
+     * <p>
+     * The returned {@link ConfigSnapshot} is immutable; a reload of the
+     * configuration will replace it as a whole, and only once the new
+     * configuration has been loaded successfully.
      * 
-     * @param creature The {@link Creature} to check.
-     * @return {@code true} If the {@link Creature} is disallowed from spawning
-     *         under certain conditions, {@code false} otherwise.
+     * @return The current {@link ConfigSnapshot}.
      */
-    public boolean isWaterSpawnDisabled(@NotNull final Creature creature) {
-        for (final Class<? extends Creature> clazz : this.waterSpawnDisabled) {
-            if (clazz.isInstance(creature)) {
-                return true;
-            }
+    @NotNull
+    public ConfigSnapshot getConfigSnapshot() {
+        return this.config;
+    }
+    
+    /**
+     * Gets the current default {@link SpawnDecider}, used to determine which
+     * {@link EntityType}s are not allowed to spawn in certain water
+     * conditions, and whether those conditions are met, in any {@link World}
+     * and {@link Biome} without a profile.
+     * <p>
+     * The returned {@link SpawnDecider} is immutable; a reload of the
+     * configuration will replace it as a whole.
+     * 
+     * @return The current default {@link SpawnDecider}.
+     */
+    @NotNull
+    public SpawnDecider getSpawnDecider() {
+        return this.config.getSpawnDecider();
+    }
+    
+    /**
+     * Gets the current {@link SpawnProfileTable}, used to resolve the
+     * {@link SpawnDecider} of a spawn in any loaded {@link World} and
+     * {@link Biome}.
+     * <p>
+     * The returned {@link SpawnProfileTable} is immutable, and part of the
+     * current {@link ConfigSnapshot}; a reload of the configuration, or a
+     * {@link World} being loaded or unloaded, will replace it as a whole. It
+     * may be read from any thread without a lock; only the replacements are
+     * serialized, so that none of them are lost.
+     * 
+     * @return The current {@link SpawnProfileTable}.
+     */
+    @Override
+    @NotNull
+    public SpawnProfileTable getSpawnProfileTable() {
+        return this.config.getSpawnProfileTable();
+    }
+    
+    /**
+     * Binds the current {@link SpawnProfiles} to the given {@link World},
+     * which has just been loaded.
+     * 
+     * @param world The loaded {@link World}.
+     */
+    @Override
+    public void onWorldLoad(@NotNull final World world) {
+        synchronized (this.configLock) {
+            final ConfigSnapshot config = this.config;
+            this.config = config.withSpawnProfileTable(config.getSpawnProfileTable().withWorld(world));
+        }
+    }
+    
+    /**
+     * Unbinds the current {@link SpawnProfiles} from the given {@link World},
+     * which is being unloaded, and frees its cached denials.
+     * 
+     * @param world The unloaded {@link World}.
+     */
+    @Override
+    public void onWorldUnload(@NotNull final World world) {
+        synchronized (this.configLock) {
+            final ConfigSnapshot config = this.config;
+            this.config = config.withSpawnProfileTable(config.getSpawnProfileTable().withoutWorld(world));
+        }
+        if (this.denialCache != null) {
+            this.denialCache.onWorldUnload(world);
+        }
+        if (this.spawnerCache != null) {
+            this.spawnerCache.onWorldUnload(world);
+        }
+    }
+    
+    /**
+     * Gets the {@link SpawnStats}, used to record every evaluated spawn.
+     * 
+     * @return The {@link SpawnStats}.
+     */
+    @Override
+    @NotNull
+    public SpawnStats getSpawnStats() {
+        return this.spawnStats;
+    }
+    
+    /**
+     * Gets the {@link DenialCache}, used to deny repeated spawns in a chunk
+     * section without deciding each of them again.
+     * 
+     * @return The {@link DenialCache}.
+     */
+    @Override
+    @NotNull
+    public DenialCache getDenialCache() {
+        return this.denialCache;
+    }
+    
+    /**
+     * Gets the {@link ChunkBatchCache}, used to decide the chunk-generation
+     * and natural spawns in a chunk from the same floors within a tick.
+     * 
+     * @return The {@link ChunkBatchCache}.
+     */
+    @Override
+    @NotNull
+    public ChunkBatchCache getChunkBatchCache() {
+        return this.chunkBatchCache;
+    }
+    
+    /**
+     * Gets the {@link SpawnerCache}, used to decide repeated spawns from a
+     * spawner without deciding each of them again.
+     * 
+     * @return The {@link SpawnerCache}.
+     */
+    @Override
+    @NotNull
+    public SpawnerCache getSpawnerCache() {
+        return this.spawnerCache;
+    }
+    
+    /**
+     * Gets the {@link TickBudget}, used to limit the time spent deciding
+     * spawns in each tick.
+     * 
+     * @return The {@link TickBudget}.
+     */
+    @Override
+    @NotNull
+    public TickBudget getTickBudget() {
+        return this.tickBudget;
+    }
+    
+    /**
+     * Gets the {@link DecisionLog}, used to log denied spawns without
+     * blocking the spawning thread.
+     * 
+     * @return The {@link DecisionLog}.
+     */
+    @Override
+    @NotNull
+    public DecisionLog getDecisionLog() {
+        return this.decisionLog;
+    }
+    
+    /**
+     * Gets the {@link SpawnRecorder}, used to record spawns for replaying
+     * them offline.
+     * 
+     * @return The {@link SpawnRecorder}.
+     */
+    @Override
+    @NotNull
+    public SpawnRecorder getSpawnRecorder() {
+        return this.spawnRecorder;
+    }
+    
+    /**
+     * Gets the {@link MobSweeper}, used to remove filtered mobs that are
+     * already in lit water.
+     * 
+     * @return The {@link MobSweeper}.
+     */
+    @NotNull
+    public MobSweeper getMobSweeper() {
+        return this.mobSweeper;
+    }
+    
+    /**
+     * Gets the {@link StatsHistory}, used to keep the spawn statistics of
+     * each minute across restarts.
+     * 
+     * @return The {@link StatsHistory}.
+     */
+    @NotNull
+    public StatsHistory getStatsHistory() {
+        return this.statsHistory;
+    }
+    
+    /**
+     * Gets the {@link WaterFloorIndex}, used to find the floor of a body of
+     * water without walking the blocks.
+     * 
+     * @return The {@link WaterFloorIndex}.
+     */
+    @Override
+    @NotNull
+    public WaterFloorIndex getWaterFloorIndex() {
+        return this.waterFloorIndex;
+    }
+    
+    /**
+     * Gets the {@link TaskScheduler} that all SaferWater tasks are run with.
+     * 
+     * @return The {@link TaskScheduler}.
+     */
+    @NotNull
+    public TaskScheduler getTaskScheduler() {
+        return this.scheduler;
+    }
+    
+    /**
+     * Gets the {@link ChunkScan} that is currently running, if any.
+     * 
+     * @return The running {@link ChunkScan}, or {@code null} if there is
+     *         none.
+     */
+    @Nullable
+    public synchronized ChunkScan getScan() {
+        return this.chunkScan;
+    }
+    
+    /**
+     * Starts a {@link ChunkScan} of the given chunks of the given
+     * {@link World} with the current {@link SpawnProfileTable}, unless one is
+     * already running. Only one {@link ChunkScan} may run at a time, as each
+     * one uses every spare processor.
+     * 
+     * @param sender The {@link CommandSender} that started the scan, who will
+     *               be sent the results.
+     * @param world The {@link World} to scan.
+     * @param chunks The packed coordinates of the chunks to scan.
+     * @return The started {@link ChunkScan}, or {@code null} if one is
+     *         already running.
+     */
+    @Nullable
+    public synchronized ChunkScan startScan(@NotNull final CommandSender sender, @NotNull final World world, @NotNull final long[] chunks) {
+        
+        if (this.chunkScan != null) {
+            return null;
+        }
+        
+        final ChunkScan[] started = new ChunkScan[1];
+        started[0] = new ChunkScan(this.scheduler, this.logger, sender, world, this.config.getSpawnProfileTable(), chunks, new File(this.getDataFolder(), "scans"), () -> this.finishScan(started[0]));
+        this.chunkScan = started[0];
+        started[0].start();
+        return started[0];
+    }
+    
+    /**
+     * Cancels the {@link ChunkScan} that is currently running, if any.
+     * 
+     * @return {@code true} if a {@link ChunkScan} was cancelled, {@code false}
+     *         if there was none.
+     */
+    public synchronized boolean cancelScan() {
+        
+        final ChunkScan chunkScan = this.chunkScan;
+        if (chunkScan == null) {
+            return false;
+        }
+        chunkScan.cancel();
+        this.chunkScan = null;
+        return true;
+    }
+    
+    /**
+     * Forgets the given {@link ChunkScan} once it has finished, so that
+     * another may be started.
+     * 
+     * @param chunkScan The finished {@link ChunkScan}.
+     */
+    private synchronized void finishScan(@NotNull final ChunkScan chunkScan) {
+        if (this.chunkScan == chunkScan) {
+            this.chunkScan = null;
         }
-        return false;
     }
     
     /**
@@ -149,24 +550,86 @@ public final class SaferWaterPlugin extends JavaPlugin {
      * <p>
      * All subcommand/argument tab-completions are handled in the respective
      * {@link TabExecutor}.
+     * <p>
+     * The names to remove are shared by every {@link Player} with the same
+     * permissions, in the {@link CommandRemovals}, which are rebuilt each time
+     * the plugin is reloaded.
      * 
      * @param player The {@link Player} performing the tab-completion.
-     * @return The tab-completions to remove.
+     * @param commands The names of the {@link Command}s sent to the
+     *                 {@link Player}, which are removed from in place.
+     */
+    @Override
+    public void onPlayerCommandSend(@NotNull final Player player, @NotNull final Collection<String> commands) {
+        final CommandRemovals commandRemovals = this.commandRemovals;
+        if (commandRemovals != null) {
+            commandRemovals.removeFrom(player, commands);
+        }
+    }
+    
+    /**
+     * Publishes the given {@link ConfigSnapshot} as the current one, giving it
+     * the next version and binding its {@link SpawnProfiles} to the loaded
+     * {@link World}s, and then applies its settings to the plugin logger, the
+     * {@link DenialCache}, the {@link SpawnerCache}, the {@link TickBudget},
+     * the {@link DecisionLog}, the {@link SpawnRecorder}, the
+     * {@link MobSweeper}, the {@link StatsHistory}, and the
+     * {@link ConfigWatcher}.
+     * <p>
+     * The complete {@link ConfigSnapshot}, including its bound
+     * {@link SpawnProfileTable}, is published with a single write, so that a
+     * spawn is never decided with the {@link SpawnProfileTable} of one
+     * configuration and the settings of another.
+     * <p>
+     * This must only be called from the main server thread (or the global
+     * region of a region-threaded server), so that versions are assigned in
+     * order.
+     * 
+     * @param snapshot The compiled {@link ConfigSnapshot} to publish.
+     * @return The published {@link ConfigSnapshot}, with its version.
      */
     @NotNull
-    public Collection<String> onPlayerCommandSend(@NotNull final Player player) {
+    private ConfigSnapshot publishConfig(@NotNull final ConfigSnapshot snapshot) {
         
-        final Collection<String> removals = new HashSet<String>();
-        for (final String commandName : this.getDescription().getCommands().keySet()) {
-            
-            removals.add(this.getName().toLowerCase() + ":" + commandName);
-            final PluginCommand command = this.getServer().getPluginCommand(commandName);
-            if (command != null && !command.testPermissionSilent(player)) {
-                removals.add(commandName);
-            }
+        final ConfigSnapshot published;
+        synchronized (this.configLock) {
+            published = snapshot.publish(this.config.getVersion() + 1L, this.getServer().getWorlds());
+            this.config = published;
         }
         
-        return removals;
+        this.logger.setLevel(published.getLoggingLevel());
+        if (this.commandRemovals != null) {
+            this.commandRemovals = CommandRemovals.create(this);
+        }
+        if (this.denialCache != null) {
+            this.denialCache.configure(published.getDenialCacheSettings());
+        }
+        if (this.spawnerCache != null) {
+            this.spawnerCache.configure(published.getSpawnerCacheSettings());
+        }
+        if (this.tickBudget != null) {
+            this.tickBudget.configure(published.getTickBudgetSettings());
+        }
+        if (this.decisionLog != null) {
+            this.decisionLog.configure(published.getDecisionLogSettings());
+        }
+        if (this.spawnRecorder != null) {
+            this.spawnRecorder.configure(published.getSpawnRecorderSettings());
+        }
+        if (this.mobSweeper != null) {
+            this.mobSweeper.configure(published.getMobSweeperSettings());
+        }
+        if (this.statsHistory != null) {
+            this.statsHistory.configure(published.getStatsHistorySettings());
+        }
+        if (this.configWatcher != null) {
+            if (published.isWatchConfig()) {
+                this.configWatcher.start();
+            } else {
+                this.configWatcher.stop();
+            }
+        }
+        return published;
     }
     
     /**
@@ -192,158 +655,303 @@ public final class SaferWaterPlugin extends JavaPlugin {
      *                logs.
      */
     private void reloadConfig(@NotNull final CommandSender sender, final boolean command) {
+        this.scheduler.runAsync(() -> this.loadConfig(sender, command));
+    }
+    
+    /**
+     * Loads the configuration file on the calling thread, and publishes it on
+     * the main server thread (or the global region of a region-threaded
+     * server) if it loads successfully. Any error messages are
+     * displayed to the given {@link CommandSender} if this was triggered via
+     * {@link Command}.
+     * <p>
+     * If any setting is invalid, the configuration is not published, and the
+     * current one remains active. Only the first configuration to be loaded,
+     * when there is no current one to keep, uses the defaults of any invalid
+     * settings instead.
+     * <p>
+     * This performs file I/O, and must not be called from a server thread.
+     * <p>
+     * A published reload is recorded as a {@link ConfigReloadEvent}, if the
+     * Java Flight Recorder is recording it.
+     * 
+     * @param sender The {@link CommandSender} that triggered the configuration
+     *               reload.
+     * @param command If {@code true}, error messages will be displayed to the
+     *                {@link CommandSender} if any error occurs. If
+     *                {@code false}, errors will only be shown in the console
+     *                logs.
+     */
+    private void loadConfig(@NotNull final CommandSender sender, final boolean command) {
         
-        this.waterSpawnDisabled.clear();
-        final BukkitScheduler scheduler = this.getServer().getScheduler();
-        scheduler.runTaskAsynchronously(this, () -> {
-            
-            final File configDirectory = this.getDataFolder();
-            try {
-                if (configDirectory.exists()) {
-                    if (!configDirectory.isDirectory()) {
-                        this.logger.log(Level.WARNING, "SaferWater configuration directory is not a directory: " + configDirectory.getPath());
-                        this.logger.log(Level.WARNING, "SaferWater will not deny any water spawns.");
-                        if (command) {
-                            sender.sendMessage("§r§cAn error has occurred while reloading the SaferWater configuration. Please try again. If the error persists, please report it to a server administrator.§r");
-                        }
-                        return;
-                    }
-                } else if (!configDirectory.mkdirs()) {
-                    this.logger.log(Level.WARNING, "SaferWater configuration directory not created at " + configDirectory.getPath());
-                    this.logger.log(Level.WARNING, "SaferWater will not deny any water spawns.");
+        final ConfigReloadEvent reloadEvent = SaferWaterEvents.isRegistered() ? new ConfigReloadEvent() : null;
+        if (reloadEvent != null) {
+            reloadEvent.begin();
+        }
+        final long startNanos = System.nanoTime();
+        
+        final File configDirectory = this.getDataFolder();
+        try {
+            if (configDirectory.exists()) {
+                if (!configDirectory.isDirectory()) {
+                    this.logger.log(Level.WARNING, "SaferWater configuration directory is not a directory: " + configDirectory.getPath());
+                    this.logger.log(Level.WARNING, "The current SaferWater configuration (version " + this.config.getVersion() + ") will remain active.");
                     if (command) {
                         sender.sendMessage("§r§cAn error has occurred while reloading the SaferWater configuration. Please try again. If the error persists, please report it to a server administrator.§r");
                     }
                     return;
                 }
-            } catch (SecurityException e) {
-                this.logger.log(Level.WARNING, "Unable to validate the SaferWater configuration directory at " + configDirectory.getPath());
-                this.logger.log(Level.WARNING, "SaferWater will not deny any water spawns.");
+            } else if (!configDirectory.mkdirs()) {
+                this.logger.log(Level.WARNING, "SaferWater configuration directory not created at " + configDirectory.getPath());
+                this.logger.log(Level.WARNING, "The current SaferWater configuration (version " + this.config.getVersion() + ") will remain active.");
                 if (command) {
                     sender.sendMessage("§r§cAn error has occurred while reloading the SaferWater configuration. Please try again. If the error persists, please report it to a server administrator.§r");
                 }
                 return;
             }
+        } catch (SecurityException e) {
+            this.logger.log(Level.WARNING, "Unable to validate the SaferWater configuration directory at " + configDirectory.getPath());
+            this.logger.log(Level.WARNING, "The current SaferWater configuration (version " + this.config.getVersion() + ") will remain active.");
+            if (command) {
+                sender.sendMessage("§r§cAn error has occurred while reloading the SaferWater configuration. Please try again. If the error persists, please report it to a server administrator.§r");
+            }
+            return;
+        }
+        
+        File configFile = new File(configDirectory, "saferwater.yml");
+        try {
             
-            File configFile = new File(configDirectory, "saferwater.yml");
-            try {
-                
-                if (!configFile.exists() || !configFile.isFile()) {
-                    configFile = new File(configDirectory, "config.yml");
-                }
-                
-                if (configFile.exists()) {
-                    if (!configFile.isFile()) {
-                        this.logger.log(Level.WARNING, "SaferWater configuration file is not a file: " + configFile.getPath());
-                        this.logger.log(Level.WARNING, "SaferWater will not deny any water spawns.");
-                        if (command) {
-                            sender.sendMessage("§r§cAn error has occurred while reloading the SaferWater configuration. Please try again. If the error persists, please report it to a server administrator.§r");
-                        }
-                        return;
-                    }
-                } else {
-                    if (!configFile.createNewFile()) {
-                        this.logger.log(Level.WARNING, "SaferWater configuration file not created at " + configFile.getPath());
-                        this.logger.log(Level.WARNING, "SaferWater will not deny any water spawns.");
-                        if (command) {
-                            sender.sendMessage("§r§cAn error has occurred while reloading the SaferWater configuration. Please try again. If the error persists, please report it to a server administrator.§r");
-                        }
-                        return;
-                    }
-                    
-                    final InputStream defaultConfig = this.getResource(configFile.getName());
-                    final FileOutputStream outputStream = new FileOutputStream(configFile);
-                    final byte[] buffer = new byte[4096];
-                    int bytesRead;
-                    
-                    if (defaultConfig == null) {
-                        this.logger.log(Level.WARNING, "SaferWater default configuration file not found. Possible compilation/build issue with the plugin.");
-                        this.logger.log(Level.WARNING, "SaferWater will not deny any water spawns.");
-                        if (command) {
-                            sender.sendMessage("§r§cAn error has occurred while reloading the SaferWater configuration. Please try again. If the error persists, please report it to a server administrator.§r");
-                        }
-                        return;
+            if (!configFile.exists() || !configFile.isFile()) {
+                configFile = new File(configDirectory, "config.yml");
+            }
+            
+            if (configFile.exists()) {
+                if (!configFile.isFile()) {
+                    this.logger.log(Level.WARNING, "SaferWater configuration file is not a file: " + configFile.getPath());
+                    this.logger.log(Level.WARNING, "The current SaferWater configuration (version " + this.config.getVersion() + ") will remain active.");
+                    if (command) {
+                        sender.sendMessage("§r§cAn error has occurred while reloading the SaferWater configuration. Please try again. If the error persists, please report it to a server administrator.§r");
                     }
-                    
-                    while ((bytesRead = defaultConfig.read(buffer)) != -1) {
-                        outputStream.write(buffer, 0, bytesRead);
+                    return;
+                }
+            } else {
+                if (!configFile.createNewFile()) {
+                    this.logger.log(Level.WARNING, "SaferWater configuration file not created at " + configFile.getPath());
+                    this.logger.log(Level.WARNING, "The current SaferWater configuration (version " + this.config.getVersion() + ") will remain active.");
+                    if (command) {
+                        sender.sendMessage("§r§cAn error has occurred while reloading the SaferWater configuration. Please try again. If the error persists, please report it to a server administrator.§r");
                     }
-                    
-                    outputStream.flush();
-                    defaultConfig.close();
-                    
-                    this.logger.log(Level.WARNING, "SaferWater configuration file did not exist at " + configFile.getPath());
-                    this.logger.log(Level.WARNING, "SaferWater will not deny any water spawns (other than any defaults in the default configuration file).");
-                    this.logger.log(Level.WARNING, "Please update the configuration as required for your installation, and then run \"/saferwater reload\".");
+                    return;
+                }
+                
+                final InputStream defaultConfig = this.getResource(configFile.getName());
+                final FileOutputStream outputStream = new FileOutputStream(configFile);
+                final byte[] buffer = new byte[4096];
+                int bytesRead;
+                
+                if (defaultConfig == null) {
+                    this.logger.log(Level.WARNING, "SaferWater default configuration file not found. Possible compilation/build issue with the plugin.");
+                    this.logger.log(Level.WARNING, "The current SaferWater configuration (version " + this.config.getVersion() + ") will remain active.");
                     if (command) {
-                        sender.sendMessage("§r§cThe SaferWater configuration file did not exist; a copy of the default has been made and placed in the correct location.§r");
-                        sender.sendMessage("§r§cPlease update the configuration as required for the installation, and then run§r §b/saferwater reload§r§c.§r");
+                        sender.sendMessage("§r§cAn error has occurred while reloading the SaferWater configuration. Please try again. If the error persists, please report it to a server administrator.§r");
                     }
+                    return;
                 }
-            } catch (SecurityException | IOException e) {
-                this.logger.log(Level.WARNING, "Unable to load the SaferWater configuration file at " + configFile.getPath());
-                this.logger.log(Level.WARNING, "SaferWater will not deny any water spawns.");
-                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                if (command) {
-                    sender.sendMessage("§r§cAn error has occurred while reloading the SaferWater configuration. Please try again. If the error persists, please report it to a server administrator.§r");
+                
+                while ((bytesRead = defaultConfig.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, bytesRead);
                 }
-                return;
-            }
-            
-            final YamlConfiguration config = new YamlConfiguration();
-            try {
-                config.load(configFile);
-            } catch (IOException | InvalidConfigurationException | IllegalArgumentException e) {
-                this.logger.log(Level.WARNING, "Unable to load the SaferWater configuration.");
-                this.logger.log(Level.WARNING, "SaferWater will not deny any water spawns.");
-                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                
+                outputStream.flush();
+                defaultConfig.close();
+                
+                this.logger.log(Level.WARNING, "SaferWater configuration file did not exist at " + configFile.getPath());
+                this.logger.log(Level.WARNING, "SaferWater will not deny any water spawns (other than any defaults in the default configuration file).");
+                this.logger.log(Level.WARNING, "Please update the configuration as required for your installation, and then run \"/saferwater reload\".");
                 if (command) {
-                    sender.sendMessage("§r§cAn error has occurred while reloading the SaferWater configuration. Please try again. If the error persists, please report it to a server administrator.§r");
+                    sender.sendMessage("§r§cThe SaferWater configuration file did not exist; a copy of the default has been made and placed in the correct location.§r");
+                    sender.sendMessage("§r§cPlease update the configuration as required for the installation, and then run§r §b/saferwater reload§r§c.§r");
                 }
-                return;
             }
-            
-            final Level loggingLevel;
-            Level rawLoggingLevel;
-            try {
-                rawLoggingLevel = Level.parse(config.getString("logging_level", "INFO"));
-            } catch (NullPointerException | IllegalArgumentException e) {
-                this.logger.log(Level.WARNING, "Unable to load the SaferWater logging level.");
-                this.logger.log(Level.WARNING, "Will use the default level (INFO).");
-                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                if (command) {
-                    sender.sendMessage("§r§cAn error has occurred while reloading the SaferWater configuration. Please try again. If the error persists, please report it to a server administrator.§r");
-                }
-                rawLoggingLevel = Level.INFO;
+        } catch (SecurityException | IOException e) {
+            this.logger.log(Level.WARNING, "Unable to load the SaferWater configuration file at " + configFile.getPath());
+            this.logger.log(Level.WARNING, "The current SaferWater configuration (version " + this.config.getVersion() + ") will remain active.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            if (command) {
+                sender.sendMessage("§r§cAn error has occurred while reloading the SaferWater configuration. Please try again. If the error persists, please report it to a server administrator.§r");
             }
-            loggingLevel = rawLoggingLevel;
-            
-            final List<String> disallowedMobsRaw = config.getStringList("disallowed_mobs");
-            final List<Class<? extends Creature>> disallowedMobs = new ArrayList<Class<? extends Creature>>();
-            for (final String mob : disallowedMobsRaw) {
-                try {
-                    final Class<?> clazz = Class.forName("org.bukkit.entity." + mob);
-                    if (!Creature.class.isAssignableFrom(clazz)) {
-                        this.logger.log(Level.WARNING, "Class " + clazz.getName() + " is not of type " + Creature.class.getName() + ", cannot add to denied spawns list.");
-                        continue;
-                    }
-                    disallowedMobs.add(clazz.asSubclass(Creature.class));
-                } catch (LinkageError | ClassNotFoundException | NullPointerException | ClassCastException e) {
-                    this.logger.log(Level.WARNING, "Unable to convert " + mob + " to a Class in org.bukkit.entity.");
-                    this.logger.log(Level.WARNING, "Will not use " + mob + " as a disallowed mob.");
-                    this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
-                    return;
-                }
+            return;
+        }
+        
+        final YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.load(configFile);
+        } catch (IOException | InvalidConfigurationException | IllegalArgumentException e) {
+            this.logger.log(Level.WARNING, "Unable to load the SaferWater configuration.");
+            this.logger.log(Level.WARNING, "The current SaferWater configuration (version " + this.config.getVersion() + ") will remain active.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            if (command) {
+                sender.sendMessage("§r§cAn error has occurred while reloading the SaferWater configuration. Please try again. If the error persists, please report it to a server administrator.§r");
             }
+            return;
+        }
+        final long parsedNanos = System.nanoTime();
+        
+        final boolean firstLoad = this.config.getVersion() == 0L;
+        boolean valid = true;
+        
+        final Level loggingLevel;
+        Level rawLoggingLevel;
+        try {
+            rawLoggingLevel = Level.parse(config.getString("logging_level", "INFO"));
+        } catch (NullPointerException | IllegalArgumentException e) {
+            valid = this.reportInvalidSettings("logging level", "the default level (INFO)", e, firstLoad) && valid;
+            rawLoggingLevel = Level.INFO;
+        }
+        loggingLevel = rawLoggingLevel;
+        
+        DecisionLogSettings rawDecisionLogSettings;
+        try {
+            rawDecisionLogSettings = new DecisionLogSettings(
+                    config.getBoolean("decision_log.enabled", DecisionLogSettings.DEFAULT.isEnabled()),
+                    config.getInt("decision_log.buffer_size", DecisionLogSettings.DEFAULT.getBufferSize()),
+                    OverflowPolicy.valueOf(config.getString("decision_log.when_full", DecisionLogSettings.DEFAULT.getOverflowPolicy().name()).toUpperCase()),
+                    config.getLong("decision_log.max_file_size", DecisionLogSettings.DEFAULT.getMaxFileSize() / 1024L) * 1024L,
+                    config.getInt("decision_log.max_files", DecisionLogSettings.DEFAULT.getMaxFiles())
+            );
+        } catch (NullPointerException | IllegalArgumentException e) {
+            valid = this.reportInvalidSettings("decision log settings", "the default settings (disabled)", e, firstLoad) && valid;
+            rawDecisionLogSettings = DecisionLogSettings.DEFAULT;
+        }
+        final DecisionLogSettings decisionLogSettings = rawDecisionLogSettings;
+        
+        SpawnRecorderSettings rawSpawnRecorderSettings;
+        try {
+            rawSpawnRecorderSettings = new SpawnRecorderSettings(
+                    config.getBoolean("spawn_recorder.enabled", SpawnRecorderSettings.DEFAULT.isEnabled()),
+                    config.getInt("spawn_recorder.buffer_size", SpawnRecorderSettings.DEFAULT.getBufferSize()),
+                    config.getLong("spawn_recorder.max_file_size", SpawnRecorderSettings.DEFAULT.getMaxFileSize() / 1024L) * 1024L
+            );
+        } catch (IllegalArgumentException e) {
+            valid = this.reportInvalidSettings("spawn recorder settings", "the default settings (disabled)", e, firstLoad) && valid;
+            rawSpawnRecorderSettings = SpawnRecorderSettings.DEFAULT;
+        }
+        final SpawnRecorderSettings spawnRecorderSettings = rawSpawnRecorderSettings;
+        
+        MobSweeperSettings rawMobSweeperSettings;
+        try {
+            rawMobSweeperSettings = new MobSweeperSettings(
+                    config.getBoolean("sweeper.enabled", MobSweeperSettings.DEFAULT.isEnabled()),
+                    config.getInt("sweeper.entities_per_tick", MobSweeperSettings.DEFAULT.getEntitiesPerTick()),
+                    config.getLong("sweeper.budget_micros", MobSweeperSettings.DEFAULT.getBudgetNanos() / 1000L) * 1000L,
+                    config.getInt("sweeper.pass_interval_ticks", MobSweeperSettings.DEFAULT.getPassIntervalTicks()),
+                    config.getBoolean("sweeper.only_despawnable", MobSweeperSettings.DEFAULT.isOnlyDespawnable())
+            );
+        } catch (IllegalArgumentException e) {
+            valid = this.reportInvalidSettings("mob sweeper settings", "the default settings (disabled)", e, firstLoad) && valid;
+            rawMobSweeperSettings = MobSweeperSettings.DEFAULT;
+        }
+        final MobSweeperSettings mobSweeperSettings = rawMobSweeperSettings;
+        
+        StatsHistorySettings rawStatsHistorySettings;
+        try {
+            rawStatsHistorySettings = new StatsHistorySettings(
+                    config.getBoolean("history.enabled", StatsHistorySettings.DEFAULT.isEnabled()),
+                    config.getInt("history.days", StatsHistorySettings.DEFAULT.getDays())
+            );
+        } catch (IllegalArgumentException e) {
+            valid = this.reportInvalidSettings("history settings", "the default settings (disabled)", e, firstLoad) && valid;
+            rawStatsHistorySettings = StatsHistorySettings.DEFAULT;
+        }
+        final StatsHistorySettings statsHistorySettings = rawStatsHistorySettings;
+        
+        DenialCacheSettings rawDenialCacheSettings;
+        try {
+            rawDenialCacheSettings = new DenialCacheSettings(
+                    config.getBoolean("denial_cache.enabled", DenialCacheSettings.DEFAULT.isEnabled()),
+                    config.getInt("denial_cache.max_entries", DenialCacheSettings.DEFAULT.getMaxEntries()),
+                    config.getInt("denial_cache.ttl_ticks", DenialCacheSettings.DEFAULT.getTtlTicks())
+            );
+        } catch (IllegalArgumentException e) {
+            valid = this.reportInvalidSettings("denial cache settings", "the default settings (enabled)", e, firstLoad) && valid;
+            rawDenialCacheSettings = DenialCacheSettings.DEFAULT;
+        }
+        final DenialCacheSettings denialCacheSettings = rawDenialCacheSettings;
+        
+        SpawnerCacheSettings rawSpawnerCacheSettings;
+        try {
+            rawSpawnerCacheSettings = new SpawnerCacheSettings(
+                    config.getBoolean("spawner_cache.enabled", SpawnerCacheSettings.DEFAULT.isEnabled()),
+                    config.getInt("spawner_cache.ttl_ticks", SpawnerCacheSettings.DEFAULT.getTtlTicks())
+            );
+        } catch (IllegalArgumentException e) {
+            valid = this.reportInvalidSettings("spawner cache settings", "the default settings (enabled)", e, firstLoad) && valid;
+            rawSpawnerCacheSettings = SpawnerCacheSettings.DEFAULT;
+        }
+        final SpawnerCacheSettings spawnerCacheSettings = rawSpawnerCacheSettings;
+        
+        TickBudgetSettings rawTickBudgetSettings;
+        try {
+            rawTickBudgetSettings = new TickBudgetSettings(
+                    config.getBoolean("tick_budget.enabled", TickBudgetSettings.DEFAULT.isEnabled()),
+                    config.getLong("tick_budget.budget_micros", TickBudgetSettings.DEFAULT.getBudgetNanos() / 1000L) * 1000L,
+                    BudgetFallback.valueOf(config.getString("tick_budget.fallback", TickBudgetSettings.DEFAULT.getFallback().name()).toUpperCase())
+            );
+        } catch (NullPointerException | IllegalArgumentException e) {
+            valid = this.reportInvalidSettings("tick budget settings", "the default settings (disabled)", e, firstLoad) && valid;
+            rawTickBudgetSettings = TickBudgetSettings.DEFAULT;
+        }
+        final TickBudgetSettings tickBudgetSettings = rawTickBudgetSettings;
+        
+        final boolean watchConfig = config.getBoolean("watch_config", false);
+        
+        final SpawnProfiles spawnProfiles = new SpawnProfilesLoader(this.logger, sender, command, firstLoad).load(config);
+        if (!valid || spawnProfiles == null) {
+            this.logger.log(Level.WARNING, "The SaferWater configuration has invalid settings, and has not been reloaded.");
+            this.logger.log(Level.WARNING, "The current SaferWater configuration (version " + this.config.getVersion() + ") will remain active.");
+            if (command) {
+                sender.sendMessage("§r§cThe SaferWater configuration has invalid settings, and has not been reloaded. Please check the server logs for details.§r");
+            }
+            return;
+        }
+        final ConfigSnapshot snapshot = ConfigSnapshot.of(loggingLevel, watchConfig, spawnProfiles, denialCacheSettings, spawnerCacheSettings, decisionLogSettings, spawnRecorderSettings, mobSweeperSettings, statsHistorySettings, tickBudgetSettings);
+        
+        final long resolvedNanos = System.nanoTime();
+        
+        this.scheduler.runGlobal(() -> {
             
-            scheduler.runTask(this, () -> {
-                
-                this.logger.setLevel(loggingLevel);
-                this.waterSpawnDisabled.addAll(disallowedMobs);
-                if (command) {
-                    sender.sendMessage("§r§aThe SaferWater configuration has been reloaded. Please verify your mob spawns with the configuration file.§r");
-                }
-            });
+            final long publishStartNanos = System.nanoTime();
+            final ConfigSnapshot published = this.publishConfig(snapshot);
+            if (reloadEvent != null) {
+                reloadEvent.commitReload(published.getVersion(), parsedNanos - startNanos, resolvedNanos - parsedNanos, System.nanoTime() - publishStartNanos);
+            }
+            this.logger.log(Level.INFO, "SaferWater configuration version " + published.getVersion() + " is now active.");
+            if (command) {
+                sender.sendMessage("§r§aThe SaferWater configuration has been reloaded (version§r §b" + published.getVersion() + "§r§a). Please verify your mob spawns with the configuration file.§r");
+            }
         });
     }
+    
+    /**
+     * Logs that the given settings could not be loaded. If this is the first
+     * configuration to be loaded, the given fallback is logged, to be used
+     * instead. Otherwise, the load has failed.
+     * 
+     * @param settings The name of the settings, for logging.
+     * @param fallback The description of the fallback, for logging.
+     * @param e The {@link RuntimeException} thrown while loading the
+     *          settings.
+     * @param firstLoad If {@code true}, this is the first configuration to
+     *                  be loaded.
+     * @return {@code true} if the fallback is used, {@code false} if the load
+     *         has failed.
+     */
+    private boolean reportInvalidSettings(@NotNull final String settings, @NotNull final String fallback, @NotNull final RuntimeException e, final boolean firstLoad) {
+        this.logger.log(Level.WARNING, "Unable to load the SaferWater " + settings + ".");
+        if (firstLoad) {
+            this.logger.log(Level.WARNING, "Will use " + fallback + ".");
+        }
+        this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        return firstLoad;
+    }
 }
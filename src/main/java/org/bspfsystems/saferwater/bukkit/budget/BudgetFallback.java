@@ -0,0 +1,47 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.budget;
+
+/**
+ * Represents how filtered spawns are decided once the {@link TickBudget} of
+ * the current tick has been spent. Either way, each spawn that is decided by
+ * the fallback is counted.
+ */
+public enum BudgetFallback {
+    
+    /**
+     * Every filtered spawn in water is denied, without finding the floor of
+     * the water. Only the spawn block itself is read.
+     */
+    DENY,
+    
+    /**
+     * Every filtered spawn is allowed, without reading any blocks.
+     */
+    ALLOW,
+    
+    /**
+     * Filtered spawns are decided only from answers that are already known:
+     * the denial cache, and the indexed water floors. Any spawn without a
+     * known answer is allowed.
+     */
+    CACHED
+}
@@ -0,0 +1,240 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.budget;
+
+import java.util.concurrent.atomic.LongAdder;
+import org.bspfsystems.saferwater.bukkit.scheduler.TaskScheduler;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a limit on the time spent deciding filtered spawns in each tick,
+ * so that the worst-case cost of SaferWater to a tick is bounded.
+ * <p>
+ * The time taken by each decision is added to the budget of the current tick
+ * (from the same {@link System#nanoTime()} readings that the spawn statistics
+ * use). Once the budget has been spent, the rest of the tick's filtered
+ * spawns are decided by the configured {@link BudgetFallback}, which reads at
+ * most a single block and a cached answer.
+ * <p>
+ * Each thread has its own budget. On a single-threaded server, this is the
+ * main server thread; on a region-threaded server, each region thread may
+ * spend the budget once per tick of the global region. The tick counter is
+ * only ever written by the per-tick task, and each thread resets its own
+ * budget when it sees a new tick, so nothing is shared between threads other
+ * than the counters.
+ */
+public final class TickBudget {
+    
+    private final TaskScheduler scheduler;
+    private final ThreadLocal<Window> windows;
+    private final LongAdder exhaustedTicks;
+    private final LongAdder fallbackAllowed;
+    private final LongAdder fallbackDenied;
+    
+    private volatile TickBudgetSettings settings;
+    private volatile int currentTick;
+    private TaskScheduler.Task tickTask;
+    
+    /**
+     * Represents the time spent by a single thread in a single tick.
+     */
+    private static final class Window {
+        
+        private int tick;
+        private long spentNanos;
+        private boolean exhausted;
+    }
+    
+    /**
+     * Constructs a new {@link TickBudget}, with the default
+     * {@link TickBudgetSettings}.
+     * 
+     * @param scheduler The {@link TaskScheduler} that the per-tick task is
+     *                  run with.
+     */
+    public TickBudget(@NotNull final TaskScheduler scheduler) {
+        this.scheduler = scheduler;
+        this.windows = ThreadLocal.withInitial(Window::new);
+        this.exhaustedTicks = new LongAdder();
+        this.fallbackAllowed = new LongAdder();
+        this.fallbackDenied = new LongAdder();
+        this.settings = TickBudgetSettings.DEFAULT;
+        this.currentTick = 0;
+    }
+    
+    /**
+     * Starts the per-tick task that starts a new budget each tick.
+     */
+    public synchronized void start() {
+        if (this.tickTask == null) {
+            this.tickTask = this.scheduler.runGlobalTimer(() -> this.currentTick++, 1L, 1L);
+        }
+    }
+    
+    /**
+     * Stops the per-tick task. The budget of the last tick remains spent
+     * until the task is started again.
+     */
+    public synchronized void stop() {
+        if (this.tickTask != null) {
+            this.tickTask.cancel();
+            this.tickTask = null;
+        }
+    }
+    
+    /**
+     * Applies the given {@link TickBudgetSettings}. Any budget that has
+     * already been spent in the current tick is kept.
+     * 
+     * @param settings The {@link TickBudgetSettings} to apply.
+     */
+    public void configure(@NotNull final TickBudgetSettings settings) {
+        this.settings = settings;
+    }
+    
+    /**
+     * Checks if the time spent deciding spawns is currently limited.
+     * 
+     * @return {@code true} if the budget is enabled, {@code false} otherwise.
+     */
+    public boolean isEnabled() {
+        return this.settings.isEnabled();
+    }
+    
+    /**
+     * Gets the {@link BudgetFallback} used once the budget has been spent.
+     * 
+     * @return The {@link BudgetFallback}.
+     */
+    @NotNull
+    public BudgetFallback getFallback() {
+        return this.settings.getFallback();
+    }
+    
+    /**
+     * Gets the time that may be spent deciding spawns in each tick.
+     * 
+     * @return The budget, in nanoseconds.
+     */
+    public long getBudgetNanos() {
+        return this.settings.getBudgetNanos();
+    }
+    
+    /**
+     * Checks if the budget of the current tick has been spent on the current
+     * thread, meaning that the next filtered spawn must be decided by the
+     * {@link BudgetFallback}.
+     * 
+     * @return {@code true} if the budget is enabled and has been spent,
+     *         {@code false} otherwise.
+     */
+    public boolean isExhausted() {
+        if (!this.settings.isEnabled()) {
+            return false;
+        }
+        final Window window = this.windows.get();
+        if (window.tick != this.currentTick) {
+            return false;
+        }
+        return window.exhausted;
+    }
+    
+    /**
+     * Adds the time taken by a decision on the current thread to the budget
+     * of the current tick. The first time that the budget is spent in a tick,
+     * the tick is counted as exhausted.
+     * 
+     * @param nanos The time taken by the decision, in nanoseconds.
+     */
+    public void spend(final long nanos) {
+        
+        final TickBudgetSettings settings = this.settings;
+        if (!settings.isEnabled()) {
+            return;
+        }
+        
+        final Window window = this.windows.get();
+        final int tick = this.currentTick;
+        if (window.tick != tick) {
+            window.tick = tick;
+            window.spentNanos = 0L;
+            window.exhausted = false;
+        }
+        
+        window.spentNanos += nanos;
+        if (!window.exhausted && window.spentNanos >= settings.getBudgetNanos()) {
+            window.exhausted = true;
+            this.exhaustedTicks.increment();
+        }
+    }
+    
+    /**
+     * Records a spawn that was decided by the {@link BudgetFallback}.
+     * 
+     * @param denied {@code true} if the spawn was denied, {@code false} if it
+     *               was allowed.
+     */
+    public void recordFallback(final boolean denied) {
+        if (denied) {
+            this.fallbackDenied.increment();
+        } else {
+            this.fallbackAllowed.increment();
+        }
+    }
+    
+    /**
+     * Gets the number of ticks (per thread) in which the budget was spent.
+     * 
+     * @return The number of exhausted ticks.
+     */
+    public long getExhaustedTicks() {
+        return this.exhaustedTicks.sum();
+    }
+    
+    /**
+     * Gets the number of spawns that were allowed by the
+     * {@link BudgetFallback}.
+     * 
+     * @return The number of allowed spawns.
+     */
+    public long getFallbackAllowed() {
+        return this.fallbackAllowed.sum();
+    }
+    
+    /**
+     * Gets the number of spawns that were denied by the
+     * {@link BudgetFallback}.
+     * 
+     * @return The number of denied spawns.
+     */
+    public long getFallbackDenied() {
+        return this.fallbackDenied.sum();
+    }
+    
+    /**
+     * Resets the exhausted tick and fallback counters.
+     */
+    public void resetCounters() {
+        this.exhaustedTicks.reset();
+        this.fallbackAllowed.reset();
+        this.fallbackDenied.reset();
+    }
+}
@@ -0,0 +1,92 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.budget;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents the immutable settings of the {@link TickBudget}.
+ */
+public final class TickBudgetSettings {
+    
+    /**
+     * The largest budget, in nanoseconds, which is a whole tick.
+     */
+    public static final long MAX_BUDGET_NANOS = 50_000_000L;
+    
+    /**
+     * The default {@link TickBudgetSettings}, which do not limit the time
+     * spent deciding spawns.
+     */
+    public static final TickBudgetSettings DEFAULT = new TickBudgetSettings(false, 1_000_000L, BudgetFallback.CACHED);
+    
+    private final boolean enabled;
+    private final long budgetNanos;
+    private final BudgetFallback fallback;
+    
+    /**
+     * Constructs a new {@link TickBudgetSettings}.
+     * 
+     * @param enabled If {@code true}, the time spent deciding spawns is
+     *                limited.
+     * @param budgetNanos The time that may be spent deciding spawns in each
+     *                    tick, in nanoseconds.
+     * @param fallback The {@link BudgetFallback} used once the budget has been
+     *                 spent.
+     * @throws IllegalArgumentException If the budget is out of range.
+     */
+    public TickBudgetSettings(final boolean enabled, final long budgetNanos, @NotNull final BudgetFallback fallback) throws IllegalArgumentException {
+        if (budgetNanos <= 0L || budgetNanos > MAX_BUDGET_NANOS) {
+            throw new IllegalArgumentException("Budget must be between 1 and " + MAX_BUDGET_NANOS + " nanoseconds: " + budgetNanos);
+        }
+        this.enabled = enabled;
+        this.budgetNanos = budgetNanos;
+        this.fallback = fallback;
+    }
+    
+    /**
+     * Checks if the time spent deciding spawns is limited.
+     * 
+     * @return {@code true} if the budget is enabled, {@code false} otherwise.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+    
+    /**
+     * Gets the time that may be spent deciding spawns in each tick.
+     * 
+     * @return The budget, in nanoseconds.
+     */
+    public long getBudgetNanos() {
+        return this.budgetNanos;
+    }
+    
+    /**
+     * Gets the {@link BudgetFallback} used once the budget has been spent.
+     * 
+     * @return The {@link BudgetFallback}.
+     */
+    @NotNull
+    public BudgetFallback getFallback() {
+        return this.fallback;
+    }
+}
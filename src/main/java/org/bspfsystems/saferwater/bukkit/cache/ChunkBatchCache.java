@@ -0,0 +1,392 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.cache;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import org.bspfsystems.saferwater.bukkit.scheduler.TaskScheduler;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.water.BlockSource;
+import org.bukkit.World;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents the batches of chunk-generation and natural spawns that are
+ * decided in the same chunk within a single tick.
+ * <p>
+ * Terrain generation spawns several mobs into a new chunk at once, and
+ * natural spawns follow in bursts right after it; each of them would
+ * otherwise walk its column and read the light of its floor independently,
+ * even when the chunk has not been indexed yet. Within a tick, the first
+ * spawn in a column of a chunk finds the floor and its light, and every later
+ * spawn in the same body of water in that column reuses them. Every spawn in
+ * the batch is therefore decided from the same floor and light, and is
+ * cancelled (or allowed) consistently.
+ * <p>
+ * Spawns are batched per chunk, but the floor and light are only shared
+ * within a column, as the floor of one column says nothing about the floor
+ * of its neighbours. A batch therefore only saves work for repeated spawns
+ * in the same column, which is what the natural spawner produces when it
+ * tries a pack of mobs around the same position.
+ * <p>
+ * A floor is only reused for spawns between it and the highest spawn that it
+ * was found from, by the same {@link SpawnDecider}. If the
+ * {@link SpawnDecider} has a maximum scan depth, a shallower spawn may not
+ * have reached the true floor, so its floor is only reused at the same Y.
+ * <p>
+ * Each thread keeps its own batches (in a small, fixed number of slots that
+ * are reused from tick to tick), so no locks are taken, and no objects are
+ * allocated once the slots have been filled. The batches of every thread are
+ * also registered with the cache, so that {@link #stop()} can empty them;
+ * otherwise the server threads would keep the {@link SpawnDecider}s of the
+ * last tick reachable after the plugin has been disabled.
+ */
+public final class ChunkBatchCache {
+    
+    private static final int SLOTS = 64;
+    
+    private final TaskScheduler scheduler;
+    private final ThreadLocal<Batches> batches;
+    private final ConcurrentLinkedQueue<Batches> allBatches;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    
+    private volatile int currentTick;
+    private TaskScheduler.Task tickTask;
+    
+    /**
+     * Represents the floors found in a single chunk within a single tick.
+     */
+    private static final class ChunkBatch {
+        
+        private UUID worldId;
+        private int chunkX;
+        private int chunkZ;
+        private int tick;
+        private final SpawnDecider[] deciders;
+        private final int[] floorYs;
+        private final int[] lowYs;
+        private final int[] topYs;
+        private final byte[] lightLevels;
+        
+        /**
+         * Constructs a new, empty {@link ChunkBatch}.
+         */
+        private ChunkBatch() {
+            this.deciders = new SpawnDecider[256];
+            this.floorYs = new int[256];
+            this.lowYs = new int[256];
+            this.topYs = new int[256];
+            this.lightLevels = new byte[256];
+        }
+        
+        /**
+         * Checks if this {@link ChunkBatch} is for the given chunk in the
+         * given tick.
+         * 
+         * @param worldId The {@link UUID} of the {@link World} of the chunk.
+         * @param chunkX The chunk X coordinate.
+         * @param chunkZ The chunk Z coordinate.
+         * @param tick The tick.
+         * @return {@code true} if this {@link ChunkBatch} is for the chunk,
+         *         {@code false} otherwise.
+         */
+        private boolean isFor(@NotNull final UUID worldId, final int chunkX, final int chunkZ, final int tick) {
+            return this.tick == tick && this.chunkX == chunkX && this.chunkZ == chunkZ && worldId.equals(this.worldId);
+        }
+        
+        /**
+         * Empties this {@link ChunkBatch}, and reuses it for the given chunk
+         * in the given tick.
+         * 
+         * @param worldId The {@link UUID} of the {@link World} of the chunk.
+         * @param chunkX The chunk X coordinate.
+         * @param chunkZ The chunk Z coordinate.
+         * @param tick The tick.
+         */
+        private void reset(@NotNull final UUID worldId, final int chunkX, final int chunkZ, final int tick) {
+            this.worldId = worldId;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.tick = tick;
+            Arrays.fill(this.deciders, null);
+        }
+    }
+    
+    /**
+     * Represents the {@link ChunkBatch}es of a single thread.
+     * <p>
+     * This is also the {@link BlockSource} that a batched spawn is decided
+     * with, answering the floor and its light from the {@link ChunkBatch} if
+     * they are already known, and reading everything else from the
+     * {@link BlockSource} of the {@link World}. A column is only ever reused
+     * by the same {@link SpawnDecider}, so the known light is always from the
+     * light source that the {@link SpawnDecider} reads.
+     */
+    private static final class Batches implements BlockSource {
+        
+        private final ChunkBatch[] slots;
+        private BlockSource source;
+        private ChunkBatch batch;
+        private int column;
+        private boolean hit;
+        
+        /**
+         * Constructs a new, empty {@link Batches}.
+         */
+        private Batches() {
+            this.slots = new ChunkBatch[SLOTS];
+        }
+        
+        /**
+         * Drops all {@link ChunkBatch}es, and with them the
+         * {@link SpawnDecider}s that they were found by.
+         */
+        private void clear() {
+            Arrays.fill(this.slots, null);
+            this.source = null;
+            this.batch = null;
+            this.hit = false;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public byte getKind(final int x, final int y, final int z) {
+            return this.source.getKind(x, y, z);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getLightLevel(final int x, final int y, final int z) {
+            if (this.hit && y == this.batch.floorYs[this.column]) {
+                return this.batch.lightLevels[this.column];
+            }
+            return this.source.getLightLevel(x, y, z);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getSkyLightLevel(final int x, final int y, final int z) {
+            if (this.hit && y == this.batch.floorYs[this.column]) {
+                return this.batch.lightLevels[this.column];
+            }
+            return this.source.getSkyLightLevel(x, y, z);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getBlockLightLevel(final int x, final int y, final int z) {
+            if (this.hit && y == this.batch.floorYs[this.column]) {
+                return this.batch.lightLevels[this.column];
+            }
+            return this.source.getBlockLightLevel(x, y, z);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getMinHeight() {
+            return this.source.getMinHeight();
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getIndexedFloorY(final int x, final int y, final int z) {
+            if (this.hit) {
+                return this.batch.floorYs[this.column];
+            }
+            return this.source.getIndexedFloorY(x, y, z);
+        }
+    }
+    
+    /**
+     * Constructs a new {@link ChunkBatchCache}.
+     * 
+     * @param scheduler The {@link TaskScheduler} that the per-tick task is
+     *                  run with.
+     */
+    public ChunkBatchCache(@NotNull final TaskScheduler scheduler) {
+        this.scheduler = scheduler;
+        this.allBatches = new ConcurrentLinkedQueue<Batches>();
+        this.batches = ThreadLocal.withInitial(() -> {
+            final Batches batches = new Batches();
+            this.allBatches.add(batches);
+            return batches;
+        });
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.currentTick = 0;
+    }
+    
+    /**
+     * Starts the per-tick task that ends the batches of each tick.
+     */
+    public synchronized void start() {
+        if (this.tickTask == null) {
+            this.tickTask = this.scheduler.runGlobalTimer(() -> this.currentTick++, 1L, 1L);
+        }
+    }
+    
+    /**
+     * Stops the per-tick task, and empties the batches of every thread.
+     * <p>
+     * This must only be called once no more spawns are being decided, such
+     * as when the plugin is disabled.
+     */
+    public synchronized void stop() {
+        if (this.tickTask != null) {
+            this.tickTask.cancel();
+            this.tickTask = null;
+        }
+        Batches batches;
+        while ((batches = this.allBatches.poll()) != null) {
+            batches.clear();
+        }
+        this.batches.remove();
+    }
+    
+    /**
+     * Checks if spawns for the given {@link SpawnReason} are batched.
+     * 
+     * @param spawnReason The {@link SpawnReason}.
+     * @return {@code true} if the spawns are batched, {@code false}
+     *         otherwise.
+     */
+    public static boolean isBatched(@NotNull final SpawnReason spawnReason) {
+        return spawnReason == SpawnReason.CHUNK_GEN || spawnReason == SpawnReason.NATURAL;
+    }
+    
+    /**
+     * Decides a spawn that has already passed the filter of the
+     * given {@link SpawnDecider}, reusing the floor and light found by an
+     * earlier spawn in the same column of the same chunk in the current tick,
+     * if any.
+     * 
+     * @param spawnDecider The {@link SpawnDecider} of the spawn.
+     * @param source The {@link BlockSource} of the {@link World}.
+     * @param world The {@link World} of the spawn.
+     * @param x The block X coordinate of the spawn.
+     * @param y The block Y coordinate of the spawn.
+     * @param z The block Z coordinate of the spawn.
+     * @return The packed decision, as from
+     *         {@link SpawnDecider#decideWater(BlockSource, int, int, int)}.
+     */
+    public long decideWater(@NotNull final SpawnDecider spawnDecider, @NotNull final BlockSource source, @NotNull final World world, final int x, final int y, final int z) {
+        
+        final Batches batches = this.batches.get();
+        final UUID worldId = world.getUID();
+        final int chunkX = x >> 4;
+        final int chunkZ = z >> 4;
+        final int tick = this.currentTick;
+        final int slot = (chunkX * 31 + chunkZ) & (SLOTS - 1);
+        
+        ChunkBatch batch = batches.slots[slot];
+        if (batch == null) {
+            batch = new ChunkBatch();
+            batches.slots[slot] = batch;
+            batch.reset(worldId, chunkX, chunkZ, tick);
+        } else if (!batch.isFor(worldId, chunkX, chunkZ, tick)) {
+            batch.reset(worldId, chunkX, chunkZ, tick);
+        }
+        
+        final int column = ((z & 15) << 4) | (x & 15);
+        final boolean hit = batch.deciders[column] == spawnDecider && y >= batch.lowYs[column] && y <= batch.topYs[column];
+        batches.source = source;
+        batches.batch = batch;
+        batches.column = column;
+        batches.hit = hit;
+        
+        final long decision;
+        try {
+            decision = spawnDecider.decideWater(batches, x, y, z);
+        } finally {
+            batches.source = null;
+            batches.batch = null;
+            batches.hit = false;
+        }
+        
+        final int outcome = SpawnDecider.getOutcome(decision);
+        if (outcome != SpawnDecider.ALLOWED && outcome != SpawnDecider.DENIED) {
+            return decision;
+        }
+        if (hit) {
+            this.hits.increment();
+            return decision;
+        }
+        this.misses.increment();
+        
+        // A deeper spawn in the same body of water is always found first by
+        // the natural spawner, so only the top of the range is extended.
+        final int floorY = SpawnDecider.getFloorY(decision);
+        if (batch.deciders[column] == spawnDecider && batch.floorYs[column] == floorY && y > batch.topYs[column] && spawnDecider.getMaxScanDepth() == 0) {
+            batch.topYs[column] = y;
+            return decision;
+        }
+        batch.deciders[column] = spawnDecider;
+        batch.floorYs[column] = floorY;
+        batch.lowYs[column] = spawnDecider.getMaxScanDepth() == 0 ? floorY : y;
+        batch.topYs[column] = y;
+        batch.lightLevels[column] = (byte) SpawnDecider.getLightLevel(decision);
+        return decision;
+    }
+    
+    /**
+     * Gets the number of batched water spawns that reused the floor of an
+     * earlier spawn.
+     * 
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+    
+    /**
+     * Gets the number of batched water spawns that had to find their own
+     * floor.
+     * 
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+    
+    /**
+     * Resets the hit and miss counters.
+     */
+    public void resetCounters() {
+        this.hits.reset();
+        this.misses.reset();
+    }
+}
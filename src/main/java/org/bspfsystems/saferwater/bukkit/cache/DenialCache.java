@@ -0,0 +1,806 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import org.bspfsystems.saferwater.bukkit.scheduler.TaskScheduler;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnRule;
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a short-lived cache of the chunk sections that have recently
+ * denied a spawn.
+ * <p>
+ * A lit body of water will keep producing spawn attempts, and each of them
+ * would otherwise repeat the same column walk and light lookup, only to be
+ * denied again. Once a chunk section has denied a spawn, later filtered
+ * spawns in that section are denied straight away, until the entry expires
+ * or a block change in the column of a later spawn invalidates it for that
+ * column.
+ * <p>
+ * Each entry remembers the {@link SpawnDecider} that denied the spawn, and
+ * only denies later spawns that are decided by the same {@link SpawnDecider},
+ * so that a section spanning several biomes with different profiles, or a
+ * reload, never carries a denial over to a different configuration. Denials
+ * are never cached for a {@link SpawnDecider} with
+ * {@link SpawnRule.Stage#FLOOR} rules, as those depend on the position of
+ * each spawn relative to its floor, and not on the section alone.
+ * <p>
+ * Entries are keyed by a packed {@code long} of the {@link World} slot and
+ * the section coordinates, in primitive open-addressing tables with linear
+ * probing, so that lookups do not allocate. The tables are bounded; when one
+ * is full, expired entries are purged, and if none have expired, an entry is
+ * evicted to make room.
+ * <p>
+ * Block changes are tracked per column, rather than per entry. Each change
+ * takes the next number of a single sequence, and stamps it on its column
+ * in a fixed table of stamps, one for each column of a square of
+ * {@value #COLUMN_STAMP_SPAN} by {@value #COLUMN_STAMP_SPAN} blocks that is
+ * tiled over every {@link World}. Each entry remembers the sequence
+ * number at which it was cached, and is only used for a spawn whose column
+ * has not been stamped since. A block change therefore never touches the
+ * entries themselves, and only the spawns in its own column are decided
+ * again. Columns that share a stamp are far enough apart that they are
+ * never in the same chunk section, and are simply decided again as well.
+ * Changes to the light of a neighbouring column are left to expire, as they
+ * always were for neighbouring chunks.
+ * <p>
+ * The cache is safe to use from any number of threads at once, as spawns are
+ * decided in parallel on region-threaded servers. The keys are striped over
+ * a number of {@link Segment}s, each guarded by its own {@link StampedLock}.
+ * Lookups take no lock at all; they read the {@link Segment} optimistically,
+ * and only retry under a read lock if a write raced with them. Writes lock
+ * a single {@link Segment}, and all counters are {@link LongAdder}s, so that
+ * spawns in different chunk sections do not contend.
+ */
+public final class DenialCache {
+    
+    private static final long EMPTY_KEY = 0L;
+    private static final int MAX_WORLDS = 255;
+    private static final int MAX_SEGMENTS = 16;
+    private static final int COLUMN_STAMP_SPAN = 128;
+    
+    static final int MISS = 0;
+    static final int HIT = 1;
+    static final int STALE = 2;
+    
+    private final TaskScheduler scheduler;
+    private final Object worldsLock;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final LongAdder invalidations;
+    private final AtomicLong changes;
+    private final AtomicLongArray columnStamps;
+    
+    private TaskScheduler.Task tickTask;
+    private volatile int currentTick;
+    
+    private volatile DenialCacheSettings settings;
+    private volatile Segment[] segments;
+    private volatile World[] worlds;
+    
+    /**
+     * Represents a single stripe of the cache, holding the keys whose hashes
+     * select it in its own table.
+     * <p>
+     * The table never changes size, so that an optimistic read can never
+     * index outside of it, and every probe is bounded by its capacity, so
+     * that an optimistic read always ends even if a write moves the entries
+     * under it. A {@link Segment} is replaced as a whole when the size of the
+     * cache changes.
+     */
+    static final class Segment {
+        
+        private final StampedLock lock;
+        private final long[] keys;
+        private final int[] expiries;
+        private final long[] changes;
+        private final SpawnDecider[] spawnDeciders;
+        private final int mask;
+        private final int maxEntries;
+        private volatile int size;
+        
+        /**
+         * Constructs a new, empty {@link Segment}.
+         * 
+         * @param maxEntries The number of entries that the {@link Segment}
+         *                   may hold.
+         */
+        Segment(final int maxEntries) {
+            final int capacity = Integer.highestOneBit(maxEntries * 2 - 1) << 1;
+            this.lock = new StampedLock();
+            this.keys = new long[capacity];
+            this.expiries = new int[capacity];
+            this.changes = new long[capacity];
+            this.spawnDeciders = new SpawnDecider[capacity];
+            this.mask = capacity - 1;
+            this.maxEntries = maxEntries;
+        }
+        
+        /**
+         * Finds the index of the given key in the table. This is safe to call
+         * optimistically, without a lock.
+         * 
+         * @param key The packed key.
+         * @param hash The hash of the key.
+         * @return The index, or {@code -1} if the key is not in the table.
+         */
+        int indexOf(final long key, final int hash) {
+            int index = hash & this.mask;
+            long current;
+            for (int probes = 0; probes <= this.mask && (current = this.keys[index]) != EMPTY_KEY; probes++) {
+                if (current == key) {
+                    return index;
+                }
+                index = (index + 1) & this.mask;
+            }
+            return -1;
+        }
+        
+        /**
+         * Checks if the given key is in the table, was denied by the given
+         * {@link SpawnDecider}, and has not expired, and if so, whether the
+         * column of the spawn has changed since. This is safe to call
+         * optimistically, without a lock.
+         * 
+         * @param key The packed key.
+         * @param hash The hash of the key.
+         * @param spawnDecider The current {@link SpawnDecider} of the spawn.
+         * @param currentTick The current tick.
+         * @param columnStamp The sequence number of the last change to the
+         *                    column of the spawn.
+         * @return {@link #HIT} if the key has been cached by the same
+         *         {@link SpawnDecider}, has not yet expired, and was cached
+         *         after the column last changed, {@link #STALE} if the
+         *         column has changed since, or {@link #MISS} otherwise.
+         */
+        int lookup(final long key, final int hash, @NotNull final SpawnDecider spawnDecider, final int currentTick, final long columnStamp) {
+            final int index = this.indexOf(key, hash);
+            if (index == -1 || this.spawnDeciders[index] != spawnDecider || this.expiries[index] - currentTick <= 0) {
+                return MISS;
+            }
+            return this.changes[index] >= columnStamp ? HIT : STALE;
+        }
+        
+        /**
+         * Inserts or refreshes the given key, replacing the
+         * {@link SpawnDecider} of any existing entry. Must be called while
+         * holding the write lock.
+         * 
+         * @param key The packed key.
+         * @param hash The hash of the key.
+         * @param spawnDecider The {@link SpawnDecider} that denied the spawn.
+         * @param expiry The tick at which the entry expires.
+         * @param change The current sequence number of block changes.
+         * @param currentTick The current tick.
+         * @return {@code true} if an entry was evicted to make room,
+         *         {@code false} otherwise.
+         */
+        boolean put(final long key, final int hash, @NotNull final SpawnDecider spawnDecider, final int expiry, final long change, final int currentTick) {
+            
+            int index = this.indexOf(key, hash);
+            if (index != -1) {
+                this.spawnDeciders[index] = spawnDecider;
+                this.expiries[index] = expiry;
+                this.changes[index] = change;
+                return false;
+            }
+            
+            boolean evicted = false;
+            if (this.size >= this.maxEntries) {
+                this.purgeExpired(currentTick);
+                if (this.size >= this.maxEntries) {
+                    index = hash & this.mask;
+                    while (this.keys[index] == EMPTY_KEY) {
+                        index = (index + 1) & this.mask;
+                    }
+                    this.removeAt(index);
+                    evicted = true;
+                }
+            }
+            
+            index = hash & this.mask;
+            while (this.keys[index] != EMPTY_KEY) {
+                index = (index + 1) & this.mask;
+            }
+            this.spawnDeciders[index] = spawnDecider;
+            this.expiries[index] = expiry;
+            this.changes[index] = change;
+            this.keys[index] = key;
+            this.size++;
+            return evicted;
+        }
+        
+        /**
+         * Removes the entry at the given index, shifting any later entries of
+         * the same probe run back so that no tombstones are needed. Must be
+         * called while holding the write lock.
+         * 
+         * @param index The index of the entry to remove.
+         */
+        void removeAt(final int index) {
+            
+            int hole = index;
+            int next = (hole + 1) & this.mask;
+            long current;
+            while ((current = this.keys[next]) != EMPTY_KEY) {
+                final int home = DenialCache.hash(current) & this.mask;
+                if (((next - home) & this.mask) >= ((next - hole) & this.mask)) {
+                    this.keys[hole] = current;
+                    this.spawnDeciders[hole] = this.spawnDeciders[next];
+                    this.expiries[hole] = this.expiries[next];
+                    this.changes[hole] = this.changes[next];
+                    hole = next;
+                }
+                next = (next + 1) & this.mask;
+            }
+            this.keys[hole] = EMPTY_KEY;
+            this.spawnDeciders[hole] = null;
+            this.size--;
+        }
+        
+        /**
+         * Removes all expired entries. Must be called while holding the write
+         * lock.
+         * 
+         * @param currentTick The current tick.
+         */
+        void purgeExpired(final int currentTick) {
+            for (int index = 0; index < this.keys.length; index++) {
+                if (this.keys[index] != EMPTY_KEY && this.expiries[index] - currentTick <= 0) {
+                    this.keys[index] = EMPTY_KEY;
+                    this.spawnDeciders[index] = null;
+                    this.size--;
+                }
+            }
+            this.rehash();
+        }
+        
+        /**
+         * Removes all entries of the given {@link World} slot. Must be called
+         * while holding the write lock.
+         * 
+         * @param slot The {@link World} slot.
+         */
+        void removeSlot(final int slot) {
+            for (int index = 0; index < this.keys.length; index++) {
+                if (this.keys[index] != EMPTY_KEY && (int) (this.keys[index] >>> 56) == slot) {
+                    this.keys[index] = EMPTY_KEY;
+                    this.spawnDeciders[index] = null;
+                    this.size--;
+                }
+            }
+            this.rehash();
+        }
+        
+        /**
+         * Re-inserts all remaining entries after entries have been removed in
+         * bulk, restoring the probe runs. The table is rebuilt in place, so
+         * that it never changes size. Must be called while holding the write
+         * lock.
+         */
+        private void rehash() {
+            
+            final long[] oldKeys = this.keys.clone();
+            final int[] oldExpiries = this.expiries.clone();
+            final long[] oldChanges = this.changes.clone();
+            final SpawnDecider[] oldSpawnDeciders = this.spawnDeciders.clone();
+            Arrays.fill(this.keys, EMPTY_KEY);
+            Arrays.fill(this.spawnDeciders, null);
+            for (int oldIndex = 0; oldIndex < oldKeys.length; oldIndex++) {
+                final long key = oldKeys[oldIndex];
+                if (key == EMPTY_KEY) {
+                    continue;
+                }
+                int index = DenialCache.hash(key) & this.mask;
+                while (this.keys[index] != EMPTY_KEY) {
+                    index = (index + 1) & this.mask;
+                }
+                this.keys[index] = key;
+                this.spawnDeciders[index] = oldSpawnDeciders[oldIndex];
+                this.expiries[index] = oldExpiries[oldIndex];
+                this.changes[index] = oldChanges[oldIndex];
+            }
+        }
+        
+        /**
+         * Removes all entries. Must be called while holding the write lock.
+         */
+        private void clear() {
+            Arrays.fill(this.keys, EMPTY_KEY);
+            Arrays.fill(this.spawnDeciders, null);
+            this.size = 0;
+        }
+        
+        /**
+         * Gets the number of entries in the table, including any that have
+         * expired, but have not been purged yet.
+         * 
+         * @return The number of entries.
+         */
+        int getSize() {
+            return this.size;
+        }
+    }
+    
+    /**
+     * Constructs a new {@link DenialCache}, with the default
+     * {@link DenialCacheSettings}.
+     * 
+     * @param scheduler The {@link TaskScheduler} that the per-tick task is
+     *                  run with.
+     */
+    public DenialCache(@NotNull final TaskScheduler scheduler) {
+        this.scheduler = scheduler;
+        this.worldsLock = new Object();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.invalidations = new LongAdder();
+        this.changes = new AtomicLong();
+        this.columnStamps = new AtomicLongArray(COLUMN_STAMP_SPAN * COLUMN_STAMP_SPAN);
+        this.worlds = new World[0];
+        this.configure(DenialCacheSettings.DEFAULT);
+    }
+    
+    /**
+     * Starts the per-tick task that expires the cached entries.
+     * <p>
+     * The tick counter is only ever written by this task, so it does not
+     * need to be incremented atomically.
+     */
+    public synchronized void start() {
+        if (this.tickTask == null) {
+            this.tickTask = this.scheduler.runGlobalTimer(() -> this.currentTick++, 1L, 1L);
+        }
+    }
+    
+    /**
+     * Stops the per-tick task, and frees all cached entries.
+     */
+    public synchronized void stop() {
+        if (this.tickTask != null) {
+            this.tickTask.cancel();
+            this.tickTask = null;
+        }
+        this.clear();
+        synchronized (this.worldsLock) {
+            this.worlds = new World[0];
+        }
+    }
+    
+    /**
+     * Applies the given {@link DenialCacheSettings}. All cached entries are
+     * cleared, as they may have been decided by a different configuration.
+     * <p>
+     * The cache is striped over as many {@link Segment}s as the maximum
+     * number of entries allows (up to {@value #MAX_SEGMENTS}), each holding
+     * an equal share of the entries, so that the total never exceeds the
+     * maximum.
+     * 
+     * @param settings The {@link DenialCacheSettings} to apply.
+     */
+    public synchronized void configure(@NotNull final DenialCacheSettings settings) {
+        
+        if (this.settings == null || this.settings.getMaxEntries() != settings.getMaxEntries()) {
+            final int segmentCount = Integer.highestOneBit(Math.min(MAX_SEGMENTS, settings.getMaxEntries()));
+            final Segment[] segments = new Segment[segmentCount];
+            for (int index = 0; index < segmentCount; index++) {
+                segments[index] = new Segment(settings.getMaxEntries() / segmentCount);
+            }
+            this.segments = segments;
+        }
+        this.settings = settings;
+        this.clear();
+    }
+    
+    /**
+     * Checks if denials are currently being cached.
+     * 
+     * @return {@code true} if the cache is enabled, {@code false} otherwise.
+     */
+    public boolean isEnabled() {
+        return this.settings.isEnabled();
+    }
+    
+    /**
+     * Checks if the chunk section of the given block has recently denied a
+     * spawn that was decided by the given {@link SpawnDecider}. If the cache
+     * is enabled, and the {@link SpawnDecider} has no
+     * {@link SpawnRule.Stage#FLOOR} rules, this counts as either a hit or a
+     * miss.
+     * <p>
+     * The spawn must already be in the scope of the {@link SpawnDecider}, as
+     * a cached denial says nothing about the {@link SpawnRule.Stage#POSITION}
+     * rules of a different block.
+     * <p>
+     * This takes no lock unless a write to the same {@link Segment} races
+     * with it. Expired entries are left in place, to be purged by the next
+     * write that needs the room.
+     * 
+     * @param world The {@link World} of the block.
+     * @param spawnDecider The {@link SpawnDecider} of the spawn.
+     * @param x The block X coordinate.
+     * @param y The block Y coordinate.
+     * @param z The block Z coordinate.
+     * @return {@code true} if a spawn in the section should be denied,
+     *         {@code false} if it should be decided normally.
+     */
+    public boolean isDenied(@NotNull final World world, @NotNull final SpawnDecider spawnDecider, final int x, final int y, final int z) {
+        
+        if (!this.settings.isEnabled() || spawnDecider.hasFloorRules()) {
+            return false;
+        }
+        final int slot = this.getSlot(world);
+        if (slot != 0) {
+            
+            final long key = DenialCache.key(slot, x >> 4, y >> 4, z >> 4);
+            final int hash = DenialCache.hash(key);
+            final Segment segment = this.getSegment(hash);
+            final int currentTick = this.currentTick;
+            final long columnStamp = this.columnStamps.get(DenialCache.columnIndex(x, z));
+            
+            final long optimisticStamp = segment.lock.tryOptimisticRead();
+            int result = segment.lookup(key, hash, spawnDecider, currentTick, columnStamp);
+            if (!segment.lock.validate(optimisticStamp)) {
+                final long stamp = segment.lock.readLock();
+                try {
+                    result = segment.lookup(key, hash, spawnDecider, currentTick, columnStamp);
+                } finally {
+                    segment.lock.unlockRead(stamp);
+                }
+            }
+            
+            if (result == HIT) {
+                this.hits.increment();
+                return true;
+            }
+            if (result == STALE) {
+                this.invalidations.increment();
+            }
+        }
+        
+        this.misses.increment();
+        return false;
+    }
+    
+    /**
+     * Gets the current sequence number of block changes. This is read before
+     * a spawn is decided, and given to
+     * {@link #recordDenied(World, SpawnDecider, int, int, int, long)} if it
+     * is denied, so that a block change made while it was being decided is
+     * never hidden by its denial.
+     * 
+     * @return The current sequence number of block changes.
+     */
+    public long getChange() {
+        return this.changes.get();
+    }
+    
+    /**
+     * Caches a denial by the given {@link SpawnDecider} in the chunk section
+     * of the given block, unless the {@link SpawnDecider} has
+     * {@link SpawnRule.Stage#FLOOR} rules, as of the current sequence number
+     * of block changes.
+     * <p>
+     * This must only be used if no block can have changed since the spawn
+     * was decided.
+     * 
+     * @param world The {@link World} of the block.
+     * @param spawnDecider The {@link SpawnDecider} that denied the spawn.
+     * @param x The block X coordinate.
+     * @param y The block Y coordinate.
+     * @param z The block Z coordinate.
+     */
+    public void recordDenied(@NotNull final World world, @NotNull final SpawnDecider spawnDecider, final int x, final int y, final int z) {
+        this.recordDenied(world, spawnDecider, x, y, z, this.changes.get());
+    }
+    
+    /**
+     * Caches a denial by the given {@link SpawnDecider} in the chunk section
+     * of the given block, unless the {@link SpawnDecider} has
+     * {@link SpawnRule.Stage#FLOOR} rules.
+     * 
+     * @param world The {@link World} of the block.
+     * @param spawnDecider The {@link SpawnDecider} that denied the spawn.
+     * @param x The block X coordinate.
+     * @param y The block Y coordinate.
+     * @param z The block Z coordinate.
+     * @param change The sequence number of block changes, from
+     *               {@link #getChange()}, read before the spawn was
+     *               decided.
+     */
+    public void recordDenied(@NotNull final World world, @NotNull final SpawnDecider spawnDecider, final int x, final int y, final int z, final long change) {
+        
+        final DenialCacheSettings settings = this.settings;
+        if (!settings.isEnabled() || spawnDecider.hasFloorRules()) {
+            return;
+        }
+        final int slot = this.getOrCreateSlot(world);
+        if (slot == 0) {
+            return;
+        }
+        
+        final long key = DenialCache.key(slot, x >> 4, y >> 4, z >> 4);
+        final int hash = DenialCache.hash(key);
+        final Segment segment = this.getSegment(hash);
+        final int currentTick = this.currentTick;
+        
+        final boolean evicted;
+        final long stamp = segment.lock.writeLock();
+        try {
+            evicted = segment.put(key, hash, spawnDecider, currentTick + settings.getTtlTicks(), change, currentTick);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+        if (evicted) {
+            this.evictions.increment();
+        }
+    }
+    
+    /**
+     * Invalidates the cached denials of the column of the given block that
+     * changed, as any spawn in the column may have depended on the floor of
+     * the water below it. No entry is touched, and no lock is taken; the
+     * column is stamped with the next sequence number of block changes, so
+     * that the entries cached before it are no longer used for spawns in the
+     * column.
+     * <p>
+     * The column is stamped even if nothing is cached for the {@link World}
+     * yet, as a spawn that was decided before the change may still be cached
+     * after it.
+     * 
+     * @param world The {@link World} of the block.
+     * @param x The block X coordinate.
+     * @param y The block Y coordinate.
+     * @param z The block Z coordinate.
+     */
+    public void invalidate(@NotNull final World world, final int x, final int y, final int z) {
+        this.columnStamps.accumulateAndGet(DenialCache.columnIndex(x, z), this.changes.incrementAndGet(), Math::max);
+    }
+    
+    /**
+     * Frees all cached entries of an unloaded {@link World}.
+     * 
+     * @param world The unloaded {@link World}.
+     */
+    public void onWorldUnload(@NotNull final World world) {
+        
+        final int slot;
+        synchronized (this.worldsLock) {
+            slot = this.getSlot(world);
+            if (slot == 0) {
+                return;
+            }
+            final World[] worlds = this.worlds.clone();
+            worlds[slot - 1] = null;
+            this.worlds = worlds;
+        }
+        
+        for (final Segment segment : this.segments) {
+            final long stamp = segment.lock.writeLock();
+            try {
+                segment.removeSlot(slot);
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+    }
+    
+    /**
+     * Removes all cached entries.
+     */
+    public void clear() {
+        for (final Segment segment : this.segments) {
+            final long stamp = segment.lock.writeLock();
+            try {
+                segment.clear();
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+    }
+    
+    /**
+     * Gets the number of chunk sections currently cached. This includes any
+     * entries that have expired, but have not been purged yet, and is read
+     * without a lock, so it may be slightly out of date while entries are
+     * being written.
+     * 
+     * @return The number of entries.
+     */
+    public int getSize() {
+        int size = 0;
+        for (final Segment segment : this.segments) {
+            size += segment.getSize();
+        }
+        return size;
+    }
+    
+    /**
+     * Gets the number of spawns that were denied from the cache.
+     * 
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+    
+    /**
+     * Gets the number of spawns that were not found in the cache.
+     * 
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+    
+    /**
+     * Gets the number of entries evicted to make room for a new entry before
+     * they expired.
+     * 
+     * @return The number of evictions.
+     */
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+    
+    /**
+     * Gets the number of cached denials that were not used, as the column of
+     * the spawn had changed since they were cached.
+     * 
+     * @return The number of invalidations.
+     */
+    public long getInvalidations() {
+        return this.invalidations.sum();
+    }
+    
+    /**
+     * Resets the hit, miss, eviction, and invalidation counters.
+     */
+    public void resetCounters() {
+        this.hits.reset();
+        this.misses.reset();
+        this.evictions.reset();
+        this.invalidations.reset();
+    }
+    
+    /**
+     * Gets the {@link Segment} that holds the keys with the given hash. The
+     * {@link Segment} is selected by the high bits of the hash, as the low
+     * bits select the index within it.
+     * 
+     * @param hash The hash of the key.
+     * @return The {@link Segment}.
+     */
+    @NotNull
+    private Segment getSegment(final int hash) {
+        final Segment[] segments = this.segments;
+        return segments[(hash >>> 16) & (segments.length - 1)];
+    }
+    
+    /**
+     * Gets the slot of the given {@link World}.
+     * <p>
+     * There are only ever a handful of loaded {@link World}s, so they are
+     * found by identity in a flat array, which is copied whenever it changes
+     * so that it can be read without a lock.
+     * 
+     * @param world The {@link World}.
+     * @return The slot, from {@code 1}, or {@code 0} if the {@link World} has
+     *         no slot.
+     */
+    private int getSlot(@NotNull final World world) {
+        final World[] worlds = this.worlds;
+        for (int index = 0; index < worlds.length; index++) {
+            if (worlds[index] == world) {
+                return index + 1;
+            }
+        }
+        return 0;
+    }
+    
+    /**
+     * Gets the slot of the given {@link World}, assigning it a free one if it
+     * has none.
+     * 
+     * @param world The {@link World}.
+     * @return The slot, from {@code 1}, or {@code 0} if there are no free
+     *         slots.
+     */
+    private int getOrCreateSlot(@NotNull final World world) {
+        
+        final int slot = this.getSlot(world);
+        if (slot != 0) {
+            return slot;
+        }
+        
+        synchronized (this.worldsLock) {
+            
+            final int existing = this.getSlot(world);
+            if (existing != 0) {
+                return existing;
+            }
+            
+            for (int index = 0; index < this.worlds.length; index++) {
+                if (this.worlds[index] == null) {
+                    final World[] worlds = this.worlds.clone();
+                    worlds[index] = world;
+                    this.worlds = worlds;
+                    return index + 1;
+                }
+            }
+            if (this.worlds.length == MAX_WORLDS) {
+                return 0;
+            }
+            final World[] worlds = Arrays.copyOf(this.worlds, this.worlds.length + 1);
+            worlds[worlds.length - 1] = world;
+            this.worlds = worlds;
+            return worlds.length;
+        }
+    }
+    
+    /**
+     * Packs the {@link World} slot and section coordinates into a single
+     * {@code long} key. The slot is never {@code 0}, so neither is the key.
+     * 
+     * @param slot The {@link World} slot.
+     * @param chunkX The chunk X coordinate.
+     * @param sectionY The section Y coordinate.
+     * @param chunkZ The chunk Z coordinate.
+     * @return The packed key.
+     */
+    static long key(final int slot, final int chunkX, final int sectionY, final int chunkZ) {
+        return ((long) slot << 56) | ((sectionY & 0xFFFL) << 44) | ((chunkX & 0x3FFFFFL) << 22) | (chunkZ & 0x3FFFFFL);
+    }
+    
+    /**
+     * Spreads the bits of the given key, so that neighbouring sections do not
+     * all probe the same run of the table, or share a {@link Segment}.
+     * 
+     * @param key The packed key.
+     * @return The hash of the key.
+     */
+    static int hash(final long key) {
+        final long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+    
+    /**
+     * Gets the index of the stamp of the given column, which is shared with
+     * every column a multiple of {@value #COLUMN_STAMP_SPAN} blocks away
+     * along either axis, in any {@link World}.
+     * 
+     * @param x The block X coordinate.
+     * @param z The block Z coordinate.
+     * @return The index of the stamp.
+     */
+    private static int columnIndex(final int x, final int z) {
+        return ((x & (COLUMN_STAMP_SPAN - 1)) * COLUMN_STAMP_SPAN) | (z & (COLUMN_STAMP_SPAN - 1));
+    }
+}
@@ -0,0 +1,92 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.cache;
+
+/**
+ * Represents the immutable settings of the {@link DenialCache}.
+ */
+public final class DenialCacheSettings {
+    
+    /**
+     * The largest number of entries that the {@link DenialCache} may hold.
+     */
+    public static final int MAX_ENTRIES = 1 << 20;
+    
+    /**
+     * The default {@link DenialCacheSettings}, caching denials for one
+     * second.
+     */
+    public static final DenialCacheSettings DEFAULT = new DenialCacheSettings(true, 4096, 20);
+    
+    private final boolean enabled;
+    private final int maxEntries;
+    private final int ttlTicks;
+    
+    /**
+     * Constructs a new {@link DenialCacheSettings}.
+     * 
+     * @param enabled If {@code true}, denials will be cached.
+     * @param maxEntries The number of chunk sections that can be cached at
+     *                   once.
+     * @param ttlTicks The number of ticks that a denial is cached for.
+     * @throws IllegalArgumentException If the number of entries is out of
+     *                                  range, or the number of ticks is not
+     *                                  positive.
+     */
+    public DenialCacheSettings(final boolean enabled, final int maxEntries, final int ttlTicks) throws IllegalArgumentException {
+        if (maxEntries <= 0 || maxEntries > MAX_ENTRIES) {
+            throw new IllegalArgumentException("Maximum number of entries must be between 1 and " + MAX_ENTRIES + ": " + maxEntries);
+        }
+        if (ttlTicks <= 0) {
+            throw new IllegalArgumentException("Time to live must be positive: " + ttlTicks);
+        }
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.ttlTicks = ttlTicks;
+    }
+    
+    /**
+     * Checks if denials will be cached.
+     * 
+     * @return {@code true} if the cache is enabled, {@code false} otherwise.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+    
+    /**
+     * Gets the number of chunk sections that can be cached at once.
+     * 
+     * @return The maximum number of entries.
+     */
+    public int getMaxEntries() {
+        return this.maxEntries;
+    }
+    
+    /**
+     * Gets the number of ticks that a denial is cached for.
+     * 
+     * @return The time to live, in ticks.
+     */
+    public int getTtlTicks() {
+        return this.ttlTicks;
+    }
+}
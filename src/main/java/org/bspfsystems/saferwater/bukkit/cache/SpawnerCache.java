@@ -0,0 +1,455 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.bspfsystems.saferwater.bukkit.scheduler.TaskScheduler;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bukkit.World;
+import org.bukkit.block.CreatureSpawner;
+import org.bukkit.event.entity.SpawnerSpawnEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents a cache of the decisions of the spawns of each
+ * {@link CreatureSpawner}.
+ * <p>
+ * A {@link CreatureSpawner} in a mob farm stays in the same block for hours,
+ * and only ever spawns into the few blocks around it, yet each spawn would
+ * otherwise walk its column and read the light of its floor again. Once a
+ * spawn from a {@link CreatureSpawner} has been decided, the outcome is
+ * cached for its block, relative to the {@link CreatureSpawner}, so that
+ * later spawns into the same block are decided with a single lookup.
+ * <p>
+ * All of the cached outcomes of a {@link CreatureSpawner} are dropped when a
+ * block changes within {@value #RADIUS} blocks of it horizontally (including
+ * the {@link CreatureSpawner} itself being broken), when its chunk is
+ * unloaded, or when they expire. They expire so that changes in the light
+ * that are not block changes (such as the time of day, or a light source
+ * placed further away) are eventually seen.
+ * <p>
+ * {@link CreatureSpawner}s are grouped by chunk, so that a block change only
+ * looks at the {@link CreatureSpawner}s of the few chunks around it. The
+ * cache is safe to use from any number of threads at once.
+ */
+public final class SpawnerCache {
+    
+    /**
+     * The outcome returned when a spawn has not been cached.
+     */
+    public static final int NOT_CACHED = 0;
+    
+    private static final int RADIUS = 8;
+    
+    private final TaskScheduler scheduler;
+    private final ConcurrentHashMap<World, ConcurrentHashMap<Long, Spawner[]>> worlds;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder invalidations;
+    
+    private TaskScheduler.Task tickTask;
+    private volatile int currentTick;
+    
+    private volatile SpawnerCacheSettings settings;
+    
+    /**
+     * Represents the cached outcomes of a single {@link CreatureSpawner}.
+     * <p>
+     * The outcomes are indexed by the offset of the spawn from the
+     * {@link CreatureSpawner}, from {@code -}{@value #RADIUS} (inclusive) to
+     * {@value #RADIUS} (exclusive) on each axis. A {@link Spawner} is never
+     * modified once it has expired, or been decided by a different
+     * {@link SpawnDecider}; it is replaced as a whole instead.
+     */
+    private static final class Spawner {
+        
+        private final int x;
+        private final int y;
+        private final int z;
+        private final SpawnDecider spawnDecider;
+        private final int expiry;
+        private final byte[] outcomes;
+        
+        /**
+         * Constructs a new, empty {@link Spawner}.
+         * 
+         * @param x The block X coordinate of the {@link CreatureSpawner}.
+         * @param y The block Y coordinate of the {@link CreatureSpawner}.
+         * @param z The block Z coordinate of the {@link CreatureSpawner}.
+         * @param spawnDecider The {@link SpawnDecider} that the outcomes are
+         *                     decided by.
+         * @param expiry The tick at which the outcomes expire.
+         */
+        private Spawner(final int x, final int y, final int z, @NotNull final SpawnDecider spawnDecider, final int expiry) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.spawnDecider = spawnDecider;
+            this.expiry = expiry;
+            this.outcomes = new byte[RADIUS * RADIUS * RADIUS * 8];
+        }
+        
+        /**
+         * Checks if this {@link Spawner} is for the {@link CreatureSpawner} at
+         * the given coordinates.
+         * 
+         * @param x The block X coordinate of the {@link CreatureSpawner}.
+         * @param y The block Y coordinate of the {@link CreatureSpawner}.
+         * @param z The block Z coordinate of the {@link CreatureSpawner}.
+         * @return {@code true} if this {@link Spawner} is at the coordinates,
+         *         {@code false} otherwise.
+         */
+        private boolean isAt(final int x, final int y, final int z) {
+            return this.x == x && this.y == y && this.z == z;
+        }
+        
+        /**
+         * Checks if the outcomes of this {@link Spawner} can still be used.
+         * 
+         * @param spawnDecider The current {@link SpawnDecider} of the spawn.
+         * @param currentTick The current tick.
+         * @return {@code true} if the outcomes can be used, {@code false}
+         *         otherwise.
+         */
+        private boolean isLive(@NotNull final SpawnDecider spawnDecider, final int currentTick) {
+            return this.spawnDecider == spawnDecider && this.expiry - currentTick > 0;
+        }
+    }
+    
+    /**
+     * Constructs a new {@link SpawnerCache}, with the default
+     * {@link SpawnerCacheSettings}.
+     * 
+     * @param scheduler The {@link TaskScheduler} that the per-tick task is
+     *                  run with.
+     */
+    public SpawnerCache(@NotNull final TaskScheduler scheduler) {
+        this.scheduler = scheduler;
+        this.worlds = new ConcurrentHashMap<World, ConcurrentHashMap<Long, Spawner[]>>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.invalidations = new LongAdder();
+        this.settings = SpawnerCacheSettings.DEFAULT;
+    }
+    
+    /**
+     * Starts the per-tick task that expires the cached outcomes.
+     */
+    public synchronized void start() {
+        if (this.tickTask == null) {
+            this.tickTask = this.scheduler.runGlobalTimer(() -> this.currentTick++, 1L, 1L);
+        }
+    }
+    
+    /**
+     * Stops the per-tick task, and frees all cached outcomes.
+     */
+    public synchronized void stop() {
+        if (this.tickTask != null) {
+            this.tickTask.cancel();
+            this.tickTask = null;
+        }
+        this.worlds.clear();
+    }
+    
+    /**
+     * Applies the given {@link SpawnerCacheSettings}. All cached outcomes are
+     * cleared, as they may have been decided by a different configuration.
+     * 
+     * @param settings The {@link SpawnerCacheSettings} to apply.
+     */
+    public synchronized void configure(@NotNull final SpawnerCacheSettings settings) {
+        this.settings = settings;
+        this.worlds.clear();
+    }
+    
+    /**
+     * Checks if the decisions of spawners are currently being cached.
+     * 
+     * @return {@code true} if the cache is enabled, {@code false} otherwise.
+     */
+    public boolean isEnabled() {
+        return this.settings.isEnabled();
+    }
+    
+    /**
+     * Gets the cached outcome of a spawn from the {@link CreatureSpawner} at
+     * the given coordinates. If the cache is enabled, this counts as either a
+     * hit or a miss.
+     * 
+     * @param world The {@link World} of the {@link CreatureSpawner}.
+     * @param spawnerX The block X coordinate of the {@link CreatureSpawner}.
+     * @param spawnerY The block Y coordinate of the {@link CreatureSpawner}.
+     * @param spawnerZ The block Z coordinate of the {@link CreatureSpawner}.
+     * @param spawnDecider The {@link SpawnDecider} of the spawn.
+     * @param x The block X coordinate of the spawn.
+     * @param y The block Y coordinate of the spawn.
+     * @param z The block Z coordinate of the spawn.
+     * @return The outcome, one of {@link SpawnDecider#DRY},
+     *         {@link SpawnDecider#ALLOWED}, or {@link SpawnDecider#DENIED}, or
+     *         {@link #NOT_CACHED} if the spawn should be decided normally.
+     */
+    public int getOutcome(@NotNull final World world, final int spawnerX, final int spawnerY, final int spawnerZ, @NotNull final SpawnDecider spawnDecider, final int x, final int y, final int z) {
+        
+        if (!this.settings.isEnabled()) {
+            return NOT_CACHED;
+        }
+        
+        final int index = SpawnerCache.index(x - spawnerX, y - spawnerY, z - spawnerZ);
+        final Spawner spawner = index == -1 ? null : this.getSpawner(world, spawnerX, spawnerY, spawnerZ);
+        if (spawner != null && spawner.isLive(spawnDecider, this.currentTick)) {
+            final int outcome = spawner.outcomes[index];
+            if (outcome != NOT_CACHED) {
+                this.hits.increment();
+                return outcome;
+            }
+        }
+        
+        this.misses.increment();
+        return NOT_CACHED;
+    }
+    
+    /**
+     * Caches the outcome of a spawn from the {@link CreatureSpawner} at the
+     * given coordinates.
+     * 
+     * @param world The {@link World} of the {@link CreatureSpawner}.
+     * @param spawnerX The block X coordinate of the {@link CreatureSpawner}.
+     * @param spawnerY The block Y coordinate of the {@link CreatureSpawner}.
+     * @param spawnerZ The block Z coordinate of the {@link CreatureSpawner}.
+     * @param spawnDecider The {@link SpawnDecider} that decided the spawn.
+     * @param x The block X coordinate of the spawn.
+     * @param y The block Y coordinate of the spawn.
+     * @param z The block Z coordinate of the spawn.
+     * @param outcome The outcome, one of {@link SpawnDecider#DRY},
+     *                {@link SpawnDecider#ALLOWED}, or
+     *                {@link SpawnDecider#DENIED}.
+     */
+    public void recordOutcome(@NotNull final World world, final int spawnerX, final int spawnerY, final int spawnerZ, @NotNull final SpawnDecider spawnDecider, final int x, final int y, final int z, final int outcome) {
+        
+        final SpawnerCacheSettings settings = this.settings;
+        if (!settings.isEnabled()) {
+            return;
+        }
+        final int index = SpawnerCache.index(x - spawnerX, y - spawnerY, z - spawnerZ);
+        if (index == -1) {
+            return;
+        }
+        
+        final int currentTick = this.currentTick;
+        Spawner spawner = this.getSpawner(world, spawnerX, spawnerY, spawnerZ);
+        if (spawner == null || !spawner.isLive(spawnDecider, currentTick)) {
+            spawner = new Spawner(spawnerX, spawnerY, spawnerZ, spawnDecider, currentTick + settings.getTtlTicks());
+            this.putSpawner(world, spawner);
+        }
+        spawner.outcomes[index] = (byte) outcome;
+    }
+    
+    /**
+     * Drops the cached outcomes of every {@link CreatureSpawner} within
+     * {@value #RADIUS} blocks (horizontally) of the given block that changed,
+     * as the floors and light levels of their spawns may have changed with
+     * it.
+     * 
+     * @param world The {@link World} of the block.
+     * @param x The block X coordinate.
+     * @param y The block Y coordinate.
+     * @param z The block Z coordinate.
+     */
+    public void invalidate(@NotNull final World world, final int x, final int y, final int z) {
+        
+        final ConcurrentHashMap<Long, Spawner[]> chunks = this.worlds.get(world);
+        if (chunks == null || chunks.isEmpty()) {
+            return;
+        }
+        
+        for (int chunkX = (x - RADIUS) >> 4; chunkX <= (x + RADIUS) >> 4; chunkX++) {
+            for (int chunkZ = (z - RADIUS) >> 4; chunkZ <= (z + RADIUS) >> 4; chunkZ++) {
+                chunks.computeIfPresent(SpawnerCache.chunkKey(chunkX, chunkZ), (key, spawners) -> {
+                    int remaining = 0;
+                    final Spawner[] kept = new Spawner[spawners.length];
+                    for (final Spawner spawner : spawners) {
+                        if (Math.abs(spawner.x - x) > RADIUS || Math.abs(spawner.z - z) > RADIUS) {
+                            kept[remaining++] = spawner;
+                        } else {
+                            this.invalidations.increment();
+                        }
+                    }
+                    if (remaining == spawners.length) {
+                        return spawners;
+                    }
+                    if (remaining == 0) {
+                        return null;
+                    }
+                    final Spawner[] trimmed = new Spawner[remaining];
+                    System.arraycopy(kept, 0, trimmed, 0, remaining);
+                    return trimmed;
+                });
+            }
+        }
+    }
+    
+    /**
+     * Frees the cached outcomes of the {@link CreatureSpawner}s in an
+     * unloaded chunk.
+     * 
+     * @param world The {@link World} of the chunk.
+     * @param chunkX The chunk X coordinate.
+     * @param chunkZ The chunk Z coordinate.
+     */
+    public void onChunkUnload(@NotNull final World world, final int chunkX, final int chunkZ) {
+        final ConcurrentHashMap<Long, Spawner[]> chunks = this.worlds.get(world);
+        if (chunks != null) {
+            chunks.remove(SpawnerCache.chunkKey(chunkX, chunkZ));
+        }
+    }
+    
+    /**
+     * Frees the cached outcomes of all {@link CreatureSpawner}s in an
+     * unloaded {@link World}.
+     * 
+     * @param world The unloaded {@link World}.
+     */
+    public void onWorldUnload(@NotNull final World world) {
+        this.worlds.remove(world);
+    }
+    
+    /**
+     * Gets the {@link Spawner} of the {@link CreatureSpawner} at the given
+     * coordinates.
+     * 
+     * @param world The {@link World} of the {@link CreatureSpawner}.
+     * @param x The block X coordinate of the {@link CreatureSpawner}.
+     * @param y The block Y coordinate of the {@link CreatureSpawner}.
+     * @param z The block Z coordinate of the {@link CreatureSpawner}.
+     * @return The {@link Spawner}, or {@code null} if none is cached.
+     */
+    @Nullable
+    private Spawner getSpawner(@NotNull final World world, final int x, final int y, final int z) {
+        final ConcurrentHashMap<Long, Spawner[]> chunks = this.worlds.get(world);
+        final Spawner[] spawners = chunks == null ? null : chunks.get(SpawnerCache.chunkKey(x >> 4, z >> 4));
+        if (spawners == null) {
+            return null;
+        }
+        for (final Spawner spawner : spawners) {
+            if (spawner.isAt(x, y, z)) {
+                return spawner;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Caches the given {@link Spawner}, replacing any other {@link Spawner}
+     * of the same {@link CreatureSpawner}.
+     * 
+     * @param world The {@link World} of the {@link CreatureSpawner}.
+     * @param spawner The {@link Spawner}.
+     */
+    private void putSpawner(@NotNull final World world, @NotNull final Spawner spawner) {
+        final ConcurrentHashMap<Long, Spawner[]> chunks = this.worlds.computeIfAbsent(world, key -> new ConcurrentHashMap<Long, Spawner[]>());
+        chunks.merge(SpawnerCache.chunkKey(spawner.x >> 4, spawner.z >> 4), new Spawner[] {spawner}, (spawners, added) -> {
+            for (int index = 0; index < spawners.length; index++) {
+                if (spawners[index].isAt(spawner.x, spawner.y, spawner.z)) {
+                    final Spawner[] replaced = spawners.clone();
+                    replaced[index] = spawner;
+                    return replaced;
+                }
+            }
+            final Spawner[] grown = new Spawner[spawners.length + 1];
+            System.arraycopy(spawners, 0, grown, 0, spawners.length);
+            grown[spawners.length] = spawner;
+            return grown;
+        });
+    }
+    
+    /**
+     * Gets the index of the outcome of a spawn at the given offset from its
+     * {@link CreatureSpawner}.
+     * 
+     * @param offsetX The X offset of the spawn.
+     * @param offsetY The Y offset of the spawn.
+     * @param offsetZ The Z offset of the spawn.
+     * @return The index, or {@code -1} if the spawn is too far from its
+     *         {@link CreatureSpawner} to be cached.
+     */
+    private static int index(final int offsetX, final int offsetY, final int offsetZ) {
+        final int localX = offsetX + RADIUS;
+        final int localY = offsetY + RADIUS;
+        final int localZ = offsetZ + RADIUS;
+        if (((localX | localY | localZ) & ~(RADIUS * 2 - 1)) != 0) {
+            return -1;
+        }
+        return (localY * RADIUS * 2 + localZ) * RADIUS * 2 + localX;
+    }
+    
+    /**
+     * Packs the given chunk coordinates into a single {@code long}.
+     * 
+     * @param chunkX The chunk X coordinate.
+     * @param chunkZ The chunk Z coordinate.
+     * @return The packed key.
+     */
+    private static long chunkKey(final int chunkX, final int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Gets the number of spawns from a {@link SpawnerSpawnEvent} that were
+     * decided from the cache.
+     * 
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+    
+    /**
+     * Gets the number of spawns from a {@link SpawnerSpawnEvent} that had to
+     * be decided normally.
+     * 
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+    
+    /**
+     * Gets the number of {@link CreatureSpawner}s whose cached outcomes were
+     * dropped by a block change.
+     * 
+     * @return The number of invalidations.
+     */
+    public long getInvalidations() {
+        return this.invalidations.sum();
+    }
+    
+    /**
+     * Resets the hit, miss, and invalidation counters.
+     */
+    public void resetCounters() {
+        this.hits.reset();
+        this.misses.reset();
+        this.invalidations.reset();
+    }
+}
@@ -0,0 +1,73 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.cache;
+
+/**
+ * Represents the immutable settings of the {@link SpawnerCache}.
+ */
+public final class SpawnerCacheSettings {
+    
+    /**
+     * The default {@link SpawnerCacheSettings}, caching the decisions of each
+     * spawner for one minute.
+     */
+    public static final SpawnerCacheSettings DEFAULT = new SpawnerCacheSettings(true, 1200);
+    
+    private final boolean enabled;
+    private final int ttlTicks;
+    
+    /**
+     * Constructs a new {@link SpawnerCacheSettings}.
+     * 
+     * @param enabled If {@code true}, the decisions of spawners will be
+     *                cached.
+     * @param ttlTicks The number of ticks that the decisions of a spawner are
+     *                 cached for.
+     * @throws IllegalArgumentException If the number of ticks is not
+     *                                  positive.
+     */
+    public SpawnerCacheSettings(final boolean enabled, final int ttlTicks) throws IllegalArgumentException {
+        if (ttlTicks <= 0) {
+            throw new IllegalArgumentException("Time to live must be positive: " + ttlTicks);
+        }
+        this.enabled = enabled;
+        this.ttlTicks = ttlTicks;
+    }
+    
+    /**
+     * Checks if the decisions of spawners will be cached.
+     * 
+     * @return {@code true} if the cache is enabled, {@code false} otherwise.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+    
+    /**
+     * Gets the number of ticks that the decisions of a spawner are cached
+     * for.
+     * 
+     * @return The time to live, in ticks.
+     */
+    public int getTtlTicks() {
+        return this.ttlTicks;
+    }
+}
@@ -0,0 +1,173 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.command;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerCommandSendEvent;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents the names of the {@link PluginCommand}s of a {@link Plugin} that
+ * are removed from the tab-completions sent to each {@link Player}.
+ * <p>
+ * The namespaced name of every {@link PluginCommand} is always removed, and
+ * the plain name of each {@link PluginCommand} that the {@link Player} does
+ * not have permission to use. The names to remove only depend on which of
+ * the {@link PluginCommand}s the {@link Player} may use, so they are built
+ * once for each combination of permissions, and shared by every
+ * {@link Player} with the same combination. Permissions are still checked
+ * for each {@link Player} every time, so a change in permissions is seen
+ * straight away.
+ * <p>
+ * A {@link CommandRemovals} is immutable once built (apart from the shared
+ * removals, which are filled in on first use, and safe to share between
+ * threads), and is replaced as a whole when the plugin is reloaded.
+ */
+public final class CommandRemovals {
+    
+    private static final int MAX_CACHED_COMMANDS = 8;
+    
+    private final String[] names;
+    private final String[] namespacedNames;
+    private final PluginCommand[] commands;
+    private final AtomicReferenceArray<String[]> removals;
+    
+    /**
+     * Constructs a new {@link CommandRemovals}.
+     * 
+     * @param names The plain names of the {@link PluginCommand}s.
+     * @param namespacedNames The namespaced names of the
+     *                        {@link PluginCommand}s.
+     * @param commands The {@link PluginCommand}s, at the same index as their
+     *                 names, or {@code null} where none was found.
+     */
+    private CommandRemovals(@NotNull final String[] names, @NotNull final String[] namespacedNames, @NotNull final PluginCommand[] commands) {
+        this.names = names;
+        this.namespacedNames = namespacedNames;
+        this.commands = commands;
+        this.removals = commands.length > MAX_CACHED_COMMANDS ? null : new AtomicReferenceArray<String[]>(1 << commands.length);
+    }
+    
+    /**
+     * Builds the {@link CommandRemovals} of all of the {@link PluginCommand}s
+     * declared by the given {@link Plugin}.
+     * 
+     * @param plugin The {@link Plugin}.
+     * @return The new {@link CommandRemovals}.
+     */
+    @NotNull
+    public static CommandRemovals create(@NotNull final Plugin plugin) {
+        
+        final Collection<String> declared = plugin.getDescription().getCommands().keySet();
+        final String[] names = new String[declared.size()];
+        final String[] namespacedNames = new String[declared.size()];
+        final PluginCommand[] commands = new PluginCommand[declared.size()];
+        
+        int index = 0;
+        for (final String name : declared) {
+            names[index] = name;
+            namespacedNames[index] = plugin.getName().toLowerCase() + ":" + name;
+            commands[index] = plugin.getServer().getPluginCommand(name);
+            index++;
+        }
+        return new CommandRemovals(names, namespacedNames, commands);
+    }
+    
+    /**
+     * Removes the names that the given {@link Player} should not be sent from
+     * the given command names, such as those of a
+     * {@link PlayerCommandSendEvent}.
+     * 
+     * @param player The {@link Player} that the command names are sent to.
+     * @param commandNames The command names to remove from.
+     */
+    public void removeFrom(@NotNull final Player player, @NotNull final Collection<String> commandNames) {
+        for (final String name : this.getRemovals(player)) {
+            commandNames.remove(name);
+        }
+    }
+    
+    /**
+     * Gets the names that the given {@link Player} should not be sent.
+     * <p>
+     * If the {@link Plugin} declares more {@link PluginCommand}s than there
+     * are combinations worth keeping, the names are built for each
+     * {@link Player} instead.
+     * 
+     * @param player The {@link Player}.
+     * @return The names to remove.
+     */
+    @NotNull
+    private String[] getRemovals(@NotNull final Player player) {
+        
+        if (this.removals == null) {
+            final List<String> removals = new ArrayList<String>(this.names.length * 2);
+            for (int index = 0; index < this.names.length; index++) {
+                removals.add(this.namespacedNames[index]);
+                final PluginCommand command = this.commands[index];
+                if (command != null && !command.testPermissionSilent(player)) {
+                    removals.add(this.names[index]);
+                }
+            }
+            return removals.toArray(new String[0]);
+        }
+        
+        int mask = 0;
+        for (int index = 0; index < this.commands.length; index++) {
+            final PluginCommand command = this.commands[index];
+            if (command != null && !command.testPermissionSilent(player)) {
+                mask |= 1 << index;
+            }
+        }
+        
+        String[] removals = this.removals.get(mask);
+        if (removals == null) {
+            removals = this.build(mask);
+            this.removals.set(mask, removals);
+        }
+        return removals;
+    }
+    
+    /**
+     * Builds the names to remove for the given combination of permissions.
+     * 
+     * @param mask The combination of permissions, with the bit of each
+     *             {@link PluginCommand} that may not be used set.
+     * @return The names to remove.
+     */
+    @NotNull
+    private String[] build(final int mask) {
+        final List<String> removals = new ArrayList<String>(this.names.length * 2);
+        for (int index = 0; index < this.names.length; index++) {
+            removals.add(this.namespacedNames[index]);
+            if ((mask & (1 << index)) != 0) {
+                removals.add(this.names[index]);
+            }
+        }
+        return removals.toArray(new String[0]);
+    }
+}
@@ -20,13 +20,37 @@
 
 package org.bspfsystems.saferwater.bukkit.command;
 
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.bspfsystems.saferwater.bukkit.SaferWaterPlugin;
+import org.bspfsystems.saferwater.bukkit.budget.TickBudget;
+import org.bspfsystems.saferwater.bukkit.cache.ChunkBatchCache;
+import org.bspfsystems.saferwater.bukkit.cache.DenialCache;
+import org.bspfsystems.saferwater.bukkit.cache.SpawnerCache;
+import org.bspfsystems.saferwater.bukkit.log.DecisionLog;
+import org.bspfsystems.saferwater.bukkit.record.SpawnRecorder;
+import org.bspfsystems.saferwater.bukkit.scan.ChunkScan;
+import org.bspfsystems.saferwater.bukkit.stats.LatencyHistogram;
+import org.bspfsystems.saferwater.bukkit.stats.SpawnStats;
+import org.bspfsystems.saferwater.bukkit.stats.StatsHistory;
+import org.bspfsystems.saferwater.bukkit.stats.StatsHistoryFile;
+import org.bspfsystems.saferwater.bukkit.sweep.MobSweeper;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabExecutor;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -35,6 +59,11 @@ import org.jetbrains.annotations.NotNull;
  */
 public final class SaferWaterTabExecutor implements TabExecutor {
     
+    private static final int MAX_BREAKDOWN_ENTRIES = 10;
+    private static final int MAX_SCAN_RADIUS = 128;
+    private static final int HISTORY_TREND_SLICES = 12;
+    private static final DateTimeFormatter HISTORY_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+    
     private final SaferWaterPlugin saferWaterPlugin;
     
     /**
@@ -83,6 +112,111 @@ public final class SaferWaterTabExecutor implements TabExecutor {
             this.saferWaterPlugin.reloadConfig(sender);
             return true;
             
+        } else if (subCommand.equalsIgnoreCase("stats")) {
+            
+            if (!sender.hasPermission("saferwater.command.saferwater.stats")) {
+                sender.sendMessage(this.getPermissionMessage(command));
+                return true;
+            }
+            if (argList.size() > 1 || (argList.size() == 1 && !argList.get(0).equalsIgnoreCase("reset"))) {
+                sender.sendMessage("§r§cSyntax: /saferwater stats [reset]§r");
+                return true;
+            }
+            
+            final SpawnStats spawnStats = this.saferWaterPlugin.getSpawnStats();
+            if (!argList.isEmpty()) {
+                spawnStats.reset();
+                this.saferWaterPlugin.getDenialCache().resetCounters();
+                this.saferWaterPlugin.getChunkBatchCache().resetCounters();
+                this.saferWaterPlugin.getSpawnerCache().resetCounters();
+                this.saferWaterPlugin.getTickBudget().resetCounters();
+                sender.sendMessage("§r§aThe SaferWater spawn statistics have been reset.§r");
+                return true;
+            }
+            
+            this.sendStats(sender, spawnStats);
+            return true;
+        
+        } else if (subCommand.equalsIgnoreCase("scan")) {
+            
+            if (!sender.hasPermission("saferwater.command.saferwater.scan")) {
+                sender.sendMessage(this.getPermissionMessage(command));
+                return true;
+            }
+            if (argList.isEmpty() || argList.size() > 2) {
+                sender.sendMessage("§r§cSyntax: /saferwater scan <world> [radius]§r");
+                sender.sendMessage("§r§cSyntax: /saferwater scan cancel§r");
+                return true;
+            }
+            
+            if (argList.size() == 1 && argList.get(0).equalsIgnoreCase("cancel")) {
+                if (this.saferWaterPlugin.cancelScan()) {
+                    sender.sendMessage("§r§aThe SaferWater scan has been cancelled.§r");
+                } else {
+                    sender.sendMessage("§r§cThere is no SaferWater scan running.§r");
+                }
+                return true;
+            }
+            
+            this.startScan(sender, argList);
+            return true;
+        
+        } else if (subCommand.equalsIgnoreCase("sweep")) {
+            
+            if (!sender.hasPermission("saferwater.command.saferwater.sweep")) {
+                sender.sendMessage(this.getPermissionMessage(command));
+                return true;
+            }
+            if (argList.size() > 1 || (argList.size() == 1 && !argList.get(0).equalsIgnoreCase("reset"))) {
+                sender.sendMessage("§r§cSyntax: /saferwater sweep [reset]§r");
+                return true;
+            }
+            
+            final MobSweeper mobSweeper = this.saferWaterPlugin.getMobSweeper();
+            if (!argList.isEmpty()) {
+                mobSweeper.resetCounters();
+                sender.sendMessage("§r§aThe SaferWater mob sweeper counters have been reset.§r");
+                return true;
+            }
+            
+            this.sendSweep(sender, mobSweeper);
+            return true;
+        
+        } else if (subCommand.equalsIgnoreCase("history")) {
+            
+            if (!sender.hasPermission("saferwater.command.saferwater.history")) {
+                sender.sendMessage(this.getPermissionMessage(command));
+                return true;
+            }
+            if (argList.size() > 1) {
+                sender.sendMessage("§r§cSyntax: /saferwater history [hours]§r");
+                return true;
+            }
+            
+            final StatsHistory statsHistory = this.saferWaterPlugin.getStatsHistory();
+            if (!statsHistory.isEnabled()) {
+                sender.sendMessage("§r§cThe SaferWater spawn history is disabled.§r");
+                return true;
+            }
+            final int maxHours = statsHistory.getDays() * 24;
+            int hours = 24;
+            if (argList.size() == 1) {
+                try {
+                    hours = Integer.parseInt(argList.get(0));
+                } catch (NumberFormatException e) {
+                    sender.sendMessage("§r§cInvalid number of hours:§r §b" + argList.get(0) + "§r");
+                    return true;
+                }
+                if (hours <= 0 || hours > maxHours) {
+                    sender.sendMessage("§r§cThe number of hours must be between 1 and " + maxHours + ".§r");
+                    return true;
+                }
+            }
+            
+            final int historyHours = hours;
+            this.saferWaterPlugin.getTaskScheduler().runAsync(() -> this.sendHistory(sender, statsHistory, historyHours));
+            return true;
+        
         } else {
             return this.sendSubCommands(sender, command);
         }
@@ -110,6 +244,18 @@ public final class SaferWaterTabExecutor implements TabExecutor {
         if (sender.hasPermission("saferwater.command.saferwater.reload")) {
             completions.add("reload");
         }
+        if (sender.hasPermission("saferwater.command.saferwater.stats")) {
+            completions.add("stats");
+        }
+        if (sender.hasPermission("saferwater.command.saferwater.scan")) {
+            completions.add("scan");
+        }
+        if (sender.hasPermission("saferwater.command.saferwater.sweep")) {
+            completions.add("sweep");
+        }
+        if (sender.hasPermission("saferwater.command.saferwater.history")) {
+            completions.add("history");
+        }
         
         if (argList.isEmpty()) {
             return completions;
@@ -122,6 +268,29 @@ public final class SaferWaterTabExecutor implements TabExecutor {
         }
         
         completions.clear();
+        if (subCommand.equalsIgnoreCase("stats") && sender.hasPermission("saferwater.command.saferwater.stats")) {
+            
+            final String statsArg = argList.remove(0);
+            if (argList.isEmpty() && "reset".startsWith(statsArg.toLowerCase())) {
+                completions.add("reset");
+            }
+        } else if (subCommand.equalsIgnoreCase("scan") && sender.hasPermission("saferwater.command.saferwater.scan")) {
+            
+            final String scanArg = argList.remove(0);
+            if (argList.isEmpty()) {
+                completions.add("cancel");
+                for (final World world : this.saferWaterPlugin.getServer().getWorlds()) {
+                    completions.add(world.getName());
+                }
+                completions.removeIf(completion -> !completion.toLowerCase().startsWith(scanArg.toLowerCase()));
+            }
+        } else if (subCommand.equalsIgnoreCase("sweep") && sender.hasPermission("saferwater.command.saferwater.sweep")) {
+            
+            final String sweepArg = argList.remove(0);
+            if (argList.isEmpty() && "reset".startsWith(sweepArg.toLowerCase())) {
+                completions.add("reset");
+            }
+        }
         return completions;
     }
     
@@ -136,8 +305,12 @@ public final class SaferWaterTabExecutor implements TabExecutor {
     private boolean sendSubCommands(@NotNull final CommandSender sender, @NotNull final Command command) {
         
         final boolean permissionReload = sender.hasPermission("saferwater.command.saferwater.reload");
+        final boolean permissionStats = sender.hasPermission("saferwater.command.saferwater.stats");
+        final boolean permissionScan = sender.hasPermission("saferwater.command.saferwater.scan");
+        final boolean permissionSweep = sender.hasPermission("saferwater.command.saferwater.sweep");
+        final boolean permissionHistory = sender.hasPermission("saferwater.command.saferwater.history");
         
-        if (!permissionReload) {
+        if (!permissionReload && !permissionStats && !permissionScan && !permissionSweep && !permissionHistory) {
             sender.sendMessage(this.getPermissionMessage(command));
             return true;
         }
@@ -148,10 +321,330 @@ public final class SaferWaterTabExecutor implements TabExecutor {
         if (permissionReload) {
             sender.sendMessage("§r §f-§r §b/saferwater reload§r");
         }
+        if (permissionStats) {
+            sender.sendMessage("§r §f-§r §b/saferwater stats [reset]§r");
+        }
+        if (permissionScan) {
+            sender.sendMessage("§r §f-§r §b/saferwater scan <world> [radius]§r");
+            sender.sendMessage("§r §f-§r §b/saferwater scan cancel§r");
+        }
+        if (permissionSweep) {
+            sender.sendMessage("§r §f-§r §b/saferwater sweep [reset]§r");
+        }
+        if (permissionHistory) {
+            sender.sendMessage("§r §f-§r §b/saferwater history [hours]§r");
+        }
         
         return true;
     }
     
+    /**
+     * Starts a {@link ChunkScan} of the {@link World} named in the given
+     * arguments, unless one is already running.
+     * <p>
+     * If a radius is given, every loaded chunk within that many chunks of the
+     * spawn of the {@link World} is scanned; otherwise, every loaded chunk
+     * is. Region-threaded servers do not allow the loaded chunks to be
+     * listed, so a radius is required there.
+     * 
+     * @param sender The {@link CommandSender} starting the scan.
+     * @param argList The {@link World} name, and optionally the radius.
+     */
+    private void startScan(@NotNull final CommandSender sender, @NotNull final List<String> argList) {
+        
+        final ChunkScan running = this.saferWaterPlugin.getScan();
+        if (running != null) {
+            sender.sendMessage("§r§cA SaferWater scan of§r §b" + running.getWorld().getName() + "§r §cis already running (" + (running.getTotal() - running.getRemaining()) + "/" + running.getTotal() + " chunks). Use§r §b/saferwater scan cancel§r §cto cancel it.§r");
+            return;
+        }
+        
+        final World world = this.saferWaterPlugin.getServer().getWorld(argList.get(0));
+        if (world == null) {
+            sender.sendMessage("§r§cUnknown world:§r §b" + argList.get(0) + "§r");
+            return;
+        }
+        
+        final long[] chunks;
+        if (argList.size() == 2) {
+            
+            final int radius;
+            try {
+                radius = Integer.parseInt(argList.get(1));
+            } catch (NumberFormatException e) {
+                sender.sendMessage("§r§cInvalid radius:§r §b" + argList.get(1) + "§r");
+                return;
+            }
+            if (radius < 0 || radius > MAX_SCAN_RADIUS) {
+                sender.sendMessage("§r§cThe radius must be between 0 and " + MAX_SCAN_RADIUS + " chunks.§r");
+                return;
+            }
+            
+            final Location spawn = world.getSpawnLocation();
+            final int centerX = spawn.getBlockX() >> 4;
+            final int centerZ = spawn.getBlockZ() >> 4;
+            chunks = new long[(radius * 2 + 1) * (radius * 2 + 1)];
+            int index = 0;
+            for (int chunkX = centerX - radius; chunkX <= centerX + radius; chunkX++) {
+                for (int chunkZ = centerZ - radius; chunkZ <= centerZ + radius; chunkZ++) {
+                    chunks[index++] = ChunkScan.key(chunkX, chunkZ);
+                }
+            }
+        
+        } else {
+            
+            if (this.saferWaterPlugin.getTaskScheduler().isRegionized()) {
+                sender.sendMessage("§r§cA radius is required on region-threaded servers:§r §b/saferwater scan <world> <radius>§r");
+                return;
+            }
+            final Chunk[] loadedChunks = world.getLoadedChunks();
+            chunks = new long[loadedChunks.length];
+            for (int index = 0; index < loadedChunks.length; index++) {
+                chunks[index] = ChunkScan.key(loadedChunks[index].getX(), loadedChunks[index].getZ());
+            }
+        }
+        
+        if (this.saferWaterPlugin.startScan(sender, world, chunks) == null) {
+            sender.sendMessage("§r§cA SaferWater scan is already running. Use§r §b/saferwater scan cancel§r §cto cancel it.§r");
+            return;
+        }
+        sender.sendMessage("§r§6Scanning up to§r §b" + chunks.length + "§r §6loaded chunks in§r §b" + world.getName() + "§r§6. The results will be sent when the scan completes.§r");
+    }
+    
+    /**
+     * Sends the current spawn statistics to the {@link CommandSender}.
+     * <p>
+     * This includes the count and rate of each category of spawn, the
+     * decision latency percentiles, the {@link DenialCache},
+     * {@link TickBudget}, and {@link DecisionLog} counters, and the
+     * busiest {@link EntityType}s, {@link World}s, and {@link SpawnReason}s.
+     * 
+     * @param sender The {@link CommandSender}.
+     * @param spawnStats The {@link SpawnStats} to send.
+     */
+    private void sendStats(@NotNull final CommandSender sender, @NotNull final SpawnStats spawnStats) {
+        
+        final long elapsedNanos = spawnStats.getElapsedNanos();
+        final double elapsedSeconds = Math.max(1.0D, elapsedNanos / 1_000_000_000.0D);
+        final long[] totals = spawnStats.getTotals();
+        final LatencyHistogram latencies = spawnStats.getLatencies();
+        
+        sender.sendMessage("§r§6SaferWater spawn statistics (last " + this.formatDuration(elapsedNanos) + "):§r");
+        sender.sendMessage("§r§8----------------------------------------------------------------§8");
+        sender.sendMessage("§r §fEvaluated:§r " + this.formatCount(SpawnStats.total(totals), elapsedSeconds));
+        sender.sendMessage("§r §fSkipped (type):§r " + this.formatCount(totals[SpawnStats.SKIPPED_TYPE], elapsedSeconds));
+        sender.sendMessage("§r §fSkipped (reason):§r " + this.formatCount(totals[SpawnStats.SKIPPED_REASON], elapsedSeconds));
+        sender.sendMessage("§r §fSkipped (dry):§r " + this.formatCount(totals[SpawnStats.SKIPPED_DRY], elapsedSeconds));
+        sender.sendMessage("§r §fAllowed:§r " + this.formatCount(totals[SpawnStats.ALLOWED], elapsedSeconds));
+        sender.sendMessage("§r §fDenied:§r " + this.formatCount(totals[SpawnStats.DENIED], elapsedSeconds));
+        sender.sendMessage("§r §fDecision latency:§r §7p50§r §b" + latencies.getPercentile(50.0D) + "ns§r§7, p99§r §b" + latencies.getPercentile(99.0D) + "ns§r§7, p99.9§r §b" + latencies.getPercentile(99.9D) + "ns§r");
+        
+        final DecisionLog decisionLog = this.saferWaterPlugin.getDecisionLog();
+        final DenialCache denialCache = this.saferWaterPlugin.getDenialCache();
+        if (denialCache.isEnabled()) {
+            final long lookups = denialCache.getHits() + denialCache.getMisses();
+            sender.sendMessage("§r §fDenial cache:§r §b" + denialCache.getHits() + "§r §7hits,§r §b" + denialCache.getMisses() + "§r §7misses (" + String.format("%.1f", lookups == 0L ? 0.0D : denialCache.getHits() * 100.0D / lookups) + "% hit rate),§r §b" + denialCache.getSize() + "§r §7entries,§r §b" + denialCache.getEvictions() + "§r §7evicted,§r §b" + denialCache.getInvalidations() + "§r §7invalidated§r");
+        } else {
+            sender.sendMessage("§r §fDenial cache:§r §7disabled§r");
+        }
+        final SpawnerCache spawnerCache = this.saferWaterPlugin.getSpawnerCache();
+        if (spawnerCache.isEnabled()) {
+            sender.sendMessage("§r §fSpawner cache:§r §b" + spawnerCache.getHits() + "§r §7hits,§r §b" + spawnerCache.getMisses() + "§r §7misses,§r §b" + spawnerCache.getInvalidations() + "§r §7invalidated§r");
+        } else {
+            sender.sendMessage("§r §fSpawner cache:§r §7disabled§r");
+        }
+        final ChunkBatchCache chunkBatchCache = this.saferWaterPlugin.getChunkBatchCache();
+        sender.sendMessage("§r §fChunk batches:§r §b" + chunkBatchCache.getHits() + "§r §7spawns decided from an earlier floor,§r §b" + chunkBatchCache.getMisses() + "§r §7from their own§r");
+        final TickBudget tickBudget = this.saferWaterPlugin.getTickBudget();
+        if (tickBudget.isEnabled()) {
+            sender.sendMessage("§r §fTick budget:§r §b" + (tickBudget.getBudgetNanos() / 1000L) + "µs§r §7per tick, spent in§r §b" + tickBudget.getExhaustedTicks() + "§r §7ticks; fallback (" + tickBudget.getFallback().name() + ")§r §b" + tickBudget.getFallbackAllowed() + "§r §7allowed,§r §b" + tickBudget.getFallbackDenied() + "§r §7denied§r");
+        } else {
+            sender.sendMessage("§r §fTick budget:§r §7disabled§r");
+        }
+        sender.sendMessage("§r §fDecision log:§r §b" + decisionLog.getWritten() + "§r §7written,§r §b" + decisionLog.getDropped() + "§r §7dropped§r");
+        final SpawnRecorder spawnRecorder = this.saferWaterPlugin.getSpawnRecorder();
+        if (spawnRecorder.isActive()) {
+            sender.sendMessage("§r §fSpawn recorder:§r §b" + spawnRecorder.getWritten() + "§r §7written,§r §b" + spawnRecorder.getDropped() + "§r §7dropped§r");
+        } else {
+            sender.sendMessage("§r §fSpawn recorder:§r §7not recording§r");
+        }
+        
+        this.sendBreakdown(sender, "Entity Types", spawnStats.getTypeCounts());
+        this.sendBreakdown(sender, "Worlds", spawnStats.getWorldCounts());
+        this.sendBreakdown(sender, "Spawn Reasons", spawnStats.getReasonCounts());
+    }
+    
+    /**
+     * Sends the progress and counters of the {@link MobSweeper} to the
+     * {@link CommandSender}.
+     * 
+     * @param sender The {@link CommandSender}.
+     * @param mobSweeper The {@link MobSweeper} to send.
+     */
+    private void sendSweep(@NotNull final CommandSender sender, @NotNull final MobSweeper mobSweeper) {
+        
+        sender.sendMessage("§r§6SaferWater mob sweeper:§r");
+        sender.sendMessage("§r§8----------------------------------------------------------------§8");
+        if (!mobSweeper.isEnabled()) {
+            sender.sendMessage("§r §fStatus:§r §7disabled§r");
+        } else if (mobSweeper.isPassInProgress()) {
+            final int total = mobSweeper.getPassChunkTotal();
+            final int swept = Math.min(mobSweeper.getPassChunksSwept(), total);
+            sender.sendMessage("§r §fStatus:§r §7pass§r §b" + (mobSweeper.getPasses() + 1L) + "§r§7,§r §b" + swept + "/" + total + "§r §7chunks (" + String.format("%.1f", swept * 100.0D / total) + "%)§r");
+        } else {
+            sender.sendMessage("§r §fStatus:§r §7waiting for pass§r §b" + (mobSweeper.getPasses() + 1L) + "§r");
+        }
+        final long lastPassNanos = mobSweeper.getLastPassNanos();
+        sender.sendMessage("§r §fLast pass:§r " + (lastPassNanos < 0L ? "§7none§r" : "§b" + this.formatDuration(lastPassNanos) + "§r"));
+        sender.sendMessage("§r §fChecked:§r §b" + mobSweeper.getExamined() + "§r §7filtered mobs§r");
+        sender.sendMessage("§r §fRemoved:§r §b" + mobSweeper.getRemoved() + "§r §7mobs in lit water§r");
+    }
+    
+    /**
+     * Sends the spawn history of the given number of hours to the
+     * {@link CommandSender}: the totals, the peak minute, the trend of denied
+     * spawns, and the most-denied {@link World}s and {@link EntityType}s.
+     * This reads from the history file, and must not be called from a server
+     * thread.
+     * 
+     * @param sender The {@link CommandSender}.
+     * @param statsHistory The {@link StatsHistory} to read from.
+     * @param hours The number of hours of history to send.
+     */
+    private void sendHistory(@NotNull final CommandSender sender, @NotNull final StatsHistory statsHistory, final int hours) {
+        
+        final int minutes = hours * 60;
+        final long toMinute = StatsHistory.currentMinute();
+        final long fromMinute = toMinute - minutes + 1L;
+        final List<StatsHistoryFile.Bucket> buckets = statsHistory.read(fromMinute, toMinute);
+        
+        long evaluated = 0L;
+        long denied = 0L;
+        StatsHistoryFile.Bucket peak = null;
+        final long[] trend = new long[HISTORY_TREND_SLICES];
+        final Map<String, long[]> worlds = new LinkedHashMap<String, long[]>();
+        final Map<String, long[]> types = new LinkedHashMap<String, long[]>();
+        for (final StatsHistoryFile.Bucket bucket : buckets) {
+            evaluated += bucket.getEvaluated();
+            denied += bucket.getDenied();
+            if (peak == null || bucket.getDenied() > peak.getDenied()) {
+                peak = bucket;
+            }
+            trend[(int) ((bucket.getMinute() - fromMinute) * HISTORY_TREND_SLICES / minutes)] += bucket.getDenied();
+            this.addHistoryCounts(worlds, bucket.getWorlds());
+            this.addHistoryCounts(types, bucket.getTypes());
+        }
+        
+        sender.sendMessage("§r§6SaferWater spawn history (last " + hours + "h,§r §b" + buckets.size() + "§r §6of " + minutes + " minutes recorded):§r");
+        sender.sendMessage("§r§8----------------------------------------------------------------§8");
+        if (buckets.isEmpty()) {
+            sender.sendMessage("§r §7No spawns have been recorded in this time.§r");
+            return;
+        }
+        sender.sendMessage("§r §fEvaluated:§r §b" + evaluated + "§r §7(" + String.format("%.2f", evaluated / (double) buckets.size()) + " per recorded minute)§r");
+        sender.sendMessage("§r §fDenied:§r §b" + denied + "§r §7(" + String.format("%.1f", evaluated == 0L ? 0.0D : denied * 100.0D / evaluated) + "% of evaluated)§r");
+        sender.sendMessage("§r §fPeak minute:§r §b" + peak.getDenied() + "§r §7denied of§r §b" + peak.getEvaluated() + "§r §7evaluated at " + HISTORY_TIME_FORMAT.format(Instant.ofEpochSecond(peak.getMinute() * 60L)) + "§r");
+        
+        final int sliceMinutes = minutes / HISTORY_TREND_SLICES;
+        final StringBuilder builder = new StringBuilder();
+        for (final long sliceDenied : trend) {
+            builder.append(builder.length() == 0 ? "" : "§r §7|§r ").append("§b").append(sliceDenied);
+        }
+        sender.sendMessage("§r §fDenied per " + (sliceMinutes % 60 == 0 ? (sliceMinutes / 60) + "h" : sliceMinutes + "m") + " (oldest first):§r " + builder + "§r");
+        
+        this.sendHistoryBreakdown(sender, "Most Denied Worlds", worlds);
+        this.sendHistoryBreakdown(sender, "Most Denied Entity Types", types);
+    }
+    
+    /**
+     * Adds the evaluated and denied counts of a single minute of the spawn
+     * history to the running totals.
+     * 
+     * @param totals The running totals, keyed by breakdown entry.
+     * @param counts The counts of the minute, keyed by breakdown entry.
+     */
+    private void addHistoryCounts(@NotNull final Map<String, long[]> totals, @NotNull final Map<String, int[]> counts) {
+        for (final Map.Entry<String, int[]> entry : counts.entrySet()) {
+            final long[] entryTotals = totals.computeIfAbsent(entry.getKey(), name -> new long[2]);
+            entryTotals[0] += entry.getValue()[0];
+            entryTotals[1] += entry.getValue()[1];
+        }
+    }
+    
+    /**
+     * Sends the most-denied entries of a breakdown of the spawn history to
+     * the {@link CommandSender}.
+     * 
+     * @param sender The {@link CommandSender}.
+     * @param title The title of the breakdown.
+     * @param counts The number of evaluated and denied spawns, keyed by
+     *               breakdown entry.
+     */
+    private void sendHistoryBreakdown(@NotNull final CommandSender sender, @NotNull final String title, @NotNull final Map<String, long[]> counts) {
+        
+        if (counts.isEmpty()) {
+            return;
+        }
+        
+        final List<Map.Entry<String, long[]>> entries = new ArrayList<Map.Entry<String, long[]>>(counts.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, long[]> entry) -> entry.getValue()[1]).thenComparingLong(entry -> entry.getValue()[0]).reversed());
+        
+        sender.sendMessage("§r§6" + title + " (top " + Math.min(MAX_BREAKDOWN_ENTRIES, entries.size()) + " of " + entries.size() + "):§r");
+        for (final Map.Entry<String, long[]> entry : entries.subList(0, Math.min(MAX_BREAKDOWN_ENTRIES, entries.size()))) {
+            final long[] entryCounts = entry.getValue();
+            sender.sendMessage("§r §f-§r §b" + entry.getKey() + "§r§7: " + entryCounts[0] + " evaluated, " + entryCounts[1] + " denied§r");
+        }
+    }
+    
+    /**
+     * Sends the busiest entries of a breakdown of the spawn statistics to the
+     * {@link CommandSender}, ordered by their number of evaluated spawns.
+     * 
+     * @param sender The {@link CommandSender}.
+     * @param title The title of the breakdown.
+     * @param counts The count of each category, keyed by breakdown entry.
+     * @param <T> The type of the breakdown entries.
+     */
+    private <T> void sendBreakdown(@NotNull final CommandSender sender, @NotNull final String title, @NotNull final Map<T, long[]> counts) {
+        
+        if (counts.isEmpty()) {
+            return;
+        }
+        
+        final List<Map.Entry<T, long[]>> entries = new ArrayList<Map.Entry<T, long[]>>(counts.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<T, long[]> entry) -> SpawnStats.total(entry.getValue())).reversed());
+        
+        sender.sendMessage("§r§6" + title + " (top " + Math.min(MAX_BREAKDOWN_ENTRIES, entries.size()) + " of " + entries.size() + "):§r");
+        for (final Map.Entry<T, long[]> entry : entries.subList(0, Math.min(MAX_BREAKDOWN_ENTRIES, entries.size()))) {
+            final long[] entryCounts = entry.getValue();
+            sender.sendMessage("§r §f-§r §b" + entry.getKey() + "§r§7: " + SpawnStats.total(entryCounts) + " evaluated, " + entryCounts[SpawnStats.ALLOWED] + " allowed, " + entryCounts[SpawnStats.DENIED] + " denied§r");
+        }
+    }
+    
+    /**
+     * Formats a count along with its rate per second.
+     * 
+     * @param count The count.
+     * @param elapsedSeconds The number of seconds that the count was recorded
+     *                       over.
+     * @return The formatted count.
+     */
+    @NotNull
+    private String formatCount(final long count, final double elapsedSeconds) {
+        return "§b" + count + "§r §7(" + String.format("%.2f", count / elapsedSeconds) + "/s)§r";
+    }
+    
+    /**
+     * Formats a duration as hours, minutes, and seconds.
+     * 
+     * @param nanos The duration, in nanoseconds.
+     * @return The formatted duration.
+     */
+    @NotNull
+    private String formatDuration(final long nanos) {
+        final long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+        return (seconds / 3600L) + "h " + ((seconds / 60L) % 60L) + "m " + (seconds % 60L) + "s";
+    }
+    
     /**
      * Gets the permission message for the {@link Command}, or a default one if
      * none exists.
@@ -0,0 +1,287 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.config;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.logging.Level;
+import org.bspfsystems.saferwater.bukkit.budget.TickBudgetSettings;
+import org.bspfsystems.saferwater.bukkit.cache.DenialCacheSettings;
+import org.bspfsystems.saferwater.bukkit.cache.SpawnerCacheSettings;
+import org.bspfsystems.saferwater.bukkit.log.DecisionLogSettings;
+import org.bspfsystems.saferwater.bukkit.record.SpawnRecorderSettings;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnProfileTable;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnProfiles;
+import org.bspfsystems.saferwater.bukkit.stats.StatsHistorySettings;
+import org.bspfsystems.saferwater.bukkit.sweep.MobSweeperSettings;
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents an immutable, fully-validated snapshot of the SaferWater
+ * configuration.
+ * <p>
+ * A new {@link ConfigSnapshot} is compiled each time the configuration is
+ * loaded, and replaces the current one as a whole only once it has been
+ * compiled successfully. Readers never see a partially-loaded configuration,
+ * and never need to take a lock.
+ * <p>
+ * The {@link SpawnProfiles} are bound to the loaded {@link World}s as part of
+ * the snapshot, so that the {@link SpawnProfileTable} that spawns are decided
+ * with is always the one of the same configuration. As {@link World}s are
+ * loaded and unloaded, the snapshot is replaced by a copy with a rebound
+ * {@link SpawnProfileTable}, and the same version.
+ */
+public final class ConfigSnapshot {
+    
+    /**
+     * The {@link ConfigSnapshot} that is active before any configuration has
+     * been loaded. It does not deny any spawns.
+     */
+    public static final ConfigSnapshot EMPTY = new ConfigSnapshot(0L, Level.INFO, false, SpawnProfiles.EMPTY.bind(Collections.emptyList()), DenialCacheSettings.DEFAULT, SpawnerCacheSettings.DEFAULT, DecisionLogSettings.DEFAULT, SpawnRecorderSettings.DEFAULT, MobSweeperSettings.DEFAULT, StatsHistorySettings.DEFAULT, TickBudgetSettings.DEFAULT);
+    
+    private final long version;
+    private final Level loggingLevel;
+    private final boolean watchConfig;
+    private final SpawnProfileTable spawnProfileTable;
+    private final DenialCacheSettings denialCacheSettings;
+    private final SpawnerCacheSettings spawnerCacheSettings;
+    private final DecisionLogSettings decisionLogSettings;
+    private final SpawnRecorderSettings spawnRecorderSettings;
+    private final MobSweeperSettings mobSweeperSettings;
+    private final StatsHistorySettings statsHistorySettings;
+    private final TickBudgetSettings tickBudgetSettings;
+    
+    /**
+     * Constructs a new {@link ConfigSnapshot}.
+     * 
+     * @param version The version of this {@link ConfigSnapshot}.
+     * @param loggingLevel The logging {@link Level} of the plugin logger.
+     * @param watchConfig If {@code true}, the configuration file is watched
+     *                    for changes and reloaded automatically.
+     * @param spawnProfileTable The {@link SpawnProfileTable} of the
+     *                          {@link SpawnProfiles}.
+     * @param denialCacheSettings The {@link DenialCacheSettings}.
+     * @param spawnerCacheSettings The {@link SpawnerCacheSettings}.
+     * @param decisionLogSettings The {@link DecisionLogSettings}.
+     * @param spawnRecorderSettings The {@link SpawnRecorderSettings}.
+     * @param mobSweeperSettings The {@link MobSweeperSettings}.
+     * @param statsHistorySettings The {@link StatsHistorySettings}.
+     * @param tickBudgetSettings The {@link TickBudgetSettings}.
+     */
+    private ConfigSnapshot(final long version, @NotNull final Level loggingLevel, final boolean watchConfig, @NotNull final SpawnProfileTable spawnProfileTable, @NotNull final DenialCacheSettings denialCacheSettings, @NotNull final SpawnerCacheSettings spawnerCacheSettings, @NotNull final DecisionLogSettings decisionLogSettings, @NotNull final SpawnRecorderSettings spawnRecorderSettings, @NotNull final MobSweeperSettings mobSweeperSettings, @NotNull final StatsHistorySettings statsHistorySettings, @NotNull final TickBudgetSettings tickBudgetSettings) {
+        this.version = version;
+        this.loggingLevel = loggingLevel;
+        this.watchConfig = watchConfig;
+        this.spawnProfileTable = spawnProfileTable;
+        this.denialCacheSettings = denialCacheSettings;
+        this.spawnerCacheSettings = spawnerCacheSettings;
+        this.decisionLogSettings = decisionLogSettings;
+        this.spawnRecorderSettings = spawnRecorderSettings;
+        this.mobSweeperSettings = mobSweeperSettings;
+        this.statsHistorySettings = statsHistorySettings;
+        this.tickBudgetSettings = tickBudgetSettings;
+    }
+    
+    /**
+     * Creates a new, unversioned {@link ConfigSnapshot}, to be versioned and
+     * bound with {@link #publish(long, Collection)} when it is published.
+     * 
+     * @param loggingLevel The logging {@link Level} of the plugin logger.
+     * @param watchConfig If {@code true}, the configuration file is watched
+     *                    for changes and reloaded automatically.
+     * @param spawnProfiles The {@link SpawnProfiles}.
+     * @param denialCacheSettings The {@link DenialCacheSettings}.
+     * @param spawnerCacheSettings The {@link SpawnerCacheSettings}.
+     * @param decisionLogSettings The {@link DecisionLogSettings}.
+     * @param spawnRecorderSettings The {@link SpawnRecorderSettings}.
+     * @param mobSweeperSettings The {@link MobSweeperSettings}.
+     * @param statsHistorySettings The {@link StatsHistorySettings}.
+     * @param tickBudgetSettings The {@link TickBudgetSettings}.
+     * @return The new {@link ConfigSnapshot}.
+     */
+    @NotNull
+    public static ConfigSnapshot of(@NotNull final Level loggingLevel, final boolean watchConfig, @NotNull final SpawnProfiles spawnProfiles, @NotNull final DenialCacheSettings denialCacheSettings, @NotNull final SpawnerCacheSettings spawnerCacheSettings, @NotNull final DecisionLogSettings decisionLogSettings, @NotNull final SpawnRecorderSettings spawnRecorderSettings, @NotNull final MobSweeperSettings mobSweeperSettings, @NotNull final StatsHistorySettings statsHistorySettings, @NotNull final TickBudgetSettings tickBudgetSettings) {
+        return new ConfigSnapshot(0L, loggingLevel, watchConfig, spawnProfiles.bind(Collections.emptyList()), denialCacheSettings, spawnerCacheSettings, decisionLogSettings, spawnRecorderSettings, mobSweeperSettings, statsHistorySettings, tickBudgetSettings);
+    }
+    
+    /**
+     * Creates a copy of this {@link ConfigSnapshot} with the given version,
+     * with its {@link SpawnProfiles} bound to the given loaded {@link World}s.
+     * 
+     * @param version The version.
+     * @param worlds The loaded {@link World}s.
+     * @return The versioned and bound copy of this {@link ConfigSnapshot}.
+     */
+    @NotNull
+    public ConfigSnapshot publish(final long version, @NotNull final Collection<? extends World> worlds) {
+        return new ConfigSnapshot(version, this.loggingLevel, this.watchConfig, this.getSpawnProfiles().bind(worlds), this.denialCacheSettings, this.spawnerCacheSettings, this.decisionLogSettings, this.spawnRecorderSettings, this.mobSweeperSettings, this.statsHistorySettings, this.tickBudgetSettings);
+    }
+    
+    /**
+     * Creates a copy of this {@link ConfigSnapshot} with the same version, and
+     * the given {@link SpawnProfileTable}, which must be bound from the
+     * {@link SpawnProfiles} of this {@link ConfigSnapshot}.
+     * 
+     * @param spawnProfileTable The rebound {@link SpawnProfileTable}.
+     * @return The rebound copy of this {@link ConfigSnapshot}.
+     */
+    @NotNull
+    public ConfigSnapshot withSpawnProfileTable(@NotNull final SpawnProfileTable spawnProfileTable) {
+        return new ConfigSnapshot(this.version, this.loggingLevel, this.watchConfig, spawnProfileTable, this.denialCacheSettings, this.spawnerCacheSettings, this.decisionLogSettings, this.spawnRecorderSettings, this.mobSweeperSettings, this.statsHistorySettings, this.tickBudgetSettings);
+    }
+    
+    /**
+     * Gets the version of this {@link ConfigSnapshot}. Each published
+     * {@link ConfigSnapshot} has a higher version than the previous one, and
+     * {@link #EMPTY} is version {@code 0}.
+     * 
+     * @return The version.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+    
+    /**
+     * Gets the logging {@link Level} of the plugin logger.
+     * 
+     * @return The logging {@link Level}.
+     */
+    @NotNull
+    public Level getLoggingLevel() {
+        return this.loggingLevel;
+    }
+    
+    /**
+     * Checks if the configuration file is watched for changes and reloaded
+     * automatically.
+     * 
+     * @return {@code true} if the configuration file is watched,
+     *         {@code false} otherwise.
+     */
+    public boolean isWatchConfig() {
+        return this.watchConfig;
+    }
+    
+    /**
+     * Gets the {@link SpawnProfiles}, holding the spawn rules of every
+     * configured world and biome.
+     * 
+     * @return The {@link SpawnProfiles}.
+     */
+    @NotNull
+    public SpawnProfiles getSpawnProfiles() {
+        return this.spawnProfileTable.getSpawnProfiles();
+    }
+    
+    /**
+     * Gets the {@link SpawnProfileTable} of the {@link SpawnProfiles}, bound
+     * to the loaded {@link World}s.
+     * 
+     * @return The {@link SpawnProfileTable}.
+     */
+    @NotNull
+    public SpawnProfileTable getSpawnProfileTable() {
+        return this.spawnProfileTable;
+    }
+    
+    /**
+     * Gets the default {@link SpawnDecider}, which applies to any world and
+     * biome without a profile.
+     * 
+     * @return The default {@link SpawnDecider}.
+     */
+    @NotNull
+    public SpawnDecider getSpawnDecider() {
+        return this.getSpawnProfiles().getDefaultDecider();
+    }
+    
+    /**
+     * Gets the {@link DenialCacheSettings}.
+     * 
+     * @return The {@link DenialCacheSettings}.
+     */
+    @NotNull
+    public DenialCacheSettings getDenialCacheSettings() {
+        return this.denialCacheSettings;
+    }
+    
+    /**
+     * Gets the {@link SpawnerCacheSettings}.
+     * 
+     * @return The {@link SpawnerCacheSettings}.
+     */
+    @NotNull
+    public SpawnerCacheSettings getSpawnerCacheSettings() {
+        return this.spawnerCacheSettings;
+    }
+    
+    /**
+     * Gets the {@link DecisionLogSettings}.
+     * 
+     * @return The {@link DecisionLogSettings}.
+     */
+    @NotNull
+    public DecisionLogSettings getDecisionLogSettings() {
+        return this.decisionLogSettings;
+    }
+    
+    /**
+     * Gets the {@link SpawnRecorderSettings}.
+     * 
+     * @return The {@link SpawnRecorderSettings}.
+     */
+    @NotNull
+    public SpawnRecorderSettings getSpawnRecorderSettings() {
+        return this.spawnRecorderSettings;
+    }
+    
+    /**
+     * Gets the {@link MobSweeperSettings}.
+     * 
+     * @return The {@link MobSweeperSettings}.
+     */
+    @NotNull
+    public MobSweeperSettings getMobSweeperSettings() {
+        return this.mobSweeperSettings;
+    }
+    
+    /**
+     * Gets the {@link StatsHistorySettings}.
+     * 
+     * @return The {@link StatsHistorySettings}.
+     */
+    @NotNull
+    public StatsHistorySettings getStatsHistorySettings() {
+        return this.statsHistorySettings;
+    }
+    
+    /**
+     * Gets the {@link TickBudgetSettings}.
+     * 
+     * @return The {@link TickBudgetSettings}.
+     */
+    @NotNull
+    public TickBudgetSettings getTickBudgetSettings() {
+        return this.tickBudgetSettings;
+    }
+}
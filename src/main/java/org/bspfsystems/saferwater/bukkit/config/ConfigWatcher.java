@@ -0,0 +1,258 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents a watcher of the configuration files in the plugin data folder,
+ * which reloads the configuration when the active file's content changes.
+ * <p>
+ * The data folder is watched with a {@link WatchService} on a dedicated
+ * daemon thread. A burst of events (such as a file being rewritten in several
+ * steps) is debounced until the configuration files have been quiet for a
+ * short period, and the reload is skipped entirely if the content hash of
+ * the active file has not changed since it was last seen. Events for other
+ * files in the folder (such as the decision log, which may be written
+ * continuously) neither start nor extend the debounce period.
+ */
+public final class ConfigWatcher {
+    
+    private static final String PREFERRED_FILE_NAME = "saferwater.yml";
+    private static final String DEFAULT_FILE_NAME = "config.yml";
+    private static final long DEBOUNCE_MILLIS = 500L;
+    
+    private final File directory;
+    private final Logger logger;
+    private final Runnable reload;
+    
+    private WatchService watchService;
+    private Thread watcherThread;
+    private byte[] lastHash;
+    
+    /**
+     * Constructs a new {@link ConfigWatcher}.
+     * 
+     * @param directory The plugin data folder that holds the configuration
+     *                  files.
+     * @param logger The {@link Logger} that any errors are logged to.
+     * @param reload The task that reloads the configuration. This is run on
+     *               the watcher thread.
+     */
+    public ConfigWatcher(@NotNull final File directory, @NotNull final Logger logger, @NotNull final Runnable reload) {
+        this.directory = directory;
+        this.logger = logger;
+        this.reload = reload;
+    }
+    
+    /**
+     * Checks if this {@link ConfigWatcher} is currently watching the data
+     * folder.
+     * 
+     * @return {@code true} if this {@link ConfigWatcher} is running,
+     *         {@code false} otherwise.
+     */
+    public synchronized boolean isRunning() {
+        return this.watcherThread != null;
+    }
+    
+    /**
+     * Starts watching the data folder. The current content of the active
+     * configuration file is taken as already loaded.
+     */
+    public synchronized void start() {
+        
+        if (this.watcherThread != null) {
+            return;
+        }
+        
+        try {
+            this.watchService = this.directory.toPath().getFileSystem().newWatchService();
+            this.directory.toPath().register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            this.logger.log(Level.WARNING, "Unable to watch the SaferWater configuration directory at " + this.directory.getPath());
+            this.logger.log(Level.WARNING, "Configuration changes will need to be reloaded manually.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            this.close(this.watchService);
+            this.watchService = null;
+            return;
+        }
+        
+        this.lastHash = this.hashActiveFile();
+        final WatchService watchService = this.watchService;
+        this.watcherThread = new Thread(() -> this.run(watchService), "SaferWater Config Watcher");
+        this.watcherThread.setDaemon(true);
+        this.watcherThread.start();
+    }
+    
+    /**
+     * Stops watching the data folder, waiting briefly for the watcher thread
+     * to exit.
+     */
+    public void stop() {
+        
+        final Thread thread;
+        synchronized (this) {
+            if (this.watcherThread == null) {
+                return;
+            }
+            this.close(this.watchService);
+            thread = this.watcherThread;
+            this.watchService = null;
+            this.watcherThread = null;
+        }
+        
+        if (thread != Thread.currentThread()) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(1L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Runs the watcher thread until the given {@link WatchService} is
+     * closed.
+     * <p>
+     * Once an event for a configuration file arrives, events keep being
+     * drained until no further event for a configuration file has arrived
+     * for {@link #DEBOUNCE_MILLIS}. Events for other files are drained
+     * without pushing that deadline back, so they cannot postpone a reload.
+     * 
+     * @param watchService The {@link WatchService} to take events from.
+     */
+    private void run(@NotNull final WatchService watchService) {
+        
+        try {
+            while (true) {
+                
+                WatchKey key = watchService.take();
+                if (!this.drain(key)) {
+                    continue;
+                }
+                
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DEBOUNCE_MILLIS);
+                long remaining;
+                while ((remaining = deadline - System.nanoTime()) > 0L) {
+                    key = watchService.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (key != null && this.drain(key)) {
+                        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DEBOUNCE_MILLIS);
+                    }
+                }
+                
+                final byte[] hash = this.hashActiveFile();
+                if (hash == null || Arrays.equals(hash, this.lastHash)) {
+                    continue;
+                }
+                this.lastHash = hash;
+                
+                this.logger.log(Level.INFO, "SaferWater configuration file changed, reloading.");
+                try {
+                    this.reload.run();
+                } catch (RuntimeException e) {
+                    this.logger.log(Level.WARNING, "Unable to reload the changed SaferWater configuration.", e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped.
+        }
+    }
+    
+    /**
+     * Drains the events of the given {@link WatchKey}, and resets it.
+     * 
+     * @param key The {@link WatchKey}.
+     * @return {@code true} if any event was for a configuration file (or may
+     *         have been, if events were lost), {@code false} otherwise.
+     */
+    private boolean drain(@NotNull final WatchKey key) {
+        
+        boolean relevant = false;
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                relevant = true;
+                continue;
+            }
+            final Object context = event.context();
+            if (context instanceof Path) {
+                final String fileName = ((Path) context).getFileName().toString();
+                relevant |= fileName.equals(PREFERRED_FILE_NAME) || fileName.equals(DEFAULT_FILE_NAME);
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+    
+    /**
+     * Hashes the content of the active configuration file, which is
+     * {@code saferwater.yml} if it exists, and {@code config.yml} otherwise.
+     * 
+     * @return The SHA-256 hash of the active configuration file, or
+     *         {@code null} if it cannot be read.
+     */
+    @Nullable
+    private byte[] hashActiveFile() {
+        
+        File file = new File(this.directory, PREFERRED_FILE_NAME);
+        if (!file.isFile()) {
+            file = new File(this.directory, DEFAULT_FILE_NAME);
+        }
+        
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()));
+        } catch (IOException | SecurityException | NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Closes the given {@link WatchService}, logging any error.
+     * 
+     * @param watchService The {@link WatchService} to close, if any.
+     */
+    private void close(@Nullable final WatchService watchService) {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            this.logger.log(Level.WARNING, "Unable to close the SaferWater configuration watcher.", e);
+        }
+    }
+}
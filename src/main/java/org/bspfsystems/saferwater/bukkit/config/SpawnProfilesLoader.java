@@ -0,0 +1,312 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bspfsystems.saferwater.bukkit.spawn.LightSource;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnProfile;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnProfiles;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnRules;
+import org.bukkit.block.Biome;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Creature;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Loads the {@link SpawnProfiles} from the general plugin settings, the spawn
+ * rules, and the profiles of a SaferWater configuration.
+ * <p>
+ * This is shared by the plugin and the offline tools, so it does not depend
+ * on a running server. Any invalid setting is logged, and reported to the
+ * {@link CommandSender} that triggered the reload (if any). If defaults are
+ * used (such as when the plugin is first enabled, and there is no current
+ * configuration to keep), its default or inherited value is used instead.
+ * Otherwise, the load fails as a whole, so that the current configuration
+ * remains active.
+ * <p>
+ * Mob and {@link Biome} names that do not exist in the running server are
+ * not invalid settings, as they may exist in other server versions. They
+ * are skipped, and reported in the same way.
+ */
+public final class SpawnProfilesLoader {
+    
+    private final Logger logger;
+    private final CommandSender sender;
+    private final boolean command;
+    private final boolean useDefaults;
+    private boolean valid;
+    
+    /**
+     * Constructs a new {@link SpawnProfilesLoader}.
+     * 
+     * @param logger The {@link Logger} that any invalid settings are logged
+     *               to.
+     * @param sender The {@link CommandSender} that triggered the configuration
+     *               reload, or {@code null} if there is none.
+     * @param command If {@code true}, error messages will be displayed to the
+     *                {@link CommandSender} if any error occurs. This must be
+     *                {@code false} if there is no {@link CommandSender}.
+     * @param useDefaults If {@code true}, the default or inherited value of
+     *                    any invalid setting is used instead. If
+     *                    {@code false}, any invalid setting fails the load.
+     */
+    public SpawnProfilesLoader(@NotNull final Logger logger, @Nullable final CommandSender sender, final boolean command, final boolean useDefaults) {
+        this.logger = logger;
+        this.sender = sender;
+        this.command = command && sender != null;
+        this.useDefaults = useDefaults;
+        this.valid = true;
+    }
+    
+    /**
+     * Loads and compiles the {@link SpawnProfiles} of the given
+     * configuration.
+     * 
+     * @param config The root {@link ConfigurationSection} of the
+     *               configuration.
+     * @return The compiled {@link SpawnProfiles}, or {@code null} if any
+     *         setting is invalid and defaults are not used.
+     */
+    @Nullable
+    public SpawnProfiles load(@NotNull final ConfigurationSection config) {
+        
+        this.valid = true;
+        final int maxScanDepth;
+        int rawMaxScanDepth = config.getInt("max_scan_depth", 0);
+        if (rawMaxScanDepth < 0) {
+            this.logger.log(Level.WARNING, "Invalid SaferWater maximum scan depth: " + rawMaxScanDepth);
+            this.reportInvalid("Will use the default depth (0, unlimited).");
+            rawMaxScanDepth = 0;
+        }
+        maxScanDepth = rawMaxScanDepth;
+        
+        final int minLightLevel;
+        int rawMinLightLevel = config.getInt("min_light_level", SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL);
+        if (rawMinLightLevel < 0 || rawMinLightLevel > SpawnDecider.MAX_LIGHT_LEVEL) {
+            this.logger.log(Level.WARNING, "Invalid SaferWater minimum light level: " + rawMinLightLevel);
+            this.reportInvalid("Will use the default level (" + SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL + ").");
+            rawMinLightLevel = SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL;
+        }
+        minLightLevel = rawMinLightLevel;
+        
+        SpawnRules rawSpawnRules;
+        try {
+            final Set<SpawnReason> reasons = EnumSet.allOf(SpawnReason.class);
+            final List<String> reasonNames = config.getStringList("spawn_rules.spawn_reasons");
+            if (!reasonNames.isEmpty()) {
+                reasons.clear();
+                for (final String reasonName : reasonNames) {
+                    reasons.add(SpawnReason.valueOf(reasonName.toUpperCase()));
+                }
+            }
+            if (config.isList("spawn_rules.exempt_spawn_reasons")) {
+                for (final String reasonName : config.getStringList("spawn_rules.exempt_spawn_reasons")) {
+                    reasons.remove(SpawnReason.valueOf(reasonName.toUpperCase()));
+                }
+            } else {
+                reasons.remove(SpawnReason.DROWNED);
+            }
+            rawSpawnRules = new SpawnRules(
+                    reasons,
+                    this.loadMobs(config.getStringList("spawn_rules.exempt_mobs"), true),
+                    config.getInt("spawn_rules.min_y", SpawnRules.DEFAULT.getMinY()),
+                    config.getInt("spawn_rules.max_y", SpawnRules.DEFAULT.getMaxY()),
+                    LightSource.valueOf(config.getString("spawn_rules.light_source", SpawnRules.DEFAULT.getLightSource().name()).toUpperCase()),
+                    config.getInt("spawn_rules.min_water_depth", SpawnRules.DEFAULT.getMinWaterDepth())
+            );
+        } catch (NullPointerException | IllegalArgumentException e) {
+            this.logger.log(Level.WARNING, "Unable to load the SaferWater spawn rules.");
+            this.reportInvalid("Will use the default rules (every spawn reason except DROWNED, at any Y and depth, with the combined light level).");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            if (this.command) {
+                this.sender.sendMessage("§r§cAn error has occurred while reloading the SaferWater spawn rules." + (this.useDefaults ? " The default rules will be used." : "") + "§r");
+            }
+            rawSpawnRules = SpawnRules.DEFAULT;
+        }
+        final SpawnRules spawnRules = rawSpawnRules;
+        
+        final List<Class<? extends Creature>> disallowedMobs = this.loadMobs(config.getStringList("disallowed_mobs"), false);
+        
+        final Map<Biome, SpawnProfile> biomeProfiles = this.loadBiomeProfiles(config.getConfigurationSection("biome_profiles"), "biome_profiles");
+        final Map<String, SpawnProfile> worldProfiles = new HashMap<String, SpawnProfile>();
+        final ConfigurationSection worldProfilesSection = config.getConfigurationSection("world_profiles");
+        if (worldProfilesSection != null) {
+            for (final String worldName : worldProfilesSection.getKeys(false)) {
+                final ConfigurationSection worldProfileSection = worldProfilesSection.getConfigurationSection(worldName);
+                if (worldProfileSection == null) {
+                    this.logger.log(Level.WARNING, "Invalid SaferWater world profile: world_profiles." + worldName);
+                    this.reportInvalid("Will not use a profile for world " + worldName + ".");
+                    continue;
+                }
+                final String path = "world_profiles." + worldName;
+                worldProfiles.put(worldName, this.loadProfile(worldProfileSection, path, this.loadBiomeProfiles(worldProfileSection.getConfigurationSection("biome_profiles"), path + ".biome_profiles")));
+            }
+        }
+        
+        if (!this.valid) {
+            return null;
+        }
+        final SpawnDecider spawnDecider = new SpawnDecider(spawnRules.compileFilter(disallowedMobs), spawnRules, maxScanDepth, minLightLevel);
+        return SpawnProfiles.compile(spawnDecider, biomeProfiles, worldProfiles);
+    }
+    
+    /**
+     * Reports that the setting that was just logged could not be loaded. If
+     * defaults are used, the given fallback is logged, and the caller uses it
+     * instead. Otherwise, the load is failed.
+     * 
+     * @param fallback The message that describes the fallback.
+     */
+    private void reportInvalid(@NotNull final String fallback) {
+        if (this.useDefaults) {
+            this.logger.log(Level.WARNING, fallback);
+        } else {
+            this.valid = false;
+        }
+    }
+    
+    /**
+     * Resolves the given mob names into {@link Creature} {@link Class}es in
+     * {@code org.bukkit.entity}. Any names that cannot be resolved are skipped,
+     * and reported to the given {@link CommandSender} if this was triggered
+     * via {@link Command}.
+     * 
+     * @param mobNames The configured mob names.
+     * @param exempt If {@code true}, the mobs are exempt from the water spawn
+     *               checks, rather than disallowed.
+     * @return The resolved {@link Creature} {@link Class}es.
+     */
+    @NotNull
+    private List<Class<? extends Creature>> loadMobs(@NotNull final List<String> mobNames, final boolean exempt) {
+        
+        final List<Class<? extends Creature>> mobs = new ArrayList<Class<? extends Creature>>();
+        for (final String mob : mobNames) {
+            try {
+                final Class<?> clazz = Class.forName("org.bukkit.entity." + mob);
+                if (!Creature.class.isAssignableFrom(clazz)) {
+                    this.logger.log(Level.WARNING, "Class " + clazz.getName() + " is not of type " + Creature.class.getName() + ", cannot add to " + (exempt ? "exempt mobs" : "denied spawns") + " list.");
+                    continue;
+                }
+                mobs.add(clazz.asSubclass(Creature.class));
+            } catch (LinkageError | ClassNotFoundException | NullPointerException | ClassCastException e) {
+                this.logger.log(Level.WARNING, "Unable to convert " + mob + " to a Class in org.bukkit.entity.");
+                this.logger.log(Level.WARNING, "Will not use " + mob + " as " + (exempt ? "an exempt" : "a disallowed") + " mob.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                if (this.command) {
+                    this.sender.sendMessage("§r§cUnknown mob in the SaferWater configuration:§r §b" + mob + (exempt ? "§r§c. It will not be exempt from water spawn checks.§r" : "§r§c. It will not be denied water spawns.§r"));
+                }
+            }
+        }
+        
+        return mobs;
+    }
+    
+    /**
+     * Loads the {@link Biome} {@link SpawnProfile}s in the given
+     * {@link ConfigurationSection}. Any unknown {@link Biome}s are skipped,
+     * and reported to the given {@link CommandSender} if this was triggered
+     * via {@link Command}.
+     * 
+     * @param section The {@link ConfigurationSection} of the profiles, if any.
+     * @param path The path of the {@link ConfigurationSection}, for logging.
+     * @return The {@link SpawnProfile}s, by {@link Biome}.
+     */
+    @NotNull
+    private Map<Biome, SpawnProfile> loadBiomeProfiles(@Nullable final ConfigurationSection section, @NotNull final String path) {
+        
+        final Map<Biome, SpawnProfile> biomeProfiles = new EnumMap<Biome, SpawnProfile>(Biome.class);
+        if (section == null) {
+            return biomeProfiles;
+        }
+        
+        for (final String biomeName : section.getKeys(false)) {
+            
+            final Biome biome;
+            try {
+                biome = Biome.valueOf(biomeName.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                this.logger.log(Level.WARNING, "Unknown biome in the SaferWater configuration: " + path + "." + biomeName);
+                this.logger.log(Level.WARNING, "Will not use a profile for biome " + biomeName + ".");
+                if (this.command) {
+                    this.sender.sendMessage("§r§cUnknown biome in the SaferWater configuration:§r §b" + biomeName + "§r§c. Its profile will not be used.§r");
+                }
+                continue;
+            }
+            
+            final ConfigurationSection biomeSection = section.getConfigurationSection(biomeName);
+            if (biomeSection == null) {
+                this.logger.log(Level.WARNING, "Invalid SaferWater biome profile: " + path + "." + biomeName);
+                this.reportInvalid("Will not use a profile for biome " + biomeName + ".");
+                continue;
+            }
+            biomeProfiles.put(biome, this.loadProfile(biomeSection, path + "." + biomeName, Collections.emptyMap()));
+        }
+        
+        return biomeProfiles;
+    }
+    
+    /**
+     * Loads a single {@link SpawnProfile} from the given
+     * {@link ConfigurationSection}. Any setting that is not present, or is
+     * invalid, is inherited.
+     * 
+     * @param section The {@link ConfigurationSection} of the profile.
+     * @param path The path of the {@link ConfigurationSection}, for logging.
+     * @param biomeProfiles The {@link Biome} {@link SpawnProfile}s to layer on
+     *                      top of the profile.
+     * @return The {@link SpawnProfile}.
+     */
+    @NotNull
+    private SpawnProfile loadProfile(@NotNull final ConfigurationSection section, @NotNull final String path, @NotNull final Map<Biome, SpawnProfile> biomeProfiles) {
+        
+        final List<Class<? extends Creature>> mobs = section.isList("disallowed_mobs") ? this.loadMobs(section.getStringList("disallowed_mobs"), false) : null;
+        
+        int maxScanDepth = section.getInt("max_scan_depth", SpawnProfile.INHERIT);
+        if (maxScanDepth < SpawnProfile.INHERIT) {
+            this.logger.log(Level.WARNING, "Invalid SaferWater maximum scan depth in " + path + ": " + maxScanDepth);
+            this.reportInvalid("Will inherit the maximum scan depth.");
+            maxScanDepth = SpawnProfile.INHERIT;
+        }
+        
+        int minLightLevel = section.getInt("min_light_level", SpawnProfile.INHERIT);
+        if (minLightLevel < SpawnProfile.INHERIT || minLightLevel > SpawnDecider.MAX_LIGHT_LEVEL) {
+            this.logger.log(Level.WARNING, "Invalid SaferWater minimum light level in " + path + ": " + minLightLevel);
+            this.reportInvalid("Will inherit the minimum light level.");
+            minLightLevel = SpawnProfile.INHERIT;
+        }
+        
+        return new SpawnProfile(mobs, maxScanDepth, minLightLevel, biomeProfiles);
+    }
+}
@@ -0,0 +1,99 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a Java Flight Recorder {@link Event} for a configuration reload
+ * that was published, with the time spent in each of its phases.
+ * <p>
+ * The configuration is parsed and resolved off of the server threads, and
+ * published on the main server thread (or the global region of a
+ * region-threaded server), so the duration of the {@link Event} includes the
+ * wait for the next tick in between. Every published reload is recorded by
+ * default, without a stack trace.
+ */
+@Name("org.bspfsystems.saferwater.ConfigReload")
+@Label("Configuration Reload")
+@Description("A reload of the SaferWater configuration.")
+@Category("SaferWater")
+@StackTrace(false)
+@Threshold("0 ms")
+public final class ConfigReloadEvent extends Event {
+    
+    @Label("Version")
+    private long version;
+    
+    @Label("Parse Time")
+    @Description("The time spent reading and parsing the configuration file.")
+    @Timespan(Timespan.NANOSECONDS)
+    private long parseNanos;
+    
+    @Label("Resolve Time")
+    @Description("The time spent resolving the parsed configuration into spawn profiles and settings.")
+    @Timespan(Timespan.NANOSECONDS)
+    private long resolveNanos;
+    
+    @Label("Publish Time")
+    @Description("The time spent publishing the resolved configuration on the server thread.")
+    @Timespan(Timespan.NANOSECONDS)
+    private long publishNanos;
+    
+    /**
+     * Constructs a new {@link ConfigReloadEvent}, to be started with
+     * {@link #begin()} before the configuration file is read.
+     */
+    public ConfigReloadEvent() {
+        super();
+    }
+    
+    /**
+     * Ends this {@link ConfigReloadEvent}, and commits it with the given
+     * phase timings if it should be recorded.
+     * 
+     * @param version The version of the published configuration.
+     * @param parseNanos The time spent parsing, in nanoseconds.
+     * @param resolveNanos The time spent resolving, in nanoseconds.
+     * @param publishNanos The time spent publishing, in nanoseconds.
+     */
+    public void commitReload(final long version, final long parseNanos, final long resolveNanos, final long publishNanos) {
+        
+        this.end();
+        if (!this.shouldCommit()) {
+            return;
+        }
+        
+        this.version = version;
+        this.parseNanos = parseNanos;
+        this.resolveNanos = resolveNanos;
+        this.publishNanos = publishNanos;
+        this.commit();
+    }
+}
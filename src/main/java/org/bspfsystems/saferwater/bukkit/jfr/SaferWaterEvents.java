@@ -0,0 +1,94 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.jfr;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents the registration of the SaferWater Java Flight Recorder
+ * {@link Event}s.
+ * <p>
+ * The {@link Event}s are registered when the plugin is enabled, so that they
+ * appear in the recording settings straight away, and unregistered when it
+ * is disabled, so that a reloaded plugin does not leave its old
+ * {@link Event} classes behind. If the runtime does not include the Java
+ * Flight Recorder, no {@link Event}s are created at all, and the
+ * {@link Event} classes are never loaded.
+ */
+public final class SaferWaterEvents {
+    
+    private static volatile boolean registered;
+    
+    /**
+     * Prevents instantiation of this utility class.
+     */
+    private SaferWaterEvents() {
+        throw new UnsupportedOperationException("SaferWaterEvents cannot be instantiated.");
+    }
+    
+    /**
+     * Registers the SaferWater {@link Event}s with the Java Flight Recorder.
+     * 
+     * @param logger The {@link Logger} to report an unavailable Java Flight
+     *               Recorder to.
+     */
+    public static void register(@NotNull final Logger logger) {
+        try {
+            FlightRecorder.register(SpawnDecisionEvent.class);
+            FlightRecorder.register(ConfigReloadEvent.class);
+            SaferWaterEvents.registered = true;
+        } catch (LinkageError | SecurityException | IllegalStateException e) {
+            logger.log(Level.INFO, "The Java Flight Recorder is not available; SaferWater events will not be recorded.");
+            logger.log(Level.FINE, e.getClass().getSimpleName() + " thrown.", e);
+        }
+    }
+    
+    /**
+     * Unregisters the SaferWater {@link Event}s, if they were registered.
+     */
+    public static void unregister() {
+        if (!SaferWaterEvents.registered) {
+            return;
+        }
+        SaferWaterEvents.registered = false;
+        try {
+            FlightRecorder.unregister(SpawnDecisionEvent.class);
+            FlightRecorder.unregister(ConfigReloadEvent.class);
+        } catch (LinkageError | SecurityException | IllegalStateException e) {
+            // The events can no longer be recorded either way.
+        }
+    }
+    
+    /**
+     * Checks if the SaferWater {@link Event}s are registered, and may be
+     * created.
+     * 
+     * @return {@code true} if the {@link Event}s are registered,
+     *         {@code false} otherwise.
+     */
+    public static boolean isRegistered() {
+        return SaferWaterEvents.registered;
+    }
+}
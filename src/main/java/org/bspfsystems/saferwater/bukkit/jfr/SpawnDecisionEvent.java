@@ -0,0 +1,169 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.stats.SpawnStats;
+import org.bukkit.World;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a Java Flight Recorder {@link Event} for the decision of a
+ * single filtered spawn, so that slow decisions in a recording can be traced
+ * back to the column that they read.
+ * <p>
+ * By default, only decisions that take at least 100 microseconds are
+ * recorded, without a stack trace. Both can be changed in the recording
+ * settings, using the name of the {@link Event}.
+ */
+@Name("org.bspfsystems.saferwater.SpawnDecision")
+@Label("Spawn Decision")
+@Description("The decision of a water spawn of a disallowed mob.")
+@Category("SaferWater")
+@StackTrace(false)
+@Threshold("100 us")
+public final class SpawnDecisionEvent extends Event {
+    
+    /**
+     * The spawn was decided from the floor of its water.
+     */
+    public static final String FLOOR = "FLOOR";
+    
+    /**
+     * The spawn was decided from the {@code DenialCache}.
+     */
+    public static final String DENIAL_CACHE = "DENIAL_CACHE";
+    
+    /**
+     * The spawn was decided from the {@code SpawnerCache}.
+     */
+    public static final String SPAWNER_CACHE = "SPAWNER_CACHE";
+    
+    /**
+     * The spawn was decided by the fallback of the {@code TickBudget}.
+     */
+    public static final String BUDGET_FALLBACK = "BUDGET_FALLBACK";
+    
+    @Label("Entity Type")
+    private String entityType;
+    
+    @Label("Spawn Reason")
+    private String spawnReason;
+    
+    @Label("World")
+    private String world;
+    
+    @Label("X")
+    private int x;
+    
+    @Label("Y")
+    private int y;
+    
+    @Label("Z")
+    private int z;
+    
+    @Label("Decided By")
+    @Description("FLOOR, DENIAL_CACHE, SPAWNER_CACHE, or BUDGET_FALLBACK.")
+    private String decidedBy;
+    
+    @Label("Outcome")
+    @Description("DRY, ALLOWED, or DENIED.")
+    private String outcome;
+    
+    @Label("Floor Read")
+    @Description("Whether the floor of the water was read for the decision.")
+    private boolean floorRead;
+    
+    @Label("Floor Y")
+    private int floorY;
+    
+    @Label("Floor Depth")
+    @Description("The number of blocks from the spawn down to the floor of the water. This is not the number of blocks read, as an indexed floor is read without walking the column.")
+    private int floorDepth;
+    
+    @Label("Light Level")
+    private int lightLevel;
+    
+    /**
+     * Constructs a new {@link SpawnDecisionEvent}, to be started with
+     * {@link #begin()} before the spawn is decided.
+     */
+    public SpawnDecisionEvent() {
+        super();
+    }
+    
+    /**
+     * Ends this {@link SpawnDecisionEvent}, and commits it with the given
+     * decision if it should be recorded.
+     * 
+     * @param entityType The {@link EntityType} being spawned.
+     * @param spawnReason The {@link SpawnReason}.
+     * @param world The {@link World} of the spawn.
+     * @param x The block X coordinate of the spawn.
+     * @param y The block Y coordinate of the spawn.
+     * @param z The block Z coordinate of the spawn.
+     * @param decidedBy What the spawn was decided by, such as
+     *                  {@link #FLOOR}.
+     * @param category The {@link SpawnStats} category of the spawn.
+     * @param decision The packed decision from the {@link SpawnDecider}, or
+     *                 {@code 0} if the floor was not read.
+     */
+    public void commitDecision(@NotNull final EntityType entityType, @NotNull final SpawnReason spawnReason, @NotNull final World world, final int x, final int y, final int z, @NotNull final String decidedBy, final int category, final long decision) {
+        
+        this.end();
+        if (!this.shouldCommit()) {
+            return;
+        }
+        
+        this.entityType = entityType.name();
+        this.spawnReason = spawnReason.name();
+        this.world = world.getName();
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.decidedBy = decidedBy;
+        if (category == SpawnStats.DENIED) {
+            this.outcome = "DENIED";
+        } else if (category == SpawnStats.ALLOWED) {
+            this.outcome = "ALLOWED";
+        } else {
+            this.outcome = "DRY";
+        }
+        
+        final int decisionOutcome = SpawnDecider.getOutcome(decision);
+        this.floorRead = decisionOutcome == SpawnDecider.ALLOWED || decisionOutcome == SpawnDecider.DENIED;
+        if (this.floorRead) {
+            this.floorY = SpawnDecider.getFloorY(decision);
+            this.floorDepth = y - this.floorY;
+            this.lightLevel = SpawnDecider.getLightLevel(decision);
+        }
+        this.commit();
+    }
+}
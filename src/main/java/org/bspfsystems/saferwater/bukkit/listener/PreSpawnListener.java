@@ -0,0 +1,219 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.listener;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bukkit.Location;
+import org.bukkit.block.CreatureSpawner;
+import org.bukkit.entity.Creature;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.CreatureSpawnEvent;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents a {@link Listener} for the pre-spawn {@link Event} of servers
+ * that provide one (such as Paper's {@code PreCreatureSpawnEvent}), which is
+ * called before the {@link Creature} is constructed.
+ * <p>
+ * Denying a spawn here saves the server from allocating and initializing a
+ * {@link Creature} that would only be discarded by the
+ * {@link CreatureSpawnEvent}. The pre-spawn {@link Event} is not part of the
+ * Bukkit API, so it is found and read reflectively. On servers without it,
+ * no {@link PreSpawnListener} is created, and every spawn is decided by the
+ * {@link CreatureSpawnEvent} as before.
+ */
+public final class PreSpawnListener implements Listener, EventExecutor {
+    
+    private static final String EVENT_CLASS_NAME = "com.destroystokyo.paper.event.entity.PreCreatureSpawnEvent";
+    private static final String SPAWNER_EVENT_CLASS_NAME = "com.destroystokyo.paper.event.entity.PreSpawnerSpawnEvent";
+    
+    private final SaferWaterListener saferWaterListener;
+    private final Class<? extends Event> eventClass;
+    private final MethodHandle getType;
+    private final MethodHandle getReason;
+    private final MethodHandle getSpawnLocation;
+    private final Class<? extends Event> spawnerEventClass;
+    private final MethodHandle getSpawnerLocation;
+    
+    /**
+     * Constructs a new {@link PreSpawnListener}.
+     * 
+     * @param saferWaterListener The {@link SaferWaterListener} that decides
+     *                           the spawns.
+     * @param eventClass The pre-spawn {@link Event} {@link Class}.
+     * @param getType The accessor of the {@link EntityType}.
+     * @param getReason The accessor of the {@link SpawnReason}.
+     * @param getSpawnLocation The accessor of the {@link Location}.
+     * @param spawnerEventClass The pre-spawn {@link Event} {@link Class} of
+     *                          spawns from a {@link CreatureSpawner}, or
+     *                          {@code null}.
+     * @param getSpawnerLocation The accessor of the {@link Location} of the
+     *                           {@link CreatureSpawner}, or {@code null}.
+     */
+    private PreSpawnListener(@NotNull final SaferWaterListener saferWaterListener, @NotNull final Class<? extends Event> eventClass, @NotNull final MethodHandle getType, @NotNull final MethodHandle getReason, @NotNull final MethodHandle getSpawnLocation, @Nullable final Class<? extends Event> spawnerEventClass, @Nullable final MethodHandle getSpawnerLocation) {
+        this.saferWaterListener = saferWaterListener;
+        this.eventClass = eventClass;
+        this.getType = getType;
+        this.getReason = getReason;
+        this.getSpawnLocation = getSpawnLocation;
+        this.spawnerEventClass = spawnerEventClass;
+        this.getSpawnerLocation = getSpawnerLocation;
+    }
+    
+    /**
+     * Creates a new {@link PreSpawnListener}, if the server provides a
+     * pre-spawn {@link Event}.
+     * 
+     * @param saferWaterListener The {@link SaferWaterListener} that decides
+     *                           the spawns.
+     * @param logger The {@link Logger} that any errors are logged to.
+     * @return The new {@link PreSpawnListener}, or {@code null} if the server
+     *         does not provide a usable pre-spawn {@link Event}.
+     */
+    @Nullable
+    public static PreSpawnListener create(@NotNull final SaferWaterListener saferWaterListener, @NotNull final Logger logger) {
+        
+        final Class<? extends Event> eventClass;
+        try {
+            eventClass = Class.forName(EVENT_CLASS_NAME).asSubclass(Event.class);
+        } catch (ClassNotFoundException | LinkageError | ClassCastException e) {
+            return null;
+        }
+        
+        if (!Cancellable.class.isAssignableFrom(eventClass)) {
+            logger.log(Level.WARNING, "The pre-spawn event " + EVENT_CLASS_NAME + " cannot be cancelled.");
+            logger.log(Level.WARNING, "Water spawns will only be denied once their mobs have been created.");
+            return null;
+        }
+        
+        final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        Class<? extends Event> spawnerEventClass;
+        MethodHandle getSpawnerLocation;
+        try {
+            spawnerEventClass = Class.forName(SPAWNER_EVENT_CLASS_NAME).asSubclass(eventClass);
+            getSpawnerLocation = PreSpawnListener.accessor(lookup, spawnerEventClass, "getSpawnerLocation", Location.class);
+        } catch (ClassNotFoundException | LinkageError | ClassCastException | NoSuchMethodException | IllegalAccessException e) {
+            spawnerEventClass = null;
+            getSpawnerLocation = null;
+        }
+        
+        try {
+            return new PreSpawnListener(
+                    saferWaterListener,
+                    eventClass,
+                    PreSpawnListener.accessor(lookup, eventClass, "getType", EntityType.class),
+                    PreSpawnListener.accessor(lookup, eventClass, "getReason", SpawnReason.class),
+                    PreSpawnListener.accessor(lookup, eventClass, "getSpawnLocation", Location.class),
+                    spawnerEventClass,
+                    getSpawnerLocation
+            );
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            logger.log(Level.WARNING, "Unable to read the pre-spawn event " + EVENT_CLASS_NAME + ".");
+            logger.log(Level.WARNING, "Water spawns will only be denied once their mobs have been created.");
+            logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            return null;
+        }
+    }
+    
+    /**
+     * Finds a public, no-argument accessor of the given {@link Event}
+     * {@link Class}, adapted to take any {@link Event}.
+     * 
+     * @param lookup The {@link MethodHandles.Lookup} to find the accessor
+     *               with.
+     * @param eventClass The {@link Event} {@link Class}.
+     * @param name The name of the accessor.
+     * @param returnType The return type of the accessor.
+     * @return The {@link MethodHandle} of the accessor.
+     * @throws NoSuchMethodException If the accessor does not exist.
+     * @throws IllegalAccessException If the accessor is not public.
+     */
+    @NotNull
+    private static MethodHandle accessor(@NotNull final MethodHandles.Lookup lookup, @NotNull final Class<? extends Event> eventClass, @NotNull final String name, @NotNull final Class<?> returnType) throws NoSuchMethodException, IllegalAccessException {
+        return lookup.findVirtual(eventClass, name, MethodType.methodType(returnType)).asType(MethodType.methodType(returnType, Event.class));
+    }
+    
+    /**
+     * Registers this {@link PreSpawnListener} for the pre-spawn
+     * {@link Event}, at the same {@link EventPriority} as the
+     * {@link CreatureSpawnEvent} handler.
+     * 
+     * @param plugin The {@link Plugin} to register this
+     *               {@link PreSpawnListener} to.
+     */
+    public void register(@NotNull final Plugin plugin) {
+        plugin.getServer().getPluginManager().registerEvent(this.eventClass, this, EventPriority.HIGHEST, this, plugin, true);
+    }
+    
+    /**
+     * Decides a spawn from the pre-spawn {@link Event}, cancelling it if it is
+     * denied.
+     * <p>
+     * If the spawn is from a {@link CreatureSpawner}, and the server provides
+     * its {@link Location}, the {@link Location} is passed on so that the
+     * outcome can be cached for the {@link CreatureSpawner}.
+     * 
+     * @param listener This {@link PreSpawnListener}.
+     * @param event The pre-spawn {@link Event}.
+     * @throws EventException If the {@link Event} cannot be read.
+     */
+    @Override
+    public void execute(@NotNull final Listener listener, @NotNull final Event event) throws EventException {
+        
+        if (!this.eventClass.isInstance(event)) {
+            return;
+        }
+        
+        final EntityType entityType;
+        final SpawnReason spawnReason;
+        final Location spawnLocation;
+        final Location spawnerLocation;
+        try {
+            entityType = (EntityType) this.getType.invokeExact(event);
+            spawnReason = (SpawnReason) this.getReason.invokeExact(event);
+            spawnLocation = (Location) this.getSpawnLocation.invokeExact(event);
+            if (this.spawnerEventClass != null && this.spawnerEventClass.isInstance(event)) {
+                spawnerLocation = (Location) this.getSpawnerLocation.invokeExact(event);
+            } else {
+                spawnerLocation = null;
+            }
+        } catch (Throwable e) {
+            throw new EventException(e);
+        }
+        
+        if (this.saferWaterListener.onPreCreatureSpawn(entityType, spawnReason, spawnLocation, spawnerLocation)) {
+            ((Cancellable) event).setCancelled(true);
+        }
+    }
+}
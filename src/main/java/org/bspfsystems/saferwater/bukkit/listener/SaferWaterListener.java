@@ -20,169 +20,521 @@
 
 package org.bspfsystems.saferwater.bukkit.listener;
 
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import org.bspfsystems.saferwater.bukkit.SaferWaterPlugin;
+import org.bspfsystems.saferwater.bukkit.budget.BudgetFallback;
+import org.bspfsystems.saferwater.bukkit.budget.TickBudget;
+import org.bspfsystems.saferwater.bukkit.cache.ChunkBatchCache;
+import org.bspfsystems.saferwater.bukkit.cache.DenialCache;
+import org.bspfsystems.saferwater.bukkit.cache.SpawnerCache;
 import org.bspfsystems.saferwater.bukkit.command.SaferWaterTabExecutor;
+import org.bspfsystems.saferwater.bukkit.jfr.SaferWaterEvents;
+import org.bspfsystems.saferwater.bukkit.jfr.SpawnDecisionEvent;
+import org.bspfsystems.saferwater.bukkit.log.DecisionLog;
+import org.bspfsystems.saferwater.bukkit.record.SpawnRecorder;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnFilter;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnProfileTable;
+import org.bspfsystems.saferwater.bukkit.stats.SpawnStats;
+import org.bspfsystems.saferwater.bukkit.water.BlockSource;
+import org.bspfsystems.saferwater.bukkit.water.ColumnScanner;
+import org.bspfsystems.saferwater.bukkit.water.WaterFloorIndex;
 import org.bukkit.Location;
-import org.bukkit.Material;
 import org.bukkit.World;
-import org.bukkit.block.Block;
-import org.bukkit.block.BlockFace;
-import org.bukkit.block.data.BlockData;
-import org.bukkit.block.data.Waterlogged;
+import org.bukkit.block.Biome;
+import org.bukkit.block.CreatureSpawner;
 import org.bukkit.command.Command;
 import org.bukkit.entity.Creature;
-import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.EntityType;
 import org.bukkit.event.Event;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.CreatureSpawnEvent;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.bukkit.event.entity.SpawnerSpawnEvent;
 import org.bukkit.event.player.PlayerCommandSendEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Represents a {@link Listener} for all SaferWater {@link Event}s.
  */
 public final class SaferWaterListener implements Listener {
     
-    private final SaferWaterPlugin saferWaterPlugin;
+    private final SpawnContext spawnContext;
+    private final ThreadLocal<PreSpawn> preSpawn;
+    
+    /**
+     * Represents the last spawn that was allowed by a pre-spawn event on a
+     * single thread.
+     * <p>
+     * The pre-spawn event and the {@link CreatureSpawnEvent} of a spawn are
+     * always called on the same thread, but on region-threaded servers, many
+     * spawns are decided in parallel, so each thread remembers its own.
+     */
+    private static final class PreSpawn {
+        
+        private EntityType type;
+        private SpawnReason reason;
+        private World world;
+        private int x;
+        private int y;
+        private int z;
+        
+        /**
+         * Checks if the remembered spawn is the given spawn.
+         * 
+         * @param entityType The {@link EntityType} being spawned.
+         * @param spawnReason The {@link SpawnReason}.
+         * @param spawnLocation The {@link Location} of the spawn.
+         * @return {@code true} if the spawn is remembered, {@code false}
+         *         otherwise.
+         */
+        private boolean isSpawn(@NotNull final EntityType entityType, @NotNull final SpawnReason spawnReason, @NotNull final Location spawnLocation) {
+            return this.type == entityType
+                    && this.reason == spawnReason
+                    && this.world == spawnLocation.getWorld()
+                    && this.x == spawnLocation.getBlockX()
+                    && this.y == spawnLocation.getBlockY()
+                    && this.z == spawnLocation.getBlockZ();
+        }
+        
+        /**
+         * Remembers the given spawn, replacing any other remembered spawn.
+         * 
+         * @param entityType The {@link EntityType} being spawned.
+         * @param spawnReason The {@link SpawnReason}.
+         * @param spawnLocation The {@link Location} of the spawn.
+         */
+        private void remember(@NotNull final EntityType entityType, @NotNull final SpawnReason spawnReason, @NotNull final Location spawnLocation) {
+            this.type = entityType;
+            this.reason = spawnReason;
+            this.world = spawnLocation.getWorld();
+            this.x = spawnLocation.getBlockX();
+            this.y = spawnLocation.getBlockY();
+            this.z = spawnLocation.getBlockZ();
+        }
+        
+        /**
+         * Forgets the remembered spawn.
+         */
+        private void clear() {
+            this.type = null;
+            this.reason = null;
+            this.world = null;
+        }
+    }
     
     /**
      * Constructs a new SaferWater {@link Listener}.
      * 
-     * @param saferWaterPlugin The {@link SaferWaterPlugin}.
+     * @param spawnContext The {@link SpawnContext} to decide spawns with,
+     *                     usually the
+     *                     {@link org.bspfsystems.saferwater.bukkit.SaferWaterPlugin}.
      */
-    public SaferWaterListener(@NotNull final SaferWaterPlugin saferWaterPlugin) {
-        this.saferWaterPlugin = saferWaterPlugin;
+    public SaferWaterListener(@NotNull final SpawnContext spawnContext) {
+        this.spawnContext = spawnContext;
+        this.preSpawn = ThreadLocal.withInitial(PreSpawn::new);
     }
     
     /**
      * Manages {@link Creature} spawning to determine if a spawn in water should
      * be allowed.
+     * <p>
+     * If the same spawn has already been allowed by
+     * {@link #onPreCreatureSpawn(EntityType, SpawnReason, Location, Location)}
+     * or {@link #onSpawnerSpawn(SpawnerSpawnEvent)}, it is not decided
+     * again.
      * 
      * @param event The {@link CreatureSpawnEvent}.
+     * @see #isDenied(EntityType, SpawnReason, Location, Location)
      */
     @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
     public void onCreatureSpawn(final CreatureSpawnEvent event) {
         
-        final LivingEntity livingEntity = event.getEntity();
-        if (!(livingEntity instanceof Creature)) {
-            return;
+        final EntityType entityType = event.getEntityType();
+        final SpawnReason spawnReason = event.getSpawnReason();
+        final Location spawnLocation = event.getLocation();
+        
+        final PreSpawn preSpawn = this.preSpawn.get();
+        if (preSpawn.type != null) {
+            final boolean preSpawnAllowed = preSpawn.isSpawn(entityType, spawnReason, spawnLocation);
+            preSpawn.clear();
+            if (preSpawnAllowed) {
+                return;
+            }
         }
         
-        final Creature creature = (Creature) livingEntity;
-        if (!this.saferWaterPlugin.isWaterSpawnDisabled(creature)) {
-            return;
+        if (this.isDenied(entityType, spawnReason, spawnLocation, null)) {
+            event.setCancelled(true);
         }
+    }
+    
+    /**
+     * Decides a spawn from a {@link CreatureSpawner}, which is called before
+     * its {@link CreatureSpawnEvent}, so that the outcome can be cached for
+     * the {@link CreatureSpawner} in the {@link SpawnerCache}.
+     * <p>
+     * If the spawn is allowed, it is remembered by the current thread, so
+     * that the {@link CreatureSpawnEvent} that follows for the same spawn is
+     * not decided again. If the same spawn has already been allowed by
+     * {@link #onPreCreatureSpawn(EntityType, SpawnReason, Location, Location)},
+     * it is not decided again here either.
+     * 
+     * @param event The {@link SpawnerSpawnEvent}.
+     * @see #isDenied(EntityType, SpawnReason, Location, Location)
+     */
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onSpawnerSpawn(final SpawnerSpawnEvent event) {
         
-        if (event.getSpawnReason() == CreatureSpawnEvent.SpawnReason.DROWNED) {
+        final CreatureSpawner spawner = event.getSpawner();
+        if (spawner == null) {
             return;
         }
         
-        final Location spawnLocation = creature.getLocation();
-        final World spawnWorld = spawnLocation.getWorld();
-        if (spawnWorld == null) {
+        final EntityType entityType = event.getEntityType();
+        final Location spawnLocation = event.getLocation();
+        final PreSpawn preSpawn = this.preSpawn.get();
+        if (preSpawn.isSpawn(entityType, SpawnReason.SPAWNER, spawnLocation)) {
             return;
         }
         
-        final Block spawnBlock = spawnLocation.getBlock();
-        if (spawnBlock.getType() != Material.WATER && (!(spawnBlock.getBlockData() instanceof Waterlogged) || !((Waterlogged) spawnBlock.getBlockData()).isWaterlogged())) {
+        if (this.isDenied(entityType, SpawnReason.SPAWNER, spawnLocation, spawner.getLocation())) {
+            preSpawn.clear();
+            event.setCancelled(true);
             return;
         }
+        preSpawn.remember(entityType, SpawnReason.SPAWNER, spawnLocation);
+    }
+    
+    /**
+     * Decides a spawn before its {@link Creature} has been constructed, on
+     * servers that provide a pre-spawn event.
+     * <p>
+     * If the spawn is allowed, it is remembered by the current thread, so
+     * that the {@link CreatureSpawnEvent} that follows for the same spawn is
+     * not decided again.
+     * 
+     * @param entityType The {@link EntityType} being spawned.
+     * @param spawnReason The {@link SpawnReason}.
+     * @param spawnLocation The {@link Location} of the spawn.
+     * @param spawnerLocation The {@link Location} of the
+     *                        {@link CreatureSpawner} of the spawn, or
+     *                        {@code null} if it is not from a
+     *                        {@link CreatureSpawner}.
+     * @return {@code true} if the spawn should be cancelled, {@code false}
+     *         otherwise.
+     * @see PreSpawnListener
+     * @see #isDenied(EntityType, SpawnReason, Location, Location)
+     */
+    public boolean onPreCreatureSpawn(@NotNull final EntityType entityType, @NotNull final SpawnReason spawnReason, @NotNull final Location spawnLocation, @Nullable final Location spawnerLocation) {
         
-        Block lastWaterBlock = spawnWorld.getBlockAt(spawnLocation);
-        Block checkBlock = lastWaterBlock.getRelative(BlockFace.DOWN, 1);
-        
-        while (this.checkBlock(checkBlock)) {
-            if (checkBlock.getType() == Material.WATER || (checkBlock.getBlockData() instanceof Waterlogged && ((Waterlogged) checkBlock.getBlockData()).isWaterlogged())) {
-                lastWaterBlock = checkBlock;
-            }
-            checkBlock = checkBlock.getRelative(BlockFace.DOWN, 1);
-        }
-        
-        if (lastWaterBlock.getLightLevel() > (byte) 0) {
-            final Logger logger = this.saferWaterPlugin.getLogger();
-            logger.log(Level.CONFIG, "Prevented mob spawn.");
-            logger.log(Level.CONFIG, "Mob Type: " + creature.getClass().getSimpleName());
-            logger.log(Level.CONFIG, "Mob X: " + spawnLocation.getBlockX());
-            logger.log(Level.CONFIG, "Mob Y: " + spawnLocation.getBlockY());
-            logger.log(Level.CONFIG, "Mob Z: " + spawnLocation.getBlockZ());
-            logger.log(Level.CONFIG, "Block Light Level: " + lastWaterBlock.getLightLevel());
-            logger.log(Level.CONFIG, "Block X: " + lastWaterBlock.getX());
-            logger.log(Level.CONFIG, "Block Y: " + lastWaterBlock.getY());
-            logger.log(Level.CONFIG, "Block Z: " + lastWaterBlock.getZ());
-            event.setCancelled(true);
+        final PreSpawn preSpawn = this.preSpawn.get();
+        if (this.isDenied(entityType, spawnReason, spawnLocation, spawnerLocation)) {
+            preSpawn.clear();
+            return true;
         }
+        
+        preSpawn.remember(entityType, spawnReason, spawnLocation);
+        return false;
     }
     
     /**
-     * Checks the given {@link Block} and the 2 {@link Block}s below to see if
-     * the bottom of the body of water has been reached, and thus the light
-     * level (from blocks) should be checked.
+     * Decides if a spawn in water should be denied, from its
+     * {@link EntityType}, {@link SpawnReason}, and {@link Location} alone.
+     * <p>
+     * The decision itself is made by the {@link SpawnDecider} of the
+     * {@link World} and {@link Biome} of the spawn, as resolved by the current
+     * {@link SpawnProfileTable}, reading from the {@link BlockSource} of the
+     * {@link WaterFloorIndex}. The {@link SpawnFilter} is consulted first, so
+     * that spawns that are not filtered (including any non-{@link Creature}
+     * spawns and {@link SpawnReason#DROWNED} conversions) are decided with a
+     * single table lookup.
+     * <p>
+     * Once a chunk section has denied a spawn, later water spawns in that
+     * section that are in the scope of the same {@link SpawnDecider} are
+     * denied from the {@link DenialCache} without reading the column again,
+     * until the entry expires or a block change invalidates it.
+     * <p>
+     * Every spawn is recorded in the {@link SpawnStats}, along with the time
+     * taken to decide it. Denied spawns are also recorded in the
+     * {@link DecisionLog}, which formats and writes them in the background.
+     * Denials from the {@link DenialCache} are not, as no floor was read for
+     * them.
+     * <p>
+     * Each filtered spawn is also recorded as a {@link SpawnDecisionEvent},
+     * if the Java Flight Recorder is recording it.
      * <p>
-     * If any {@link Material#AIR} is present in the lower 3 {@link Block}s (can
-     * occur with underground caves close to the bottom of the body of water),
-     * the search is terminated early, and the bottom is assumed to be at the
-     * lowest {@link Block} of {@link Material#WATER}.
+     * Spawns from a {@link CreatureSpawner} are decided from the
+     * {@link SpawnerCache} if an earlier spawn from the same
+     * {@link CreatureSpawner} into the same block has already been decided,
+     * and their outcomes are cached there otherwise. Like denials from the
+     * {@link DenialCache}, denials from the {@link SpawnerCache} are not
+     * recorded in the {@link DecisionLog}.
+     * <p>
+     * The time taken to decide each filtered spawn is charged to the
+     * {@link TickBudget}. Once the budget of the current tick has been spent,
+     * the rest of the tick's filtered spawns are decided by its
+     * {@link BudgetFallback} instead.
+     * <p>
+     * If the {@link SpawnRecorder} is recording, every spawn is recorded once
+     * it has been decided, along with the floor that its decision found (if
+     * any), so that it can be replayed offline. The time taken to record it
+     * is not counted as part of the decision.
+     * <p>
+     * On region-threaded servers, this is called on many threads at once.
+     * Everything that it reads is either an immutable snapshot, or safe for
+     * concurrent readers without a lock.
      * 
-     * @param block The {@link Block} to check.
-     * @return {@code true} if more {@link Block}s below this one need to be
-     *         checked, {@code false} if the light level can be checked at this
-     *         {@link Block}.
+     * @param entityType The {@link EntityType} being spawned.
+     * @param spawnReason The {@link SpawnReason}.
+     * @param spawnLocation The {@link Location} of the spawn.
+     * @param spawnerLocation The {@link Location} of the
+     *                        {@link CreatureSpawner} of the spawn, or
+     *                        {@code null} if it is not from a
+     *                        {@link CreatureSpawner}.
+     * @return {@code true} if the spawn should be cancelled, {@code false}
+     *         otherwise.
      */
-    private boolean checkBlock(@NotNull final Block block) {
+    private boolean isDenied(@NotNull final EntityType entityType, @NotNull final SpawnReason spawnReason, @NotNull final Location spawnLocation, @Nullable final Location spawnerLocation) {
         
-        if (block.getType() == Material.AIR) {
+        final World spawnWorld = spawnLocation.getWorld();
+        if (spawnWorld == null) {
             return false;
         }
         
-        if (this.checkWater(block.getType(), block.getBlockData())) {
-            return true;
+        final int spawnX = spawnLocation.getBlockX();
+        final int spawnY = spawnLocation.getBlockY();
+        final int spawnZ = spawnLocation.getBlockZ();
+        final long startNanos = System.nanoTime();
+        final SpawnStats spawnStats = this.spawnContext.getSpawnStats();
+        final SpawnDecider spawnDecider = this.spawnContext.getSpawnProfileTable().getDecider(spawnWorld, spawnX, spawnY, spawnZ);
+        final SpawnFilter spawnFilter = spawnDecider.getSpawnFilter();
+        
+        if (!spawnFilter.isFiltered(entityType, spawnReason)) {
+            final int category = spawnFilter.isFiltered(entityType) ? SpawnStats.SKIPPED_REASON : SpawnStats.SKIPPED_TYPE;
+            spawnStats.record(entityType, spawnReason, spawnWorld, category, System.nanoTime() - startNanos);
+            this.recordSpawn(entityType, spawnReason, spawnWorld, spawnX, spawnY, spawnZ, 0L);
+            return false;
+        }
+        
+        final SpawnDecisionEvent decisionEvent = SaferWaterEvents.isRegistered() ? new SpawnDecisionEvent() : null;
+        if (decisionEvent != null) {
+            decisionEvent.begin();
+        }
+        
+        final TickBudget tickBudget = this.spawnContext.getTickBudget();
+        final SpawnerCache spawnerCache = this.spawnContext.getSpawnerCache();
+        final int spawnerX = spawnerLocation == null ? 0 : spawnerLocation.getBlockX();
+        final int spawnerY = spawnerLocation == null ? 0 : spawnerLocation.getBlockY();
+        final int spawnerZ = spawnerLocation == null ? 0 : spawnerLocation.getBlockZ();
+        if (spawnerLocation != null) {
+            final int cachedOutcome = spawnerCache.getOutcome(spawnWorld, spawnerX, spawnerY, spawnerZ, spawnDecider, spawnX, spawnY, spawnZ);
+            if (cachedOutcome != SpawnerCache.NOT_CACHED) {
+                final int category;
+                if (cachedOutcome == SpawnDecider.DENIED) {
+                    category = SpawnStats.DENIED;
+                } else if (cachedOutcome == SpawnDecider.DRY) {
+                    category = SpawnStats.SKIPPED_DRY;
+                } else {
+                    category = SpawnStats.ALLOWED;
+                }
+                final long elapsedNanos = System.nanoTime() - startNanos;
+                spawnStats.record(entityType, spawnReason, spawnWorld, category, elapsedNanos);
+                tickBudget.spend(elapsedNanos);
+                if (decisionEvent != null) {
+                    decisionEvent.commitDecision(entityType, spawnReason, spawnWorld, spawnX, spawnY, spawnZ, SpawnDecisionEvent.SPAWNER_CACHE, category, 0L);
+                }
+                this.recordSpawn(entityType, spawnReason, spawnWorld, spawnX, spawnY, spawnZ, 0L);
+                return category == SpawnStats.DENIED;
+            }
+        }
+        
+        final BlockSource blockSource = this.spawnContext.getWaterFloorIndex().getBlockSource(spawnWorld);
+        final DenialCache denialCache = this.spawnContext.getDenialCache();
+        if (tickBudget.isExhausted()) {
+            return this.isDeniedOverBudget(tickBudget, spawnDecider, blockSource, denialCache, entityType, spawnReason, spawnWorld, spawnX, spawnY, spawnZ, startNanos, decisionEvent);
         }
         
-        final Block belowBlock = block.getRelative(BlockFace.DOWN, 1);
-        if (this.checkWater(belowBlock.getType(), belowBlock.getBlockData())) {
+        if (spawnDecider.isInScope(spawnX, spawnY, spawnZ) && denialCache.isDenied(spawnWorld, spawnDecider, spawnX, spawnY, spawnZ) && ColumnScanner.isWater(blockSource, spawnX, spawnY, spawnZ)) {
+            final long elapsedNanos = System.nanoTime() - startNanos;
+            spawnStats.record(entityType, spawnReason, spawnWorld, SpawnStats.DENIED, elapsedNanos);
+            tickBudget.spend(elapsedNanos);
+            if (decisionEvent != null) {
+                decisionEvent.commitDecision(entityType, spawnReason, spawnWorld, spawnX, spawnY, spawnZ, SpawnDecisionEvent.DENIAL_CACHE, SpawnStats.DENIED, 0L);
+            }
+            this.recordSpawn(entityType, spawnReason, spawnWorld, spawnX, spawnY, spawnZ, 0L);
             return true;
         }
         
-        final Block belowBelowBlock = block.getRelative(BlockFace.DOWN, 2);
-        return this.checkWater(belowBelowBlock.getType(), belowBelowBlock.getBlockData());
+        final long change = denialCache.getChange();
+        final long decision;
+        if (ChunkBatchCache.isBatched(spawnReason)) {
+            decision = this.spawnContext.getChunkBatchCache().decideWater(spawnDecider, blockSource, spawnWorld, spawnX, spawnY, spawnZ);
+        } else {
+            decision = spawnDecider.decideWater(blockSource, spawnX, spawnY, spawnZ);
+        }
+        final int outcome = SpawnDecider.getOutcome(decision);
+        if (spawnerLocation != null) {
+            spawnerCache.recordOutcome(spawnWorld, spawnerX, spawnerY, spawnerZ, spawnDecider, spawnX, spawnY, spawnZ, outcome);
+        }
+        
+        final int category;
+        if (outcome == SpawnDecider.DENIED) {
+            denialCache.recordDenied(spawnWorld, spawnDecider, spawnX, spawnY, spawnZ, change);
+            category = SpawnStats.DENIED;
+        } else if (outcome == SpawnDecider.DRY) {
+            category = SpawnStats.SKIPPED_DRY;
+        } else {
+            category = SpawnStats.ALLOWED;
+        }
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        spawnStats.record(entityType, spawnReason, spawnWorld, category, elapsedNanos);
+        tickBudget.spend(elapsedNanos);
+        if (decisionEvent != null) {
+            decisionEvent.commitDecision(entityType, spawnReason, spawnWorld, spawnX, spawnY, spawnZ, SpawnDecisionEvent.FLOOR, category, decision);
+        }
+        this.recordSpawn(entityType, spawnReason, spawnWorld, spawnX, spawnY, spawnZ, decision);
+        
+        if (category != SpawnStats.DENIED) {
+            return false;
+        }
+        
+        final DecisionLog decisionLog = this.spawnContext.getDecisionLog();
+        if (decisionLog.isActive()) {
+            decisionLog.record(entityType, spawnReason, spawnWorld, spawnX, spawnY, spawnZ, SpawnDecider.getFloorY(decision), SpawnDecider.getLightLevel(decision));
+        }
+        return true;
     }
     
     /**
-     * Checks to see if the given {@link Material} is {@link Material#WATER} or
-     * one of the coral block variants
-     * if the given {@link BlockData} is {@link Waterlogged} and is currently
-     * waterlogged {@link Waterlogged#isWaterlogged()}.
+     * Decides a filtered spawn with the {@link BudgetFallback} of the
+     * {@link TickBudget}, once the budget of the current tick has been spent.
+     * <p>
+     * No column is ever scanned here. Spawns allowed without reading any
+     * blocks are recorded in the {@link SpawnStats} as allowed, and spawns
+     * without an already-known answer are allowed. Only denials from an
+     * indexed floor are recorded in the {@link DecisionLog}, as no floor is
+     * read for any others.
      * 
-     * @param material The {@link Material} to check.
-     * @param blockData The {@link BlockData} to check.
-     * @return {@code true} if the {@link Material} is {@link Material#WATER} or
-     *         if the {@link BlockData} is {@link Waterlogged} and currently is
-     *         waterlogged, {@code false} otherwise.
+     * @param tickBudget The {@link TickBudget}.
+     * @param spawnDecider The {@link SpawnDecider} of the spawn.
+     * @param blockSource The {@link BlockSource} of the {@link World}.
+     * @param denialCache The {@link DenialCache}.
+     * @param entityType The {@link EntityType} being spawned.
+     * @param spawnReason The {@link SpawnReason}.
+     * @param spawnWorld The {@link World} of the spawn.
+     * @param spawnX The block X coordinate of the spawn.
+     * @param spawnY The block Y coordinate of the spawn.
+     * @param spawnZ The block Z coordinate of the spawn.
+     * @param startNanos The time at which the decision started.
+     * @param decisionEvent The started {@link SpawnDecisionEvent}, or
+     *                      {@code null} if none is being recorded.
+     * @return {@code true} if the spawn should be cancelled, {@code false}
+     *         otherwise.
      */
-    private boolean checkWater(@NotNull final Material material, @NotNull final BlockData blockData) {
-        
-        switch (material) {
-            case WATER:
-            case DEAD_TUBE_CORAL_BLOCK:
-            case DEAD_BRAIN_CORAL_BLOCK:
-            case DEAD_BUBBLE_CORAL_BLOCK:
-            case DEAD_FIRE_CORAL_BLOCK:
-            case DEAD_HORN_CORAL_BLOCK:
-            case TUBE_CORAL_BLOCK:
-            case BRAIN_CORAL_BLOCK:
-            case BUBBLE_CORAL_BLOCK:
-            case FIRE_CORAL_BLOCK:
-            case HORN_CORAL_BLOCK:
-                return true;
+    private boolean isDeniedOverBudget(@NotNull final TickBudget tickBudget, @NotNull final SpawnDecider spawnDecider, @NotNull final BlockSource blockSource, @NotNull final DenialCache denialCache, @NotNull final EntityType entityType, @NotNull final SpawnReason spawnReason, @NotNull final World spawnWorld, final int spawnX, final int spawnY, final int spawnZ, final long startNanos, @Nullable final SpawnDecisionEvent decisionEvent) {
+        
+        final int category;
+        long decision = 0L;
+        switch (tickBudget.getFallback()) {
+            case DENY:
+                if (!spawnDecider.isInScope(spawnX, spawnY, spawnZ)) {
+                    category = SpawnStats.ALLOWED;
+                } else if (ColumnScanner.isWater(blockSource, spawnX, spawnY, spawnZ)) {
+                    category = SpawnStats.DENIED;
+                } else {
+                    category = SpawnStats.SKIPPED_DRY;
+                }
+                break;
+            case ALLOW:
+                category = SpawnStats.ALLOWED;
+                break;
             default:
+                if (spawnDecider.isInScope(spawnX, spawnY, spawnZ) && denialCache.isDenied(spawnWorld, spawnDecider, spawnX, spawnY, spawnZ) && ColumnScanner.isWater(blockSource, spawnX, spawnY, spawnZ)) {
+                    category = SpawnStats.DENIED;
+                    break;
+                }
+                final long change = denialCache.getChange();
+                decision = spawnDecider.decideIndexedWater(blockSource, spawnX, spawnY, spawnZ);
+                final int outcome = SpawnDecider.getOutcome(decision);
+                if (outcome == SpawnDecider.DENIED) {
+                    denialCache.recordDenied(spawnWorld, spawnDecider, spawnX, spawnY, spawnZ, change);
+                    category = SpawnStats.DENIED;
+                } else if (outcome == SpawnDecider.DRY) {
+                    category = SpawnStats.SKIPPED_DRY;
+                } else {
+                    category = SpawnStats.ALLOWED;
+                }
                 break;
         }
         
-        return blockData instanceof Waterlogged && ((Waterlogged) blockData).isWaterlogged();
+        this.spawnContext.getSpawnStats().record(entityType, spawnReason, spawnWorld, category, System.nanoTime() - startNanos);
+        if (decisionEvent != null) {
+            decisionEvent.commitDecision(entityType, spawnReason, spawnWorld, spawnX, spawnY, spawnZ, SpawnDecisionEvent.BUDGET_FALLBACK, category, decision);
+        }
+        this.recordSpawn(entityType, spawnReason, spawnWorld, spawnX, spawnY, spawnZ, decision);
+        if (category == SpawnStats.SKIPPED_DRY) {
+            return false;
+        }
+        tickBudget.recordFallback(category == SpawnStats.DENIED);
+        if (category != SpawnStats.DENIED) {
+            return false;
+        }
+        
+        final DecisionLog decisionLog = this.spawnContext.getDecisionLog();
+        if (SpawnDecider.getOutcome(decision) == SpawnDecider.DENIED && decisionLog.isActive()) {
+            decisionLog.record(entityType, spawnReason, spawnWorld, spawnX, spawnY, spawnZ, SpawnDecider.getFloorY(decision), SpawnDecider.getLightLevel(decision));
+        }
+        return true;
+    }
+    
+    /**
+     * Records a decided spawn in the {@link SpawnRecorder}, if it is
+     * recording.
+     * 
+     * @param entityType The {@link EntityType} being spawned.
+     * @param spawnReason The {@link SpawnReason}.
+     * @param spawnWorld The {@link World} of the spawn.
+     * @param spawnX The block X coordinate of the spawn.
+     * @param spawnY The block Y coordinate of the spawn.
+     * @param spawnZ The block Z coordinate of the spawn.
+     * @param decision The packed decision of the spawn, or {@code 0} if it
+     *                 was not decided from its floor.
+     */
+    private void recordSpawn(@NotNull final EntityType entityType, @NotNull final SpawnReason spawnReason, @NotNull final World spawnWorld, final int spawnX, final int spawnY, final int spawnZ, final long decision) {
+        final SpawnRecorder spawnRecorder = this.spawnContext.getSpawnRecorder();
+        if (spawnRecorder.isActive()) {
+            spawnRecorder.record(entityType, spawnReason, spawnWorld, this.spawnContext.getWaterFloorIndex().getBlockSource(spawnWorld), spawnX, spawnY, spawnZ, decision);
+        }
+    }
+    
+    /**
+     * Binds the current spawn profiles to a {@link World} that has been
+     * loaded.
+     * 
+     * @param event The {@link WorldLoadEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(final WorldLoadEvent event) {
+        this.spawnContext.onWorldLoad(event.getWorld());
+    }
+    
+    /**
+     * Unbinds the current spawn profiles from a {@link World} that is being
+     * unloaded, and forgets any allowed pre-spawn in it on the unloading
+     * thread.
+     * 
+     * @param event The {@link WorldUnloadEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(final WorldUnloadEvent event) {
+        this.spawnContext.onWorldUnload(event.getWorld());
+        final PreSpawn preSpawn = this.preSpawn.get();
+        if (preSpawn.world == event.getWorld()) {
+            preSpawn.clear();
+        }
     }
     
     /**
@@ -196,6 +548,6 @@ public final class SaferWaterListener implements Listener {
      */
     @EventHandler
     public void onPlayerCommandSend(final PlayerCommandSendEvent event) {
-        event.getCommands().removeAll(this.saferWaterPlugin.onPlayerCommandSend(event.getPlayer()));
+        this.spawnContext.onPlayerCommandSend(event.getPlayer(), event.getCommands());
     }
 }
@@ -0,0 +1,171 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.listener;
+
+import java.util.Collection;
+import org.bspfsystems.saferwater.bukkit.SaferWaterPlugin;
+import org.bspfsystems.saferwater.bukkit.budget.TickBudget;
+import org.bspfsystems.saferwater.bukkit.cache.ChunkBatchCache;
+import org.bspfsystems.saferwater.bukkit.cache.DenialCache;
+import org.bspfsystems.saferwater.bukkit.cache.SpawnerCache;
+import org.bspfsystems.saferwater.bukkit.log.DecisionLog;
+import org.bspfsystems.saferwater.bukkit.record.SpawnRecorder;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnProfileTable;
+import org.bspfsystems.saferwater.bukkit.stats.SpawnStats;
+import org.bspfsystems.saferwater.bukkit.water.WaterFloorIndex;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Creature;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents everything that the {@link SaferWaterListener} decides spawns
+ * with, and the callbacks that it forwards its other {@link org.bukkit.event.Event}s
+ * to.
+ * <p>
+ * This is implemented by the {@link SaferWaterPlugin}, which cannot be
+ * constructed outside of a running server. Anything else that implements it
+ * (such as a benchmark or a test) can drive the {@link SaferWaterListener}
+ * with the same components.
+ */
+public interface SpawnContext {
+    
+    /**
+     * Gets the current {@link SpawnProfileTable}, which resolves the
+     * {@link org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider} of a
+     * spawn from its {@link World} and biome.
+     * 
+     * @return The current {@link SpawnProfileTable}.
+     */
+    @NotNull
+    SpawnProfileTable getSpawnProfileTable();
+    
+    /**
+     * Gets the {@link SpawnStats}, used to record every evaluated spawn.
+     * 
+     * @return The {@link SpawnStats}.
+     */
+    @NotNull
+    SpawnStats getSpawnStats();
+    
+    /**
+     * Gets the {@link WaterFloorIndex}, used to find the floor of a body of
+     * water without walking the blocks.
+     * 
+     * @return The {@link WaterFloorIndex}.
+     */
+    @NotNull
+    WaterFloorIndex getWaterFloorIndex();
+    
+    /**
+     * Gets the {@link DenialCache}, used to deny repeated spawns in a chunk
+     * section without deciding each of them again.
+     * 
+     * @return The {@link DenialCache}.
+     */
+    @NotNull
+    DenialCache getDenialCache();
+    
+    /**
+     * Gets the {@link ChunkBatchCache}, used to decide the chunk-generation
+     * and natural spawns in a chunk from the same floors within a tick.
+     * 
+     * @return The {@link ChunkBatchCache}.
+     */
+    @NotNull
+    ChunkBatchCache getChunkBatchCache();
+    
+    /**
+     * Gets the {@link SpawnerCache}, used to decide repeated spawns from a
+     * spawner without deciding each of them again.
+     * 
+     * @return The {@link SpawnerCache}.
+     */
+    @NotNull
+    SpawnerCache getSpawnerCache();
+    
+    /**
+     * Gets the {@link TickBudget}, used to limit the time spent deciding
+     * spawns in each tick.
+     * 
+     * @return The {@link TickBudget}.
+     */
+    @NotNull
+    TickBudget getTickBudget();
+    
+    /**
+     * Gets the {@link DecisionLog}, used to log denied spawns without
+     * blocking the spawning thread.
+     * 
+     * @return The {@link DecisionLog}.
+     */
+    @NotNull
+    DecisionLog getDecisionLog();
+    
+    /**
+     * Gets the {@link SpawnRecorder}, used to record spawns for replaying
+     * them offline.
+     * 
+     * @return The {@link SpawnRecorder}.
+     */
+    @NotNull
+    SpawnRecorder getSpawnRecorder();
+    
+    /**
+     * Binds the current spawn profiles to the given {@link World}, which has
+     * just been loaded.
+     * 
+     * @param world The loaded {@link World}.
+     */
+    void onWorldLoad(@NotNull World world);
+    
+    /**
+     * Unbinds the current spawn profiles from the given {@link World}, which
+     * is being unloaded, and frees anything cached for it.
+     * 
+     * @param world The unloaded {@link World}.
+     */
+    void onWorldUnload(@NotNull World world);
+    
+    /**
+     * Removes the names of any commands that the given {@link Player} may not
+     * use from the commands sent to them.
+     * 
+     * @param player The {@link Player} the commands are sent to.
+     * @param commands The names of the commands sent to the {@link Player},
+     *                 which are removed from in place.
+     */
+    void onPlayerCommandSend(@NotNull Player player, @NotNull Collection<String> commands);
+    
+    /**
+     * Checks to see if the specified {@link Creature} is one of the ones that
+     * is not allowed to spawn in certain water conditions.
+     * 
+     * @param creature The {@link Creature} to check.
+     * @return {@code true} If the {@link Creature} is disallowed from spawning
+     *         under certain conditions, {@code false} otherwise.
+     */
+    default boolean isWaterSpawnDisabled(@NotNull final Creature creature) {
+        final Location location = creature.getLocation();
+        return this.getSpawnProfileTable().getDecider(creature.getWorld(), location.getBlockX(), location.getBlockY(), location.getBlockZ()).getSpawnFilter().isFiltered(creature.getType());
+    }
+}
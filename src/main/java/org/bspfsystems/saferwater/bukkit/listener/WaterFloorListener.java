@@ -0,0 +1,358 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.listener;
+
+import org.bspfsystems.saferwater.bukkit.cache.DenialCache;
+import org.bspfsystems.saferwater.bukkit.cache.SpawnerCache;
+import org.bspfsystems.saferwater.bukkit.water.WaterFloorIndex;
+import org.bukkit.Chunk;
+import java.util.List;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Directional;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockDispenseEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockPhysicsEvent;
+import org.bukkit.event.block.BlockPistonEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.BlockSpreadEvent;
+import org.bukkit.event.block.FluidLevelChangeEvent;
+import org.bukkit.event.block.SpongeAbsorbEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.player.PlayerBucketEmptyEvent;
+import org.bukkit.event.player.PlayerBucketFillEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a {@link Listener} that keeps the {@link WaterFloorIndex} up to
+ * date with chunk loading and unloading, and with block changes.
+ * <p>
+ * All block change {@link Event}s are monitored after they have been
+ * decided, and simply invalidate the affected columns. The index recomputes
+ * the affected chunks in the background. Block changes also invalidate any
+ * cached denials of the affected columns in the {@link DenialCache},
+ * and the cached outcomes of any nearby spawners in the
+ * {@link SpawnerCache}.
+ * <p>
+ * {@link BlockPhysicsEvent}s are deliberately not monitored. They are called
+ * far more often than any other block {@link Event}, mostly for neighbour
+ * updates in which nothing changed, and every block change that can move the
+ * floor of a body of water is already covered by a more specific
+ * {@link Event}. This includes water placed or picked up with a bucket, by
+ * either a player or a dispenser, as neither of those calls a
+ * {@link BlockPlaceEvent} or a {@link BlockBreakEvent}.
+ */
+public final class WaterFloorListener implements Listener {
+    
+    private final WaterFloorIndex waterFloorIndex;
+    private final DenialCache denialCache;
+    private final SpawnerCache spawnerCache;
+    
+    /**
+     * Constructs a new {@link WaterFloorListener}.
+     * 
+     * @param waterFloorIndex The {@link WaterFloorIndex} to keep up to date.
+     * @param denialCache The {@link DenialCache} to invalidate.
+     * @param spawnerCache The {@link SpawnerCache} to invalidate.
+     */
+    public WaterFloorListener(@NotNull final WaterFloorIndex waterFloorIndex, @NotNull final DenialCache denialCache, @NotNull final SpawnerCache spawnerCache) {
+        this.waterFloorIndex = waterFloorIndex;
+        this.denialCache = denialCache;
+        this.spawnerCache = spawnerCache;
+    }
+    
+    /**
+     * Queues a newly-loaded chunk to be indexed.
+     * 
+     * @param event The {@link ChunkLoadEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(final ChunkLoadEvent event) {
+        this.waterFloorIndex.onChunkLoad(event.getChunk());
+    }
+    
+    /**
+     * Frees the indexed data and cached spawner outcomes of an unloaded
+     * chunk.
+     * 
+     * @param event The {@link ChunkUnloadEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(final ChunkUnloadEvent event) {
+        final Chunk chunk = event.getChunk();
+        this.waterFloorIndex.onChunkUnload(chunk);
+        this.spawnerCache.onChunkUnload(chunk.getWorld(), chunk.getX(), chunk.getZ());
+    }
+    
+    /**
+     * Frees the indexed data of an unloaded world.
+     * 
+     * @param event The {@link WorldUnloadEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(final WorldUnloadEvent event) {
+        this.waterFloorIndex.onWorldUnload(event.getWorld());
+    }
+    
+    /**
+     * Invalidates the column of a placed block.
+     * 
+     * @param event The {@link BlockPlaceEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(final BlockPlaceEvent event) {
+        this.onBlockChange(event.getBlock());
+    }
+    
+    /**
+     * Invalidates the column of a broken block.
+     * 
+     * @param event The {@link BlockBreakEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(final BlockBreakEvent event) {
+        this.onBlockChange(event.getBlock());
+    }
+    
+    /**
+     * Invalidates the column of a burnt block.
+     * 
+     * @param event The {@link BlockBurnEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(final BlockBurnEvent event) {
+        this.onBlockChange(event.getBlock());
+    }
+    
+    /**
+     * Invalidates the column of a faded block (such as melting ice).
+     * 
+     * @param event The {@link BlockFadeEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFade(final BlockFadeEvent event) {
+        this.onBlockChange(event.getBlock());
+    }
+    
+    /**
+     * Invalidates the column of a formed block (such as freezing water).
+     * 
+     * @param event The {@link BlockFormEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockForm(final BlockFormEvent event) {
+        this.onBlockChange(event.getBlock());
+    }
+    
+    /**
+     * Invalidates the column of a spread block.
+     * 
+     * @param event The {@link BlockSpreadEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockSpread(final BlockSpreadEvent event) {
+        this.onBlockChange(event.getBlock());
+    }
+    
+    /**
+     * Invalidates the column that a fluid flows into.
+     * 
+     * @param event The {@link BlockFromToEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFromTo(final BlockFromToEvent event) {
+        this.onBlockChange(event.getToBlock());
+    }
+    
+    /**
+     * Invalidates the column of a fluid that changed level.
+     * 
+     * @param event The {@link FluidLevelChangeEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onFluidLevelChange(final FluidLevelChangeEvent event) {
+        this.onBlockChange(event.getBlock());
+    }
+    
+    /**
+     * Invalidates the columns of all water absorbed by a sponge.
+     * 
+     * @param event The {@link SpongeAbsorbEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onSpongeAbsorb(final SpongeAbsorbEvent event) {
+        for (final BlockState blockState : event.getBlocks()) {
+            this.onBlockChange(blockState.getBlock());
+        }
+    }
+    
+    /**
+     * Invalidates the columns of all blocks moved by an extending piston,
+     * both where they were and where they are pushed to, and the column of
+     * the piston head.
+     * 
+     * @param event The {@link BlockPistonExtendEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPistonExtend(final BlockPistonExtendEvent event) {
+        this.onPistonMove(event, event.getBlocks(), event.getDirection());
+    }
+    
+    /**
+     * Invalidates the columns of all blocks moved by a retracting piston,
+     * both where they were and where they are pulled to, and the column of
+     * the piston head.
+     * <p>
+     * The direction of a {@link BlockPistonRetractEvent} is the direction in
+     * which the blocks move, so the head is on the opposite side of the
+     * piston.
+     * 
+     * @param event The {@link BlockPistonRetractEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPistonRetract(final BlockPistonRetractEvent event) {
+        this.onPistonMove(event, event.getBlocks(), event.getDirection().getOppositeFace());
+    }
+    
+    /**
+     * Invalidates the column of water placed with a bucket.
+     * 
+     * @param event The {@link PlayerBucketEmptyEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerBucketEmpty(final PlayerBucketEmptyEvent event) {
+        this.onBlockChange(event.getBlock());
+    }
+    
+    /**
+     * Invalidates the column of water picked up with a bucket.
+     * 
+     * @param event The {@link PlayerBucketFillEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerBucketFill(final PlayerBucketFillEvent event) {
+        this.onBlockChange(event.getBlock());
+    }
+    
+    /**
+     * Invalidates the column in front of a dispenser that dispensed an item.
+     * <p>
+     * The dispensed item is not checked, as dispensers can place or pick up
+     * water with any kind of bucket, and can also place blocks (such as
+     * shulker boxes), all of which can move the floor of a body of water.
+     * 
+     * @param event The {@link BlockDispenseEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockDispense(final BlockDispenseEvent event) {
+        final Block block = event.getBlock();
+        final BlockData blockData = block.getBlockData();
+        if (blockData instanceof Directional) {
+            this.onBlockChange(block.getRelative(((Directional) blockData).getFacing()));
+        }
+    }
+    
+    /**
+     * Invalidates the columns of all blocks destroyed by a block explosion.
+     * 
+     * @param event The {@link BlockExplodeEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(final BlockExplodeEvent event) {
+        for (final Block block : event.blockList()) {
+            this.onBlockChange(block);
+        }
+    }
+    
+    /**
+     * Invalidates the columns of all blocks destroyed by an entity explosion.
+     * 
+     * @param event The {@link EntityExplodeEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(final EntityExplodeEvent event) {
+        for (final Block block : event.blockList()) {
+            this.onBlockChange(block);
+        }
+    }
+    
+    /**
+     * Invalidates the column of a block changed by an entity (such as an
+     * Enderman, or falling sand).
+     * 
+     * @param event The {@link EntityChangeBlockEvent}.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityChangeBlock(final EntityChangeBlockEvent event) {
+        this.onBlockChange(event.getBlock());
+    }
+    
+    /**
+     * Invalidates the columns of the piston, its head, and all blocks moved
+     * by it, both where they were and where they are moved to.
+     * 
+     * @param event The {@link BlockPistonEvent}.
+     * @param blocks The {@link Block}s moved by the piston.
+     * @param headFace The {@link BlockFace} of the piston that its head is
+     *                 attached to.
+     */
+    private void onPistonMove(@NotNull final BlockPistonEvent event, @NotNull final List<Block> blocks, @NotNull final BlockFace headFace) {
+        
+        final Block piston = event.getBlock();
+        final BlockFace direction = event.getDirection();
+        this.onBlockChange(piston);
+        this.onBlockChange(piston.getRelative(headFace));
+        for (final Block block : blocks) {
+            this.onBlockChange(block);
+            this.onBlockChange(block.getRelative(direction));
+        }
+    }
+    
+    /**
+     * Invalidates the column of the given {@link Block} in the
+     * {@link WaterFloorIndex}, its cached denials in the {@link DenialCache},
+     * and the spawners around it in the {@link SpawnerCache}.
+     * 
+     * @param block The {@link Block} that changed.
+     */
+    private void onBlockChange(@NotNull final Block block) {
+        this.waterFloorIndex.onBlockChange(block);
+        this.denialCache.invalidate(block.getWorld(), block.getX(), block.getY(), block.getZ());
+        this.spawnerCache.invalidate(block.getWorld(), block.getX(), block.getY(), block.getZ());
+    }
+}
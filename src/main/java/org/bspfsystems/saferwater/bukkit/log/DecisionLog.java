@@ -0,0 +1,642 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bukkit.World;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents the log of denied spawns.
+ * <p>
+ * Recording a decision only copies its primitive fields into a preallocated
+ * ring buffer. A background writer drains the buffer, formats each record
+ * as a single line, and appends it to a rolling log file (and to the plugin
+ * {@link Logger} at {@link Level#CONFIG}, if that level is enabled). Nothing
+ * is formatted, and no I/O is performed, on the thread that records a
+ * decision.
+ * <p>
+ * If the buffer is full, a record is dropped according to the configured
+ * {@link OverflowPolicy}, and counted.
+ * <p>
+ * The buffer takes no lock, so that spawning threads (of which there may be
+ * many on a region-threaded server) never wait on each other, or on the
+ * background writer.
+ */
+public final class DecisionLog {
+    
+    private static final String FILE_NAME = "decisions.log";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+    private static final EntityType[] ENTITY_TYPES = EntityType.values();
+    private static final SpawnReason[] SPAWN_REASONS = SpawnReason.values();
+    
+    private final File directory;
+    private final Logger logger;
+    private final Map<UUID, Integer> worldIds;
+    private final List<String> worldNames;
+    private final LongAdder written;
+    private final LongAdder dropped;
+    
+    private volatile DecisionLogSettings settings;
+    private volatile Ring ring;
+    private volatile boolean running;
+    private Thread writerThread;
+    
+    /**
+     * Constructs a new {@link DecisionLog}, using the
+     * {@link DecisionLogSettings#DEFAULT} settings.
+     * 
+     * @param directory The directory that the log files are written to.
+     * @param logger The {@link Logger} that records are also written to, at
+     *               {@link Level#CONFIG}, and that any errors are logged to.
+     */
+    public DecisionLog(@NotNull final File directory, @NotNull final Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+        this.worldIds = new ConcurrentHashMap<UUID, Integer>();
+        this.worldNames = new CopyOnWriteArrayList<String>();
+        this.written = new LongAdder();
+        this.dropped = new LongAdder();
+        this.settings = DecisionLogSettings.DEFAULT;
+        this.ring = new Ring(DecisionLogSettings.DEFAULT.getBufferSize());
+        this.running = false;
+    }
+    
+    /**
+     * Starts the background writer.
+     */
+    public synchronized void start() {
+        if (this.running) {
+            return;
+        }
+        this.running = true;
+        final Ring ring = this.ring;
+        this.writerThread = new Thread(() -> this.runWriter(ring), "SaferWater Decision Log Writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+    
+    /**
+     * Stops the background writer, after it has written all buffered records.
+     */
+    public synchronized void stop() {
+        if (!this.running) {
+            return;
+        }
+        this.running = false;
+        LockSupport.unpark(this.writerThread);
+        try {
+            this.writerThread.join(TimeUnit.SECONDS.toMillis(5L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.writerThread = null;
+    }
+    
+    /**
+     * Applies new {@link DecisionLogSettings}. If the buffer size has changed,
+     * a new buffer is swapped in. The background writer then closes the old
+     * buffer, so that any record offered to it afterwards goes to the new
+     * buffer instead, and writes out everything that was offered to the old
+     * buffer before it was closed.
+     * 
+     * @param settings The new {@link DecisionLogSettings}.
+     */
+    public synchronized void configure(@NotNull final DecisionLogSettings settings) {
+        if (settings.getBufferSize() != this.ring.capacity) {
+            final Ring ring = new Ring(settings.getBufferSize());
+            this.ring.next = ring;
+            this.ring = ring;
+        }
+        this.settings = settings;
+    }
+    
+    /**
+     * Checks if decisions are currently being logged anywhere, so that the
+     * caller can skip recording them entirely.
+     * 
+     * @return {@code true} if recorded decisions will be written,
+     *         {@code false} otherwise.
+     */
+    public boolean isActive() {
+        return this.running && (this.settings.isEnabled() || this.logger.isLoggable(Level.CONFIG));
+    }
+    
+    /**
+     * Records a denied spawn. This only copies the given fields into the
+     * buffer, and never blocks on I/O, or on a lock. If the buffer has just
+     * been swapped out, the record is offered to the new buffer.
+     * 
+     * @param type The {@link EntityType} of the spawn.
+     * @param reason The {@link SpawnReason} of the spawn.
+     * @param world The {@link World} of the spawn.
+     * @param x The block X coordinate of the spawn.
+     * @param y The block Y coordinate of the spawn.
+     * @param z The block Z coordinate of the spawn.
+     * @param floorY The Y of the floor of the body of water.
+     * @param lightLevel The light level of the floor.
+     */
+    public void record(@NotNull final EntityType type, @NotNull final SpawnReason reason, @NotNull final World world, final int x, final int y, final int z, final int floorY, final int lightLevel) {
+        
+        final long time = System.currentTimeMillis();
+        final int worldId = this.getWorldId(world);
+        final OverflowPolicy overflowPolicy = this.settings.getOverflowPolicy();
+        int result;
+        do {
+            result = this.ring.offer(time, type.ordinal(), reason.ordinal(), worldId, x, y, z, floorY, lightLevel, overflowPolicy);
+            final int dropped = result & ~Ring.CLOSED;
+            if (dropped != 0) {
+                this.dropped.add(dropped);
+            }
+        } while ((result & Ring.CLOSED) != 0);
+    }
+    
+    /**
+     * Gets the compact ID of the given {@link World}, registering its name if
+     * it has not been seen before.
+     * 
+     * @param world The {@link World}.
+     * @return The ID of the {@link World}.
+     */
+    private int getWorldId(@NotNull final World world) {
+        final UUID uniqueId = world.getUID();
+        final Integer worldId = this.worldIds.get(uniqueId);
+        if (worldId != null) {
+            return worldId;
+        }
+        synchronized (this.worldNames) {
+            return this.worldIds.computeIfAbsent(uniqueId, id -> {
+                this.worldNames.add(world.getName());
+                return this.worldNames.size() - 1;
+            });
+        }
+    }
+    
+    /**
+     * Gets the number of records that have been written.
+     * 
+     * @return The number of written records.
+     */
+    public long getWritten() {
+        return this.written.sum();
+    }
+    
+    /**
+     * Gets the number of records that have been dropped because the buffer
+     * was full.
+     * 
+     * @return The number of dropped records.
+     */
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+    
+    /**
+     * Runs the background writer, until this {@link DecisionLog} is stopped
+     * and all buffered records have been written.
+     * <p>
+     * When the buffer has been swapped, the old buffer is closed, and is
+     * drained until every record that was offered to it has been written,
+     * before the buffer that replaced it is drained. Buffers are drained in
+     * the order that they were swapped in, so none is skipped if the buffer
+     * is swapped more than once between two passes.
+     * 
+     * @param ring The buffer when the background writer was started.
+     */
+    private void runWriter(@NotNull final Ring ring) {
+        
+        final StringBuilder line = new StringBuilder(160);
+        Ring batch = new Ring(ring.capacity);
+        Ring current = ring;
+        Writer writer = null;
+        long fileSize = 0L;
+        
+        while (true) {
+            
+            final boolean stopping = !this.running;
+            final Ring next = current.next;
+            if (next != null) {
+                current.close();
+            }
+            if (batch.capacity < current.capacity) {
+                batch = new Ring(current.capacity);
+            }
+            
+            final int count = current.drainTo(batch);
+            if (count == 0) {
+                if (next != null) {
+                    if (current.isDrained()) {
+                        current = next;
+                    } else {
+                        Thread.onSpinWait();
+                    }
+                    continue;
+                }
+                if (writer != null) {
+                    try {
+                        writer.flush();
+                    } catch (IOException e) {
+                        this.logger.log(Level.WARNING, "Unable to write the SaferWater decision log.", e);
+                        writer = this.close(writer);
+                    }
+                }
+                if (stopping) {
+                    break;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            
+            final DecisionLogSettings settings = this.settings;
+            final boolean console = this.logger.isLoggable(Level.CONFIG);
+            for (int index = 0; index < count; index++) {
+                
+                line.setLength(0);
+                this.format(batch, index, line);
+                if (console) {
+                    this.logger.log(Level.CONFIG, "Prevented mob spawn: " + line);
+                }
+                if (!settings.isEnabled()) {
+                    writer = this.close(writer);
+                    continue;
+                }
+                
+                try {
+                    if (writer == null) {
+                        fileSize = this.roll(settings, true);
+                        writer = this.open();
+                    } else if (fileSize >= settings.getMaxFileSize()) {
+                        writer = this.close(writer);
+                        fileSize = this.roll(settings, false);
+                        writer = this.open();
+                    }
+                    line.append('\n');
+                    writer.write(line.toString());
+                    fileSize += line.length();
+                    this.written.increment();
+                } catch (IOException | SecurityException e) {
+                    this.logger.log(Level.WARNING, "Unable to write the SaferWater decision log.", e);
+                    writer = this.close(writer);
+                }
+            }
+        }
+        
+        this.close(writer);
+    }
+    
+    /**
+     * Rolls the log file over if it has reached the maximum size, deleting
+     * the oldest rolled-over file.
+     * 
+     * @param settings The current {@link DecisionLogSettings}.
+     * @param opening If {@code true}, the log file is being opened for the
+     *                first time, and is only rolled over if it is already
+     *                full.
+     * @return The size of the log file after rolling over.
+     * @throws IOException If the log directory cannot be created.
+     */
+    private long roll(@NotNull final DecisionLogSettings settings, final boolean opening) throws IOException {
+        
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IOException("Unable to create the decision log directory at " + this.directory.getPath());
+        }
+        
+        final File file = new File(this.directory, FILE_NAME);
+        if (!file.exists() || (opening && file.length() < settings.getMaxFileSize())) {
+            return file.length();
+        }
+        
+        if (settings.getMaxFiles() == 0) {
+            if (!file.delete()) {
+                throw new IOException("Unable to delete the decision log at " + file.getPath());
+            }
+            return 0L;
+        }
+        
+        final File oldest = new File(this.directory, FILE_NAME + "." + settings.getMaxFiles());
+        if (oldest.exists() && !oldest.delete()) {
+            throw new IOException("Unable to delete the decision log at " + oldest.getPath());
+        }
+        for (int index = settings.getMaxFiles() - 1; index >= 1; index--) {
+            final File rolled = new File(this.directory, FILE_NAME + "." + index);
+            if (rolled.exists() && !rolled.renameTo(new File(this.directory, FILE_NAME + "." + (index + 1)))) {
+                throw new IOException("Unable to roll over the decision log at " + rolled.getPath());
+            }
+        }
+        if (!file.renameTo(new File(this.directory, FILE_NAME + ".1"))) {
+            throw new IOException("Unable to roll over the decision log at " + file.getPath());
+        }
+        return 0L;
+    }
+    
+    /**
+     * Opens the log file for appending.
+     * 
+     * @return The {@link Writer} for the log file.
+     * @throws IOException If the log file cannot be opened.
+     */
+    @NotNull
+    private Writer open() throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(this.directory, FILE_NAME), true), StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Closes the given {@link Writer}, logging any error.
+     * 
+     * @param writer The {@link Writer} to close, if any.
+     * @return Always {@code null}, for assigning to the closed {@link Writer}.
+     */
+    @Nullable
+    private Writer close(@Nullable final Writer writer) {
+        if (writer == null) {
+            return null;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            this.logger.log(Level.WARNING, "Unable to close the SaferWater decision log.", e);
+        }
+        return null;
+    }
+    
+    /**
+     * Formats the record at the given index of the given {@link Ring}.
+     * 
+     * @param batch The {@link Ring} holding the record.
+     * @param index The index of the record.
+     * @param line The {@link StringBuilder} to append the record to.
+     */
+    private void format(@NotNull final Ring batch, final int index, @NotNull final StringBuilder line) {
+        
+        final int worldId = batch.worlds[index];
+        line.append(Instant.ofEpochMilli(batch.times[index]))
+                .append(" DENIED ")
+                .append(ENTITY_TYPES[batch.types[index]].name())
+                .append(' ')
+                .append(SPAWN_REASONS[batch.reasons[index]].name())
+                .append(' ')
+                .append(worldId < this.worldNames.size() ? this.worldNames.get(worldId) : "?")
+                .append(" spawn=").append(batch.xs[index]).append(',').append(batch.ys[index]).append(',').append(batch.zs[index])
+                .append(" floor=").append(batch.xs[index]).append(',').append(batch.floorYs[index]).append(',').append(batch.zs[index])
+                .append(" light=").append(batch.lightLevels[index]);
+    }
+    
+    /**
+     * Represents a fixed-capacity ring buffer of records, stored as parallel
+     * arrays of primitives.
+     * <p>
+     * The {@link Ring} is lock-free, and may be offered to and drained from
+     * by any number of threads at once. Each slot has a sequence number,
+     * which tells whether the slot is free for the record at a given head
+     * position, or holds the published record at a given tail position.
+     * Offering a record claims the slot at the head, copies the record in,
+     * and then publishes it, and draining a record claims the slot at the
+     * tail, copies the record out, and then frees it. Dropping the oldest
+     * record drains it without copying it.
+     * <p>
+     * Once closed, no more slots can be claimed, so that a {@link Ring} that
+     * has been swapped out can be drained completely, before moving on to the
+     * next {@link Ring} that replaced it.
+     */
+    private static final class Ring {
+        
+        /**
+         * Set in the result of {@link #offer(long, int, int, int, int, int, int, int, int, OverflowPolicy)}
+         * if the {@link Ring} was closed, and the new record must be offered
+         * to another {@link Ring}.
+         */
+        private static final int CLOSED = 1 << 30;
+        
+        private static final long CLOSED_BIT = Long.MIN_VALUE;
+        
+        private final int capacity;
+        private final int mask;
+        private final long[] times;
+        private final int[] types;
+        private final int[] reasons;
+        private final int[] worlds;
+        private final int[] xs;
+        private final int[] ys;
+        private final int[] zs;
+        private final int[] floorYs;
+        private final int[] lightLevels;
+        private final AtomicLongArray sequences;
+        private final AtomicLong head;
+        private final AtomicLong tail;
+        
+        private volatile Ring next;
+        
+        /**
+         * Constructs a new, empty {@link Ring}.
+         * 
+         * @param capacity The capacity, which must be a power of 2.
+         */
+        private Ring(final int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.times = new long[capacity];
+            this.types = new int[capacity];
+            this.reasons = new int[capacity];
+            this.worlds = new int[capacity];
+            this.xs = new int[capacity];
+            this.ys = new int[capacity];
+            this.zs = new int[capacity];
+            this.floorYs = new int[capacity];
+            this.lightLevels = new int[capacity];
+            this.sequences = new AtomicLongArray(capacity);
+            for (int slot = 0; slot < capacity; slot++) {
+                this.sequences.set(slot, slot);
+            }
+            this.head = new AtomicLong(0L);
+            this.tail = new AtomicLong(0L);
+        }
+        
+        /**
+         * Adds a record to this {@link Ring}.
+         * 
+         * @param time The time of the decision, in epoch milliseconds.
+         * @param type The ordinal of the {@link EntityType}.
+         * @param reason The ordinal of the {@link SpawnReason}.
+         * @param world The ID of the {@link World}.
+         * @param x The block X coordinate of the spawn.
+         * @param y The block Y coordinate of the spawn.
+         * @param z The block Z coordinate of the spawn.
+         * @param floorY The Y of the floor of the body of water.
+         * @param lightLevel The light level of the floor.
+         * @param overflowPolicy The {@link OverflowPolicy} to use if this
+         *                       {@link Ring} is full.
+         * @return The number of records that were dropped (the new record,
+         *         or the oldest records that were dropped to make room for
+         *         it), combined with {@link #CLOSED} if the new record was
+         *         not added because this {@link Ring} is closed.
+         */
+        private int offer(final long time, final int type, final int reason, final int world, final int x, final int y, final int z, final int floorY, final int lightLevel, @NotNull final OverflowPolicy overflowPolicy) {
+            
+            int dropped = 0;
+            while (true) {
+                
+                final long head = this.head.get();
+                if (head < 0L) {
+                    return dropped | CLOSED;
+                }
+                
+                final int slot = (int) (head & this.mask);
+                final long difference = this.sequences.get(slot) - head;
+                if (difference > 0L) {
+                    continue;
+                }
+                if (difference < 0L) {
+                    if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                        return dropped + 1;
+                    }
+                    final int oldest = this.dropOldest();
+                    if (oldest < 0) {
+                        return dropped + 1;
+                    }
+                    dropped += oldest;
+                    continue;
+                }
+                if (!this.head.compareAndSet(head, head + 1L)) {
+                    continue;
+                }
+                
+                this.times[slot] = time;
+                this.types[slot] = type;
+                this.reasons[slot] = reason;
+                this.worlds[slot] = world;
+                this.xs[slot] = x;
+                this.ys[slot] = y;
+                this.zs[slot] = z;
+                this.floorYs[slot] = floorY;
+                this.lightLevels[slot] = lightLevel;
+                this.sequences.set(slot, head + 1L);
+                return dropped;
+            }
+        }
+        
+        /**
+         * Drops the oldest record of this {@link Ring}, to make room for a new
+         * record.
+         * 
+         * @return {@code 1} if the oldest record was dropped, {@code 0} if
+         *         another thread made room first, or {@code -1} if the oldest
+         *         record has not been published yet.
+         */
+        private int dropOldest() {
+            final long tail = this.tail.get();
+            final int slot = (int) (tail & this.mask);
+            final long difference = this.sequences.get(slot) - (tail + 1L);
+            if (difference < 0L) {
+                return -1;
+            }
+            if (difference == 0L && this.tail.compareAndSet(tail, tail + 1L)) {
+                this.sequences.set(slot, tail + this.capacity);
+                return 1;
+            }
+            return 0;
+        }
+        
+        /**
+         * Moves the published records from this {@link Ring} into the start of
+         * the given {@link Ring}, up to its capacity.
+         * 
+         * @param batch The {@link Ring} to move the records into.
+         * @return The number of records that were moved.
+         */
+        private int drainTo(@NotNull final Ring batch) {
+            
+            int count = 0;
+            while (count < batch.capacity) {
+                
+                final long tail = this.tail.get();
+                final int slot = (int) (tail & this.mask);
+                final long difference = this.sequences.get(slot) - (tail + 1L);
+                if (difference < 0L) {
+                    break;
+                }
+                if (difference > 0L || !this.tail.compareAndSet(tail, tail + 1L)) {
+                    continue;
+                }
+                
+                batch.times[count] = this.times[slot];
+                batch.types[count] = this.types[slot];
+                batch.reasons[count] = this.reasons[slot];
+                batch.worlds[count] = this.worlds[slot];
+                batch.xs[count] = this.xs[slot];
+                batch.ys[count] = this.ys[slot];
+                batch.zs[count] = this.zs[slot];
+                batch.floorYs[count] = this.floorYs[slot];
+                batch.lightLevels[count] = this.lightLevels[slot];
+                this.sequences.set(slot, tail + this.capacity);
+                count++;
+            }
+            return count;
+        }
+        
+        /**
+         * Closes this {@link Ring}, so that no more records can be offered to
+         * it. Records that have already claimed a slot are still published.
+         */
+        private void close() {
+            long head;
+            do {
+                head = this.head.get();
+                if (head < 0L) {
+                    return;
+                }
+            } while (!this.head.compareAndSet(head, head | CLOSED_BIT));
+        }
+        
+        /**
+         * Checks if this {@link Ring} has been closed, and every record that
+         * was offered to it has been drained (or dropped).
+         * 
+         * @return {@code true} if this {@link Ring} is closed and empty,
+         *         {@code false} otherwise.
+         */
+        private boolean isDrained() {
+            final long head = this.head.get();
+            return head < 0L && this.tail.get() == (head & ~CLOSED_BIT);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.log;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents the immutable settings of the {@link DecisionLog}.
+ */
+public final class DecisionLogSettings {
+    
+    /**
+     * The default {@link DecisionLogSettings}, with the log file disabled.
+     */
+    public static final DecisionLogSettings DEFAULT = new DecisionLogSettings(false, 4096, OverflowPolicy.DROP_NEWEST, 10L * 1024L * 1024L, 5);
+    
+    private final boolean enabled;
+    private final int bufferSize;
+    private final OverflowPolicy overflowPolicy;
+    private final long maxFileSize;
+    private final int maxFiles;
+    
+    /**
+     * Constructs a new {@link DecisionLogSettings}.
+     * 
+     * @param enabled If {@code true}, decisions will be written to the log
+     *                file.
+     * @param bufferSize The number of records that can be buffered before
+     *                   they are written. This will be rounded up to a power
+     *                   of 2.
+     * @param overflowPolicy The {@link OverflowPolicy} used when the buffer is
+     *                       full.
+     * @param maxFileSize The size in bytes at which the log file is rolled
+     *                    over.
+     * @param maxFiles The number of rolled-over log files that are kept.
+     * @throws IllegalArgumentException If any of the sizes are not positive,
+     *                                  or the number of files is negative.
+     */
+    public DecisionLogSettings(final boolean enabled, final int bufferSize, @NotNull final OverflowPolicy overflowPolicy, final long maxFileSize, final int maxFiles) throws IllegalArgumentException {
+        if (bufferSize <= 0 || bufferSize > (1 << 24)) {
+            throw new IllegalArgumentException("Buffer size must be between 1 and " + (1 << 24) + ": " + bufferSize);
+        }
+        if (maxFileSize <= 0L) {
+            throw new IllegalArgumentException("Maximum file size must be positive: " + maxFileSize);
+        }
+        if (maxFiles < 0) {
+            throw new IllegalArgumentException("Maximum number of files cannot be negative: " + maxFiles);
+        }
+        this.enabled = enabled;
+        this.bufferSize = Integer.highestOneBit(bufferSize) == bufferSize ? bufferSize : Integer.highestOneBit(bufferSize) << 1;
+        this.overflowPolicy = overflowPolicy;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+    }
+    
+    /**
+     * Checks if decisions will be written to the log file.
+     * 
+     * @return {@code true} if the log file is enabled, {@code false}
+     *         otherwise.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+    
+    /**
+     * Gets the number of records that can be buffered before they are
+     * written, which is always a power of 2.
+     * 
+     * @return The buffer size.
+     */
+    public int getBufferSize() {
+        return this.bufferSize;
+    }
+    
+    /**
+     * Gets the {@link OverflowPolicy} used when the buffer is full.
+     * 
+     * @return The {@link OverflowPolicy}.
+     */
+    @NotNull
+    public OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+    
+    /**
+     * Gets the size in bytes at which the log file is rolled over.
+     * 
+     * @return The maximum file size.
+     */
+    public long getMaxFileSize() {
+        return this.maxFileSize;
+    }
+    
+    /**
+     * Gets the number of rolled-over log files that are kept.
+     * 
+     * @return The maximum number of rolled-over files.
+     */
+    public int getMaxFiles() {
+        return this.maxFiles;
+    }
+}
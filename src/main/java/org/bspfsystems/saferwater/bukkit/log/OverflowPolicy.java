@@ -0,0 +1,40 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.log;
+
+/**
+ * Represents what the {@link DecisionLog} does with a record when its buffer
+ * is full. Either way, the record that is lost is counted as dropped.
+ */
+public enum OverflowPolicy {
+    
+    /**
+     * The new record is dropped, keeping the oldest records that have not
+     * been written yet.
+     */
+    DROP_NEWEST,
+    
+    /**
+     * The oldest record that has not been written yet is dropped, to make room
+     * for the new record.
+     */
+    DROP_OLDEST
+}
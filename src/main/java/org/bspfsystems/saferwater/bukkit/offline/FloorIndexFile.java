@@ -0,0 +1,232 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.offline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.bspfsystems.saferwater.bukkit.water.WaterColumn;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a water floor index file, written by the
+ * {@link RegionAnalyzer} and mapped read-only into memory by the plugin.
+ * <p>
+ * The file has a fixed layout, all big-endian:
+ * <ul>
+ *     <li>A 16-byte header: the magic number, the version, the number of
+ *     chunks, and a reserved {@code int}.</li>
+ *     <li>The key of each chunk, as a {@code long}, in ascending order.</li>
+ *     <li>For each chunk, in the same order, the topmost water run of each
+ *     of its 256 columns, as a packed {@code int} (see
+ *     {@link WaterColumn}), or {@link WaterColumn#NO_WATER}.</li>
+ * </ul>
+ * Only chunks with at least one water column are included. A chunk is found
+ * by a binary search of its key, without reading anything else.
+ */
+public final class FloorIndexFile {
+    
+    /**
+     * The file extension of a water floor index file.
+     */
+    public static final String EXTENSION = ".idx";
+    
+    private static final int MAGIC = 0x53574649;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int CHUNK_SIZE = 256 * 4;
+    
+    private final ByteBuffer buffer;
+    private final int chunkCount;
+    private final int dataOffset;
+    
+    /**
+     * Constructs a new {@link FloorIndexFile}.
+     * 
+     * @param buffer The mapped contents of the file.
+     * @param chunkCount The number of chunks in the file.
+     */
+    private FloorIndexFile(@NotNull final ByteBuffer buffer, final int chunkCount) {
+        this.buffer = buffer;
+        this.chunkCount = chunkCount;
+        this.dataOffset = HEADER_SIZE + chunkCount * 8;
+    }
+    
+    /**
+     * Opens and maps the water floor index file at the given {@link Path}.
+     * 
+     * @param path The {@link Path} of the file.
+     * @return The opened {@link FloorIndexFile}.
+     * @throws IOException If the file cannot be mapped, or is not a valid
+     *                     water floor index file.
+     */
+    @NotNull
+    public static FloorIndexFile open(@NotNull final Path path) throws IOException {
+        
+        final ByteBuffer buffer;
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("The file has an invalid size of " + size + " bytes.");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+        }
+        
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("The file is not a water floor index.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("The file has unsupported version " + buffer.getInt(4) + ".");
+        }
+        final int chunkCount = buffer.getInt(8);
+        if (chunkCount < 0 || HEADER_SIZE + (long) chunkCount * (8 + CHUNK_SIZE) != buffer.capacity()) {
+            throw new IOException("The file does not match its chunk count of " + chunkCount + ".");
+        }
+        return new FloorIndexFile(buffer, chunkCount);
+    }
+    
+    /**
+     * Packs the chunk coordinates into a single {@code long} key.
+     * 
+     * @param chunkX The chunk X coordinate.
+     * @param chunkZ The chunk Z coordinate.
+     * @return The packed key.
+     */
+    static long key(final int chunkX, final int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Gets the number of chunks in this {@link FloorIndexFile}.
+     * 
+     * @return The number of chunks.
+     */
+    public int getChunkCount() {
+        return this.chunkCount;
+    }
+    
+    /**
+     * Gets the water run that holds the water block at the given
+     * coordinates. This is safe to call from any thread.
+     * 
+     * @param x The block X coordinate.
+     * @param y The block Y coordinate.
+     * @param z The block Z coordinate.
+     * @return The packed run (see {@link WaterColumn}), or
+     *         {@link WaterColumn#NO_WATER} if the chunk is not in this
+     *         {@link FloorIndexFile}, or if the position is not in the
+     *         topmost water run of its column.
+     */
+    public int getRun(final int x, final int y, final int z) {
+        
+        final long key = FloorIndexFile.key(x >> 4, z >> 4);
+        int low = 0;
+        int high = this.chunkCount - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final long middleKey = this.buffer.getLong(HEADER_SIZE + middle * 8);
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                final int run = this.buffer.getInt(this.dataOffset + middle * CHUNK_SIZE + (((z & 15) << 4) | (x & 15)) * 4);
+                if (run == WaterColumn.NO_WATER || y < WaterColumn.getFloor(run) || y > WaterColumn.getTop(run)) {
+                    return WaterColumn.NO_WATER;
+                }
+                return run;
+            }
+        }
+        return WaterColumn.NO_WATER;
+    }
+    
+    /**
+     * Writes a water floor index file, replacing any existing file once it
+     * has been written completely.
+     * 
+     * @param path The {@link Path} of the file to write.
+     * @param keys The key of each chunk, in any order.
+     * @param slots The slot of each chunk in the data, at the same index as
+     *              its key.
+     * @param count The number of chunks.
+     * @param data The data of every chunk, in slots of 256 packed runs.
+     * @throws IOException If the file cannot be written, or would be too
+     *                     large to be mapped.
+     */
+    static void write(@NotNull final Path path, @NotNull final long[] keys, @NotNull final int[] slots, final int count, @NotNull final FileChannel data) throws IOException {
+        
+        if (HEADER_SIZE + (long) count * (8 + CHUNK_SIZE) > Integer.MAX_VALUE) {
+            throw new IOException("Too many chunks to index in a single file (" + count + ").");
+        }
+        
+        // Sort by key, carrying the slots along.
+        final Integer[] order = new Integer[count];
+        for (int index = 0; index < count; index++) {
+            order[index] = index;
+        }
+        Arrays.sort(order, (first, second) -> Long.compare(keys[first], keys[second]));
+        
+        final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + count * 8);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(0);
+            for (final Integer index : order) {
+                header.putLong(keys[index]);
+            }
+            header.flip();
+            FloorIndexFile.writeFully(channel, header);
+            
+            final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+            for (final Integer index : order) {
+                chunk.clear();
+                final long position = (long) slots[index] * CHUNK_SIZE;
+                while (chunk.hasRemaining()) {
+                    if (data.read(chunk, position + chunk.position()) < 0) {
+                        throw new IOException("The chunk data ended unexpectedly.");
+                    }
+                }
+                chunk.flip();
+                FloorIndexFile.writeFully(channel, chunk);
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    /**
+     * Writes the remaining contents of the given {@link ByteBuffer} to the
+     * given {@link FileChannel}.
+     * 
+     * @param channel The {@link FileChannel} to write to.
+     * @param buffer The {@link ByteBuffer} to write.
+     * @throws IOException If the contents cannot be written.
+     */
+    static void writeFully(@NotNull final FileChannel channel, @NotNull final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.offline;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reads uncompressed NBT data, as stored in the chunks of a region file.
+ * <p>
+ * Compounds are read as {@link Map}s, lists as {@link List}s, arrays as
+ * primitive arrays, and all other tags as their boxed values.
+ */
+final class NbtReader {
+    
+    private static final byte TAG_END = 0;
+    private static final byte TAG_BYTE = 1;
+    private static final byte TAG_SHORT = 2;
+    private static final byte TAG_INT = 3;
+    private static final byte TAG_LONG = 4;
+    private static final byte TAG_FLOAT = 5;
+    private static final byte TAG_DOUBLE = 6;
+    private static final byte TAG_BYTE_ARRAY = 7;
+    private static final byte TAG_STRING = 8;
+    private static final byte TAG_LIST = 9;
+    private static final byte TAG_COMPOUND = 10;
+    private static final byte TAG_INT_ARRAY = 11;
+    private static final byte TAG_LONG_ARRAY = 12;
+    
+    private static final int MAX_DEPTH = 512;
+    
+    /**
+     * Prevents instantiation of this utility class.
+     */
+    private NbtReader() {
+        throw new UnsupportedOperationException("NbtReader cannot be instantiated.");
+    }
+    
+    /**
+     * Reads the root compound from the given {@link ByteBuffer}, from its
+     * current position.
+     * 
+     * @param buffer The {@link ByteBuffer} to read from, which must be
+     *               big-endian.
+     * @return The root compound.
+     * @throws IOException If the data is not a valid NBT compound.
+     */
+    @NotNull
+    static Map<String, Object> readRoot(@NotNull final ByteBuffer buffer) throws IOException {
+        try {
+            final byte type = buffer.get();
+            if (type != TAG_COMPOUND) {
+                throw new IOException("The root tag is not a compound (type " + type + ").");
+            }
+            NbtReader.readString(buffer);
+            return NbtReader.readCompound(buffer, 0);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("The NBT data is truncated or malformed.", e);
+        }
+    }
+    
+    /**
+     * Reads the payload of a tag of the given type.
+     * 
+     * @param buffer The {@link ByteBuffer} to read from.
+     * @param type The type of the tag.
+     * @param depth The nesting depth of the tag.
+     * @return The payload.
+     * @throws IOException If the tag is not valid.
+     */
+    @NotNull
+    private static Object readPayload(@NotNull final ByteBuffer buffer, final byte type, final int depth) throws IOException {
+        
+        switch (type) {
+            case TAG_BYTE:
+                return buffer.get();
+            case TAG_SHORT:
+                return buffer.getShort();
+            case TAG_INT:
+                return buffer.getInt();
+            case TAG_LONG:
+                return buffer.getLong();
+            case TAG_FLOAT:
+                return buffer.getFloat();
+            case TAG_DOUBLE:
+                return buffer.getDouble();
+            case TAG_BYTE_ARRAY:
+                final byte[] bytes = new byte[NbtReader.readLength(buffer, 1)];
+                buffer.get(bytes);
+                return bytes;
+            case TAG_STRING:
+                return NbtReader.readString(buffer);
+            case TAG_LIST:
+                return NbtReader.readList(buffer, depth + 1);
+            case TAG_COMPOUND:
+                return NbtReader.readCompound(buffer, depth + 1);
+            case TAG_INT_ARRAY:
+                final int[] ints = new int[NbtReader.readLength(buffer, 4)];
+                buffer.asIntBuffer().get(ints);
+                buffer.position(buffer.position() + ints.length * 4);
+                return ints;
+            case TAG_LONG_ARRAY:
+                final long[] longs = new long[NbtReader.readLength(buffer, 8)];
+                buffer.asLongBuffer().get(longs);
+                buffer.position(buffer.position() + longs.length * 8);
+                return longs;
+            default:
+                throw new IOException("Unknown NBT tag type " + type + ".");
+        }
+    }
+    
+    /**
+     * Reads the payload of a compound tag.
+     * 
+     * @param buffer The {@link ByteBuffer} to read from.
+     * @param depth The nesting depth of the compound.
+     * @return The compound.
+     * @throws IOException If the compound is not valid.
+     */
+    @NotNull
+    private static Map<String, Object> readCompound(@NotNull final ByteBuffer buffer, final int depth) throws IOException {
+        
+        if (depth > MAX_DEPTH) {
+            throw new IOException("The NBT data is nested too deeply.");
+        }
+        
+        final Map<String, Object> compound = new HashMap<String, Object>();
+        while (true) {
+            final byte type = buffer.get();
+            if (type == TAG_END) {
+                return compound;
+            }
+            final String name = NbtReader.readString(buffer);
+            compound.put(name, NbtReader.readPayload(buffer, type, depth));
+        }
+    }
+    
+    /**
+     * Reads the payload of a list tag.
+     * 
+     * @param buffer The {@link ByteBuffer} to read from.
+     * @param depth The nesting depth of the list.
+     * @return The list.
+     * @throws IOException If the list is not valid.
+     */
+    @NotNull
+    private static List<Object> readList(@NotNull final ByteBuffer buffer, final int depth) throws IOException {
+        
+        if (depth > MAX_DEPTH) {
+            throw new IOException("The NBT data is nested too deeply.");
+        }
+        
+        final byte type = buffer.get();
+        final int length = buffer.getInt();
+        if (length <= 0) {
+            return new ArrayList<Object>(0);
+        }
+        if (type == TAG_END) {
+            throw new IOException("A non-empty NBT list has no element type.");
+        }
+        
+        final List<Object> list = new ArrayList<Object>(Math.min(length, buffer.remaining()));
+        for (int index = 0; index < length; index++) {
+            list.add(NbtReader.readPayload(buffer, type, depth));
+        }
+        return list;
+    }
+    
+    /**
+     * Reads the length of an array tag, checking that the array fits in the
+     * remaining data.
+     * 
+     * @param buffer The {@link ByteBuffer} to read from.
+     * @param elementSize The size of each element, in bytes.
+     * @return The length of the array.
+     * @throws IOException If the length is not valid.
+     */
+    private static int readLength(@NotNull final ByteBuffer buffer, final int elementSize) throws IOException {
+        final int length = buffer.getInt();
+        if (length < 0 || (long) length * elementSize > buffer.remaining()) {
+            throw new IOException("An NBT array has an invalid length of " + length + ".");
+        }
+        return length;
+    }
+    
+    /**
+     * Reads a string, which is stored in modified UTF-8 with an unsigned
+     * 16-bit length.
+     * 
+     * @param buffer The {@link ByteBuffer} to read from.
+     * @return The string.
+     * @throws IOException If the string is not valid.
+     */
+    @NotNull
+    private static String readString(@NotNull final ByteBuffer buffer) throws IOException {
+        
+        final int length = buffer.getShort() & 0xFFFF;
+        final byte[] bytes = new byte[length + 2];
+        buffer.get(bytes, 2, length);
+        
+        // Block names and properties are plain ASCII, which is the same in
+        // modified UTF-8.
+        boolean ascii = true;
+        for (int index = 2; index < bytes.length && ascii; index++) {
+            ascii = bytes[index] > 0;
+        }
+        if (ascii) {
+            return new String(bytes, 2, length, StandardCharsets.US_ASCII);
+        }
+        
+        bytes[0] = (byte) (length >> 8);
+        bytes[1] = (byte) length;
+        return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+    }
+}
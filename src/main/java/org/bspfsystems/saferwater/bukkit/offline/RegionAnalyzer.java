@@ -0,0 +1,517 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.offline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.bspfsystems.saferwater.bukkit.water.WaterColumn;
+import org.bspfsystems.saferwater.bukkit.water.WaterKind;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The command-line entry point that analyzes the region files of a
+ * {@link org.bukkit.World} while it is not loaded, and writes a
+ * {@link FloorIndexFile} of the water floor of every column.
+ * <p>
+ * Each region file is mapped read-only and analyzed on its own thread. The
+ * block palette of each section is classified once, and the packed block
+ * states are only decoded for sections that are not a single kind of block.
+ * The columns are then resolved with the same rules as the live index (see
+ * {@link WaterColumn}), so that the plugin can answer queries for chunks that
+ * have not been indexed live yet without walking their blocks.
+ * <p>
+ * This runs without a server, so it must not use the Bukkit API: blocks are
+ * classified by their namespaced names instead of their
+ * {@link org.bukkit.Material}s. Only chunks in the format of Minecraft 1.18
+ * and newer that have been fully generated are analyzed.
+ */
+public final class RegionAnalyzer {
+    
+    private static final String USAGE = "Usage: java -cp SaferWater.jar " + RegionAnalyzer.class.getName() + " <region directory> <output file> [threads]";
+    
+    private static final int SECTION_BLOCKS = 4096;
+    private static final int CHUNK_COLUMNS = 256;
+    
+    private static final Set<String> CORAL_BLOCKS = new HashSet<String>(Arrays.asList(
+            "minecraft:dead_tube_coral_block",
+            "minecraft:dead_brain_coral_block",
+            "minecraft:dead_bubble_coral_block",
+            "minecraft:dead_fire_coral_block",
+            "minecraft:dead_horn_coral_block",
+            "minecraft:tube_coral_block",
+            "minecraft:brain_coral_block",
+            "minecraft:bubble_coral_block",
+            "minecraft:fire_coral_block",
+            "minecraft:horn_coral_block"
+    ));
+    
+    private final Path regionDirectory;
+    private final Path output;
+    private final int threads;
+    
+    /**
+     * Represents the result of analyzing a single region file.
+     */
+    private static final class RegionResult {
+        
+        private final Path path;
+        private long[] keys;
+        private int[] runs;
+        private int indexed;
+        private int generated;
+        private int skipped;
+        private int failed;
+        private String firstFailure;
+        
+        /**
+         * Constructs a new, empty {@link RegionResult}.
+         * 
+         * @param path The {@link Path} of the region file.
+         */
+        private RegionResult(@NotNull final Path path) {
+            this.path = path;
+            this.keys = new long[0];
+            this.runs = new int[0];
+            this.indexed = 0;
+            this.generated = 0;
+            this.skipped = 0;
+            this.failed = 0;
+            this.firstFailure = null;
+        }
+    }
+    
+    /**
+     * Represents the reusable buffers for analyzing the chunks of a region
+     * file on a single thread.
+     */
+    static final class ChunkAnalyzer {
+        
+        private byte[] kinds;
+        private byte[] column;
+        private int[] columnRuns;
+        
+        /**
+         * Constructs a new {@link ChunkAnalyzer}.
+         */
+        ChunkAnalyzer() {
+            this.kinds = new byte[0];
+            this.column = new byte[0];
+            this.columnRuns = new int[0];
+        }
+        
+        /**
+         * Analyzes a single chunk, writing the topmost water run of each of
+         * its columns.
+         * 
+         * @param sections The sections of the chunk.
+         * @param runs The array to write the packed runs into.
+         * @param offset The index of the first column in the array.
+         * @return {@code true} if any column has water, {@code false}
+         *         otherwise.
+         * @throws IOException If the sections are malformed.
+         */
+        boolean analyze(@NotNull final List<?> sections, @NotNull final int[] runs, final int offset) throws IOException {
+            
+            int minSection = Integer.MAX_VALUE;
+            int maxSection = Integer.MIN_VALUE;
+            for (final Object section : sections) {
+                final Number sectionY = RegionAnalyzer.get(section, "Y", Number.class);
+                if (sectionY != null && RegionAnalyzer.get(section, "block_states", Map.class) != null) {
+                    minSection = Math.min(minSection, sectionY.intValue());
+                    maxSection = Math.max(maxSection, sectionY.intValue());
+                }
+            }
+            if (minSection > maxSection) {
+                return false;
+            }
+            
+            final int minY = minSection << 4;
+            final int height = (maxSection - minSection + 1) << 4;
+            if (this.kinds.length < CHUNK_COLUMNS * height) {
+                this.kinds = new byte[CHUNK_COLUMNS * height];
+                this.column = new byte[height];
+                this.columnRuns = new int[WaterColumn.getMaxRuns(height)];
+            }
+            
+            // Sections that are not stored are entirely air.
+            Arrays.fill(this.kinds, 0, CHUNK_COLUMNS * height, WaterKind.AIR);
+            boolean anyWater = false;
+            for (final Object section : sections) {
+                final Number sectionY = RegionAnalyzer.get(section, "Y", Number.class);
+                final Map<?, ?> blockStates = RegionAnalyzer.get(section, "block_states", Map.class);
+                if (sectionY != null && blockStates != null) {
+                    anyWater |= this.decodeSection(blockStates, ((sectionY.intValue() - minSection) << 4), height);
+                }
+            }
+            
+            for (int column = 0; column < CHUNK_COLUMNS; column++) {
+                if (!anyWater) {
+                    runs[offset + column] = WaterColumn.NO_WATER;
+                    continue;
+                }
+                System.arraycopy(this.kinds, column * height, this.column, 0, height);
+                final int count = WaterColumn.findRuns(this.column, height, minY, this.columnRuns);
+                runs[offset + column] = count == 0 ? WaterColumn.NO_WATER : this.columnRuns[count - 1];
+            }
+            return anyWater;
+        }
+        
+        /**
+         * Decodes the block states of a single section into the kinds of the
+         * chunk.
+         * 
+         * @param blockStates The block states of the section.
+         * @param baseIndex The index of the bottom of the section within each
+         *                  column.
+         * @param height The height of each column.
+         * @return {@code true} if the section has any water, {@code false}
+         *         otherwise.
+         * @throws IOException If the block states are malformed.
+         */
+        private boolean decodeSection(@NotNull final Map<?, ?> blockStates, final int baseIndex, final int height) throws IOException {
+            
+            final List<?> palette = RegionAnalyzer.get(blockStates, "palette", List.class);
+            if (palette == null || palette.isEmpty()) {
+                throw new IOException("A section has no block palette.");
+            }
+            
+            final byte[] paletteKinds = new byte[palette.size()];
+            boolean uniform = true;
+            boolean anyWater = false;
+            for (int index = 0; index < paletteKinds.length; index++) {
+                paletteKinds[index] = RegionAnalyzer.classify(palette.get(index));
+                uniform &= paletteKinds[index] == paletteKinds[0];
+                anyWater |= paletteKinds[index] == WaterKind.WATER;
+            }
+            
+            // A section with a single kind of block does not need its block
+            // states decoded.
+            if (uniform) {
+                final byte kind = paletteKinds[0];
+                for (int column = 0; column < CHUNK_COLUMNS; column++) {
+                    final int start = column * height + baseIndex;
+                    Arrays.fill(this.kinds, start, start + 16, kind);
+                }
+                return anyWater;
+            }
+            
+            final long[] data = RegionAnalyzer.get(blockStates, "data", long[].class);
+            final int bits = Math.max(4, 32 - Integer.numberOfLeadingZeros(palette.size() - 1));
+            final int perLong = 64 / bits;
+            if (data == null || data.length < (SECTION_BLOCKS + perLong - 1) / perLong) {
+                throw new IOException("A section has too little block state data for its palette.");
+            }
+            
+            // Entries do not span longs, and are ordered by Y, then Z, then X.
+            final long mask = (1L << bits) - 1L;
+            for (int index = 0; index < SECTION_BLOCKS; index++) {
+                final int entry = (int) ((data[index / perLong] >>> ((index % perLong) * bits)) & mask);
+                final byte kind = entry < paletteKinds.length ? paletteKinds[entry] : WaterKind.OTHER;
+                this.kinds[(index & 255) * height + baseIndex + (index >> 8)] = kind;
+            }
+            return anyWater;
+        }
+    }
+    
+    /**
+     * Constructs a new {@link RegionAnalyzer}.
+     * 
+     * @param regionDirectory The directory of the region files.
+     * @param output The {@link Path} of the {@link FloorIndexFile} to write.
+     * @param threads The number of region files to analyze at once.
+     */
+    private RegionAnalyzer(@NotNull final Path regionDirectory, @NotNull final Path output, final int threads) {
+        this.regionDirectory = regionDirectory;
+        this.output = output;
+        this.threads = threads;
+    }
+    
+    /**
+     * Runs the {@link RegionAnalyzer} from the command line.
+     * 
+     * @param args The region directory, the output file, and optionally the
+     *             number of threads.
+     */
+    public static void main(@NotNull final String[] args) {
+        
+        if (args.length < 2 || args.length > 3) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        if (args.length == 3) {
+            try {
+                threads = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                threads = 0;
+            }
+            if (threads < 1) {
+                System.err.println("The number of threads must be a positive integer: " + args[2]);
+                System.err.println(USAGE);
+                System.exit(2);
+                return;
+            }
+        }
+        
+        final Path regionDirectory = Paths.get(args[0]);
+        if (!Files.isDirectory(regionDirectory)) {
+            System.err.println("The region directory does not exist: " + regionDirectory);
+            System.exit(1);
+            return;
+        }
+        
+        try {
+            new RegionAnalyzer(regionDirectory, Paths.get(args[1]), threads).run();
+        } catch (IOException e) {
+            System.err.println("Unable to write the water floor index: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted while analyzing the region files.");
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Analyzes every region file, and writes the {@link FloorIndexFile}.
+     * 
+     * @throws IOException If the region files cannot be listed, or the
+     *                     {@link FloorIndexFile} cannot be written.
+     * @throws InterruptedException If interrupted while waiting for the
+     *                              region files to be analyzed.
+     */
+    private void run() throws IOException, InterruptedException {
+        
+        final List<Path> regionFiles;
+        try (final Stream<Path> stream = Files.list(this.regionDirectory)) {
+            regionFiles = stream.filter(path -> RegionFile.isRegionFile(path.getFileName().toString())).sorted().collect(Collectors.toList());
+        }
+        if (regionFiles.isEmpty()) {
+            throw new IOException("No region files were found in " + this.regionDirectory + ".");
+        }
+        
+        final Path outputDirectory = this.output.toAbsolutePath().getParent();
+        if (outputDirectory != null) {
+            Files.createDirectories(outputDirectory);
+        }
+        
+        System.out.println("Analyzing " + regionFiles.size() + " region files with " + this.threads + " threads...");
+        final long start = System.nanoTime();
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+            final Thread thread = new Thread(runnable, "SaferWater Region Analyzer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final CompletionService<RegionResult> completionService = new ExecutorCompletionService<RegionResult>(executor);
+        for (final Path regionFile : regionFiles) {
+            completionService.submit(() -> RegionAnalyzer.analyzeRegion(regionFile));
+        }
+        
+        // The chunk data is collected in a temporary file as each region
+        // completes, so that only the keys are held in memory.
+        final Path dataPath = Files.createTempFile(outputDirectory, "saferwater-", ".dat");
+        long[] keys = new long[1024];
+        int[] slots = new int[1024];
+        int count = 0;
+        int generated = 0;
+        int skipped = 0;
+        int failed = 0;
+        
+        try (final FileChannel data = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+            
+            for (int completed = 1; completed <= regionFiles.size(); completed++) {
+                
+                final RegionResult result;
+                try {
+                    result = completionService.take().get();
+                } catch (ExecutionException e) {
+                    System.err.println("Unable to analyze a region file: " + e.getCause());
+                    continue;
+                }
+                
+                if (result.failed > 0) {
+                    System.err.println(result.failed + " chunks could not be read in " + result.path.getFileName() + ": " + result.firstFailure);
+                }
+                generated += result.generated;
+                skipped += result.skipped;
+                failed += result.failed;
+                
+                if (count + result.indexed > keys.length) {
+                    keys = Arrays.copyOf(keys, Math.max(keys.length * 2, count + result.indexed));
+                    slots = Arrays.copyOf(slots, keys.length);
+                }
+                final ByteBuffer buffer = ByteBuffer.allocate(result.indexed * CHUNK_COLUMNS * 4);
+                buffer.asIntBuffer().put(result.runs, 0, result.indexed * CHUNK_COLUMNS);
+                FloorIndexFile.writeFully(data, buffer);
+                for (int index = 0; index < result.indexed; index++) {
+                    keys[count] = result.keys[index];
+                    slots[count] = count;
+                    count++;
+                }
+                
+                if (completed % 64 == 0 || completed == regionFiles.size()) {
+                    System.out.println("Analyzed " + completed + "/" + regionFiles.size() + " region files.");
+                }
+            }
+            
+            executor.shutdown();
+            FloorIndexFile.write(this.output, keys, slots, count, data);
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1L, TimeUnit.SECONDS);
+        }
+        
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.println("Analyzed " + generated + " chunks in " + elapsed + "ms: " + count + " with water were indexed, " + skipped + " were skipped (not fully generated, or from before Minecraft 1.18), and " + failed + " could not be read.");
+        System.out.println("Wrote the water floor index to " + this.output + ".");
+    }
+    
+    /**
+     * Analyzes every chunk of a single region file. This is run on one of
+     * the analyzer threads.
+     * 
+     * @param path The {@link Path} of the region file.
+     * @return The {@link RegionResult}.
+     * @throws IOException If the region file cannot be mapped.
+     */
+    @NotNull
+    private static RegionResult analyzeRegion(@NotNull final Path path) throws IOException {
+        
+        final RegionFile regionFile = RegionFile.open(path);
+        final RegionResult result = new RegionResult(path);
+        final ChunkAnalyzer chunkAnalyzer = new ChunkAnalyzer();
+        final long[] keys = new long[RegionFile.CHUNKS];
+        final int[] runs = new int[RegionFile.CHUNKS * CHUNK_COLUMNS];
+        
+        try {
+            for (int index = 0; index < RegionFile.CHUNKS; index++) {
+                
+                final Map<String, Object> root;
+                try {
+                    final ByteBuffer chunk = regionFile.readChunk(index);
+                    if (chunk == null) {
+                        continue;
+                    }
+                    root = NbtReader.readRoot(chunk);
+                } catch (IOException e) {
+                    result.failed++;
+                    if (result.firstFailure == null) {
+                        result.firstFailure = e.getMessage();
+                    }
+                    continue;
+                }
+                
+                result.generated++;
+                final String status = RegionAnalyzer.get(root, "Status", String.class);
+                final List<?> sections = RegionAnalyzer.get(root, "sections", List.class);
+                if (sections == null || !("minecraft:full".equals(status) || "full".equals(status))) {
+                    result.skipped++;
+                    continue;
+                }
+                
+                try {
+                    if (chunkAnalyzer.analyze(sections, runs, result.indexed * CHUNK_COLUMNS)) {
+                        keys[result.indexed++] = FloorIndexFile.key(regionFile.getChunkX(index), regionFile.getChunkZ(index));
+                    }
+                } catch (IOException e) {
+                    result.failed++;
+                    if (result.firstFailure == null) {
+                        result.firstFailure = "Chunk " + index + ": " + e.getMessage();
+                    }
+                }
+            }
+        } finally {
+            regionFile.close();
+        }
+        
+        result.keys = Arrays.copyOf(keys, result.indexed);
+        result.runs = Arrays.copyOf(runs, result.indexed * CHUNK_COLUMNS);
+        return result;
+    }
+    
+    /**
+     * Classifies a single entry of a block palette by its name and
+     * properties.
+     * 
+     * @param entry The palette entry.
+     * @return The resolved kind of the block.
+     * @throws IOException If the palette entry is malformed.
+     */
+    private static byte classify(@Nullable final Object entry) throws IOException {
+        
+        final String name = RegionAnalyzer.get(entry, "Name", String.class);
+        if (name == null) {
+            throw new IOException("A block palette entry has no name.");
+        }
+        if (name.equals("minecraft:air")) {
+            return WaterKind.AIR;
+        }
+        if (name.equals("minecraft:water")) {
+            return WaterKind.WATER;
+        }
+        if (CORAL_BLOCKS.contains(name)) {
+            return WaterKind.CORAL;
+        }
+        
+        final Map<?, ?> properties = RegionAnalyzer.get(entry, "Properties", Map.class);
+        return properties != null && "true".equals(properties.get("waterlogged")) ? WaterKind.WATER : WaterKind.OTHER;
+    }
+    
+    /**
+     * Gets a value of the given type from an NBT compound.
+     * 
+     * @param <T> The type of the value.
+     * @param compound The NBT compound, which may be any object.
+     * @param name The name of the value.
+     * @param type The {@link Class} of the value.
+     * @return The value, or {@code null} if the compound is not a compound,
+     *         or does not have a value of the given type with the given name.
+     */
+    @Nullable
+    private static <T> T get(@Nullable final Object compound, @NotNull final String name, @NotNull final Class<T> type) {
+        if (!(compound instanceof Map)) {
+            return null;
+        }
+        final Object value = ((Map<?, ?>) compound).get(name);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+}
@@ -0,0 +1,285 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.offline;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents a single Anvil region file ({@code r.<x>.<z>.mca}), mapped
+ * read-only into memory.
+ * <p>
+ * A region file holds up to 32x32 chunks. Its first 4KiB is a table of the
+ * location of each chunk, in 4KiB sectors; each chunk is stored as a length,
+ * a compression type, and the compressed NBT data. Chunks that are too large
+ * for the region file are stored in a separate {@code c.<x>.<z>.mcc} file
+ * next to it.
+ * <p>
+ * A {@link RegionFile} reuses its decompression buffers, so it must only be
+ * used by one thread at a time.
+ */
+final class RegionFile {
+    
+    /**
+     * The number of chunks in a region file.
+     */
+    static final int CHUNKS = 1024;
+    
+    private static final Pattern FILE_NAME = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.mca");
+    
+    private static final int SECTOR_SIZE = 4096;
+    private static final int COMPRESSION_GZIP = 1;
+    private static final int COMPRESSION_ZLIB = 2;
+    private static final int COMPRESSION_NONE = 3;
+    private static final int EXTERNAL_FLAG = 0x80;
+    
+    private final Path path;
+    private final int regionX;
+    private final int regionZ;
+    private final ByteBuffer buffer;
+    private final Inflater inflater;
+    private byte[] output;
+    
+    /**
+     * Constructs a new {@link RegionFile}.
+     * 
+     * @param path The {@link Path} of the region file.
+     * @param regionX The region X coordinate.
+     * @param regionZ The region Z coordinate.
+     * @param buffer The mapped contents of the region file.
+     */
+    private RegionFile(@NotNull final Path path, final int regionX, final int regionZ, @NotNull final ByteBuffer buffer) {
+        this.path = path;
+        this.regionX = regionX;
+        this.regionZ = regionZ;
+        this.buffer = buffer;
+        this.inflater = new Inflater();
+        this.output = new byte[64 * 1024];
+    }
+    
+    /**
+     * Checks if the given file name is the name of a region file.
+     * 
+     * @param fileName The file name.
+     * @return {@code true} if it is the name of a region file, {@code false}
+     *         otherwise.
+     */
+    static boolean isRegionFile(@NotNull final String fileName) {
+        return FILE_NAME.matcher(fileName).matches();
+    }
+    
+    /**
+     * Opens and maps the region file at the given {@link Path}.
+     * 
+     * @param path The {@link Path} of the region file.
+     * @return The opened {@link RegionFile}.
+     * @throws IOException If the file name is not that of a region file, or
+     *                     if the file cannot be mapped.
+     */
+    @NotNull
+    static RegionFile open(@NotNull final Path path) throws IOException {
+        
+        final Matcher matcher = FILE_NAME.matcher(path.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IOException("Not a region file: " + path);
+        }
+        
+        final MappedByteBuffer buffer;
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("The region file is too large: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+        }
+        return new RegionFile(path, Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), buffer);
+    }
+    
+    /**
+     * Gets the {@link Path} of this {@link RegionFile}.
+     * 
+     * @return The {@link Path}.
+     */
+    @NotNull
+    Path getPath() {
+        return this.path;
+    }
+    
+    /**
+     * Gets the absolute chunk X coordinate of the chunk at the given index.
+     * 
+     * @param index The index of the chunk within the region (0-1023).
+     * @return The chunk X coordinate.
+     */
+    int getChunkX(final int index) {
+        return (this.regionX << 5) | (index & 31);
+    }
+    
+    /**
+     * Gets the absolute chunk Z coordinate of the chunk at the given index.
+     * 
+     * @param index The index of the chunk within the region (0-1023).
+     * @return The chunk Z coordinate.
+     */
+    int getChunkZ(final int index) {
+        return (this.regionZ << 5) | (index >> 5);
+    }
+    
+    /**
+     * Reads and decompresses the NBT data of the chunk at the given index.
+     * <p>
+     * The returned {@link ByteBuffer} may share this {@link RegionFile}'s
+     * buffers, so it is only valid until the next call.
+     * 
+     * @param index The index of the chunk within the region (0-1023).
+     * @return The uncompressed NBT data, or {@code null} if the chunk has not
+     *         been generated.
+     * @throws IOException If the chunk cannot be read, or uses an
+     *                     unsupported compression type.
+     */
+    @Nullable
+    ByteBuffer readChunk(final int index) throws IOException {
+        
+        if (this.buffer.capacity() < SECTOR_SIZE) {
+            return null;
+        }
+        
+        final int location = this.buffer.getInt(index * 4);
+        final int sectorOffset = location >>> 8;
+        final int sectorCount = location & 0xFF;
+        if (sectorOffset == 0 || sectorCount == 0) {
+            return null;
+        }
+        
+        final long start = (long) sectorOffset * SECTOR_SIZE;
+        if (start + 5L > this.buffer.capacity()) {
+            throw new IOException("Chunk " + index + " is outside of " + this.path.getFileName() + ".");
+        }
+        
+        final int length = this.buffer.getInt((int) start);
+        final int compression = this.buffer.get((int) start + 4) & 0xFF;
+        if (length < 1 || start + 4L + length > this.buffer.capacity()) {
+            throw new IOException("Chunk " + index + " has an invalid length of " + length + " in " + this.path.getFileName() + ".");
+        }
+        
+        final ByteBuffer compressed;
+        if ((compression & EXTERNAL_FLAG) != 0) {
+            final String fileName = "c." + this.getChunkX(index) + "." + this.getChunkZ(index) + ".mcc";
+            compressed = ByteBuffer.wrap(Files.readAllBytes(this.path.resolveSibling(fileName)));
+        } else {
+            compressed = this.buffer.slice((int) start + 5, length - 1);
+        }
+        
+        switch (compression & ~EXTERNAL_FLAG) {
+            case COMPRESSION_GZIP:
+                return this.gunzip(compressed);
+            case COMPRESSION_ZLIB:
+                return this.inflate(compressed);
+            case COMPRESSION_NONE:
+                return compressed;
+            default:
+                throw new IOException("Chunk " + index + " uses unsupported compression type " + (compression & ~EXTERNAL_FLAG) + " in " + this.path.getFileName() + ".");
+        }
+    }
+    
+    /**
+     * Decompresses zlib-compressed data into the output buffer.
+     * 
+     * @param compressed The compressed data.
+     * @return The uncompressed data.
+     * @throws IOException If the data is not valid zlib data.
+     */
+    @NotNull
+    private ByteBuffer inflate(@NotNull final ByteBuffer compressed) throws IOException {
+        
+        this.inflater.reset();
+        this.inflater.setInput(compressed);
+        
+        int size = 0;
+        try {
+            while (!this.inflater.finished()) {
+                if (size == this.output.length) {
+                    this.output = Arrays.copyOf(this.output, this.output.length * 2);
+                }
+                final int inflated = this.inflater.inflate(this.output, size, this.output.length - size);
+                if (inflated == 0 && (this.inflater.needsInput() || this.inflater.needsDictionary())) {
+                    throw new IOException("The compressed chunk data is truncated.");
+                }
+                size += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("The compressed chunk data is not valid.", e);
+        }
+        return ByteBuffer.wrap(this.output, 0, size);
+    }
+    
+    /**
+     * Decompresses gzip-compressed data into the output buffer.
+     * 
+     * @param compressed The compressed data.
+     * @return The uncompressed data.
+     * @throws IOException If the data is not valid gzip data.
+     */
+    @NotNull
+    private ByteBuffer gunzip(@NotNull final ByteBuffer compressed) throws IOException {
+        
+        final byte[] bytes = new byte[compressed.remaining()];
+        compressed.get(bytes);
+        
+        int size = 0;
+        try (final InputStream input = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            int read;
+            do {
+                if (size == this.output.length) {
+                    this.output = Arrays.copyOf(this.output, this.output.length * 2);
+                }
+                read = input.read(this.output, size, this.output.length - size);
+                if (read > 0) {
+                    size += read;
+                }
+            } while (read != -1);
+        }
+        return ByteBuffer.wrap(this.output, 0, size);
+    }
+    
+    /**
+     * Releases the decompression resources of this {@link RegionFile}. The
+     * mapping itself is released once it is no longer referenced.
+     */
+    void close() {
+        this.inflater.end();
+    }
+}
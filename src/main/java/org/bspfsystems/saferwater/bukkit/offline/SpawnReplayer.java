@@ -0,0 +1,695 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.offline;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import org.bspfsystems.saferwater.bukkit.config.SpawnProfilesLoader;
+import org.bspfsystems.saferwater.bukkit.record.SpawnRecorder;
+import org.bspfsystems.saferwater.bukkit.record.SpawnRecording;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnProfiles;
+import org.bspfsystems.saferwater.bukkit.stats.LatencyHistogram;
+import org.bspfsystems.saferwater.bukkit.water.BlockSource;
+import org.bspfsystems.saferwater.bukkit.water.WaterKind;
+import org.bukkit.block.Biome;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The command-line entry point that replays a {@link SpawnRecording} written
+ * by the {@link SpawnRecorder} through the {@link SpawnDecider}s of one or two
+ * SaferWater configurations, as fast as they can decide the spawns.
+ * <p>
+ * The recording is loaded into memory first, and each spawn is decided
+ * against a {@link BlockSource} that rebuilds only the column below it from
+ * its recorded floor, so that nothing but the decisions themselves is
+ * measured. Each
+ * configuration is replayed once to warm up, and then for the given number
+ * of passes, and its throughput and decision latency percentiles are
+ * reported.
+ * <p>
+ * The decisions of the first configuration can be written to a file, and
+ * compared against a file written earlier (for example, by another build of
+ * the plugin), and the decisions of two configurations can be compared
+ * against each other. Any spawns that are decided differently are reported.
+ * A decision that reads below the recorded floor of a spawn whose column was
+ * not recorded in full (because its floor was not found, or its column
+ * carries on below the floor) cannot be trusted, so it is reported as
+ * unverifiable, rather than as a match or a difference.
+ * <p>
+ * Unlike the {@link RegionAnalyzer}, this compiles the configurations with
+ * the same code as the plugin, so it needs the Bukkit API on the classpath,
+ * but it does not need a server.
+ */
+public final class SpawnReplayer {
+    
+    private static final String USAGE = "Usage: java -cp SaferWater.jar:spigot-api.jar " + SpawnReplayer.class.getName() + " <recording> <config.yml> [<other config.yml>] [--iterations <count>] [--write <decisions file>] [--compare <decisions file>]";
+    
+    private static final String[] OUTCOME_NAMES = {"NOT_FILTERED", "DRY", "ALLOWED", "DENIED", "UNKNOWN", "EXEMPT"};
+    private static final String SKIPPED = "SKIPPED";
+    private static final String UNVERIFIABLE = "UNVERIFIABLE";
+    private static final String DECISIONS_HEADER = "# SaferWater spawn decisions";
+    private static final int MAX_LISTED_DIFFERENCES = 20;
+    
+    private final RecordedSpawns spawns;
+    private final int iterations;
+    
+    /**
+     * Represents the spawns of a {@link SpawnRecording}, loaded into memory as
+     * parallel arrays.
+     */
+    private static final class RecordedSpawns {
+        
+        private int count;
+        private int skipped;
+        private int incomplete;
+        private long[] times;
+        private EntityType[] types;
+        private SpawnReason[] reasons;
+        private String[] worldNames;
+        private int[] minHeights;
+        private Biome[] biomes;
+        private int[] xs;
+        private int[] ys;
+        private int[] zs;
+        private boolean[] waters;
+        private boolean[] floors;
+        private boolean[] completes;
+        private int[] floorYs;
+        private short[] floorLights;
+        
+        /**
+         * Constructs a new, empty {@link RecordedSpawns}.
+         */
+        private RecordedSpawns() {
+            this.count = 0;
+            this.skipped = 0;
+            this.incomplete = 0;
+            this.times = new long[1024];
+            this.types = new EntityType[1024];
+            this.reasons = new SpawnReason[1024];
+            this.worldNames = new String[1024];
+            this.minHeights = new int[1024];
+            this.biomes = new Biome[1024];
+            this.xs = new int[1024];
+            this.ys = new int[1024];
+            this.zs = new int[1024];
+            this.waters = new boolean[1024];
+            this.floors = new boolean[1024];
+            this.completes = new boolean[1024];
+            this.floorYs = new int[1024];
+            this.floorLights = new short[1024];
+        }
+        
+        /**
+         * Adds the current spawn of the given {@link SpawnRecording}. A spawn
+         * whose {@link EntityType}, {@link SpawnReason}, or {@link Biome}
+         * does not exist in the current build is still added (so that the
+         * decisions of different builds line up), but is skipped when
+         * replaying.
+         * 
+         * @param recording The {@link SpawnRecording}.
+         */
+        private void add(@NotNull final SpawnRecording recording) {
+            
+            if (this.count == this.times.length) {
+                final int capacity = this.count * 2;
+                this.times = Arrays.copyOf(this.times, capacity);
+                this.types = Arrays.copyOf(this.types, capacity);
+                this.reasons = Arrays.copyOf(this.reasons, capacity);
+                this.worldNames = Arrays.copyOf(this.worldNames, capacity);
+                this.minHeights = Arrays.copyOf(this.minHeights, capacity);
+                this.biomes = Arrays.copyOf(this.biomes, capacity);
+                this.xs = Arrays.copyOf(this.xs, capacity);
+                this.ys = Arrays.copyOf(this.ys, capacity);
+                this.zs = Arrays.copyOf(this.zs, capacity);
+                this.waters = Arrays.copyOf(this.waters, capacity);
+                this.floors = Arrays.copyOf(this.floors, capacity);
+                this.completes = Arrays.copyOf(this.completes, capacity);
+                this.floorYs = Arrays.copyOf(this.floorYs, capacity);
+                this.floorLights = Arrays.copyOf(this.floorLights, capacity);
+            }
+            
+            final int index = this.count;
+            this.times[index] = recording.getTime();
+            this.types[index] = recording.getType();
+            this.reasons[index] = recording.getReason();
+            this.worldNames[index] = recording.getWorldName();
+            this.minHeights[index] = recording.getWorldMinHeight();
+            this.biomes[index] = recording.getBiome();
+            this.xs[index] = recording.getX();
+            this.ys[index] = recording.getY();
+            this.zs[index] = recording.getZ();
+            this.waters[index] = recording.isWater();
+            this.floors[index] = recording.hasFloor();
+            this.completes[index] = !recording.isWater() || (recording.hasFloor() && !recording.isTruncated());
+            this.floorYs[index] = recording.getFloorY();
+            this.floorLights[index] = recording.getFloorLight();
+            this.count++;
+            if (this.isSkipped(index)) {
+                this.skipped++;
+            } else if (!this.completes[index]) {
+                this.incomplete++;
+            }
+        }
+        
+        /**
+         * Checks if the spawn at the given index is skipped when replaying,
+         * because it was recorded with names that do not exist in the current
+         * build.
+         * 
+         * @param index The index of the spawn.
+         * @return {@code true} if the spawn is skipped, {@code false}
+         *         otherwise.
+         */
+        private boolean isSkipped(final int index) {
+            return this.types[index] == null || this.reasons[index] == null || this.biomes[index] == null;
+        }
+    }
+    
+    /**
+     * Represents a {@link BlockSource} over the rebuilt column of a single
+     * spawn at a time. If the spawn block was water, every block from the
+     * spawn block down to the recorded floor is {@link WaterKind#WATER}, and
+     * only the floor has its recorded light levels. Every other block is
+     * {@link WaterKind#OTHER}, which ends the search for the floor just
+     * below the recorded floor.
+     * <p>
+     * If the column of the spawn was not recorded in full, any read below the
+     * recorded floor (or of the light levels of a floor that was not
+     * recorded) is noted, so that the decision can be reported as
+     * unverifiable.
+     */
+    private static final class ReplayBlockSource implements BlockSource {
+        
+        private final RecordedSpawns spawns;
+        
+        private int x;
+        private int y;
+        private int z;
+        private boolean water;
+        private boolean floor;
+        private boolean complete;
+        private int floorY;
+        private short floorLight;
+        private int minHeight;
+        private boolean beyond;
+        
+        /**
+         * Constructs a new {@link ReplayBlockSource}.
+         * 
+         * @param spawns The {@link RecordedSpawns} to read from.
+         */
+        private ReplayBlockSource(@NotNull final RecordedSpawns spawns) {
+            this.spawns = spawns;
+        }
+        
+        /**
+         * Moves this {@link ReplayBlockSource} to the column of the spawn at
+         * the given index.
+         * 
+         * @param index The index of the spawn.
+         */
+        private void moveTo(final int index) {
+            this.x = this.spawns.xs[index];
+            this.y = this.spawns.ys[index];
+            this.z = this.spawns.zs[index];
+            this.water = this.spawns.waters[index];
+            this.floor = this.spawns.floors[index];
+            this.complete = this.spawns.completes[index];
+            this.floorY = this.spawns.floorYs[index];
+            this.floorLight = this.spawns.floorLights[index];
+            this.minHeight = this.spawns.minHeights[index];
+            this.beyond = false;
+        }
+        
+        /**
+         * Checks if the current decision has read beyond the recorded column
+         * since this {@link ReplayBlockSource} was last moved.
+         * 
+         * @return {@code true} if the decision read beyond the recorded
+         *         column, {@code false} otherwise.
+         */
+        private boolean isBeyond() {
+            return this.beyond;
+        }
+        
+        /**
+         * Gets the recorded light levels of the given block, noting the read
+         * if the floor of the spawn was not recorded.
+         * 
+         * @param x The block X coordinate.
+         * @param y The block Y coordinate.
+         * @param z The block Z coordinate.
+         * @return The packed light levels of the block, which are only
+         *         recorded for the floor.
+         */
+        private int getLight(final int x, final int y, final int z) {
+            if (!this.water || x != this.x || y != this.floorY || z != this.z) {
+                return 0;
+            }
+            if (!this.floor) {
+                this.beyond = true;
+            }
+            return this.floorLight;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public byte getKind(final int x, final int y, final int z) {
+            if (x != this.x || z != this.z || y > this.y) {
+                return WaterKind.OTHER;
+            }
+            if (y < this.floorY) {
+                if (!this.complete) {
+                    this.beyond = true;
+                }
+                return WaterKind.OTHER;
+            }
+            return this.water ? WaterKind.WATER : WaterKind.OTHER;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getLightLevel(final int x, final int y, final int z) {
+            return (this.getLight(x, y, z) >> 8) & 0xF;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getSkyLightLevel(final int x, final int y, final int z) {
+            return (this.getLight(x, y, z) >> 4) & 0xF;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getBlockLightLevel(final int x, final int y, final int z) {
+            return this.getLight(x, y, z) & 0xF;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getMinHeight() {
+            return this.minHeight;
+        }
+    }
+    
+    /**
+     * Constructs a new {@link SpawnReplayer}.
+     * 
+     * @param spawns The {@link RecordedSpawns} to replay.
+     * @param iterations The number of measured passes over the spawns.
+     */
+    private SpawnReplayer(@NotNull final RecordedSpawns spawns, final int iterations) {
+        this.spawns = spawns;
+        this.iterations = iterations;
+    }
+    
+    /**
+     * Runs the replayer from the command line.
+     * 
+     * @param args The command-line arguments: the recording, the
+     *             configuration file, an optional second configuration file
+     *             to compare against, and the optional number of passes,
+     *             decisions file to write, and decisions file to compare
+     *             against.
+     */
+    public static void main(@NotNull final String[] args) {
+        
+        final List<String> files = new ArrayList<String>();
+        int iterations = 5;
+        Path writePath = null;
+        Path comparePath = null;
+        for (int index = 0; index < args.length; index++) {
+            final String arg = args[index];
+            if (!arg.startsWith("--")) {
+                files.add(arg);
+                continue;
+            }
+            if (index + 1 == args.length) {
+                System.err.println("Missing value for " + arg + ".");
+                System.err.println(USAGE);
+                System.exit(2);
+                return;
+            }
+            final String value = args[++index];
+            if (arg.equals("--iterations")) {
+                try {
+                    iterations = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    iterations = 0;
+                }
+                if (iterations < 1) {
+                    System.err.println("The number of iterations must be a positive integer: " + value);
+                    System.err.println(USAGE);
+                    System.exit(2);
+                    return;
+                }
+            } else if (arg.equals("--write")) {
+                writePath = Paths.get(value);
+            } else if (arg.equals("--compare")) {
+                comparePath = Paths.get(value);
+            } else {
+                System.err.println("Unknown option: " + arg);
+                System.err.println(USAGE);
+                System.exit(2);
+                return;
+            }
+        }
+        if (files.size() < 2 || files.size() > 3) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        
+        try {
+            final Path recordingPath = Paths.get(files.get(0));
+            final RecordedSpawns spawns = SpawnReplayer.load(recordingPath);
+            if (spawns.count == spawns.skipped) {
+                System.err.println("The recording does not contain any spawns that can be replayed: " + recordingPath);
+                System.exit(1);
+                return;
+            }
+            
+            final SpawnReplayer replayer = new SpawnReplayer(spawns, iterations);
+            final Path configPath = Paths.get(files.get(1));
+            final String[] decisions = replayer.replay(configPath);
+            if (writePath != null) {
+                replayer.write(decisions, recordingPath, writePath);
+            }
+            if (comparePath != null) {
+                replayer.compare(decisions, configPath.toString(), SpawnReplayer.read(comparePath, spawns.count), comparePath.toString());
+            }
+            if (files.size() == 3) {
+                final Path otherConfigPath = Paths.get(files.get(2));
+                replayer.compare(decisions, configPath.toString(), replayer.replay(otherConfigPath), otherConfigPath.toString());
+            }
+        } catch (IOException | InvalidConfigurationException e) {
+            System.err.println("Unable to replay the spawn recording: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Loads all spawns of the {@link SpawnRecording} at the given
+     * {@link Path} into memory.
+     * 
+     * @param path The {@link Path} of the {@link SpawnRecording}.
+     * @return The loaded {@link RecordedSpawns}.
+     * @throws IOException If the recording cannot be read.
+     */
+    @NotNull
+    private static RecordedSpawns load(@NotNull final Path path) throws IOException {
+        
+        final RecordedSpawns spawns = new RecordedSpawns();
+        final long unresolvedNames;
+        try (final SpawnRecording recording = SpawnRecording.open(path)) {
+            while (recording.next()) {
+                spawns.add(recording);
+            }
+            unresolvedNames = recording.getUnresolvedNames();
+        }
+        
+        System.out.println("Loaded " + spawns.count + " spawns from " + path + ".");
+        if (spawns.skipped > 0) {
+            System.out.println(spawns.skipped + " spawns will be skipped, as " + unresolvedNames + " of their entity types, spawn reasons, or biomes do not exist in this build.");
+        }
+        if (spawns.incomplete > 0) {
+            System.out.println(spawns.incomplete + " spawns were recorded without their full column, and will be reported as unverifiable if a decision reads beyond it.");
+        }
+        return spawns;
+    }
+    
+    /**
+     * Replays every spawn through the {@link SpawnDecider}s of the
+     * configuration at the given {@link Path}, once to warm up and then for
+     * each measured pass, and reports the results.
+     * 
+     * @param configPath The {@link Path} of the configuration.
+     * @return The described decision of each spawn.
+     * @throws IOException If the configuration cannot be read.
+     * @throws InvalidConfigurationException If the configuration is not valid
+     *                                       YAML, or any of its settings are
+     *                                       invalid.
+     */
+    @NotNull
+    private String[] replay(@NotNull final Path configPath) throws IOException, InvalidConfigurationException {
+        
+        final YamlConfiguration config = new YamlConfiguration();
+        config.load(configPath.toFile());
+        final SpawnProfiles spawnProfiles = new SpawnProfilesLoader(Logger.getLogger("SaferWater"), null, false, false).load(config);
+        if (spawnProfiles == null) {
+            throw new InvalidConfigurationException("Invalid settings in " + configPath + ".");
+        }
+        
+        final RecordedSpawns spawns = this.spawns;
+        final SpawnDecider[] deciders = new SpawnDecider[spawns.count];
+        for (int index = 0; index < spawns.count; index++) {
+            if (!spawns.isSkipped(index)) {
+                deciders[index] = spawnProfiles.getDecider(spawns.worldNames[index], spawns.biomes[index]);
+            }
+        }
+        
+        System.out.println("Replaying " + (spawns.count - spawns.skipped) + " spawns with " + configPath + " (" + this.iterations + " passes)...");
+        final ReplayBlockSource source = new ReplayBlockSource(spawns);
+        final long[] decisions = new long[spawns.count];
+        final boolean[] unverifiable = new boolean[spawns.count];
+        final LatencyHistogram latencies = new LatencyHistogram();
+        this.decideAll(deciders, source, decisions, unverifiable, null);
+        
+        final long start = System.nanoTime();
+        for (int iteration = 0; iteration < this.iterations; iteration++) {
+            this.decideAll(deciders, source, decisions, unverifiable, latencies);
+        }
+        final long elapsedNanos = System.nanoTime() - start;
+        
+        final String[] described = new String[spawns.count];
+        final Map<String, Integer> outcomeCounts = new LinkedHashMap<String, Integer>();
+        for (int index = 0; index < spawns.count; index++) {
+            if (deciders[index] == null) {
+                described[index] = SKIPPED;
+            } else if (unverifiable[index]) {
+                described[index] = UNVERIFIABLE + " " + SpawnReplayer.describe(decisions[index]);
+            } else {
+                described[index] = SpawnReplayer.describe(decisions[index]);
+            }
+            outcomeCounts.merge(described[index].split(" ", 2)[0], 1, Integer::sum);
+        }
+        
+        final long decided = latencies.getCount();
+        System.out.println("  Throughput: " + String.format("%.0f", decided * 1000000000.0D / Math.max(1L, elapsedNanos)) + " spawns/s");
+        System.out.println("  Decision latency: p50 " + latencies.getPercentile(50.0D) + "ns, p99 " + latencies.getPercentile(99.0D) + "ns, p99.9 " + latencies.getPercentile(99.9D) + "ns");
+        final StringBuilder outcomes = new StringBuilder("  Outcomes:");
+        for (final Map.Entry<String, Integer> entry : outcomeCounts.entrySet()) {
+            outcomes.append(' ').append(entry.getKey()).append(' ').append(entry.getValue()).append(',');
+        }
+        outcomes.setLength(outcomes.length() - 1);
+        System.out.println(outcomes);
+        return described;
+    }
+    
+    /**
+     * Decides every spawn that is not skipped once.
+     * 
+     * @param deciders The {@link SpawnDecider} of each spawn, or
+     *                 {@code null} if it is skipped.
+     * @param source The {@link ReplayBlockSource} to read from.
+     * @param decisions The array that the packed decisions are stored in.
+     * @param unverifiable The array that is set for each decision that read
+     *                     beyond the recorded column of its spawn.
+     * @param latencies The {@link LatencyHistogram} that the time taken by
+     *                  each decision is recorded in, or {@code null} if the
+     *                  decisions are not measured.
+     */
+    private void decideAll(@NotNull final SpawnDecider[] deciders, @NotNull final ReplayBlockSource source, @NotNull final long[] decisions, @NotNull final boolean[] unverifiable, @Nullable final LatencyHistogram latencies) {
+        
+        final RecordedSpawns spawns = this.spawns;
+        for (int index = 0; index < spawns.count; index++) {
+            final SpawnDecider decider = deciders[index];
+            if (decider == null) {
+                continue;
+            }
+            source.moveTo(index);
+            final long startNanos = System.nanoTime();
+            decisions[index] = decider.decide(spawns.types[index], spawns.reasons[index], source, spawns.xs[index], spawns.ys[index], spawns.zs[index]);
+            if (latencies != null) {
+                latencies.record(System.nanoTime() - startNanos);
+            }
+            unverifiable[index] = source.isBeyond();
+        }
+    }
+    
+    /**
+     * Describes a packed decision as its outcome, followed by the floor and
+     * its light level if they are meaningful for the outcome.
+     * 
+     * @param decision The packed decision.
+     * @return The description of the decision.
+     */
+    @NotNull
+    private static String describe(final long decision) {
+        final int outcome = SpawnDecider.getOutcome(decision);
+        final String name = outcome < OUTCOME_NAMES.length ? OUTCOME_NAMES[outcome] : "OUTCOME_" + outcome;
+        if (outcome != SpawnDecider.ALLOWED && outcome != SpawnDecider.DENIED) {
+            return name;
+        }
+        return name + " " + SpawnDecider.getFloorY(decision) + " " + SpawnDecider.getLightLevel(decision);
+    }
+    
+    /**
+     * Writes the described decisions to a decisions file, one line per spawn,
+     * in the order that they were recorded.
+     * 
+     * @param decisions The described decisions.
+     * @param recordingPath The {@link Path} of the recording.
+     * @param path The {@link Path} of the decisions file.
+     * @throws IOException If the decisions file cannot be written.
+     */
+    private void write(@NotNull final String[] decisions, @NotNull final Path recordingPath, @NotNull final Path path) throws IOException {
+        
+        final Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        try (final BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write(DECISIONS_HEADER + " of " + decisions.length + " spawns from " + recordingPath.getFileName());
+            writer.newLine();
+            for (final String decision : decisions) {
+                writer.write(decision);
+                writer.newLine();
+            }
+        }
+        System.out.println("Wrote " + decisions.length + " decisions to " + path + ".");
+    }
+    
+    /**
+     * Reads the described decisions from a decisions file.
+     * 
+     * @param path The {@link Path} of the decisions file.
+     * @param count The number of spawns that the file must have decisions
+     *              for.
+     * @return The described decisions.
+     * @throws IOException If the decisions file cannot be read, or was not
+     *                     written from the same recording.
+     */
+    @NotNull
+    private static String[] read(@NotNull final Path path, final int count) throws IOException {
+        
+        final List<String> decisions = new ArrayList<String>(count);
+        try (final BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            final String header = reader.readLine();
+            if (header == null || !header.startsWith(DECISIONS_HEADER)) {
+                throw new IOException("Not a SaferWater decisions file: " + path);
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                decisions.add(line.trim());
+            }
+        }
+        if (decisions.size() != count) {
+            throw new IOException("The decisions file " + path + " has " + decisions.size() + " decisions, but the recording has " + count + " spawns.");
+        }
+        return decisions.toArray(new String[0]);
+    }
+    
+    /**
+     * Compares two sets of described decisions of the same spawns, and
+     * reports the spawns that were decided differently. Spawns whose decision
+     * is unverifiable in either set are counted separately, and are neither
+     * matches nor differences.
+     * 
+     * @param decisions The described decisions.
+     * @param name The name of the source of the decisions.
+     * @param otherDecisions The described decisions to compare against.
+     * @param otherName The name of the source of the other decisions.
+     */
+    private void compare(@NotNull final String[] decisions, @NotNull final String name, @NotNull final String[] otherDecisions, @NotNull final String otherName) {
+        
+        final RecordedSpawns spawns = this.spawns;
+        final Map<String, Integer> changes = new LinkedHashMap<String, Integer>();
+        final List<String> listed = new ArrayList<String>();
+        int different = 0;
+        int unverifiable = 0;
+        for (int index = 0; index < spawns.count; index++) {
+            
+            if (decisions[index].startsWith(UNVERIFIABLE) || otherDecisions[index].startsWith(UNVERIFIABLE)) {
+                unverifiable++;
+                continue;
+            }
+            if (decisions[index].equals(otherDecisions[index])) {
+                continue;
+            }
+            different++;
+            changes.merge(decisions[index].split(" ", 2)[0] + " -> " + otherDecisions[index].split(" ", 2)[0], 1, Integer::sum);
+            if (listed.size() < MAX_LISTED_DIFFERENCES) {
+                listed.add("    " + Instant.ofEpochMilli(spawns.times[index])
+                        + " " + (spawns.types[index] == null ? "?" : spawns.types[index].name())
+                        + " " + (spawns.reasons[index] == null ? "?" : spawns.reasons[index].name())
+                        + " " + spawns.worldNames[index]
+                        + " " + spawns.xs[index] + "," + spawns.ys[index] + "," + spawns.zs[index]
+                        + ": " + decisions[index] + " -> " + otherDecisions[index]);
+            }
+        }
+        
+        System.out.println("Comparing " + name + " with " + otherName + ":");
+        if (unverifiable > 0) {
+            System.out.println("  " + unverifiable + " of " + spawns.count + " spawns could not be verified, as they were decided from beyond their recorded column.");
+        }
+        final int verified = spawns.count - unverifiable;
+        if (different == 0) {
+            System.out.println("  All " + verified + " verified spawns were decided the same.");
+            return;
+        }
+        System.out.println("  " + different + " of " + verified + " verified spawns were decided differently.");
+        changes.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .forEach(entry -> System.out.println("    " + entry.getKey() + ": " + entry.getValue()));
+        System.out.println("  First " + listed.size() + " differences:");
+        listed.forEach(System.out::println);
+    }
+}
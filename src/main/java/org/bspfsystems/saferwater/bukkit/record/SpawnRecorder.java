@@ -0,0 +1,671 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.record;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.water.BlockSource;
+import org.bspfsystems.saferwater.bukkit.water.ChunkWaterFloor;
+import org.bspfsystems.saferwater.bukkit.water.ColumnScanner;
+import org.bspfsystems.saferwater.bukkit.water.WaterKind;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents the opt-in recorder of spawns, for replaying them offline with
+ * {@link org.bspfsystems.saferwater.bukkit.offline.SpawnReplayer}.
+ * <p>
+ * Recording a spawn copies what its live decision found (the floor of its
+ * body of water, if any), along with the light levels of the floor, into a
+ * preallocated lock-free ring buffer. The column is never walked again, so
+ * at most a handful of blocks are read. A background writer drains the
+ * buffer, and writes the spawns to a compressed {@link SpawnRecording} in the
+ * background. No I/O is performed, no lock is taken, and nothing is
+ * allocated, on the thread that records a spawn.
+ * <p>
+ * Each time recording is started, a new recording file is created. Once the
+ * file has reached its maximum size (or cannot be written), the recording is
+ * finished, and further spawns are not recorded until recording is started
+ * again. If the buffer is full, the new spawn is dropped and counted.
+ */
+public final class SpawnRecorder {
+    
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+    private static final EntityType[] ENTITY_TYPES = EntityType.values();
+    private static final SpawnReason[] SPAWN_REASONS = SpawnReason.values();
+    private static final Biome[] BIOMES = Biome.values();
+    
+    private final File directory;
+    private final Logger logger;
+    private final Map<UUID, Integer> worldIds;
+    private final List<String> worldNames;
+    private final List<Integer> worldMinHeights;
+    private final LongAdder written;
+    private final LongAdder dropped;
+    
+    private volatile SpawnRecorderSettings settings;
+    private volatile Ring ring;
+    private File file;
+    private Thread writerThread;
+    
+    /**
+     * Constructs a new {@link SpawnRecorder}, using the
+     * {@link SpawnRecorderSettings#DEFAULT} settings.
+     * 
+     * @param directory The directory that the recording files are written
+     *                  to.
+     * @param logger The {@link Logger} that any errors are logged to.
+     */
+    public SpawnRecorder(@NotNull final File directory, @NotNull final Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+        this.worldIds = new ConcurrentHashMap<UUID, Integer>();
+        this.worldNames = new CopyOnWriteArrayList<String>();
+        this.worldMinHeights = new CopyOnWriteArrayList<Integer>();
+        this.written = new LongAdder();
+        this.dropped = new LongAdder();
+        this.settings = SpawnRecorderSettings.DEFAULT;
+        this.ring = null;
+        this.file = null;
+    }
+    
+    /**
+     * Applies new {@link SpawnRecorderSettings}, starting or stopping the
+     * recording as needed. If recording is already running, has not
+     * finished, and the buffer size has not changed, the current recording
+     * carries on; otherwise, a new recording is started, so that a recording
+     * that has reached its maximum size (or could not be written) is
+     * restarted by reloading the configuration.
+     * <p>
+     * A recording that is replaced is finished by its own background writer,
+     * so this never waits for it.
+     * 
+     * @param settings The new {@link SpawnRecorderSettings}.
+     */
+    public synchronized void configure(@NotNull final SpawnRecorderSettings settings) {
+        
+        final SpawnRecorderSettings previous = this.settings;
+        this.settings = settings;
+        if (!settings.isEnabled()) {
+            this.stop();
+            return;
+        }
+        if (this.ring != null && !this.ring.finished && previous.getBufferSize() == settings.getBufferSize()) {
+            return;
+        }
+        
+        this.stop();
+        final Ring ring = new Ring(settings.getBufferSize());
+        final File file = new File(this.directory, "spawns-" + LocalDateTime.now().format(FILE_TIME_FORMAT) + SpawnRecording.FILE_EXTENSION);
+        this.file = file;
+        this.writerThread = new Thread(() -> this.runWriter(ring, file), "SaferWater Spawn Recorder");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+        this.ring = ring;
+        this.logger.log(Level.INFO, "Recording SaferWater spawns to " + file.getPath() + ".");
+    }
+    
+    /**
+     * Stops the recording. The buffer is closed, so that no more spawns are
+     * added to it, and the background writer is woken up to write the
+     * buffered spawns and close the recording file. This returns without
+     * waiting for the background writer.
+     */
+    public synchronized void stop() {
+        final Ring ring = this.ring;
+        if (ring == null) {
+            return;
+        }
+        this.ring = null;
+        ring.close();
+        LockSupport.unpark(this.writerThread);
+        this.writerThread = null;
+    }
+    
+    /**
+     * Checks if spawns are currently being recorded, so that the caller can
+     * skip recording them entirely.
+     * 
+     * @return {@code true} if recorded spawns will be written, {@code false}
+     *         otherwise.
+     */
+    public boolean isActive() {
+        final Ring ring = this.ring;
+        return ring != null && !ring.finished;
+    }
+    
+    /**
+     * Gets the file of the current (or last) recording.
+     * 
+     * @return The recording file, or {@code null} if nothing has been
+     *         recorded yet.
+     */
+    @Nullable
+    public synchronized File getFile() {
+        return this.file;
+    }
+    
+    /**
+     * Records a spawn, along with what its live decision found. This copies
+     * the floor and its light levels into the buffer, and never blocks on
+     * I/O, or on a lock.
+     * <p>
+     * If the spawn was allowed or denied from the light level of its floor,
+     * the floor is taken from the decision. Otherwise (for example, if the
+     * spawn was not filtered, or was decided from a cache), only the spawn
+     * block and the indexed floor (if any) are read, and the column is never
+     * scanned. Only the light levels of the floor, and the few blocks below
+     * it that tell whether the column carries on, are read beyond that.
+     * 
+     * @param type The {@link EntityType} of the spawn.
+     * @param reason The {@link SpawnReason} of the spawn.
+     * @param world The {@link World} of the spawn.
+     * @param source The {@link BlockSource} of the {@link World}.
+     * @param x The block X coordinate of the spawn.
+     * @param y The block Y coordinate of the spawn.
+     * @param z The block Z coordinate of the spawn.
+     * @param decision The packed decision of the spawn, as returned by the
+     *                 {@link SpawnDecider}, or {@code 0} if the spawn was not
+     *                 decided from its floor.
+     */
+    public void record(@NotNull final EntityType type, @NotNull final SpawnReason reason, @NotNull final World world, @NotNull final BlockSource source, final int x, final int y, final int z, final long decision) {
+        
+        final Ring ring = this.ring;
+        if (ring == null) {
+            return;
+        }
+        
+        final long time = System.currentTimeMillis();
+        final int outcome = SpawnDecider.getOutcome(decision);
+        int flags = 0;
+        int floorY = ChunkWaterFloor.UNKNOWN;
+        if (outcome == SpawnDecider.ALLOWED || outcome == SpawnDecider.DENIED) {
+            flags = SpawnRecording.FLAG_WATER;
+            floorY = SpawnDecider.getFloorY(decision);
+        } else if (outcome != SpawnDecider.DRY && ColumnScanner.isWater(source, x, y, z)) {
+            flags = SpawnRecording.FLAG_WATER;
+            floorY = source.getIndexedFloorY(x, y, z);
+        }
+        
+        int floorLight = 0;
+        if (floorY != ChunkWaterFloor.UNKNOWN) {
+            flags |= SpawnRecording.FLAG_FLOOR;
+            floorLight = SpawnRecording.packLight(source.getLightLevel(x, floorY, z), source.getSkyLightLevel(x, floorY, z), source.getBlockLightLevel(x, floorY, z));
+            if (SpawnRecorder.isCutShort(source, x, floorY, z)) {
+                flags |= SpawnRecording.FLAG_TRUNCATED;
+            }
+        } else {
+            floorY = y;
+        }
+        
+        final int worldId = this.getWorldId(world);
+        final int biome = world.getBiome(x, y, z).ordinal();
+        if (ring.offer(time, type.ordinal(), reason.ordinal(), worldId, biome, x, y, z, flags, floorY, floorLight) == 1) {
+            this.dropped.increment();
+        }
+    }
+    
+    /**
+     * Checks if the column below a floor would carry on the search for the
+     * floor, by the same rules as
+     * {@link ColumnScanner#findFloorY(BlockSource, int, int, int, int)}. If
+     * it would, the floor was found by a scan that was stopped early (at the
+     * maximum scan depth), or the column holds more water-like blocks below
+     * the floor, and a replay of the spawn can only rebuild the column down
+     * to the floor.
+     * 
+     * @param source The {@link BlockSource} to read from.
+     * @param x The block X coordinate of the spawn.
+     * @param floorY The block Y coordinate of the floor.
+     * @param z The block Z coordinate of the spawn.
+     * @return {@code true} if the column carries on below the floor,
+     *         {@code false} otherwise.
+     */
+    private static boolean isCutShort(@NotNull final BlockSource source, final int x, final int floorY, final int z) {
+        if (floorY - 1 < source.getMinHeight()) {
+            return false;
+        }
+        final byte kind = source.getKind(x, floorY - 1, z);
+        return kind != WaterKind.AIR && (WaterKind.isWaterLike(kind) || WaterKind.isWaterLike(source.getKind(x, floorY - 2, z)) || WaterKind.isWaterLike(source.getKind(x, floorY - 3, z)));
+    }
+    
+    /**
+     * Gets the compact ID of the given {@link World}, registering its name
+     * and minimum height if it has not been seen before.
+     * 
+     * @param world The {@link World}.
+     * @return The ID of the {@link World}.
+     */
+    private int getWorldId(@NotNull final World world) {
+        final UUID uniqueId = world.getUID();
+        final Integer worldId = this.worldIds.get(uniqueId);
+        if (worldId != null) {
+            return worldId;
+        }
+        synchronized (this.worldNames) {
+            return this.worldIds.computeIfAbsent(uniqueId, id -> {
+                this.worldMinHeights.add(world.getMinHeight());
+                this.worldNames.add(world.getName());
+                return this.worldNames.size() - 1;
+            });
+        }
+    }
+    
+    /**
+     * Gets the number of spawns that have been written.
+     * 
+     * @return The number of written spawns.
+     */
+    public long getWritten() {
+        return this.written.sum();
+    }
+    
+    /**
+     * Gets the number of spawns that have been dropped because the buffer
+     * was full.
+     * 
+     * @return The number of dropped spawns.
+     */
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+    
+    /**
+     * Runs the background writer of a single recording, until its buffer has
+     * been closed and every spawn that was added to it has been written (or
+     * discarded, once the recording has finished).
+     * 
+     * @param ring The {@link Ring} of the recording.
+     * @param file The file of the recording.
+     */
+    private void runWriter(@NotNull final Ring ring, @NotNull final File file) {
+        
+        final Ring batch = new Ring(ring.capacity);
+        final boolean[] typesWritten = new boolean[ENTITY_TYPES.length];
+        final boolean[] reasonsWritten = new boolean[SPAWN_REASONS.length];
+        final boolean[] biomesWritten = new boolean[BIOMES.length];
+        int worldsWritten = 0;
+        FileOutputStream fileOutput = null;
+        DataOutputStream output = null;
+        
+        while (true) {
+            
+            final boolean stopping = ring.isClosed();
+            final int count = ring.drainTo(batch);
+            if (count == 0) {
+                if (output != null) {
+                    try {
+                        output.flush();
+                    } catch (IOException e) {
+                        this.logger.log(Level.WARNING, "Unable to write the SaferWater spawn recording.", e);
+                        output = this.finish(ring, output);
+                    }
+                }
+                if (stopping) {
+                    if (ring.isDrained()) {
+                        break;
+                    }
+                    Thread.onSpinWait();
+                    continue;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            if (ring.finished) {
+                continue;
+            }
+            
+            try {
+                if (output == null) {
+                    if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+                        throw new IOException("Unable to create the spawn recording directory at " + this.directory.getPath());
+                    }
+                    fileOutput = new FileOutputStream(file);
+                    output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(fileOutput, 65536, true), 65536));
+                    output.writeInt(SpawnRecording.MAGIC);
+                    output.writeShort(SpawnRecording.VERSION);
+                }
+                
+                for (int index = 0; index < count; index++) {
+                    
+                    final int type = batch.types[index];
+                    final int reason = batch.reasons[index];
+                    final int world = batch.worlds[index];
+                    final int biome = batch.biomes[index];
+                    if (!typesWritten[type]) {
+                        SpawnRecorder.writeName(output, SpawnRecording.TABLE_TYPE, type, ENTITY_TYPES[type].name());
+                        typesWritten[type] = true;
+                    }
+                    if (!reasonsWritten[reason]) {
+                        SpawnRecorder.writeName(output, SpawnRecording.TABLE_REASON, reason, SPAWN_REASONS[reason].name());
+                        reasonsWritten[reason] = true;
+                    }
+                    while (worldsWritten <= world) {
+                        SpawnRecorder.writeName(output, SpawnRecording.TABLE_WORLD, worldsWritten, this.worldNames.get(worldsWritten));
+                        output.writeInt(this.worldMinHeights.get(worldsWritten));
+                        worldsWritten++;
+                    }
+                    if (!biomesWritten[biome]) {
+                        SpawnRecorder.writeName(output, SpawnRecording.TABLE_BIOME, biome, BIOMES[biome].name());
+                        biomesWritten[biome] = true;
+                    }
+                    
+                    final int flags = batch.flags[index];
+                    output.writeByte(SpawnRecording.TAG_SPAWN);
+                    output.writeLong(batch.times[index]);
+                    output.writeShort(type);
+                    output.writeByte(reason);
+                    output.writeShort(world);
+                    output.writeShort(biome);
+                    output.writeInt(batch.xs[index]);
+                    output.writeShort(batch.ys[index]);
+                    output.writeInt(batch.zs[index]);
+                    output.writeByte(flags);
+                    if ((flags & SpawnRecording.FLAG_FLOOR) != 0) {
+                        output.writeShort(batch.floorYs[index]);
+                        output.writeShort(batch.floorLights[index]);
+                    }
+                    this.written.increment();
+                }
+                
+                if (fileOutput.getChannel().position() >= this.settings.getMaxFileSize()) {
+                    output = this.finish(ring, output);
+                    this.logger.log(Level.INFO, "The SaferWater spawn recording at " + file.getPath() + " has reached its maximum size, and has been finished.");
+                }
+            } catch (IOException | SecurityException e) {
+                this.logger.log(Level.WARNING, "Unable to write the SaferWater spawn recording.", e);
+                output = this.finish(ring, output);
+            }
+        }
+        
+        this.finish(ring, output);
+    }
+    
+    /**
+     * Writes a name record.
+     * 
+     * @param output The {@link DataOutputStream} to write to.
+     * @param table The name table.
+     * @param id The ID of the name.
+     * @param name The name.
+     * @throws IOException If the record cannot be written.
+     */
+    private static void writeName(@NotNull final DataOutputStream output, final int table, final int id, @NotNull final String name) throws IOException {
+        output.writeByte(SpawnRecording.TAG_NAME);
+        output.writeByte(table);
+        output.writeShort(id);
+        output.writeUTF(name);
+    }
+    
+    /**
+     * Finishes the recording of the given {@link Ring}, closing the given
+     * {@link DataOutputStream} and logging any error. The {@link Ring} is
+     * closed, so that no further spawns are recorded until recording is
+     * started again.
+     * 
+     * @param ring The {@link Ring} of the recording.
+     * @param output The {@link DataOutputStream} to close, if any.
+     * @return Always {@code null}, for assigning to the closed
+     *         {@link DataOutputStream}.
+     */
+    @Nullable
+    private DataOutputStream finish(@NotNull final Ring ring, @Nullable final DataOutputStream output) {
+        ring.finished = true;
+        ring.close();
+        if (output == null) {
+            return null;
+        }
+        try {
+            output.close();
+        } catch (IOException e) {
+            this.logger.log(Level.WARNING, "Unable to close the SaferWater spawn recording.", e);
+        }
+        return null;
+    }
+    
+    /**
+     * Represents a fixed-capacity ring buffer of spawns, stored as parallel
+     * arrays of primitives.
+     * <p>
+     * The {@link Ring} is lock-free, and may be offered to by any number of
+     * threads at once. Each slot has a sequence number, which tells whether
+     * the slot is free for the spawn at a given head position, or holds the
+     * published spawn at a given tail position. Offering a spawn claims the
+     * slot at the head, copies the spawn in, and then publishes it, and
+     * draining a spawn claims the slot at the tail, copies the spawn out, and
+     * then frees it.
+     * <p>
+     * Once closed, no more slots can be claimed, so that the background
+     * writer can drain the {@link Ring} completely, and then finish the
+     * recording.
+     */
+    private static final class Ring {
+        
+        /**
+         * Set in the result of {@link #offer(long, int, int, int, int, int, int, int, int, int, int)}
+         * if the {@link Ring} was closed, and the spawn was not added.
+         */
+        private static final int CLOSED = 1 << 30;
+        
+        private static final long CLOSED_BIT = Long.MIN_VALUE;
+        
+        private final int capacity;
+        private final int mask;
+        private final long[] times;
+        private final int[] types;
+        private final int[] reasons;
+        private final int[] worlds;
+        private final int[] biomes;
+        private final int[] xs;
+        private final int[] ys;
+        private final int[] zs;
+        private final int[] flags;
+        private final int[] floorYs;
+        private final int[] floorLights;
+        private final AtomicLongArray sequences;
+        private final AtomicLong head;
+        private final AtomicLong tail;
+        
+        private volatile boolean finished;
+        
+        /**
+         * Constructs a new, empty {@link Ring}.
+         * 
+         * @param capacity The capacity, which must be a power of 2.
+         */
+        private Ring(final int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.times = new long[capacity];
+            this.types = new int[capacity];
+            this.reasons = new int[capacity];
+            this.worlds = new int[capacity];
+            this.biomes = new int[capacity];
+            this.xs = new int[capacity];
+            this.ys = new int[capacity];
+            this.zs = new int[capacity];
+            this.flags = new int[capacity];
+            this.floorYs = new int[capacity];
+            this.floorLights = new int[capacity];
+            this.sequences = new AtomicLongArray(capacity);
+            for (int slot = 0; slot < capacity; slot++) {
+                this.sequences.set(slot, slot);
+            }
+            this.head = new AtomicLong(0L);
+            this.tail = new AtomicLong(0L);
+            this.finished = false;
+        }
+        
+        /**
+         * Adds a spawn to this {@link Ring}, unless it is full.
+         * 
+         * @param time The time of the spawn, in epoch milliseconds.
+         * @param type The ordinal of the {@link EntityType}.
+         * @param reason The ordinal of the {@link SpawnReason}.
+         * @param world The ID of the {@link World}.
+         * @param biome The ordinal of the {@link Biome}.
+         * @param x The block X coordinate of the spawn.
+         * @param y The block Y coordinate of the spawn.
+         * @param z The block Z coordinate of the spawn.
+         * @param flags The {@link SpawnRecording} flags of the spawn.
+         * @param floorY The Y of the floor of the body of water.
+         * @param floorLight The packed light levels of the floor.
+         * @return {@code 0} if the spawn was added, {@code 1} if it was
+         *         dropped because this {@link Ring} is full, or
+         *         {@link #CLOSED} if this {@link Ring} is closed.
+         */
+        private int offer(final long time, final int type, final int reason, final int world, final int biome, final int x, final int y, final int z, final int flags, final int floorY, final int floorLight) {
+            
+            while (true) {
+                
+                final long head = this.head.get();
+                if (head < 0L) {
+                    return CLOSED;
+                }
+                
+                final int slot = (int) (head & this.mask);
+                final long difference = this.sequences.get(slot) - head;
+                if (difference > 0L) {
+                    continue;
+                }
+                if (difference < 0L) {
+                    return 1;
+                }
+                if (!this.head.compareAndSet(head, head + 1L)) {
+                    continue;
+                }
+                
+                this.times[slot] = time;
+                this.types[slot] = type;
+                this.reasons[slot] = reason;
+                this.worlds[slot] = world;
+                this.biomes[slot] = biome;
+                this.xs[slot] = x;
+                this.ys[slot] = y;
+                this.zs[slot] = z;
+                this.flags[slot] = flags;
+                this.floorYs[slot] = floorY;
+                this.floorLights[slot] = floorLight;
+                this.sequences.set(slot, head + 1L);
+                return 0;
+            }
+        }
+        
+        /**
+         * Moves the published spawns from this {@link Ring} into the start of
+         * the given {@link Ring}, up to its capacity.
+         * 
+         * @param batch The {@link Ring} to move the spawns into.
+         * @return The number of spawns that were moved.
+         */
+        private int drainTo(@NotNull final Ring batch) {
+            
+            int count = 0;
+            while (count < batch.capacity) {
+                
+                final long tail = this.tail.get();
+                final int slot = (int) (tail & this.mask);
+                final long difference = this.sequences.get(slot) - (tail + 1L);
+                if (difference < 0L) {
+                    break;
+                }
+                if (difference > 0L || !this.tail.compareAndSet(tail, tail + 1L)) {
+                    continue;
+                }
+                
+                batch.times[count] = this.times[slot];
+                batch.types[count] = this.types[slot];
+                batch.reasons[count] = this.reasons[slot];
+                batch.worlds[count] = this.worlds[slot];
+                batch.biomes[count] = this.biomes[slot];
+                batch.xs[count] = this.xs[slot];
+                batch.ys[count] = this.ys[slot];
+                batch.zs[count] = this.zs[slot];
+                batch.flags[count] = this.flags[slot];
+                batch.floorYs[count] = this.floorYs[slot];
+                batch.floorLights[count] = this.floorLights[slot];
+                this.sequences.set(slot, tail + this.capacity);
+                count++;
+            }
+            return count;
+        }
+        
+        /**
+         * Closes this {@link Ring}, so that no more spawns can be offered to
+         * it. Spawns that have already claimed a slot are still published.
+         */
+        private void close() {
+            long head;
+            do {
+                head = this.head.get();
+                if (head < 0L) {
+                    return;
+                }
+            } while (!this.head.compareAndSet(head, head | CLOSED_BIT));
+        }
+        
+        /**
+         * Checks if this {@link Ring} has been closed.
+         * 
+         * @return {@code true} if this {@link Ring} is closed, {@code false}
+         *         otherwise.
+         */
+        private boolean isClosed() {
+            return this.head.get() < 0L;
+        }
+        
+        /**
+         * Checks if this {@link Ring} has been closed, and every spawn that
+         * was offered to it has been drained.
+         * 
+         * @return {@code true} if this {@link Ring} is closed and empty,
+         *         {@code false} otherwise.
+         */
+        private boolean isDrained() {
+            final long head = this.head.get();
+            return head < 0L && this.tail.get() == (head & ~CLOSED_BIT);
+        }
+    }
+}
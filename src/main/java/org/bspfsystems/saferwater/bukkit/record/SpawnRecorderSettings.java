@@ -0,0 +1,85 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.record;
+
+/**
+ * Represents the immutable settings of the {@link SpawnRecorder}.
+ */
+public final class SpawnRecorderSettings {
+    
+    /**
+     * The default {@link SpawnRecorderSettings}, with recording disabled.
+     */
+    public static final SpawnRecorderSettings DEFAULT = new SpawnRecorderSettings(false, 4096, 64L * 1024L * 1024L);
+    
+    private final boolean enabled;
+    private final int bufferSize;
+    private final long maxFileSize;
+    
+    /**
+     * Constructs a new {@link SpawnRecorderSettings}.
+     * 
+     * @param enabled If {@code true}, spawns will be recorded.
+     * @param bufferSize The number of spawns that can be buffered before they
+     *                   are written. This will be rounded up to a power of 2.
+     * @param maxFileSize The size in bytes at which a recording is stopped.
+     * @throws IllegalArgumentException If any of the sizes are not positive.
+     */
+    public SpawnRecorderSettings(final boolean enabled, final int bufferSize, final long maxFileSize) throws IllegalArgumentException {
+        if (bufferSize <= 0 || bufferSize > (1 << 20)) {
+            throw new IllegalArgumentException("Buffer size must be between 1 and " + (1 << 20) + ": " + bufferSize);
+        }
+        if (maxFileSize <= 0L) {
+            throw new IllegalArgumentException("Maximum file size must be positive: " + maxFileSize);
+        }
+        this.enabled = enabled;
+        this.bufferSize = Integer.highestOneBit(bufferSize) == bufferSize ? bufferSize : Integer.highestOneBit(bufferSize) << 1;
+        this.maxFileSize = maxFileSize;
+    }
+    
+    /**
+     * Checks if spawns will be recorded.
+     * 
+     * @return {@code true} if recording is enabled, {@code false} otherwise.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+    
+    /**
+     * Gets the number of spawns that can be buffered before they are
+     * written, which is always a power of 2.
+     * 
+     * @return The buffer size.
+     */
+    public int getBufferSize() {
+        return this.bufferSize;
+    }
+    
+    /**
+     * Gets the size in bytes at which a recording is stopped.
+     * 
+     * @return The maximum file size.
+     */
+    public long getMaxFileSize() {
+        return this.maxFileSize;
+    }
+}
@@ -0,0 +1,469 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.record;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.bspfsystems.saferwater.bukkit.water.WaterKind;
+import org.bukkit.block.Biome;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents a reader of a recording written by the {@link SpawnRecorder}.
+ * <p>
+ * A recording is a GZIP-compressed stream that starts with a header, followed
+ * by name records and spawn records. The {@link EntityType}s,
+ * {@link SpawnReason}s, worlds, and {@link Biome}s of the spawns are written
+ * as compact IDs, and each ID is preceded by a name record the first time
+ * that it is used. The names are resolved against the current build when the
+ * recording is read, so that a recording can be read by a different build of
+ * the plugin (or against a different server version), and any names that
+ * cannot be resolved are counted rather than failing the whole recording.
+ * <p>
+ * Each spawn record holds what the live decision of the spawn found: whether
+ * the spawn block was {@link WaterKind#WATER}, and if so, the floor of its
+ * body of water and the light levels of the floor. When the spawn is
+ * replayed, the column is rebuilt as water from the spawn block down to the
+ * floor, which is everything a
+ * {@link org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider} reads to
+ * decide the spawn. A spawn whose floor was not found (for example, because
+ * it was not filtered, or was decided from a cache), or whose column carries
+ * on below the floor (for example, because the scan was stopped at the
+ * maximum scan depth), is marked as such, as the rebuilt column may not be
+ * decided in the same way as the real one.
+ * <p>
+ * A recording that was cut short (for example, if the server stopped without
+ * stopping the {@link SpawnRecorder}) can still be read up to the last
+ * complete record.
+ */
+public final class SpawnRecording implements Closeable {
+    
+    /**
+     * The extension of recording files.
+     */
+    public static final String FILE_EXTENSION = ".swrec";
+    
+    static final int MAGIC = 0x53575243;
+    static final int VERSION = 2;
+    
+    static final int TAG_NAME = 1;
+    static final int TAG_SPAWN = 2;
+    
+    static final int TABLE_TYPE = 0;
+    static final int TABLE_REASON = 1;
+    static final int TABLE_WORLD = 2;
+    static final int TABLE_BIOME = 3;
+    
+    static final int FLAG_WATER = 1;
+    static final int FLAG_FLOOR = 2;
+    static final int FLAG_TRUNCATED = 4;
+    
+    private final DataInputStream input;
+    private final List<EntityType> types;
+    private final List<SpawnReason> reasons;
+    private final List<String> worldNames;
+    private final List<Integer> worldMinHeights;
+    private final List<Biome> biomes;
+    
+    private long unresolvedNames;
+    private long time;
+    private EntityType type;
+    private SpawnReason reason;
+    private int world;
+    private Biome biome;
+    private int x;
+    private int y;
+    private int z;
+    private int flags;
+    private int floorY;
+    private short floorLight;
+    
+    /**
+     * Constructs a new {@link SpawnRecording}, reading from the given
+     * {@link DataInputStream}, which must be positioned after the header.
+     * 
+     * @param input The {@link DataInputStream} to read from.
+     */
+    private SpawnRecording(@NotNull final DataInputStream input) {
+        this.input = input;
+        this.types = new ArrayList<EntityType>();
+        this.reasons = new ArrayList<SpawnReason>();
+        this.worldNames = new ArrayList<String>();
+        this.worldMinHeights = new ArrayList<Integer>();
+        this.biomes = new ArrayList<Biome>();
+        this.unresolvedNames = 0L;
+        this.flags = 0;
+    }
+    
+    /**
+     * Opens the recording at the given {@link Path}, and reads its header.
+     * 
+     * @param path The {@link Path} of the recording.
+     * @return The opened {@link SpawnRecording}, positioned before its first
+     *         spawn.
+     * @throws IOException If the recording cannot be read, or is not a
+     *                     recording of a supported version.
+     */
+    @NotNull
+    public static SpawnRecording open(@NotNull final Path path) throws IOException {
+        
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(path), 65536), 65536));
+        try {
+            final int magic = input.readInt();
+            if (magic != MAGIC) {
+                throw new IOException("Not a SaferWater spawn recording: " + path);
+            }
+            final int version = input.readUnsignedShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported spawn recording version " + version + " (expected " + VERSION + "): " + path);
+            }
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+        return new SpawnRecording(input);
+    }
+    
+    /**
+     * Packs the light levels of a single block into a {@code short}.
+     * 
+     * @param lightLevel The light level of the block.
+     * @param skyLightLevel The sky light level of the block.
+     * @param blockLightLevel The block light level of the block.
+     * @return The packed light levels.
+     */
+    static short packLight(final int lightLevel, final int skyLightLevel, final int blockLightLevel) {
+        return (short) (((lightLevel & 0xF) << 8) | ((skyLightLevel & 0xF) << 4) | (blockLightLevel & 0xF));
+    }
+    
+    /**
+     * Reads the next spawn of this {@link SpawnRecording}, replacing the
+     * current one. Name records are read along the way.
+     * 
+     * @return {@code true} if a spawn was read, {@code false} if the end of
+     *         the recording (or the end of a recording that was cut short)
+     *         has been reached.
+     * @throws IOException If the recording cannot be read, or is corrupt.
+     */
+    public boolean next() throws IOException {
+        try {
+            while (true) {
+                final int tag = this.input.read();
+                if (tag == -1) {
+                    return false;
+                } else if (tag == TAG_NAME) {
+                    this.readName();
+                } else if (tag == TAG_SPAWN) {
+                    this.readSpawn();
+                    return true;
+                } else {
+                    throw new IOException("Corrupt spawn recording: unknown record tag " + tag);
+                }
+            }
+        } catch (EOFException e) {
+            this.flags = 0;
+            return false;
+        }
+    }
+    
+    /**
+     * Reads a name record, resolving the name against the current build.
+     * 
+     * @throws IOException If the record cannot be read, or is corrupt.
+     */
+    private void readName() throws IOException {
+        
+        final int table = this.input.readUnsignedByte();
+        final int id = this.input.readUnsignedShort();
+        final String name = this.input.readUTF();
+        switch (table) {
+            case TABLE_TYPE:
+                SpawnRecording.set(this.types, id, this.resolve(EntityType.class, name));
+                break;
+            case TABLE_REASON:
+                SpawnRecording.set(this.reasons, id, this.resolve(SpawnReason.class, name));
+                break;
+            case TABLE_WORLD:
+                SpawnRecording.set(this.worldNames, id, name);
+                SpawnRecording.set(this.worldMinHeights, id, this.input.readInt());
+                return;
+            case TABLE_BIOME:
+                SpawnRecording.set(this.biomes, id, this.resolve(Biome.class, name));
+                break;
+            default:
+                throw new IOException("Corrupt spawn recording: unknown name table " + table);
+        }
+    }
+    
+    /**
+     * Reads a spawn record.
+     * 
+     * @throws IOException If the record cannot be read, or is corrupt.
+     */
+    private void readSpawn() throws IOException {
+        
+        this.time = this.input.readLong();
+        this.type = SpawnRecording.get(this.types, this.input.readUnsignedShort());
+        this.reason = SpawnRecording.get(this.reasons, this.input.readUnsignedByte());
+        this.world = this.input.readUnsignedShort();
+        this.biome = SpawnRecording.get(this.biomes, this.input.readUnsignedShort());
+        this.x = this.input.readInt();
+        this.y = this.input.readShort();
+        this.z = this.input.readInt();
+        
+        final int flags = this.input.readUnsignedByte();
+        if ((flags & ~(FLAG_WATER | FLAG_FLOOR | FLAG_TRUNCATED)) != 0 || ((flags & FLAG_FLOOR) != 0 && (flags & FLAG_WATER) == 0) || this.world >= this.worldNames.size()) {
+            throw new IOException("Corrupt spawn recording: invalid spawn record");
+        }
+        if ((flags & FLAG_FLOOR) != 0) {
+            this.floorY = this.input.readShort();
+            this.floorLight = this.input.readShort();
+        } else {
+            this.floorY = this.y;
+            this.floorLight = 0;
+        }
+        this.flags = flags;
+    }
+    
+    /**
+     * Resolves the given name against the constants of the given
+     * {@link Enum} of the current build, counting it if it cannot be
+     * resolved.
+     * 
+     * @param <E> The type of the {@link Enum}.
+     * @param type The {@link Class} of the {@link Enum}.
+     * @param name The recorded name.
+     * @return The resolved constant, or {@code null} if there is none.
+     */
+    @Nullable
+    private <E extends Enum<E>> E resolve(@NotNull final Class<E> type, @NotNull final String name) {
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            this.unresolvedNames++;
+            return null;
+        }
+    }
+    
+    /**
+     * Sets the entry of the given {@link List} at the given ID, growing the
+     * {@link List} if needed.
+     * 
+     * @param <T> The type of the entries.
+     * @param list The {@link List}.
+     * @param id The ID.
+     * @param value The entry, which may be {@code null}.
+     */
+    private static <T> void set(@NotNull final List<T> list, final int id, @Nullable final T value) {
+        while (list.size() <= id) {
+            list.add(null);
+        }
+        list.set(id, value);
+    }
+    
+    /**
+     * Gets the entry of the given {@link List} at the given ID.
+     * 
+     * @param <T> The type of the entries.
+     * @param list The {@link List}.
+     * @param id The ID.
+     * @return The entry, or {@code null} if there is none.
+     */
+    @Nullable
+    private static <T> T get(@NotNull final List<T> list, final int id) {
+        return id < list.size() ? list.get(id) : null;
+    }
+    
+    /**
+     * Gets the number of names that could not be resolved against the
+     * current build so far.
+     * 
+     * @return The number of unresolved names.
+     */
+    public long getUnresolvedNames() {
+        return this.unresolvedNames;
+    }
+    
+    /**
+     * Gets the time of the current spawn.
+     * 
+     * @return The time, in epoch milliseconds.
+     */
+    public long getTime() {
+        return this.time;
+    }
+    
+    /**
+     * Gets the {@link EntityType} of the current spawn.
+     * 
+     * @return The {@link EntityType}, or {@code null} if it does not exist in
+     *         the current build.
+     */
+    @Nullable
+    public EntityType getType() {
+        return this.type;
+    }
+    
+    /**
+     * Gets the {@link SpawnReason} of the current spawn.
+     * 
+     * @return The {@link SpawnReason}, or {@code null} if it does not exist
+     *         in the current build.
+     */
+    @Nullable
+    public SpawnReason getReason() {
+        return this.reason;
+    }
+    
+    /**
+     * Gets the name of the world of the current spawn.
+     * 
+     * @return The name of the world.
+     */
+    @NotNull
+    public String getWorldName() {
+        return this.worldNames.get(this.world);
+    }
+    
+    /**
+     * Gets the minimum Y of the world of the current spawn (inclusive).
+     * 
+     * @return The minimum Y.
+     */
+    public int getWorldMinHeight() {
+        return this.worldMinHeights.get(this.world);
+    }
+    
+    /**
+     * Gets the {@link Biome} of the current spawn.
+     * 
+     * @return The {@link Biome}, or {@code null} if it does not exist in the
+     *         current build.
+     */
+    @Nullable
+    public Biome getBiome() {
+        return this.biome;
+    }
+    
+    /**
+     * Gets the block X coordinate of the current spawn.
+     * 
+     * @return The block X coordinate.
+     */
+    public int getX() {
+        return this.x;
+    }
+    
+    /**
+     * Gets the block Y coordinate of the current spawn.
+     * 
+     * @return The block Y coordinate.
+     */
+    public int getY() {
+        return this.y;
+    }
+    
+    /**
+     * Gets the block Z coordinate of the current spawn.
+     * 
+     * @return The block Z coordinate.
+     */
+    public int getZ() {
+        return this.z;
+    }
+    
+    /**
+     * Checks if the spawn block of the current spawn was
+     * {@link WaterKind#WATER}.
+     * 
+     * @return {@code true} if the spawn block was water, {@code false}
+     *         otherwise.
+     */
+    public boolean isWater() {
+        return (this.flags & FLAG_WATER) != 0;
+    }
+    
+    /**
+     * Checks if the floor of the body of water of the current spawn was
+     * recorded. It is not recorded for spawns that are not in water, nor for
+     * water spawns whose floor was not found when they were decided.
+     * 
+     * @return {@code true} if the floor was recorded, {@code false}
+     *         otherwise.
+     */
+    public boolean hasFloor() {
+        return (this.flags & FLAG_FLOOR) != 0;
+    }
+    
+    /**
+     * Checks if the column of the current spawn carries on below its
+     * recorded floor, so that a decision that scans further than the live
+     * decision did may find a different floor.
+     * 
+     * @return {@code true} if the column was cut short at the floor,
+     *         {@code false} otherwise.
+     */
+    public boolean isTruncated() {
+        return (this.flags & FLAG_TRUNCATED) != 0;
+    }
+    
+    /**
+     * Gets the Y of the recorded floor of the body of water of the current
+     * spawn, which is the lowest {@link WaterKind#WATER} block of the column.
+     * 
+     * @return The Y of the floor, or the Y of the spawn if no floor was
+     *         recorded.
+     */
+    public int getFloorY() {
+        return this.floorY;
+    }
+    
+    /**
+     * Gets the light levels of the recorded floor of the current spawn,
+     * packed as 4 bits each of the light level, sky light level, and block
+     * light level, from the highest bits down.
+     * 
+     * @return The packed light levels of the floor, or {@code 0} if no floor
+     *         was recorded.
+     */
+    public short getFloorLight() {
+        return this.floorLight;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        this.input.close();
+    }
+}
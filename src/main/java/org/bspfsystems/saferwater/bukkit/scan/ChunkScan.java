@@ -0,0 +1,427 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.scan;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bspfsystems.saferwater.bukkit.scheduler.TaskScheduler;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnProfileTable;
+import org.bspfsystems.saferwater.bukkit.water.BlockSource;
+import org.bspfsystems.saferwater.bukkit.water.SnapshotBlockSource;
+import org.bspfsystems.saferwater.bukkit.water.WaterKind;
+import org.bspfsystems.saferwater.bukkit.water.WorldBlockSource;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a survey of the loaded chunks of a {@link World}, counting the
+ * columns of each chunk where a filtered mob would be denied a water spawn
+ * under the current configuration.
+ * <p>
+ * Chunks are captured as {@link ChunkSnapshot}s on the thread that owns them,
+ * no more than a bounded number (and a bounded time) per tick, so that the
+ * server thread is never held up for long. Each captured chunk is then
+ * scanned as its own task on a dedicated {@link ForkJoinPool}, with the same
+ * floor and light logic as a live spawn, with the sky light darkened as it
+ * was when the chunk was captured. Every column is decided at the top
+ * of each body of water in it, as every water block of a body shares its
+ * floor.
+ * <p>
+ * Once every chunk has been scanned, the results are exported to a CSV file,
+ * and a summary is sent to the {@link CommandSender} that started the scan.
+ * A {@link ChunkScan} may be cancelled at any time.
+ */
+public final class ChunkScan {
+    
+    private static final int CAPTURES_PER_TICK = 32;
+    private static final long CAPTURE_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(2L);
+    private static final int MAX_SUMMARY_CHUNKS = 10;
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    
+    private final TaskScheduler scheduler;
+    private final Logger logger;
+    private final CommandSender sender;
+    private final World world;
+    private final SpawnProfileTable spawnProfileTable;
+    private final SpawnDecider worldDecider;
+    private final long[] chunks;
+    private final File outputFile;
+    private final Runnable onFinish;
+    
+    private final ForkJoinPool pool;
+    private final boolean[] scanned;
+    private final int[] waterColumns;
+    private final int[] deniedColumns;
+    private final AtomicInteger remaining;
+    private final long startNanos;
+    
+    private volatile boolean cancelled;
+    private volatile TaskScheduler.Task captureTask;
+    private int nextChunk;
+    
+    /**
+     * Constructs a new {@link ChunkScan}.
+     * 
+     * @param scheduler The {@link TaskScheduler} to capture the chunks with.
+     * @param logger The {@link Logger} that any errors are logged to.
+     * @param sender The {@link CommandSender} that started the scan.
+     * @param world The {@link World} to scan.
+     * @param spawnProfileTable The {@link SpawnProfileTable} to decide the
+     *                          columns with.
+     * @param chunks The packed coordinates of the chunks to scan. Any that
+     *               are not loaded when they are captured are skipped.
+     * @param outputDirectory The directory to export the results to.
+     * @param onFinish The task to run once the scan has finished or been
+     *                 cancelled.
+     */
+    public ChunkScan(@NotNull final TaskScheduler scheduler, @NotNull final Logger logger, @NotNull final CommandSender sender, @NotNull final World world, @NotNull final SpawnProfileTable spawnProfileTable, @NotNull final long[] chunks, @NotNull final File outputDirectory, @NotNull final Runnable onFinish) {
+        this.scheduler = scheduler;
+        this.logger = logger;
+        this.sender = sender;
+        this.world = world;
+        this.spawnProfileTable = spawnProfileTable;
+        this.worldDecider = spawnProfileTable.getWorldDecider(world);
+        this.chunks = chunks;
+        this.outputFile = new File(outputDirectory, world.getName() + "-" + LocalDateTime.now().format(FILE_TIME_FORMAT) + ".csv");
+        this.onFinish = onFinish;
+        
+        this.pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        this.scanned = new boolean[chunks.length];
+        this.waterColumns = new int[chunks.length];
+        this.deniedColumns = new int[chunks.length];
+        this.remaining = new AtomicInteger(chunks.length);
+        this.startNanos = System.nanoTime();
+    }
+    
+    /**
+     * Packs the chunk coordinates into a single {@code long}.
+     * 
+     * @param chunkX The chunk X coordinate.
+     * @param chunkZ The chunk Z coordinate.
+     * @return The packed coordinates.
+     */
+    public static long key(final int chunkX, final int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Gets the {@link World} being scanned.
+     * 
+     * @return The {@link World}.
+     */
+    @NotNull
+    public World getWorld() {
+        return this.world;
+    }
+    
+    /**
+     * Gets the number of chunks that have not been scanned (or skipped) yet.
+     * 
+     * @return The number of remaining chunks.
+     */
+    public int getRemaining() {
+        return this.remaining.get();
+    }
+    
+    /**
+     * Gets the number of chunks to scan.
+     * 
+     * @return The number of chunks.
+     */
+    public int getTotal() {
+        return this.chunks.length;
+    }
+    
+    /**
+     * Starts capturing the chunks.
+     */
+    public void start() {
+        if (this.chunks.length == 0) {
+            this.scheduler.runAsync(this::report);
+            return;
+        }
+        this.captureTask = this.scheduler.runGlobalTimer(this::captureChunks, 1L, 1L);
+    }
+    
+    /**
+     * Cancels the scan. Any chunks that are being scanned are abandoned, and
+     * no results are exported.
+     */
+    public void cancel() {
+        if (this.cancelled) {
+            return;
+        }
+        this.cancelled = true;
+        this.pool.shutdownNow();
+        this.onFinish.run();
+    }
+    
+    /**
+     * Dispatches the next chunks to be captured on the threads that own them,
+     * stopping once either the per-tick number of captures or the per-tick
+     * time budget has been used up.
+     */
+    private void captureChunks() {
+        
+        if (this.cancelled || this.nextChunk == this.chunks.length) {
+            final TaskScheduler.Task captureTask = this.captureTask;
+            if (captureTask != null) {
+                captureTask.cancel();
+                this.captureTask = null;
+            }
+            return;
+        }
+        
+        final long startNanos = System.nanoTime();
+        int captured = 0;
+        while (this.nextChunk < this.chunks.length && captured < CAPTURES_PER_TICK && System.nanoTime() - startNanos < CAPTURE_BUDGET_NANOS) {
+            final int index = this.nextChunk++;
+            final int chunkX = (int) (this.chunks[index] >> 32);
+            final int chunkZ = (int) this.chunks[index];
+            this.scheduler.runAtChunk(this.world, chunkX, chunkZ, () -> this.captureChunk(index, chunkX, chunkZ));
+            captured++;
+        }
+    }
+    
+    /**
+     * Captures a single chunk as a {@link ChunkSnapshot}, and submits it to be
+     * scanned. Must be called on the thread that owns the chunk.
+     * 
+     * @param index The index of the chunk.
+     * @param chunkX The chunk X coordinate.
+     * @param chunkZ The chunk Z coordinate.
+     */
+    private void captureChunk(final int index, final int chunkX, final int chunkZ) {
+        
+        if (this.cancelled) {
+            return;
+        }
+        if (!this.world.isChunkLoaded(chunkX, chunkZ)) {
+            this.complete();
+            return;
+        }
+        
+        final ChunkSnapshot snapshot = this.world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, this.worldDecider == null, false);
+        final int minY = this.world.getMinHeight();
+        final int maxY = this.world.getMaxHeight();
+        final int skyDarkening = WorldBlockSource.getSkyDarkening(this.world);
+        try {
+            this.pool.execute(() -> this.scanChunk(index, snapshot, minY, maxY, skyDarkening));
+        } catch (RejectedExecutionException e) {
+            // The scan has been cancelled.
+        }
+    }
+    
+    /**
+     * Scans every column of a captured chunk, counting the columns with water,
+     * and the columns where a filtered mob would be denied a water spawn.
+     * 
+     * @param index The index of the chunk.
+     * @param snapshot The {@link ChunkSnapshot} of the chunk.
+     * @param minY The minimum Y of the {@link World} (inclusive).
+     * @param maxY The maximum Y of the {@link World} (exclusive).
+     * @param skyDarkening The amount that the sky light of the {@link World}
+     *                     was darkened by when the chunk was captured.
+     */
+    private void scanChunk(final int index, @NotNull final ChunkSnapshot snapshot, final int minY, final int maxY, final int skyDarkening) {
+        
+        if (this.cancelled) {
+            return;
+        }
+        
+        try {
+            final BlockSource source = new SnapshotBlockSource(snapshot, minY, maxY, skyDarkening);
+            final int baseX = snapshot.getX() << 4;
+            final int baseZ = snapshot.getZ() << 4;
+            
+            int water = 0;
+            int denied = 0;
+            for (int column = 0; column < 256; column++) {
+                
+                final int localX = column & 15;
+                final int localZ = column >> 4;
+                final int x = baseX + localX;
+                final int z = baseZ + localZ;
+                
+                boolean columnWater = false;
+                boolean columnDenied = false;
+                boolean aboveWater = false;
+                for (int y = maxY - 1; y >= minY && !columnDenied; y--) {
+                    
+                    // Whole sections without water are skipped, as are the
+                    // blocks below the top of a section that is all water.
+                    final byte sectionKind = (y & 15) == 15 ? source.getSectionKind(x, y >> 4, z) : BlockSource.SECTION_MIXED;
+                    if (sectionKind == BlockSource.SECTION_DRY) {
+                        aboveWater = false;
+                        y -= 15;
+                        continue;
+                    }
+                    if (sectionKind != BlockSource.SECTION_WATER && source.getKind(x, y, z) != WaterKind.WATER) {
+                        aboveWater = false;
+                        continue;
+                    }
+                    columnWater = true;
+                    final int waterY = y;
+                    if (sectionKind == BlockSource.SECTION_WATER) {
+                        y -= 15;
+                    }
+                    if (aboveWater) {
+                        continue;
+                    }
+                    aboveWater = true;
+                    
+                    final SpawnDecider spawnDecider = this.worldDecider != null ? this.worldDecider : this.spawnProfileTable.getDecider(this.world, snapshot.getBiome(localX, waterY, localZ));
+                    if (spawnDecider.getSpawnFilter().getMobs().isEmpty()) {
+                        continue;
+                    }
+                    columnDenied = SpawnDecider.getOutcome(spawnDecider.decideWater(source, x, waterY, z)) == SpawnDecider.DENIED;
+                }
+                
+                if (columnWater) {
+                    water++;
+                }
+                if (columnDenied) {
+                    denied++;
+                }
+            }
+            
+            this.waterColumns[index] = water;
+            this.deniedColumns[index] = denied;
+            this.scanned[index] = true;
+        } catch (RuntimeException e) {
+            this.logger.log(Level.WARNING, "Unable to scan chunk " + snapshot.getX() + ", " + snapshot.getZ() + " in " + snapshot.getWorldName() + ".", e);
+        }
+        this.complete();
+    }
+    
+    /**
+     * Marks a chunk as done, reporting the results once every chunk is done.
+     */
+    private void complete() {
+        if (this.remaining.decrementAndGet() == 0 && !this.cancelled) {
+            this.scheduler.runAsync(this::report);
+        }
+    }
+    
+    /**
+     * Exports the results to the CSV file, and sends a summary of them to
+     * the {@link CommandSender}. This performs file I/O, and must not be
+     * called from a server thread.
+     */
+    private void report() {
+        
+        this.pool.shutdown();
+        if (this.cancelled) {
+            return;
+        }
+        
+        int scannedChunks = 0;
+        int deniedChunks = 0;
+        long water = 0L;
+        long denied = 0L;
+        final List<Integer> deniedIndexes = new ArrayList<Integer>();
+        for (int index = 0; index < this.chunks.length; index++) {
+            if (!this.scanned[index]) {
+                continue;
+            }
+            scannedChunks++;
+            water += this.waterColumns[index];
+            denied += this.deniedColumns[index];
+            if (this.deniedColumns[index] > 0) {
+                deniedChunks++;
+                deniedIndexes.add(index);
+            }
+        }
+        deniedIndexes.sort((first, second) -> Integer.compare(this.deniedColumns[second], this.deniedColumns[first]));
+        
+        boolean exported = false;
+        try {
+            this.export();
+            exported = true;
+        } catch (IOException | SecurityException e) {
+            this.logger.log(Level.WARNING, "Unable to export the SaferWater scan of " + this.world.getName() + " to " + this.outputFile.getPath() + ".");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+        }
+        
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.startNanos);
+        this.sender.sendMessage("§r§6SaferWater scan of§r §b" + this.world.getName() + "§r §6complete (" + String.format("%.1f", elapsedMillis / 1000.0D) + "s):§r");
+        this.sender.sendMessage("§r§8----------------------------------------------------------------§8");
+        this.sender.sendMessage("§r §fChunks scanned:§r §b" + scannedChunks + "§r §7(" + (this.chunks.length - scannedChunks) + " not loaded)§r");
+        this.sender.sendMessage("§r §fWater columns:§r §b" + water + "§r");
+        this.sender.sendMessage("§r §fDenied columns:§r §b" + denied + "§r §7(" + String.format("%.1f", water == 0L ? 0.0D : denied * 100.0D / water) + "% of water columns) in§r §b" + deniedChunks + "§r §7chunks§r");
+        
+        if (!deniedIndexes.isEmpty()) {
+            this.sender.sendMessage("§r§6Most denied chunks (top " + Math.min(MAX_SUMMARY_CHUNKS, deniedIndexes.size()) + " of " + deniedIndexes.size() + "):§r");
+            for (final int index : deniedIndexes.subList(0, Math.min(MAX_SUMMARY_CHUNKS, deniedIndexes.size()))) {
+                this.sender.sendMessage("§r §f-§r §b" + (int) (this.chunks[index] >> 32) + ", " + (int) this.chunks[index] + "§r§7: " + this.deniedColumns[index] + " denied of " + this.waterColumns[index] + " water columns§r");
+            }
+        }
+        
+        if (exported) {
+            this.sender.sendMessage("§r§aThe scan has been exported to§r §b" + this.outputFile.getPath() + "§r§a.§r");
+        } else {
+            this.sender.sendMessage("§r§cThe scan could not be exported. Please check the console logs.§r");
+        }
+        this.onFinish.run();
+    }
+    
+    /**
+     * Writes the results of every scanned chunk to the CSV file, one row per
+     * chunk.
+     * 
+     * @throws IOException If the file cannot be written.
+     */
+    private void export() throws IOException {
+        
+        final File directory = this.outputFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the scan directory: " + directory.getPath());
+        }
+        
+        try (final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.outputFile), StandardCharsets.UTF_8))) {
+            writer.write("chunk_x,chunk_z,water_columns,denied_columns\n");
+            for (int index = 0; index < this.chunks.length; index++) {
+                if (!this.scanned[index]) {
+                    continue;
+                }
+                writer.write((int) (this.chunks[index] >> 32) + "," + (int) this.chunks[index] + "," + this.waterColumns[index] + "," + this.deniedColumns[index] + "\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.scheduler;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents the scheduler that all SaferWater tasks are run with, on both
+ * single-threaded and region-threaded (Folia) servers.
+ * <p>
+ * On a single-threaded server, every task that is not asynchronous is run on
+ * the main server thread by the {@link BukkitScheduler}. A region-threaded
+ * server has no main thread, and does not support the
+ * {@link BukkitScheduler}; instead, tasks that are not tied to a location
+ * are run on the global region, and tasks that read a chunk are run on the
+ * region that owns it. The region-threaded schedulers are not part of the
+ * Bukkit API, so they are found and called reflectively.
+ */
+public final class TaskScheduler {
+    
+    private static final String REGIONIZED_SERVER_CLASS_NAME = "io.papermc.paper.threadedregions.RegionizedServer";
+    private static final String SCHEDULED_TASK_CLASS_NAME = "io.papermc.paper.threadedregions.scheduler.ScheduledTask";
+    
+    private final Plugin plugin;
+    private final boolean regionized;
+    private final MethodHandle globalExecute;
+    private final MethodHandle globalRunAtFixedRate;
+    private final MethodHandle regionExecute;
+    private final MethodHandle asyncRunNow;
+    private final MethodHandle cancel;
+    
+    /**
+     * Represents a repeating task that can be cancelled.
+     */
+    public interface Task {
+        
+        /**
+         * Cancels this {@link Task}, so that it does not run again.
+         */
+        void cancel();
+    }
+    
+    /**
+     * Constructs a new {@link TaskScheduler}.
+     * 
+     * @param plugin The {@link Plugin} that owns the tasks.
+     * @param regionized If {@code true}, the server is region-threaded.
+     * @param globalExecute The {@code execute} method of the global region
+     *                      scheduler, or {@code null}.
+     * @param globalRunAtFixedRate The {@code runAtFixedRate} method of the
+     *                             global region scheduler, or {@code null}.
+     * @param regionExecute The {@code execute} method of the region
+     *                      scheduler, or {@code null}.
+     * @param asyncRunNow The {@code runNow} method of the asynchronous
+     *                    scheduler, or {@code null}.
+     * @param cancel The {@code cancel} method of a scheduled task, or
+     *               {@code null}.
+     */
+    private TaskScheduler(@NotNull final Plugin plugin, final boolean regionized, final MethodHandle globalExecute, final MethodHandle globalRunAtFixedRate, final MethodHandle regionExecute, final MethodHandle asyncRunNow, final MethodHandle cancel) {
+        this.plugin = plugin;
+        this.regionized = regionized;
+        this.globalExecute = globalExecute;
+        this.globalRunAtFixedRate = globalRunAtFixedRate;
+        this.regionExecute = regionExecute;
+        this.asyncRunNow = asyncRunNow;
+        this.cancel = cancel;
+    }
+    
+    /**
+     * Creates a new {@link TaskScheduler} for the given {@link Plugin},
+     * detecting whether the server is region-threaded.
+     * <p>
+     * If the server is region-threaded, but its schedulers cannot be found,
+     * the {@link BukkitScheduler} is used, which will most likely fail.
+     * 
+     * @param plugin The {@link Plugin} that owns the tasks.
+     * @param logger The {@link Logger} that any errors are logged to.
+     * @return The new {@link TaskScheduler}.
+     */
+    @NotNull
+    public static TaskScheduler create(@NotNull final Plugin plugin, @NotNull final Logger logger) {
+        
+        try {
+            Class.forName(REGIONIZED_SERVER_CLASS_NAME);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return new TaskScheduler(plugin, false, null, null, null, null, null);
+        }
+        
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            final Server server = plugin.getServer();
+            final Class<?> scheduledTaskClass = Class.forName(SCHEDULED_TASK_CLASS_NAME);
+            
+            return new TaskScheduler(
+                    plugin,
+                    true,
+                    TaskScheduler.method(lookup, server, "getGlobalRegionScheduler", "execute", Plugin.class, Runnable.class)
+                            .asType(MethodType.methodType(void.class, Plugin.class, Runnable.class)),
+                    TaskScheduler.method(lookup, server, "getGlobalRegionScheduler", "runAtFixedRate", Plugin.class, Consumer.class, long.class, long.class)
+                            .asType(MethodType.methodType(Object.class, Plugin.class, Consumer.class, long.class, long.class)),
+                    TaskScheduler.method(lookup, server, "getRegionScheduler", "execute", Plugin.class, World.class, int.class, int.class, Runnable.class)
+                            .asType(MethodType.methodType(void.class, Plugin.class, World.class, int.class, int.class, Runnable.class)),
+                    TaskScheduler.method(lookup, server, "getAsyncScheduler", "runNow", Plugin.class, Consumer.class)
+                            .asType(MethodType.methodType(void.class, Plugin.class, Consumer.class)),
+                    lookup.unreflect(scheduledTaskClass.getMethod("cancel"))
+                            .asType(MethodType.methodType(void.class, Object.class))
+            );
+        } catch (ReflectiveOperationException | ClassCastException | IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "The server is region-threaded, but its schedulers cannot be found.");
+            logger.log(Level.SEVERE, "SaferWater tasks will be run with the Bukkit scheduler instead.");
+            logger.log(Level.SEVERE, e.getClass().getSimpleName() + " thrown.", e);
+            return new TaskScheduler(plugin, false, null, null, null, null, null);
+        }
+    }
+    
+    /**
+     * Finds a public method of one of the region-threaded schedulers of the
+     * given {@link Server}, bound to the scheduler.
+     * 
+     * @param lookup The {@link MethodHandles.Lookup} to find the method with.
+     * @param server The {@link Server}.
+     * @param getter The name of the getter of the scheduler.
+     * @param name The name of the method.
+     * @param parameterTypes The parameter types of the method.
+     * @return The bound {@link MethodHandle} of the method.
+     * @throws ReflectiveOperationException If the scheduler or the method
+     *                                      cannot be found.
+     */
+    @NotNull
+    private static MethodHandle method(@NotNull final MethodHandles.Lookup lookup, @NotNull final Server server, @NotNull final String getter, @NotNull final String name, @NotNull final Class<?>... parameterTypes) throws ReflectiveOperationException {
+        final Method getterMethod = Server.class.getMethod(getter);
+        final Object scheduler = getterMethod.invoke(server);
+        if (scheduler == null) {
+            throw new NoSuchMethodException("No scheduler returned from " + getter + "()");
+        }
+        return lookup.unreflect(getterMethod.getReturnType().getMethod(name, parameterTypes)).bindTo(scheduler);
+    }
+    
+    /**
+     * Checks if the server is region-threaded.
+     * 
+     * @return {@code true} if the server is region-threaded, {@code false}
+     *         if it has a single main thread.
+     */
+    public boolean isRegionized() {
+        return this.regionized;
+    }
+    
+    /**
+     * Runs the given task on the next tick, on the main server thread, or on
+     * the global region of a region-threaded server.
+     * 
+     * @param task The task to run.
+     */
+    public void runGlobal(@NotNull final Runnable task) {
+        if (!this.regionized) {
+            this.plugin.getServer().getScheduler().runTask(this.plugin, task);
+            return;
+        }
+        try {
+            this.globalExecute.invokeExact(this.plugin, task);
+        } catch (Throwable e) {
+            throw TaskScheduler.rethrow(e);
+        }
+    }
+    
+    /**
+     * Runs the given task repeatedly, on the main server thread, or on the
+     * global region of a region-threaded server.
+     * 
+     * @param task The task to run.
+     * @param delayTicks The number of ticks before the first run, at least
+     *                   {@code 1}.
+     * @param periodTicks The number of ticks between runs, at least
+     *                    {@code 1}.
+     * @return The {@link Task}, which can be cancelled.
+     */
+    @NotNull
+    public Task runGlobalTimer(@NotNull final Runnable task, final long delayTicks, final long periodTicks) {
+        if (!this.regionized) {
+            final BukkitTask bukkitTask = this.plugin.getServer().getScheduler().runTaskTimer(this.plugin, task, delayTicks, periodTicks);
+            return bukkitTask::cancel;
+        }
+        final Consumer<Object> consumer = scheduledTask -> task.run();
+        final Object scheduledTask;
+        try {
+            scheduledTask = (Object) this.globalRunAtFixedRate.invokeExact(this.plugin, consumer, delayTicks, periodTicks);
+        } catch (Throwable e) {
+            throw TaskScheduler.rethrow(e);
+        }
+        return () -> {
+            try {
+                this.cancel.invokeExact(scheduledTask);
+            } catch (Throwable e) {
+                throw TaskScheduler.rethrow(e);
+            }
+        };
+    }
+    
+    /**
+     * Runs the given task on the thread that owns the given chunk: the main
+     * server thread, or the region that owns the chunk on a region-threaded
+     * server.
+     * <p>
+     * On a single-threaded server, the task is run straight away if this is
+     * called from the main server thread.
+     * 
+     * @param world The {@link World} of the chunk.
+     * @param chunkX The chunk X coordinate.
+     * @param chunkZ The chunk Z coordinate.
+     * @param task The task to run.
+     */
+    public void runAtChunk(@NotNull final World world, final int chunkX, final int chunkZ, @NotNull final Runnable task) {
+        if (!this.regionized) {
+            if (this.plugin.getServer().isPrimaryThread()) {
+                task.run();
+            } else {
+                this.plugin.getServer().getScheduler().runTask(this.plugin, task);
+            }
+            return;
+        }
+        try {
+            this.regionExecute.invokeExact(this.plugin, world, chunkX, chunkZ, task);
+        } catch (Throwable e) {
+            throw TaskScheduler.rethrow(e);
+        }
+    }
+    
+    /**
+     * Runs the given task off of any server thread.
+     * 
+     * @param task The task to run.
+     */
+    public void runAsync(@NotNull final Runnable task) {
+        if (!this.regionized) {
+            this.plugin.getServer().getScheduler().runTaskAsynchronously(this.plugin, task);
+            return;
+        }
+        final Consumer<Object> consumer = scheduledTask -> task.run();
+        try {
+            this.asyncRunNow.invokeExact(this.plugin, consumer);
+        } catch (Throwable e) {
+            throw TaskScheduler.rethrow(e);
+        }
+    }
+    
+    /**
+     * Rethrows the given {@link Throwable} from a scheduler call as-is if it
+     * is unchecked, or wrapped in an {@link IllegalStateException} otherwise.
+     * 
+     * @param throwable The {@link Throwable}.
+     * @return Never returns; declared so that callers can {@code throw} it.
+     */
+    @NotNull
+    private static RuntimeException rethrow(@NotNull final Throwable throwable) {
+        if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        }
+        if (throwable instanceof Error) {
+            throw (Error) throwable;
+        }
+        throw new IllegalStateException("Unable to schedule a task.", throwable);
+    }
+}
@@ -0,0 +1,85 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.spawn;
+
+import org.bspfsystems.saferwater.bukkit.water.BlockSource;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents the light that the floor of a body of water is compared against
+ * the minimum light level with.
+ */
+public enum LightSource {
+    
+    /**
+     * The light level of the block, as seen by the mobs themselves.
+     */
+    COMBINED {
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getLightLevel(@NotNull final BlockSource source, final int x, final int y, final int z) {
+            return source.getLightLevel(x, y, z);
+        }
+    },
+    
+    /**
+     * Only the light that reaches the block from the sky.
+     */
+    SKY {
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getLightLevel(@NotNull final BlockSource source, final int x, final int y, final int z) {
+            return source.getSkyLightLevel(x, y, z);
+        }
+    },
+    
+    /**
+     * Only the light that reaches the block from light-emitting blocks.
+     */
+    BLOCK {
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getLightLevel(@NotNull final BlockSource source, final int x, final int y, final int z) {
+            return source.getBlockLightLevel(x, y, z);
+        }
+    };
+    
+    /**
+     * Reads the light level of the block at the given coordinates from this
+     * {@link LightSource}.
+     * 
+     * @param source The {@link BlockSource} to read from.
+     * @param x The block X coordinate.
+     * @param y The block Y coordinate.
+     * @param z The block Z coordinate.
+     * @return The light level of the block (0-15).
+     */
+    public abstract int getLightLevel(@NotNull BlockSource source, int x, int y, int z);
+}
@@ -0,0 +1,449 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.spawn;
+
+import org.bspfsystems.saferwater.bukkit.water.BlockSource;
+import org.bspfsystems.saferwater.bukkit.water.ChunkWaterFloor;
+import org.bspfsystems.saferwater.bukkit.water.ColumnScanner;
+import org.bspfsystems.saferwater.bukkit.water.WaterKind;
+import org.bukkit.World;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decides whether a spawn should be denied, from a {@link SpawnFilter} and
+ * the blocks of a {@link BlockSource}.
+ * <p>
+ * A {@link SpawnDecider} is immutable, and holds all of the configuration
+ * that a decision depends on, so that it can be swapped as a whole when the
+ * configuration is reloaded.
+ * <p>
+ * A decision is a fixed chain of stages, ordered by cost: the
+ * {@link SpawnFilter} tables, the {@link SpawnRule.Stage#POSITION} rules,
+ * the spawn block, the floor of the body of water, the
+ * {@link SpawnRule.Stage#FLOOR} rules, and finally the light level of the
+ * floor. The {@link SpawnRules} are compiled once, when the
+ * {@link SpawnDecider} is constructed, and any stage without rules is
+ * skipped.
+ * <p>
+ * Decisions are returned as a packed {@code long}, so that deciding a spawn
+ * does not allocate. The parts of a decision are read with
+ * {@link #getOutcome(long)}, {@link #getFloorY(long)}, and
+ * {@link #getLightLevel(long)}.
+ */
+public final class SpawnDecider {
+    
+    /**
+     * The spawn is not filtered, and no blocks were read.
+     */
+    public static final int NOT_FILTERED = 0;
+    
+    /**
+     * The spawn is filtered, but is not a water spawn.
+     */
+    public static final int DRY = 1;
+    
+    /**
+     * The spawn is a filtered water spawn, and the floor of the body of water
+     * is darker than the minimum light level.
+     */
+    public static final int ALLOWED = 2;
+    
+    /**
+     * The spawn is a filtered water spawn, and the floor of the body of water
+     * is at or above the minimum light level, so the spawn should be denied.
+     */
+    public static final int DENIED = 3;
+    
+    /**
+     * The spawn is a filtered water spawn, but the floor of the body of water
+     * is not already known. This is only returned by
+     * {@link #decideIndexedWater(BlockSource, int, int, int)}.
+     */
+    public static final int UNKNOWN = 4;
+    
+    /**
+     * The spawn is filtered, but does not meet one of the {@link SpawnRule}s,
+     * so it is allowed without reading the light level of the floor.
+     */
+    public static final int EXEMPT = 5;
+    
+    /**
+     * The default minimum light level of the floor of a body of water at
+     * which spawns are denied. Any light at all on the floor denies a spawn.
+     */
+    public static final int DEFAULT_MIN_LIGHT_LEVEL = 1;
+    
+    /**
+     * The highest light level that a block can have.
+     */
+    public static final int MAX_LIGHT_LEVEL = 15;
+    
+    /**
+     * A {@link SpawnDecider} that does not filter any spawns.
+     */
+    public static final SpawnDecider EMPTY = new SpawnDecider(SpawnFilter.EMPTY, 0, DEFAULT_MIN_LIGHT_LEVEL);
+    
+    private final SpawnFilter spawnFilter;
+    private final SpawnRules spawnRules;
+    private final int maxScanDepth;
+    private final int minLightLevel;
+    private final LightSource lightSource;
+    private final SpawnRule[] positionRules;
+    private final SpawnRule[] floorRules;
+    
+    /**
+     * Constructs a new {@link SpawnDecider} with the default
+     * {@link SpawnRules}.
+     * 
+     * @param spawnFilter The {@link SpawnFilter} deciding which spawns are
+     *                    checked.
+     * @param maxScanDepth The maximum number of blocks below a spawn that will
+     *                     be read when searching for the floor of a body of
+     *                     water, or {@code 0} if the search is only bounded by
+     *                     the minimum height of the {@link World}.
+     * @param minLightLevel The minimum light level of the floor of a body of
+     *                      water at which spawns are denied, from {@code 0}
+     *                      (always denied) to {@link #MAX_LIGHT_LEVEL}.
+     * @throws IllegalArgumentException If the maximum scan depth is negative,
+     *                                  or the minimum light level is out of
+     *                                  range.
+     */
+    public SpawnDecider(@NotNull final SpawnFilter spawnFilter, final int maxScanDepth, final int minLightLevel) throws IllegalArgumentException {
+        this(spawnFilter, SpawnRules.DEFAULT, maxScanDepth, minLightLevel);
+    }
+    
+    /**
+     * Constructs a new {@link SpawnDecider}, compiling the given
+     * {@link SpawnRules}.
+     * 
+     * @param spawnFilter The {@link SpawnFilter} deciding which spawns are
+     *                    checked, which should have been compiled by the
+     *                    {@link SpawnRules}.
+     * @param spawnRules The {@link SpawnRules} that a filtered spawn must
+     *                   meet to be denied.
+     * @param maxScanDepth The maximum number of blocks below a spawn that will
+     *                     be read when searching for the floor of a body of
+     *                     water, or {@code 0} if the search is only bounded by
+     *                     the minimum height of the {@link World}.
+     * @param minLightLevel The minimum light level of the floor of a body of
+     *                      water at which spawns are denied, from {@code 0}
+     *                      (always denied) to {@link #MAX_LIGHT_LEVEL}.
+     * @throws IllegalArgumentException If the maximum scan depth is negative,
+     *                                  or the minimum light level is out of
+     *                                  range.
+     */
+    public SpawnDecider(@NotNull final SpawnFilter spawnFilter, @NotNull final SpawnRules spawnRules, final int maxScanDepth, final int minLightLevel) throws IllegalArgumentException {
+        if (maxScanDepth < 0) {
+            throw new IllegalArgumentException("Maximum scan depth cannot be negative: " + maxScanDepth);
+        }
+        if (minLightLevel < 0 || minLightLevel > MAX_LIGHT_LEVEL) {
+            throw new IllegalArgumentException("Minimum light level must be between 0 and " + MAX_LIGHT_LEVEL + ": " + minLightLevel);
+        }
+        this.spawnFilter = spawnFilter;
+        this.spawnRules = spawnRules;
+        this.maxScanDepth = maxScanDepth;
+        this.minLightLevel = minLightLevel;
+        this.lightSource = spawnRules.getLightSource();
+        this.positionRules = spawnRules.compileRules(SpawnRule.Stage.POSITION);
+        this.floorRules = spawnRules.compileRules(SpawnRule.Stage.FLOOR);
+    }
+    
+    /**
+     * Gets the {@link SpawnFilter} deciding which spawns are checked.
+     * 
+     * @return The {@link SpawnFilter}.
+     */
+    @NotNull
+    public SpawnFilter getSpawnFilter() {
+        return this.spawnFilter;
+    }
+    
+    /**
+     * Gets the {@link SpawnRules} that a filtered spawn must meet to be
+     * denied.
+     * 
+     * @return The {@link SpawnRules}.
+     */
+    @NotNull
+    public SpawnRules getSpawnRules() {
+        return this.spawnRules;
+    }
+    
+    /**
+     * Gets the maximum number of blocks below a spawn that will be read when
+     * searching for the floor of a body of water.
+     * 
+     * @return The maximum scan depth, or {@code 0} if the search is only
+     *         bounded by the minimum height of the {@link World}.
+     */
+    public int getMaxScanDepth() {
+        return this.maxScanDepth;
+    }
+    
+    /**
+     * Gets the minimum light level of the floor of a body of water at which
+     * spawns are denied.
+     * 
+     * @return The minimum light level.
+     */
+    public int getMinLightLevel() {
+        return this.minLightLevel;
+    }
+    
+    /**
+     * Checks if this {@link SpawnDecider} has any
+     * {@link SpawnRule.Stage#FLOOR} rules, in which case a spawn may be
+     * exempt from its floor even if another spawn in the same chunk section
+     * was denied.
+     * 
+     * @return {@code true} if there are {@link SpawnRule.Stage#FLOOR} rules,
+     *         {@code false} otherwise.
+     */
+    public boolean hasFloorRules() {
+        return this.floorRules.length != 0;
+    }
+    
+    /**
+     * Checks if a spawn at the given coordinates meets the
+     * {@link SpawnRule.Stage#POSITION} rules, without reading any blocks.
+     * 
+     * @param x The block X coordinate of the spawn.
+     * @param y The block Y coordinate of the spawn.
+     * @param z The block Z coordinate of the spawn.
+     * @return {@code true} if the spawn may still be denied, {@code false}
+     *         if it is exempt.
+     */
+    public boolean isInScope(final int x, final int y, final int z) {
+        return SpawnDecider.test(this.positionRules, x, y, z, ChunkWaterFloor.UNKNOWN);
+    }
+    
+    /**
+     * Decides a spawn of the given {@link EntityType} for the given
+     * {@link SpawnReason} at the given coordinates.
+     * 
+     * @param type The {@link EntityType} being spawned.
+     * @param reason The {@link SpawnReason}.
+     * @param source The {@link BlockSource} to read from.
+     * @param x The block X coordinate of the spawn.
+     * @param y The block Y coordinate of the spawn.
+     * @param z The block Z coordinate of the spawn.
+     * @return The packed decision.
+     */
+    public long decide(@NotNull final EntityType type, @NotNull final SpawnReason reason, @NotNull final BlockSource source, final int x, final int y, final int z) {
+        if (!this.spawnFilter.isFiltered(type, reason)) {
+            return SpawnDecider.pack(NOT_FILTERED, 0, 0);
+        }
+        return this.decideWater(source, x, y, z);
+    }
+    
+    /**
+     * Decides a spawn at the given coordinates that has already passed the
+     * {@link SpawnFilter}.
+     * <p>
+     * The floor of the body of water is taken from
+     * {@link BlockSource#getIndexedFloorY(int, int, int)} when it is known,
+     * and otherwise found by the {@link ColumnScanner}. The scan never goes
+     * below the minimum height of the {@link World}, nor further below the
+     * spawn than the maximum scan depth (if any). If the maximum scan depth is
+     * reached, the lowest water found so far is used. An indexed floor below
+     * the maximum scan depth is clamped in the same way, so that a spawn is
+     * decided alike whether or not its chunk has been indexed. The spawn is
+     * denied if
+     * it meets all of the {@link SpawnRule}s, and the light level of the floor
+     * is at least the minimum light level.
+     * 
+     * @param source The {@link BlockSource} to read from.
+     * @param x The block X coordinate of the spawn.
+     * @param y The block Y coordinate of the spawn.
+     * @param z The block Z coordinate of the spawn.
+     * @return The packed decision.
+     */
+    public long decideWater(@NotNull final BlockSource source, final int x, final int y, final int z) {
+        
+        if (!this.isInScope(x, y, z)) {
+            return SpawnDecider.pack(EXEMPT, 0, 0);
+        }
+        if (!ColumnScanner.isWater(source, x, y, z)) {
+            return SpawnDecider.pack(DRY, 0, 0);
+        }
+        
+        final int minY = source.getMinHeight();
+        final int lowestY = this.maxScanDepth > 0 ? Math.max(minY, y - this.maxScanDepth) : minY;
+        int floorY = source.getIndexedFloorY(x, y, z);
+        if (floorY == ChunkWaterFloor.UNKNOWN) {
+            floorY = ColumnScanner.findFloorY(source, x, y, z, lowestY);
+        } else if (floorY < lowestY) {
+            floorY = SpawnDecider.clampFloorY(source, x, y, z, lowestY);
+        }
+        
+        return this.decideFloor(source, x, y, z, floorY);
+    }
+    
+    /**
+     * Decides a spawn at the given coordinates that has already passed the
+     * {@link SpawnFilter}, only if the floor of the body of water is already
+     * known from {@link BlockSource#getIndexedFloorY(int, int, int)}. The
+     * column is never scanned, so usually only the spawn block and the floor
+     * block are read. If the indexed floor is below the maximum scan depth,
+     * it is clamped as in {@link #decideWater(BlockSource, int, int, int)},
+     * which reads upward from the maximum scan depth until the first water.
+     * 
+     * @param source The {@link BlockSource} to read from.
+     * @param x The block X coordinate of the spawn.
+     * @param y The block Y coordinate of the spawn.
+     * @param z The block Z coordinate of the spawn.
+     * @return The packed decision, which is {@link #UNKNOWN} if the floor is
+     *         not already known.
+     */
+    public long decideIndexedWater(@NotNull final BlockSource source, final int x, final int y, final int z) {
+        
+        if (!this.isInScope(x, y, z)) {
+            return SpawnDecider.pack(EXEMPT, 0, 0);
+        }
+        if (!ColumnScanner.isWater(source, x, y, z)) {
+            return SpawnDecider.pack(DRY, 0, 0);
+        }
+        
+        final int floorY = source.getIndexedFloorY(x, y, z);
+        if (floorY == ChunkWaterFloor.UNKNOWN) {
+            return SpawnDecider.pack(UNKNOWN, 0, 0);
+        }
+        if (this.maxScanDepth > 0 && floorY < y - this.maxScanDepth) {
+            return this.decideFloor(source, x, y, z, SpawnDecider.clampFloorY(source, x, y, z, y - this.maxScanDepth));
+        }
+        return this.decideFloor(source, x, y, z, floorY);
+    }
+    
+    /**
+     * Clamps an indexed floor that is below the lowest Y that a scan would
+     * have checked, to the floor that the scan would have found.
+     * <p>
+     * The index only holds a floor if the whole column from the spawn down to
+     * it would be walked, so a scan stopped at the lowest Y finds the lowest
+     * water at or above it. That is found by reading upward from the lowest
+     * Y, which is usually water itself.
+     * 
+     * @param source The {@link BlockSource} to read from.
+     * @param x The block X coordinate of the spawn.
+     * @param y The block Y coordinate of the spawn.
+     * @param z The block Z coordinate of the spawn.
+     * @param lowestY The lowest Y that a scan would have checked.
+     * @return The Y of the clamped floor, which is the spawn Y if there is no
+     *         lower water.
+     */
+    private static int clampFloorY(@NotNull final BlockSource source, final int x, final int y, final int z, final int lowestY) {
+        for (int checkY = lowestY; checkY < y; checkY++) {
+            if (source.getKind(x, checkY, z) == WaterKind.WATER) {
+                return checkY;
+            }
+        }
+        return y;
+    }
+    
+    /**
+     * Decides a water spawn from the {@link SpawnRule.Stage#FLOOR} rules and
+     * the light level of the floor of its body of water.
+     * 
+     * @param source The {@link BlockSource} to read from.
+     * @param x The block X coordinate of the spawn.
+     * @param y The block Y coordinate of the spawn.
+     * @param z The block Z coordinate of the spawn.
+     * @param floorY The block Y coordinate of the floor.
+     * @return The packed decision.
+     */
+    private long decideFloor(@NotNull final BlockSource source, final int x, final int y, final int z, final int floorY) {
+        if (!SpawnDecider.test(this.floorRules, x, y, z, floorY)) {
+            return SpawnDecider.pack(EXEMPT, floorY, 0);
+        }
+        final int lightLevel = this.lightSource.getLightLevel(source, x, floorY, z);
+        return SpawnDecider.pack(lightLevel >= this.minLightLevel ? DENIED : ALLOWED, floorY, lightLevel);
+    }
+    
+    /**
+     * Checks if a spawn meets all of the given {@link SpawnRule}s.
+     * 
+     * @param rules The {@link SpawnRule}s of a single
+     *              {@link SpawnRule.Stage}.
+     * @param x The block X coordinate of the spawn.
+     * @param y The block Y coordinate of the spawn.
+     * @param z The block Z coordinate of the spawn.
+     * @param floorY The block Y coordinate of the floor, or
+     *               {@link ChunkWaterFloor#UNKNOWN}.
+     * @return {@code true} if the spawn meets all of the {@link SpawnRule}s,
+     *         {@code false} otherwise.
+     */
+    private static boolean test(@NotNull final SpawnRule[] rules, final int x, final int y, final int z, final int floorY) {
+        for (final SpawnRule rule : rules) {
+            if (!rule.test(x, y, z, floorY)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Packs the parts of a decision into a single {@code long}.
+     * 
+     * @param outcome The outcome.
+     * @param floorY The Y of the floor of the body of water.
+     * @param lightLevel The light level of the floor.
+     * @return The packed decision.
+     */
+    private static long pack(final int outcome, final int floorY, final int lightLevel) {
+        return ((long) floorY << 32) | ((lightLevel & 0xFFL) << 8) | (outcome & 0xFFL);
+    }
+    
+    /**
+     * Gets the outcome of a packed decision.
+     * 
+     * @param decision The packed decision.
+     * @return One of {@link #NOT_FILTERED}, {@link #DRY}, {@link #ALLOWED},
+     *         {@link #DENIED}, {@link #UNKNOWN}, or {@link #EXEMPT}.
+     */
+    public static int getOutcome(final long decision) {
+        return (int) (decision & 0xFFL);
+    }
+    
+    /**
+     * Gets the Y of the floor of the body of water of a packed decision. This
+     * is only meaningful for {@link #ALLOWED} and {@link #DENIED} decisions.
+     * 
+     * @param decision The packed decision.
+     * @return The Y of the floor.
+     */
+    public static int getFloorY(final long decision) {
+        return (int) (decision >> 32);
+    }
+    
+    /**
+     * Gets the light level of the floor of the body of water of a packed
+     * decision. This is only meaningful for {@link #ALLOWED} and
+     * {@link #DENIED} decisions.
+     * 
+     * @param decision The packed decision.
+     * @return The light level of the floor.
+     */
+    public static int getLightLevel(final long decision) {
+        return (int) ((decision >> 8) & 0xFFL);
+    }
+}
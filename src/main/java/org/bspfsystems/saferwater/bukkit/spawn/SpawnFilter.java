@@ -0,0 +1,199 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.spawn;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.bukkit.entity.Creature;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a precomputed decision table of which {@link EntityType}s (and
+ * for which {@link SpawnReason}s) are filtered from spawning in water.
+ * <p>
+ * The table is resolved once from the configured {@link Creature}
+ * {@link Class}es, so that the inheritance checks are not repeated for every
+ * spawn. A {@link SpawnFilter} is immutable once compiled, and may be shared
+ * freely between threads.
+ */
+public final class SpawnFilter {
+    
+    private static final EntityType[] ENTITY_TYPES = EntityType.values();
+    private static final SpawnReason[] SPAWN_REASONS = SpawnReason.values();
+    
+    /**
+     * A {@link SpawnFilter} that does not filter any spawns.
+     */
+    public static final SpawnFilter EMPTY = SpawnFilter.compile(Collections.emptySet(), Collections.emptySet());
+    
+    private final Set<Class<? extends Creature>> mobs;
+    private final boolean[] typeTable;
+    private final boolean[] spawnTable;
+    
+    /**
+     * Constructs a new {@link SpawnFilter} from the fully-built tables.
+     * 
+     * @param mobs The configured {@link Creature} {@link Class}es.
+     * @param typeTable The table of filtered {@link EntityType}s, indexed by
+     *                  {@link EntityType#ordinal()}.
+     * @param spawnTable The table of filtered {@link EntityType} and
+     *                   {@link SpawnReason} combinations.
+     */
+    private SpawnFilter(@NotNull final Set<Class<? extends Creature>> mobs, final boolean[] typeTable, final boolean[] spawnTable) {
+        this.mobs = mobs;
+        this.typeTable = typeTable;
+        this.spawnTable = spawnTable;
+    }
+    
+    /**
+     * Compiles the given {@link Creature} {@link Class}es into a new
+     * {@link SpawnFilter}.
+     * <p>
+     * An {@link EntityType} is filtered if its {@link Entity} {@link Class} is
+     * a {@link Creature} that is assignable to any of the given
+     * {@link Class}es, matching the previous {@link Class#isInstance(Object)}
+     * semantics (for example, {@code Monster} will filter all hostile mobs).
+     * 
+     * @param mobs The {@link Creature} {@link Class}es to filter.
+     * @param reasons The {@link SpawnReason}s that the filter applies to.
+     * @return The compiled {@link SpawnFilter}.
+     */
+    @NotNull
+    public static SpawnFilter compile(@NotNull final Collection<Class<? extends Creature>> mobs, @NotNull final Collection<SpawnReason> reasons) {
+        return SpawnFilter.compile(mobs, Collections.emptySet(), reasons);
+    }
+    
+    /**
+     * Compiles the given {@link Creature} {@link Class}es into a new
+     * {@link SpawnFilter}, leaving out any {@link EntityType}s that are
+     * exempt.
+     * <p>
+     * An {@link EntityType} is exempt if its {@link Entity} {@link Class} is
+     * assignable to any of the given exempt {@link Class}es, so that (for
+     * example) {@code Monster} may be filtered with the exception of
+     * {@code Drowned}. The exemptions are resolved here, so that they cost
+     * nothing when a spawn is checked.
+     * 
+     * @param mobs The {@link Creature} {@link Class}es to filter.
+     * @param exemptMobs The {@link Creature} {@link Class}es that are never
+     *                   filtered.
+     * @param reasons The {@link SpawnReason}s that the filter applies to.
+     * @return The compiled {@link SpawnFilter}.
+     */
+    @NotNull
+    public static SpawnFilter compile(@NotNull final Collection<Class<? extends Creature>> mobs, @NotNull final Collection<Class<? extends Creature>> exemptMobs, @NotNull final Collection<SpawnReason> reasons) {
+        
+        final boolean[] reasonTable = new boolean[SPAWN_REASONS.length];
+        for (final SpawnReason reason : reasons) {
+            reasonTable[reason.ordinal()] = true;
+        }
+        
+        final boolean[] typeTable = new boolean[ENTITY_TYPES.length];
+        final boolean[] spawnTable = new boolean[ENTITY_TYPES.length * SPAWN_REASONS.length];
+        for (final EntityType type : ENTITY_TYPES) {
+            
+            final Class<? extends Entity> entityClass = type.getEntityClass();
+            if (entityClass == null || !Creature.class.isAssignableFrom(entityClass)) {
+                continue;
+            }
+            
+            for (final Class<? extends Creature> mob : mobs) {
+                if (mob.isAssignableFrom(entityClass)) {
+                    typeTable[type.ordinal()] = true;
+                    break;
+                }
+            }
+            
+            for (final Class<? extends Creature> exemptMob : exemptMobs) {
+                if (exemptMob.isAssignableFrom(entityClass)) {
+                    typeTable[type.ordinal()] = false;
+                    break;
+                }
+            }
+            
+            if (!typeTable[type.ordinal()]) {
+                continue;
+            }
+            
+            final int offset = type.ordinal() * SPAWN_REASONS.length;
+            System.arraycopy(reasonTable, 0, spawnTable, offset, SPAWN_REASONS.length);
+        }
+        
+        return new SpawnFilter(Collections.unmodifiableSet(new LinkedHashSet<Class<? extends Creature>>(mobs)), typeTable, spawnTable);
+    }
+    
+    /**
+     * Gets the default {@link SpawnReason}s that water spawn filtering applies
+     * to. This is every {@link SpawnReason} except
+     * {@link SpawnReason#DROWNED}, as a Zombie converting into a Drowned is
+     * always allowed.
+     * 
+     * @return The default {@link SpawnReason}s.
+     */
+    @NotNull
+    public static Set<SpawnReason> getDefaultReasons() {
+        final Set<SpawnReason> reasons = EnumSet.allOf(SpawnReason.class);
+        reasons.remove(SpawnReason.DROWNED);
+        return reasons;
+    }
+    
+    /**
+     * Gets the configured {@link Creature} {@link Class}es that this
+     * {@link SpawnFilter} was compiled from.
+     * 
+     * @return The configured {@link Creature} {@link Class}es.
+     */
+    @NotNull
+    public Set<Class<? extends Creature>> getMobs() {
+        return this.mobs;
+    }
+    
+    /**
+     * Checks to see if the given {@link EntityType} is filtered from spawning
+     * in water for any {@link SpawnReason}.
+     * 
+     * @param type The {@link EntityType} to check.
+     * @return {@code true} if the {@link EntityType} is filtered,
+     *         {@code false} otherwise.
+     */
+    public boolean isFiltered(@NotNull final EntityType type) {
+        return this.typeTable[type.ordinal()];
+    }
+    
+    /**
+     * Checks to see if the given {@link EntityType} is filtered from spawning
+     * in water for the given {@link SpawnReason}.
+     * 
+     * @param type The {@link EntityType} to check.
+     * @param reason The {@link SpawnReason} to check.
+     * @return {@code true} if the {@link EntityType} is filtered for the
+     *         {@link SpawnReason}, {@code false} otherwise.
+     */
+    public boolean isFiltered(@NotNull final EntityType type, @NotNull final SpawnReason reason) {
+        return this.spawnTable[type.ordinal() * SPAWN_REASONS.length + reason.ordinal()];
+    }
+}
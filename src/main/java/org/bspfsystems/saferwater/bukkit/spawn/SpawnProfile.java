@@ -0,0 +1,113 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.spawn;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.entity.Creature;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents a configured set of overrides of the spawn rules, for a single
+ * {@link World} or {@link Biome}.
+ * <p>
+ * Any setting that a {@link SpawnProfile} does not override is inherited from
+ * the {@link SpawnDecider} that it is applied to, so that profiles may be
+ * layered on top of each other. The {@link SpawnRules} are always inherited.
+ */
+public final class SpawnProfile {
+    
+    /**
+     * The value of a numeric setting that is not overridden.
+     */
+    public static final int INHERIT = -1;
+    
+    private final List<Class<? extends Creature>> mobs;
+    private final int maxScanDepth;
+    private final int minLightLevel;
+    private final Map<Biome, SpawnProfile> biomeProfiles;
+    
+    /**
+     * Constructs a new {@link SpawnProfile}.
+     * 
+     * @param mobs The {@link Creature} {@link Class}es to filter, or
+     *             {@code null} to inherit them.
+     * @param maxScanDepth The maximum scan depth, or {@link #INHERIT}.
+     * @param minLightLevel The minimum light level at which spawns are denied,
+     *                      or {@link #INHERIT}.
+     * @param biomeProfiles The {@link SpawnProfile}s that are layered on top
+     *                      of this one in each {@link Biome}. This is only
+     *                      used by {@link World} profiles.
+     * @throws IllegalArgumentException If the maximum scan depth or the
+     *                                  minimum light level is out of range.
+     */
+    public SpawnProfile(@Nullable final List<Class<? extends Creature>> mobs, final int maxScanDepth, final int minLightLevel, @NotNull final Map<Biome, SpawnProfile> biomeProfiles) throws IllegalArgumentException {
+        if (maxScanDepth < INHERIT) {
+            throw new IllegalArgumentException("Maximum scan depth cannot be negative: " + maxScanDepth);
+        }
+        if (minLightLevel < INHERIT || minLightLevel > SpawnDecider.MAX_LIGHT_LEVEL) {
+            throw new IllegalArgumentException("Minimum light level must be between 0 and " + SpawnDecider.MAX_LIGHT_LEVEL + ": " + minLightLevel);
+        }
+        this.mobs = mobs == null ? null : Collections.unmodifiableList(mobs);
+        this.maxScanDepth = maxScanDepth;
+        this.minLightLevel = minLightLevel;
+        this.biomeProfiles = biomeProfiles.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(new EnumMap<Biome, SpawnProfile>(biomeProfiles));
+    }
+    
+    /**
+     * Gets the {@link SpawnProfile}s that are layered on top of this one in
+     * each {@link Biome}.
+     * 
+     * @return The {@link SpawnProfile}s, by {@link Biome}.
+     */
+    @NotNull
+    public Map<Biome, SpawnProfile> getBiomeProfiles() {
+        return this.biomeProfiles;
+    }
+    
+    /**
+     * Applies this {@link SpawnProfile} on top of the given
+     * {@link SpawnDecider}.
+     * 
+     * @param parent The {@link SpawnDecider} to inherit any settings that are
+     *               not overridden from.
+     * @return The resulting {@link SpawnDecider}, which is the parent itself
+     *         if nothing is overridden.
+     */
+    @NotNull
+    public SpawnDecider apply(@NotNull final SpawnDecider parent) {
+        
+        if (this.mobs == null && this.maxScanDepth == INHERIT && this.minLightLevel == INHERIT) {
+            return parent;
+        }
+        
+        final SpawnRules spawnRules = parent.getSpawnRules();
+        final SpawnFilter spawnFilter = this.mobs == null ? parent.getSpawnFilter() : spawnRules.compileFilter(this.mobs);
+        final int maxScanDepth = this.maxScanDepth == INHERIT ? parent.getMaxScanDepth() : this.maxScanDepth;
+        final int minLightLevel = this.minLightLevel == INHERIT ? parent.getMinLightLevel() : this.minLightLevel;
+        return new SpawnDecider(spawnFilter, spawnRules, maxScanDepth, minLightLevel);
+    }
+}
@@ -0,0 +1,198 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.spawn;
+
+import java.util.Arrays;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents the {@link SpawnProfiles} bound to the loaded {@link World}s,
+ * resolving the {@link SpawnDecider} of a spawn with array reads only.
+ * <p>
+ * A {@link SpawnProfileTable} is immutable. When a {@link World} is loaded or
+ * unloaded, a new {@link SpawnProfileTable} is created with
+ * {@link #withWorld(World)} or {@link #withoutWorld(World)}, and replaces
+ * the current one as a whole.
+ */
+public final class SpawnProfileTable {
+    
+    private final SpawnProfiles spawnProfiles;
+    private final World[] worlds;
+    private final SpawnDecider[][] tables;
+    
+    /**
+     * Constructs a new {@link SpawnProfileTable}.
+     * 
+     * @param spawnProfiles The {@link SpawnProfiles} that were bound.
+     * @param worlds The bound {@link World}s.
+     * @param tables The table of each bound {@link World}, at the same index.
+     */
+    SpawnProfileTable(@NotNull final SpawnProfiles spawnProfiles, @NotNull final World[] worlds, @NotNull final SpawnDecider[][] tables) {
+        this.spawnProfiles = spawnProfiles;
+        this.worlds = worlds;
+        this.tables = tables;
+    }
+    
+    /**
+     * Gets the {@link SpawnProfiles} that this {@link SpawnProfileTable} was
+     * bound from.
+     * 
+     * @return The {@link SpawnProfiles}.
+     */
+    @NotNull
+    public SpawnProfiles getSpawnProfiles() {
+        return this.spawnProfiles;
+    }
+    
+    /**
+     * Gets the {@link SpawnDecider} of a spawn at the given coordinates in the
+     * given {@link World}.
+     * <p>
+     * The {@link Biome} is only read if the {@link World} has any
+     * {@link Biome} profiles.
+     * 
+     * @param world The {@link World} of the spawn.
+     * @param x The block X coordinate of the spawn.
+     * @param y The block Y coordinate of the spawn.
+     * @param z The block Z coordinate of the spawn.
+     * @return The {@link SpawnDecider}.
+     */
+    @NotNull
+    public SpawnDecider getDecider(@NotNull final World world, final int x, final int y, final int z) {
+        final SpawnDecider[] table = this.getTable(world);
+        return table.length == 1 ? table[0] : table[world.getBiome(x, y, z).ordinal()];
+    }
+    
+    /**
+     * Gets the {@link SpawnDecider} of a spawn in the given {@link Biome} of
+     * the given {@link World}, for callers that have already read the
+     * {@link Biome} (such as from a chunk snapshot).
+     * 
+     * @param world The {@link World} of the spawn.
+     * @param biome The {@link Biome} of the spawn.
+     * @return The {@link SpawnDecider}.
+     */
+    @NotNull
+    public SpawnDecider getDecider(@NotNull final World world, @NotNull final Biome biome) {
+        final SpawnDecider[] table = this.getTable(world);
+        return table.length == 1 ? table[0] : table[biome.ordinal()];
+    }
+    
+    /**
+     * Gets the {@link SpawnDecider} of every spawn in the given {@link World},
+     * if it does not depend on the {@link Biome} of the spawn.
+     * 
+     * @param world The {@link World}.
+     * @return The {@link SpawnDecider}, or {@code null} if any {@link Biome}
+     *         profiles apply in the {@link World}.
+     */
+    @Nullable
+    public SpawnDecider getWorldDecider(@NotNull final World world) {
+        final SpawnDecider[] table = this.getTable(world);
+        return table.length == 1 ? table[0] : null;
+    }
+    
+    /**
+     * Gets the table of the given {@link World}.
+     * <p>
+     * There are only ever a handful of loaded {@link World}s, so they are
+     * found by identity in a flat array. A {@link World} that has not been
+     * bound yet (such as one that is still being loaded) falls back to a
+     * lookup by name.
+     * 
+     * @param world The {@link World}.
+     * @return The table of the {@link World}.
+     */
+    @NotNull
+    private SpawnDecider[] getTable(@NotNull final World world) {
+        final World[] worlds = this.worlds;
+        for (int index = 0; index < worlds.length; index++) {
+            if (worlds[index] == world) {
+                return this.tables[index];
+            }
+        }
+        return this.spawnProfiles.getTable(world.getName());
+    }
+    
+    /**
+     * Creates a copy of this {@link SpawnProfileTable} with the given
+     * {@link World} bound.
+     * 
+     * @param world The loaded {@link World}.
+     * @return The new {@link SpawnProfileTable}.
+     */
+    @NotNull
+    public SpawnProfileTable withWorld(@NotNull final World world) {
+        
+        final int index = this.indexOf(world);
+        if (index != -1) {
+            return this;
+        }
+        
+        final World[] worlds = Arrays.copyOf(this.worlds, this.worlds.length + 1);
+        final SpawnDecider[][] tables = Arrays.copyOf(this.tables, this.tables.length + 1);
+        worlds[worlds.length - 1] = world;
+        tables[tables.length - 1] = this.spawnProfiles.getTable(world.getName());
+        return new SpawnProfileTable(this.spawnProfiles, worlds, tables);
+    }
+    
+    /**
+     * Creates a copy of this {@link SpawnProfileTable} without the given
+     * {@link World}, so that it is not retained once unloaded.
+     * 
+     * @param world The unloaded {@link World}.
+     * @return The new {@link SpawnProfileTable}.
+     */
+    @NotNull
+    public SpawnProfileTable withoutWorld(@NotNull final World world) {
+        
+        final int index = this.indexOf(world);
+        if (index == -1) {
+            return this;
+        }
+        
+        final World[] worlds = new World[this.worlds.length - 1];
+        final SpawnDecider[][] tables = new SpawnDecider[this.tables.length - 1][];
+        System.arraycopy(this.worlds, 0, worlds, 0, index);
+        System.arraycopy(this.worlds, index + 1, worlds, index, worlds.length - index);
+        System.arraycopy(this.tables, 0, tables, 0, index);
+        System.arraycopy(this.tables, index + 1, tables, index, tables.length - index);
+        return new SpawnProfileTable(this.spawnProfiles, worlds, tables);
+    }
+    
+    /**
+     * Gets the index of the given {@link World}.
+     * 
+     * @param world The {@link World}.
+     * @return The index, or {@code -1} if the {@link World} is not bound.
+     */
+    private int indexOf(@NotNull final World world) {
+        for (int index = 0; index < this.worlds.length; index++) {
+            if (this.worlds[index] == world) {
+                return index;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,202 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.spawn;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents the compiled spawn rules of every configured {@link World} and
+ * {@link Biome}.
+ * <p>
+ * Each {@link World} profile is compiled into a table of
+ * {@link SpawnDecider}s indexed by {@link Biome#ordinal()}, with the layers
+ * applied in order: the defaults, the {@link World} profile, the global
+ * {@link Biome} profile, and the {@link Biome} profile of the {@link World}.
+ * If no {@link Biome} profile applies to a {@link World}, its table holds a
+ * single {@link SpawnDecider} that is used for every {@link Biome}.
+ * <p>
+ * The tables are keyed by {@link World} name, and are bound to the loaded
+ * {@link World}s with {@link #bind(Collection)}, so that no {@link String}
+ * or {@link Map} lookups are needed when a spawn is decided.
+ */
+public final class SpawnProfiles {
+    
+    private static final Biome[] BIOMES = Biome.values();
+    
+    /**
+     * The {@link SpawnProfiles} that do not filter any spawns.
+     */
+    public static final SpawnProfiles EMPTY = SpawnProfiles.compile(SpawnDecider.EMPTY, Collections.emptyMap(), Collections.emptyMap());
+    
+    private final SpawnDecider defaultDecider;
+    private final SpawnDecider[] defaultTable;
+    private final Map<String, SpawnDecider[]> worldTables;
+    
+    /**
+     * Constructs a new {@link SpawnProfiles} from the fully-built tables.
+     * 
+     * @param defaultDecider The default {@link SpawnDecider}.
+     * @param defaultTable The table of any {@link World} without a profile.
+     * @param worldTables The tables of each {@link World} with a profile, by
+     *                    name.
+     */
+    private SpawnProfiles(@NotNull final SpawnDecider defaultDecider, @NotNull final SpawnDecider[] defaultTable, @NotNull final Map<String, SpawnDecider[]> worldTables) {
+        this.defaultDecider = defaultDecider;
+        this.defaultTable = defaultTable;
+        this.worldTables = worldTables;
+    }
+    
+    /**
+     * Compiles the given {@link SpawnProfile}s into a new
+     * {@link SpawnProfiles}.
+     * 
+     * @param defaultDecider The default {@link SpawnDecider}.
+     * @param biomeProfiles The {@link SpawnProfile}s that apply to each
+     *                      {@link Biome} in every {@link World}.
+     * @param worldProfiles The {@link SpawnProfile}s that apply to each
+     *                      {@link World}, by name.
+     * @return The compiled {@link SpawnProfiles}.
+     */
+    @NotNull
+    public static SpawnProfiles compile(@NotNull final SpawnDecider defaultDecider, @NotNull final Map<Biome, SpawnProfile> biomeProfiles, @NotNull final Map<String, SpawnProfile> worldProfiles) {
+        
+        final SpawnDecider[] defaultTable = SpawnProfiles.compileTable(defaultDecider, biomeProfiles, Collections.emptyMap());
+        final Map<String, SpawnDecider[]> worldTables = new HashMap<String, SpawnDecider[]>();
+        for (final Map.Entry<String, SpawnProfile> entry : worldProfiles.entrySet()) {
+            final SpawnProfile worldProfile = entry.getValue();
+            worldTables.put(entry.getKey(), SpawnProfiles.compileTable(worldProfile.apply(defaultDecider), biomeProfiles, worldProfile.getBiomeProfiles()));
+        }
+        
+        return new SpawnProfiles(defaultDecider, defaultTable, worldTables);
+    }
+    
+    /**
+     * Compiles the table of a single {@link World}.
+     * 
+     * @param worldDecider The {@link SpawnDecider} of the {@link World}.
+     * @param biomeProfiles The global {@link Biome} {@link SpawnProfile}s.
+     * @param worldBiomeProfiles The {@link Biome} {@link SpawnProfile}s of the
+     *                           {@link World}.
+     * @return The table, indexed by {@link Biome#ordinal()}, or holding only
+     *         the {@link World}'s {@link SpawnDecider} if no {@link Biome}
+     *         {@link SpawnProfile}s apply.
+     */
+    @NotNull
+    private static SpawnDecider[] compileTable(@NotNull final SpawnDecider worldDecider, @NotNull final Map<Biome, SpawnProfile> biomeProfiles, @NotNull final Map<Biome, SpawnProfile> worldBiomeProfiles) {
+        
+        if (biomeProfiles.isEmpty() && worldBiomeProfiles.isEmpty()) {
+            return new SpawnDecider[] {worldDecider};
+        }
+        
+        final SpawnDecider[] table = new SpawnDecider[BIOMES.length];
+        for (final Biome biome : BIOMES) {
+            
+            SpawnDecider decider = worldDecider;
+            final SpawnProfile biomeProfile = biomeProfiles.get(biome);
+            if (biomeProfile != null) {
+                decider = biomeProfile.apply(decider);
+            }
+            final SpawnProfile worldBiomeProfile = worldBiomeProfiles.get(biome);
+            if (worldBiomeProfile != null) {
+                decider = worldBiomeProfile.apply(decider);
+            }
+            table[biome.ordinal()] = decider;
+        }
+        
+        return table;
+    }
+    
+    /**
+     * Gets the default {@link SpawnDecider}, which applies to any
+     * {@link World} and {@link Biome} without a profile.
+     * 
+     * @return The default {@link SpawnDecider}.
+     */
+    @NotNull
+    public SpawnDecider getDefaultDecider() {
+        return this.defaultDecider;
+    }
+    
+    /**
+     * Gets the number of {@link World}s with a profile.
+     * 
+     * @return The number of {@link World} profiles.
+     */
+    public int getWorldProfileCount() {
+        return this.worldTables.size();
+    }
+    
+    /**
+     * Gets the table of the {@link World} with the given name.
+     * 
+     * @param worldName The name of the {@link World}.
+     * @return The table, indexed by {@link Biome#ordinal()} unless it only
+     *         holds a single {@link SpawnDecider}.
+     */
+    @NotNull
+    SpawnDecider[] getTable(@NotNull final String worldName) {
+        final SpawnDecider[] table = this.worldTables.get(worldName);
+        return table == null ? this.defaultTable : table;
+    }
+    
+    /**
+     * Gets the {@link SpawnDecider} of a spawn in the given {@link Biome} of
+     * the {@link World} with the given name, without binding the
+     * {@link World}.
+     * <p>
+     * This looks the {@link World} up by name, so it is only meant for tools
+     * that do not have a loaded {@link World} (such as replaying a recording),
+     * and not for deciding live spawns.
+     * 
+     * @param worldName The name of the {@link World}.
+     * @param biome The {@link Biome} of the spawn.
+     * @return The {@link SpawnDecider}.
+     */
+    @NotNull
+    public SpawnDecider getDecider(@NotNull final String worldName, @NotNull final Biome biome) {
+        final SpawnDecider[] table = this.getTable(worldName);
+        return table.length == 1 ? table[0] : table[biome.ordinal()];
+    }
+    
+    /**
+     * Binds these {@link SpawnProfiles} to the given loaded {@link World}s.
+     * 
+     * @param worlds The loaded {@link World}s.
+     * @return The bound {@link SpawnProfileTable}.
+     */
+    @NotNull
+    public SpawnProfileTable bind(@NotNull final Collection<? extends World> worlds) {
+        
+        final World[] worldArray = worlds.toArray(new World[0]);
+        final SpawnDecider[][] tables = new SpawnDecider[worldArray.length][];
+        for (int index = 0; index < worldArray.length; index++) {
+            tables[index] = this.getTable(worldArray[index].getName());
+        }
+        
+        return new SpawnProfileTable(this, worldArray, tables);
+    }
+}
@@ -0,0 +1,81 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.spawn;
+
+import org.bspfsystems.saferwater.bukkit.water.ChunkWaterFloor;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a single compiled condition that a filtered water spawn must
+ * meet to be denied.
+ * <p>
+ * A {@link SpawnRule} is immutable, and only compares the coordinates that it
+ * is given against the values that it was compiled with, so that it never
+ * reads a block, map, or string while deciding a spawn. The rules of a
+ * {@link SpawnDecider} are grouped by their {@link Stage}, so that the rules
+ * that only need the position of the spawn are checked before any blocks are
+ * read.
+ */
+public interface SpawnRule {
+    
+    /**
+     * Represents the point in a decision at which a {@link SpawnRule} is
+     * checked, in the order that they are checked.
+     */
+    enum Stage {
+        
+        /**
+         * The {@link SpawnRule} only needs the position of the spawn, and is
+         * checked before any blocks are read.
+         */
+        POSITION,
+        
+        /**
+         * The {@link SpawnRule} needs the floor of the body of water, and is
+         * checked once the floor has been found, but before its light level is
+         * read.
+         */
+        FLOOR
+    }
+    
+    /**
+     * Gets the {@link Stage} at which this {@link SpawnRule} is checked.
+     * 
+     * @return The {@link Stage}.
+     */
+    @NotNull
+    Stage getStage();
+    
+    /**
+     * Checks if a spawn at the given coordinates meets this
+     * {@link SpawnRule}.
+     * 
+     * @param x The block X coordinate of the spawn.
+     * @param y The block Y coordinate of the spawn.
+     * @param z The block Z coordinate of the spawn.
+     * @param floorY The block Y coordinate of the floor of the body of water,
+     *               or {@link ChunkWaterFloor#UNKNOWN} at the
+     *               {@link Stage#POSITION} stage.
+     * @return {@code true} if the spawn may still be denied, {@code false}
+     *         if it is exempt.
+     */
+    boolean test(int x, int y, int z, int floorY);
+}
@@ -0,0 +1,193 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.spawn;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.bukkit.entity.Creature;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents the immutable, configured conditions that a filtered spawn must
+ * meet to be denied, on top of the light level of the floor of its body of
+ * water.
+ * <p>
+ * The {@link SpawnReason}s and exempt {@link Creature} {@link Class}es are
+ * folded into the {@link SpawnFilter} by {@link #compileFilter(Collection)},
+ * and the remaining conditions are compiled into {@link SpawnRule}s by
+ * {@link #compileRules(SpawnRule.Stage)}. Any condition that holds for every
+ * spawn is left out entirely, so that the default {@link SpawnRules} do not
+ * add any work to a decision.
+ */
+public final class SpawnRules {
+    
+    /**
+     * The default {@link SpawnRules}, checking every {@link SpawnReason}
+     * except {@link SpawnReason#DROWNED} at any Y and depth, against the
+     * combined light level.
+     */
+    public static final SpawnRules DEFAULT = new SpawnRules(SpawnFilter.getDefaultReasons(), Collections.emptyList(), Integer.MIN_VALUE, Integer.MAX_VALUE, LightSource.COMBINED, 1);
+    
+    private final Set<SpawnReason> reasons;
+    private final Set<Class<? extends Creature>> exemptMobs;
+    private final int minY;
+    private final int maxY;
+    private final LightSource lightSource;
+    private final int minWaterDepth;
+    
+    /**
+     * Constructs a new {@link SpawnRules}.
+     * 
+     * @param reasons The {@link SpawnReason}s that spawns are checked for.
+     * @param exemptMobs The {@link Creature} {@link Class}es that are never
+     *                   checked, even if they are filtered.
+     * @param minY The lowest Y at which spawns are checked (inclusive), or
+     *             {@link Integer#MIN_VALUE} for no bound.
+     * @param maxY The highest Y at which spawns are checked (inclusive), or
+     *             {@link Integer#MAX_VALUE} for no bound.
+     * @param lightSource The {@link LightSource} of the light level of the
+     *                    floor.
+     * @param minWaterDepth The minimum depth of water at which spawns are
+     *                      checked, where {@code 1} checks every water spawn.
+     * @throws IllegalArgumentException If the minimum Y is above the maximum
+     *                                  Y, or the minimum water depth is not
+     *                                  positive.
+     */
+    public SpawnRules(@NotNull final Collection<SpawnReason> reasons, @NotNull final Collection<Class<? extends Creature>> exemptMobs, final int minY, final int maxY, @NotNull final LightSource lightSource, final int minWaterDepth) throws IllegalArgumentException {
+        if (minY > maxY) {
+            throw new IllegalArgumentException("Minimum Y cannot be above the maximum Y: " + minY + " > " + maxY);
+        }
+        if (minWaterDepth <= 0) {
+            throw new IllegalArgumentException("Minimum water depth must be positive: " + minWaterDepth);
+        }
+        final Set<SpawnReason> reasonSet = EnumSet.noneOf(SpawnReason.class);
+        reasonSet.addAll(reasons);
+        this.reasons = Collections.unmodifiableSet(reasonSet);
+        this.exemptMobs = Collections.unmodifiableSet(new LinkedHashSet<Class<? extends Creature>>(exemptMobs));
+        this.minY = minY;
+        this.maxY = maxY;
+        this.lightSource = lightSource;
+        this.minWaterDepth = minWaterDepth;
+    }
+    
+    /**
+     * Gets the {@link SpawnReason}s that spawns are checked for.
+     * 
+     * @return The {@link SpawnReason}s.
+     */
+    @NotNull
+    public Set<SpawnReason> getReasons() {
+        return this.reasons;
+    }
+    
+    /**
+     * Gets the {@link Creature} {@link Class}es that are never checked.
+     * 
+     * @return The exempt {@link Creature} {@link Class}es.
+     */
+    @NotNull
+    public Set<Class<? extends Creature>> getExemptMobs() {
+        return this.exemptMobs;
+    }
+    
+    /**
+     * Gets the lowest Y at which spawns are checked (inclusive).
+     * 
+     * @return The minimum Y, or {@link Integer#MIN_VALUE} if there is no
+     *         bound.
+     */
+    public int getMinY() {
+        return this.minY;
+    }
+    
+    /**
+     * Gets the highest Y at which spawns are checked (inclusive).
+     * 
+     * @return The maximum Y, or {@link Integer#MAX_VALUE} if there is no
+     *         bound.
+     */
+    public int getMaxY() {
+        return this.maxY;
+    }
+    
+    /**
+     * Gets the {@link LightSource} of the light level of the floor.
+     * 
+     * @return The {@link LightSource}.
+     */
+    @NotNull
+    public LightSource getLightSource() {
+        return this.lightSource;
+    }
+    
+    /**
+     * Gets the minimum depth of water at which spawns are checked.
+     * 
+     * @return The minimum water depth, where {@code 1} checks every water
+     *         spawn.
+     */
+    public int getMinWaterDepth() {
+        return this.minWaterDepth;
+    }
+    
+    /**
+     * Compiles the given {@link Creature} {@link Class}es into a new
+     * {@link SpawnFilter}, with the {@link SpawnReason}s and exempt
+     * {@link Creature} {@link Class}es of these {@link SpawnRules} folded
+     * into its tables.
+     * 
+     * @param mobs The {@link Creature} {@link Class}es to filter.
+     * @return The compiled {@link SpawnFilter}.
+     */
+    @NotNull
+    public SpawnFilter compileFilter(@NotNull final Collection<Class<? extends Creature>> mobs) {
+        return SpawnFilter.compile(mobs, this.exemptMobs, this.reasons);
+    }
+    
+    /**
+     * Compiles the conditions of these {@link SpawnRules} that are checked at
+     * the given {@link SpawnRule.Stage}. Conditions that hold for every spawn
+     * are left out.
+     * 
+     * @param stage The {@link SpawnRule.Stage}.
+     * @return The compiled {@link SpawnRule}s, which may be empty.
+     */
+    @NotNull
+    public SpawnRule[] compileRules(@NotNull final SpawnRule.Stage stage) {
+        
+        final List<SpawnRule> rules = new ArrayList<SpawnRule>();
+        if (this.minY != Integer.MIN_VALUE || this.maxY != Integer.MAX_VALUE) {
+            rules.add(new YRangeRule(this.minY, this.maxY));
+        }
+        if (this.minWaterDepth > 1) {
+            rules.add(new WaterDepthRule(this.minWaterDepth));
+        }
+        
+        rules.removeIf(rule -> rule.getStage() != stage);
+        return rules.toArray(new SpawnRule[0]);
+    }
+}
@@ -0,0 +1,64 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.spawn;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a {@link SpawnRule} that only denies spawns in water that is at
+ * least a minimum number of blocks deep, counted from the floor of the body
+ * of water up to (and including) the spawn block.
+ */
+public final class WaterDepthRule implements SpawnRule {
+    
+    private final int minDepth;
+    
+    /**
+     * Constructs a new {@link WaterDepthRule}.
+     * 
+     * @param minDepth The minimum depth of water at which spawns may be
+     *                 denied.
+     * @throws IllegalArgumentException If the minimum depth is not positive.
+     */
+    public WaterDepthRule(final int minDepth) throws IllegalArgumentException {
+        if (minDepth <= 0) {
+            throw new IllegalArgumentException("Minimum water depth must be positive: " + minDepth);
+        }
+        this.minDepth = minDepth;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public Stage getStage() {
+        return Stage.FLOOR;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean test(final int x, final int y, final int z, final int floorY) {
+        return y - floorY + 1 >= this.minDepth;
+    }
+}
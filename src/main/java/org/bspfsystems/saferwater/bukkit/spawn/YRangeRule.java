@@ -0,0 +1,66 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.spawn;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a {@link SpawnRule} that only denies spawns within a range of
+ * Y coordinates.
+ */
+public final class YRangeRule implements SpawnRule {
+    
+    private final int minY;
+    private final int maxY;
+    
+    /**
+     * Constructs a new {@link YRangeRule}.
+     * 
+     * @param minY The lowest Y at which spawns may be denied (inclusive).
+     * @param maxY The highest Y at which spawns may be denied (inclusive).
+     * @throws IllegalArgumentException If the minimum Y is above the maximum
+     *                                  Y.
+     */
+    public YRangeRule(final int minY, final int maxY) throws IllegalArgumentException {
+        if (minY > maxY) {
+            throw new IllegalArgumentException("Minimum Y cannot be above the maximum Y: " + minY + " > " + maxY);
+        }
+        this.minY = minY;
+        this.maxY = maxY;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @NotNull
+    public Stage getStage() {
+        return Stage.POSITION;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean test(final int x, final int y, final int z, final int floorY) {
+        return y >= this.minY && y <= this.maxY;
+    }
+}
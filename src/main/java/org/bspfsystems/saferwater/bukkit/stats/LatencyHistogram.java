@@ -0,0 +1,150 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.stats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Represents a fixed-bucket histogram of nanosecond latencies.
+ * <p>
+ * Values below 8 have their own bucket. Every power of 2 above that is split
+ * into 8 equally-sized buckets, so that any reported percentile is within
+ * 12.5% of the recorded value. Values above the last bucket (about 9 minutes)
+ * are counted in the last bucket.
+ * <p>
+ * Recording a value is a few bit operations and a single {@link LongAdder}
+ * increment, and never allocates.
+ */
+public final class LatencyHistogram {
+    
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 39;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    
+    private final LongAdder[] buckets;
+    
+    /**
+     * Constructs a new, empty {@link LatencyHistogram}.
+     */
+    public LatencyHistogram() {
+        this.buckets = new LongAdder[BUCKETS];
+        for (int index = 0; index < BUCKETS; index++) {
+            this.buckets[index] = new LongAdder();
+        }
+    }
+    
+    /**
+     * Gets the index of the bucket that the given value is counted in.
+     * 
+     * @param value The value, in nanoseconds.
+     * @return The index of the bucket.
+     */
+    private static int getIndex(final long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0L ? 0 : (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+    
+    /**
+     * Gets the lowest value that is counted in the bucket at the given index.
+     * 
+     * @param index The index of the bucket.
+     * @return The lowest value of the bucket, in nanoseconds.
+     */
+    private static long getLowestValue(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long subBucket = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+    
+    /**
+     * Records a single value.
+     * 
+     * @param nanos The value to record, in nanoseconds.
+     */
+    public void record(final long nanos) {
+        this.buckets[LatencyHistogram.getIndex(nanos)].increment();
+    }
+    
+    /**
+     * Gets the number of values that have been recorded.
+     * 
+     * @return The number of values.
+     */
+    public long getCount() {
+        long count = 0L;
+        for (final LongAdder bucket : this.buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+    
+    /**
+     * Gets the value at the given percentile, as the highest value of the
+     * bucket that it was counted in.
+     * 
+     * @param percentile The percentile, between {@code 0} and {@code 100}.
+     * @return The value at the percentile, in nanoseconds, or {@code 0} if no
+     *         values have been recorded.
+     */
+    public long getPercentile(final double percentile) {
+        
+        final long[] counts = new long[BUCKETS];
+        long total = 0L;
+        for (int index = 0; index < BUCKETS; index++) {
+            counts[index] = this.buckets[index].sum();
+            total += counts[index];
+        }
+        if (total == 0L) {
+            return 0L;
+        }
+        
+        final long rank = Math.max(1L, (long) Math.ceil(total * Math.min(100.0D, Math.max(0.0D, percentile)) / 100.0D));
+        long seen = 0L;
+        for (int index = 0; index < BUCKETS; index++) {
+            seen += counts[index];
+            if (seen >= rank) {
+                return index == BUCKETS - 1 ? LatencyHistogram.getLowestValue(index) : LatencyHistogram.getLowestValue(index + 1) - 1L;
+            }
+        }
+        return LatencyHistogram.getLowestValue(BUCKETS - 1);
+    }
+    
+    /**
+     * Resets all recorded values. Values recorded concurrently with the reset
+     * may or may not be kept.
+     */
+    public void reset() {
+        for (final LongAdder bucket : this.buckets) {
+            bucket.reset();
+        }
+    }
+}
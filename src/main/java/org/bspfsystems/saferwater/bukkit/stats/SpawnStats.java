@@ -0,0 +1,303 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.stats;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.bukkit.World;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents the counters and decision latencies of all evaluated spawns,
+ * broken down by {@link EntityType}, {@link World}, and {@link SpawnReason}.
+ * <p>
+ * All counters are {@link LongAdder}s in arrays that are indexed by ordinal,
+ * so that recording a spawn only increments striped counters and never
+ * allocates (except for the first spawn in a {@link World}). This is cheap
+ * enough to be left on permanently.
+ */
+public final class SpawnStats {
+    
+    /**
+     * The spawn was skipped, as its {@link EntityType} is not filtered.
+     */
+    public static final int SKIPPED_TYPE = 0;
+    
+    /**
+     * The spawn was skipped, as its {@link SpawnReason} is not filtered (such
+     * as {@link SpawnReason#DROWNED}).
+     */
+    public static final int SKIPPED_REASON = 1;
+    
+    /**
+     * The spawn was skipped, as it was not in water.
+     */
+    public static final int SKIPPED_DRY = 2;
+    
+    /**
+     * The spawn was a filtered water spawn, and was allowed.
+     */
+    public static final int ALLOWED = 3;
+    
+    /**
+     * The spawn was a filtered water spawn, and was denied.
+     */
+    public static final int DENIED = 4;
+    
+    /**
+     * The number of categories that a spawn can be counted in.
+     */
+    public static final int CATEGORIES = 5;
+    
+    private static final EntityType[] ENTITY_TYPES = EntityType.values();
+    private static final SpawnReason[] SPAWN_REASONS = SpawnReason.values();
+    
+    private final LongAdder[] totals;
+    private final LongAdder[][] typeCounts;
+    private final LongAdder[][] reasonCounts;
+    private final Map<UUID, WorldCounts> worldCounts;
+    private final LatencyHistogram latencies;
+    
+    private volatile long startNanos;
+    
+    /**
+     * Constructs a new, empty {@link SpawnStats}.
+     */
+    public SpawnStats() {
+        this.totals = SpawnStats.createCounters();
+        this.typeCounts = new LongAdder[ENTITY_TYPES.length][];
+        for (int index = 0; index < ENTITY_TYPES.length; index++) {
+            this.typeCounts[index] = SpawnStats.createCounters();
+        }
+        this.reasonCounts = new LongAdder[SPAWN_REASONS.length][];
+        for (int index = 0; index < SPAWN_REASONS.length; index++) {
+            this.reasonCounts[index] = SpawnStats.createCounters();
+        }
+        this.worldCounts = new ConcurrentHashMap<UUID, WorldCounts>();
+        this.latencies = new LatencyHistogram();
+        this.startNanos = System.nanoTime();
+    }
+    
+    /**
+     * Creates a new set of counters, one per category.
+     * 
+     * @return The new counters.
+     */
+    @NotNull
+    private static LongAdder[] createCounters() {
+        final LongAdder[] counters = new LongAdder[CATEGORIES];
+        for (int category = 0; category < CATEGORIES; category++) {
+            counters[category] = new LongAdder();
+        }
+        return counters;
+    }
+    
+    /**
+     * Sums a set of counters.
+     * 
+     * @param counters The counters to sum.
+     * @return The current value of each counter.
+     */
+    @NotNull
+    private static long[] sum(@NotNull final LongAdder[] counters) {
+        final long[] sums = new long[CATEGORIES];
+        for (int category = 0; category < CATEGORIES; category++) {
+            sums[category] = counters[category].sum();
+        }
+        return sums;
+    }
+    
+    /**
+     * Records an evaluated spawn.
+     * 
+     * @param type The {@link EntityType} of the spawn.
+     * @param reason The {@link SpawnReason} of the spawn.
+     * @param world The {@link World} of the spawn.
+     * @param category The category that the spawn is counted in.
+     * @param nanos The time taken to decide the spawn, in nanoseconds.
+     */
+    public void record(@NotNull final EntityType type, @NotNull final SpawnReason reason, @NotNull final World world, final int category, final long nanos) {
+        
+        this.totals[category].increment();
+        this.typeCounts[type.ordinal()][category].increment();
+        this.reasonCounts[reason.ordinal()][category].increment();
+        
+        final UUID worldId = world.getUID();
+        WorldCounts counts = this.worldCounts.get(worldId);
+        if (counts == null) {
+            counts = this.worldCounts.computeIfAbsent(worldId, id -> new WorldCounts(world.getName()));
+        }
+        counts.counters[category].increment();
+        
+        this.latencies.record(nanos);
+    }
+    
+    /**
+     * Gets the number of nanoseconds since these {@link SpawnStats} were
+     * created or last reset.
+     * 
+     * @return The elapsed nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - this.startNanos;
+    }
+    
+    /**
+     * Gets the total count of each category.
+     * 
+     * @return The count of each category, indexed by category.
+     */
+    @NotNull
+    public long[] getTotals() {
+        return SpawnStats.sum(this.totals);
+    }
+    
+    /**
+     * Gets the count of each category for each {@link EntityType} that has
+     * had any spawns recorded.
+     * 
+     * @return The counts, keyed by {@link EntityType}.
+     */
+    @NotNull
+    public Map<EntityType, long[]> getTypeCounts() {
+        final Map<EntityType, long[]> counts = new LinkedHashMap<EntityType, long[]>();
+        for (int index = 0; index < ENTITY_TYPES.length; index++) {
+            final long[] sums = SpawnStats.sum(this.typeCounts[index]);
+            if (SpawnStats.total(sums) > 0L) {
+                counts.put(ENTITY_TYPES[index], sums);
+            }
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+    
+    /**
+     * Gets the count of each category for each {@link SpawnReason} that has
+     * had any spawns recorded.
+     * 
+     * @return The counts, keyed by {@link SpawnReason}.
+     */
+    @NotNull
+    public Map<SpawnReason, long[]> getReasonCounts() {
+        final Map<SpawnReason, long[]> counts = new LinkedHashMap<SpawnReason, long[]>();
+        for (int index = 0; index < SPAWN_REASONS.length; index++) {
+            final long[] sums = SpawnStats.sum(this.reasonCounts[index]);
+            if (SpawnStats.total(sums) > 0L) {
+                counts.put(SPAWN_REASONS[index], sums);
+            }
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+    
+    /**
+     * Gets the count of each category for each {@link World} that has had
+     * any spawns recorded.
+     * 
+     * @return The counts, keyed by {@link World} name.
+     */
+    @NotNull
+    public Map<String, long[]> getWorldCounts() {
+        final Map<String, long[]> counts = new LinkedHashMap<String, long[]>();
+        for (final WorldCounts worldCounts : this.worldCounts.values()) {
+            final long[] sums = SpawnStats.sum(worldCounts.counters);
+            if (SpawnStats.total(sums) > 0L) {
+                counts.merge(worldCounts.name, sums, (first, second) -> {
+                    for (int category = 0; category < CATEGORIES; category++) {
+                        first[category] += second[category];
+                    }
+                    return first;
+                });
+            }
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+    
+    /**
+     * Gets the histogram of the decision latencies.
+     * 
+     * @return The {@link LatencyHistogram}.
+     */
+    @NotNull
+    public LatencyHistogram getLatencies() {
+        return this.latencies;
+    }
+    
+    /**
+     * Resets all counters and latencies. Spawns recorded concurrently with
+     * the reset may or may not be kept.
+     */
+    public void reset() {
+        for (final LongAdder counter : this.totals) {
+            counter.reset();
+        }
+        for (final LongAdder[] counters : this.typeCounts) {
+            for (final LongAdder counter : counters) {
+                counter.reset();
+            }
+        }
+        for (final LongAdder[] counters : this.reasonCounts) {
+            for (final LongAdder counter : counters) {
+                counter.reset();
+            }
+        }
+        this.worldCounts.clear();
+        this.latencies.reset();
+        this.startNanos = System.nanoTime();
+    }
+    
+    /**
+     * Gets the total of the given category counts.
+     * 
+     * @param counts The count of each category.
+     * @return The total of all categories.
+     */
+    public static long total(@NotNull final long[] counts) {
+        long total = 0L;
+        for (final long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+    
+    /**
+     * Represents the counters of a single {@link World}.
+     */
+    private static final class WorldCounts {
+        
+        private final String name;
+        private final LongAdder[] counters;
+        
+        /**
+         * Constructs a new {@link WorldCounts}.
+         * 
+         * @param name The name of the {@link World}.
+         */
+        private WorldCounts(@NotNull final String name) {
+            this.name = name;
+            this.counters = SpawnStats.createCounters();
+        }
+    }
+}
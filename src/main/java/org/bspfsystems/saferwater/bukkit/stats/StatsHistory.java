@@ -0,0 +1,346 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.stats;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bspfsystems.saferwater.bukkit.scheduler.TaskScheduler;
+import org.bukkit.World;
+import org.bukkit.entity.EntityType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents a history of the evaluated and denied spawns of each minute,
+ * broken down by {@link World} and {@link EntityType}, that is kept in a
+ * {@link StatsHistoryFile} so that it survives restarts.
+ * <p>
+ * Spawns are never written to disk as they happen. Instead, the counters of
+ * the {@link SpawnStats} are read once each minute, on an async task, and
+ * the difference since the last minute is written as a single bucket. If the
+ * {@link SpawnStats} have been reset in between, the counters are taken as
+ * they are.
+ */
+public final class StatsHistory {
+    
+    private static final String FILE_NAME = "history.bin";
+    private static final long CHECK_PERIOD_TICKS = 20L;
+    
+    private final File directory;
+    private final Logger logger;
+    private final TaskScheduler scheduler;
+    private final SpawnStats spawnStats;
+    
+    private volatile StatsHistorySettings settings;
+    private volatile long checkedMinute;
+    private TaskScheduler.Task checkTask;
+    
+    private StatsHistoryFile file;
+    private long pendingMinute;
+    private long[] lastTotals;
+    private Map<String, long[]> lastWorlds;
+    private Map<String, long[]> lastTypes;
+    
+    /**
+     * Constructs a new {@link StatsHistory}, using the
+     * {@link StatsHistorySettings#DEFAULT} settings.
+     * 
+     * @param directory The directory that the history file is kept in.
+     * @param logger The {@link Logger} that any errors are logged to.
+     * @param scheduler The {@link TaskScheduler} that the per-minute tasks
+     *                  are run with.
+     * @param spawnStats The {@link SpawnStats} to read the counters of.
+     */
+    public StatsHistory(@NotNull final File directory, @NotNull final Logger logger, @NotNull final TaskScheduler scheduler, @NotNull final SpawnStats spawnStats) {
+        this.directory = directory;
+        this.logger = logger;
+        this.scheduler = scheduler;
+        this.spawnStats = spawnStats;
+        this.settings = StatsHistorySettings.DEFAULT;
+    }
+    
+    /**
+     * Applies new {@link StatsHistorySettings}. The history file is opened
+     * (or rewritten, if the number of days has changed) on an async task.
+     * 
+     * @param settings The new {@link StatsHistorySettings}.
+     */
+    public synchronized void configure(@NotNull final StatsHistorySettings settings) {
+        this.settings = settings;
+        if (settings.isEnabled() && this.checkTask == null) {
+            this.checkedMinute = StatsHistory.currentMinute();
+            this.checkTask = this.scheduler.runGlobalTimer(this::check, CHECK_PERIOD_TICKS, CHECK_PERIOD_TICKS);
+        } else if (!settings.isEnabled() && this.checkTask != null) {
+            this.checkTask.cancel();
+            this.checkTask = null;
+        }
+        this.scheduler.runAsync(this::apply);
+    }
+    
+    /**
+     * Stops the history, writing the counts of the current (partial) minute
+     * and closing the history file.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (this.checkTask != null) {
+                this.checkTask.cancel();
+                this.checkTask = null;
+            }
+        }
+        this.close();
+    }
+    
+    /**
+     * Checks if the history is enabled.
+     * 
+     * @return {@code true} if the history is enabled, {@code false}
+     *         otherwise.
+     */
+    public boolean isEnabled() {
+        return this.settings.isEnabled();
+    }
+    
+    /**
+     * Gets the number of days of history that are kept.
+     * 
+     * @return The number of days.
+     */
+    public int getDays() {
+        return this.settings.getDays();
+    }
+    
+    /**
+     * Reads the {@link StatsHistoryFile.Bucket}s of the given range of
+     * minutes. This reads from the mapped history file, and should not be
+     * called from a server thread.
+     * 
+     * @param fromMinute The first epoch minute (inclusive).
+     * @param toMinute The last epoch minute (inclusive).
+     * @return The {@link StatsHistoryFile.Bucket}s that were written, in
+     *         order, which is empty if the history is not open.
+     */
+    @NotNull
+    public List<StatsHistoryFile.Bucket> read(final long fromMinute, final long toMinute) {
+        
+        final StatsHistoryFile file;
+        synchronized (this) {
+            file = this.file;
+        }
+        if (file == null) {
+            return Collections.emptyList();
+        }
+        final List<StatsHistoryFile.Bucket> buckets = new ArrayList<StatsHistoryFile.Bucket>();
+        for (long minute = Math.max(fromMinute, toMinute - file.getBucketCount() + 1L); minute <= toMinute; minute++) {
+            final StatsHistoryFile.Bucket bucket = file.read(minute);
+            if (bucket != null) {
+                buckets.add(bucket);
+            }
+        }
+        return buckets;
+    }
+    
+    /**
+     * Gets the current epoch minute.
+     * 
+     * @return The current epoch minute.
+     */
+    public static long currentMinute() {
+        return TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+    }
+    
+    /**
+     * Checks if a new minute has started, and if so, writes the previous one
+     * on an async task. This is cheap enough to run every second.
+     */
+    private void check() {
+        final long minute = StatsHistory.currentMinute();
+        if (minute == this.checkedMinute) {
+            return;
+        }
+        this.checkedMinute = minute;
+        this.scheduler.runAsync(this::flush);
+    }
+    
+    /**
+     * Opens, rewrites, or closes the history file to match the current
+     * {@link StatsHistorySettings}. This performs file I/O, and must not be
+     * called from a server thread.
+     */
+    private synchronized void apply() {
+        
+        final StatsHistorySettings settings = this.settings;
+        if (!settings.isEnabled()) {
+            this.close();
+            return;
+        }
+        if (this.file != null && this.file.getBucketCount() == settings.getBucketCount()) {
+            return;
+        }
+        this.close();
+        
+        final Path path = new File(this.directory, FILE_NAME).toPath();
+        try {
+            Files.createDirectories(this.directory.toPath());
+            try {
+                this.file = StatsHistoryFile.open(path, settings.getBucketCount());
+            } catch (IOException e) {
+                final Path unreadable = path.resolveSibling(FILE_NAME + ".old");
+                this.logger.log(Level.WARNING, "Unable to read the SaferWater history file, moving it to " + unreadable.getFileName() + " and starting a new history.");
+                this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+                Files.move(path, unreadable, StandardCopyOption.REPLACE_EXISTING);
+                this.file = StatsHistoryFile.open(path, settings.getBucketCount());
+            }
+        } catch (IOException e) {
+            this.logger.log(Level.WARNING, "Unable to open the SaferWater history file.");
+            this.logger.log(Level.WARNING, "The spawn history will not be recorded.");
+            this.logger.log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            this.file = null;
+            return;
+        }
+        
+        this.pendingMinute = StatsHistory.currentMinute();
+        this.lastTotals = this.spawnStats.getTotals();
+        this.lastWorlds = new HashMap<String, long[]>(this.spawnStats.getWorldCounts());
+        this.lastTypes = StatsHistory.byName(this.spawnStats.getTypeCounts());
+    }
+    
+    /**
+     * Writes the counts since the last write as the bucket of the minute that
+     * they were counted in, which is normally the minute that has just ended.
+     */
+    private synchronized void flush() {
+        
+        if (this.file == null) {
+            return;
+        }
+        
+        final long[] totals = this.spawnStats.getTotals();
+        final Map<String, long[]> worlds = new HashMap<String, long[]>(this.spawnStats.getWorldCounts());
+        final Map<String, long[]> types = StatsHistory.byName(this.spawnStats.getTypeCounts());
+        
+        final long[] totalDelta = StatsHistory.delta(totals, this.lastTotals);
+        final StatsHistoryFile.Bucket bucket = new StatsHistoryFile.Bucket(
+                this.pendingMinute,
+                StatsHistoryFile.Bucket.saturate(SpawnStats.total(totalDelta)),
+                StatsHistoryFile.Bucket.saturate(totalDelta[SpawnStats.DENIED]),
+                StatsHistory.deltas(worlds, this.lastWorlds),
+                StatsHistory.deltas(types, this.lastTypes)
+        );
+        
+        this.pendingMinute = StatsHistory.currentMinute();
+        this.lastTotals = totals;
+        this.lastWorlds = worlds;
+        this.lastTypes = types;
+        if (bucket.getEvaluated() == 0) {
+            return;
+        }
+        
+        try {
+            this.file.write(bucket);
+        } catch (RuntimeException e) {
+            this.logger.log(Level.WARNING, "Unable to write the SaferWater spawn history.", e);
+        }
+    }
+    
+    /**
+     * Writes the current (partial) minute and closes the history file, if it
+     * is open.
+     */
+    private synchronized void close() {
+        
+        if (this.file == null) {
+            return;
+        }
+        this.flush();
+        try {
+            this.file.close();
+        } catch (IOException e) {
+            this.logger.log(Level.WARNING, "Unable to close the SaferWater history file.", e);
+        }
+        this.file = null;
+    }
+    
+    /**
+     * Re-keys the given counts by {@link EntityType} name.
+     * 
+     * @param counts The counts, keyed by {@link EntityType}.
+     * @return The counts, keyed by {@link EntityType} name.
+     */
+    @NotNull
+    private static Map<String, long[]> byName(@NotNull final Map<EntityType, long[]> counts) {
+        final Map<String, long[]> named = new HashMap<String, long[]>();
+        counts.forEach((type, typeCounts) -> named.put(type.name(), typeCounts));
+        return named;
+    }
+    
+    /**
+     * Gets the difference between the current and the last counts of each
+     * category. If a counter has gone down, the counters have been reset in
+     * between, and the current count is taken as it is.
+     * 
+     * @param current The current counts.
+     * @param last The last counts, or {@code null} if there are none.
+     * @return The difference of each category.
+     */
+    @NotNull
+    private static long[] delta(@NotNull final long[] current, @Nullable final long[] last) {
+        final long[] delta = new long[SpawnStats.CATEGORIES];
+        for (int category = 0; category < SpawnStats.CATEGORIES; category++) {
+            final long previous = last != null ? last[category] : 0L;
+            delta[category] = current[category] >= previous ? current[category] - previous : current[category];
+        }
+        return delta;
+    }
+    
+    /**
+     * Gets the number of evaluated and denied spawns of each key since the
+     * last counts, leaving out any key without evaluated spawns.
+     * 
+     * @param current The current counts, keyed by name.
+     * @param last The last counts, keyed by name.
+     * @return The evaluated and denied spawns, keyed by name.
+     */
+    @NotNull
+    private static Map<String, int[]> deltas(@NotNull final Map<String, long[]> current, @NotNull final Map<String, long[]> last) {
+        final Map<String, int[]> deltas = new LinkedHashMap<String, int[]>();
+        current.forEach((name, counts) -> {
+            final long[] delta = StatsHistory.delta(counts, last.get(name));
+            final long evaluated = SpawnStats.total(delta);
+            if (evaluated > 0L) {
+                deltas.put(name, new int[] {StatsHistoryFile.Bucket.saturate(evaluated), StatsHistoryFile.Bucket.saturate(delta[SpawnStats.DENIED])});
+            }
+        });
+        return deltas;
+    }
+}
@@ -0,0 +1,549 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.stats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents the file of a {@link StatsHistory}: a fixed-size ring of
+ * per-minute buckets, mapped read-write into memory.
+ * <p>
+ * The file has a fixed layout, all big-endian:
+ * <ul>
+ *     <li>A 32-byte header: the magic number, the version, the number of
+ *     buckets, the size of each bucket, and reserved {@code int}s.</li>
+ *     <li>The buckets, each in the slot of its epoch minute modulo the
+ *     number of buckets. Each bucket has a 24-byte header: the epoch minute
+ *     that it covers, a CRC-32 checksum, the number of entries, and the
+ *     number of evaluated and denied spawns in the minute. It is followed by
+ *     up to {@link #MAX_ENTRIES} entries of 32 bytes each: the kind of the
+ *     entry, the length of its name, its name (in UTF-8, truncated to 22
+ *     bytes), and its number of evaluated and denied spawns.</li>
+ * </ul>
+ * The checksum covers the minute and everything after the checksum, up to
+ * the last entry. A bucket is written in place, with its minute cleared
+ * first and written again last, and is then forced to disk. A bucket that
+ * was only partly written when the server or the machine crashed fails its
+ * checksum, and is read as if it were empty, so that a crash loses no more
+ * than the minute that was being written. Slots that have never been written
+ * are all zeroes, which also fail the checksum.
+ * <p>
+ * All methods are synchronized, so that a bucket is never read while it is
+ * being written.
+ */
+public final class StatsHistoryFile implements Closeable {
+    
+    /**
+     * The maximum number of entries (of either kind) in a single bucket.
+     * Entries beyond this are left out, keeping those with the most denied
+     * spawns; the totals of the bucket always include them.
+     */
+    public static final int MAX_ENTRIES = 24;
+    
+    private static final int MAX_WORLD_ENTRIES = 8;
+    private static final int MAGIC = 0x53574853;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int BUCKET_HEADER_SIZE = 24;
+    private static final int ENTRY_SIZE = 32;
+    private static final int MAX_NAME_LENGTH = 22;
+    private static final int BUCKET_SIZE = BUCKET_HEADER_SIZE + MAX_ENTRIES * ENTRY_SIZE;
+    private static final byte ENTRY_WORLD = 1;
+    private static final byte ENTRY_TYPE = 2;
+    private static final long EMPTY = Long.MIN_VALUE;
+    
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int bucketCount;
+    private final CRC32 crc;
+    
+    /**
+     * Constructs a new {@link StatsHistoryFile}.
+     * 
+     * @param channel The open {@link FileChannel} of the file.
+     * @param buffer The mapped contents of the file.
+     * @param bucketCount The number of buckets in the file.
+     */
+    private StatsHistoryFile(@NotNull final FileChannel channel, @NotNull final MappedByteBuffer buffer, final int bucketCount) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.bucketCount = bucketCount;
+        this.crc = new CRC32();
+    }
+    
+    /**
+     * Opens and maps the history file at the given {@link Path}, creating it
+     * if it does not exist.
+     * <p>
+     * If the file has a different number of buckets, it is rewritten with
+     * the given number, keeping every bucket that still fits (the newest
+     * ones, if the ring has shrunk).
+     * 
+     * @param path The {@link Path} of the file.
+     * @param bucketCount The number of buckets.
+     * @return The opened {@link StatsHistoryFile}.
+     * @throws IOException If the file cannot be created or mapped, or is
+     *                     not a valid history file of this version.
+     */
+    @NotNull
+    public static StatsHistoryFile open(@NotNull final Path path, final int bucketCount) throws IOException {
+        
+        if (!Files.exists(path)) {
+            StatsHistoryFile.create(path, bucketCount, Collections.emptyList());
+        } else {
+            final int existingCount = StatsHistoryFile.readBucketCount(path);
+            if (existingCount != bucketCount) {
+                StatsHistoryFile.create(path, bucketCount, StatsHistoryFile.readBuckets(path, existingCount));
+            }
+        }
+        
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, HEADER_SIZE + (long) bucketCount * BUCKET_SIZE);
+            return new StatsHistoryFile(channel, buffer, bucketCount);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Reads and validates the header of an existing history file, without
+     * mapping it.
+     * 
+     * @param path The {@link Path} of the file.
+     * @return The number of buckets in the file.
+     * @throws IOException If the file cannot be read, or is not a valid
+     *                     history file of this version.
+     */
+    private static int readBucketCount(@NotNull final Path path) throws IOException {
+        
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the header is full or the file ends.
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+                throw new IOException("The file is not a SaferWater history file.");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("The file has unsupported version " + header.getInt(4) + ".");
+            }
+            final int bucketCount = header.getInt(8);
+            if (bucketCount <= 0 || header.getInt(12) != BUCKET_SIZE || channel.size() != HEADER_SIZE + (long) bucketCount * BUCKET_SIZE) {
+                throw new IOException("The file does not match its bucket count of " + bucketCount + ".");
+            }
+            return bucketCount;
+        }
+    }
+    
+    /**
+     * Reads every valid bucket of an existing history file, without mapping
+     * it, so that it can be rewritten with a different number of buckets.
+     * 
+     * @param path The {@link Path} of the file.
+     * @param bucketCount The number of buckets in the file.
+     * @return The valid {@link Bucket}s, in no particular order.
+     * @throws IOException If the file cannot be read.
+     */
+    @NotNull
+    private static List<Bucket> readBuckets(@NotNull final Path path, final int bucketCount) throws IOException {
+        
+        final List<Bucket> buckets = new ArrayList<Bucket>();
+        final CRC32 crc = new CRC32();
+        final ByteBuffer bucketBuffer = ByteBuffer.allocate(BUCKET_SIZE);
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int slot = 0; slot < bucketCount; slot++) {
+                bucketBuffer.clear();
+                final long position = HEADER_SIZE + (long) slot * BUCKET_SIZE;
+                while (bucketBuffer.hasRemaining() && channel.read(bucketBuffer, position + bucketBuffer.position()) >= 0) {
+                    // Keep reading until the bucket is full or the file ends.
+                }
+                final Bucket bucket = StatsHistoryFile.decode(bucketBuffer, 0, crc);
+                if (bucket != null) {
+                    buckets.add(bucket);
+                }
+            }
+        }
+        return buckets;
+    }
+    
+    /**
+     * Creates a new history file with the given {@link Bucket}s, replacing
+     * any existing file once it has been written completely.
+     * 
+     * @param path The {@link Path} of the file.
+     * @param bucketCount The number of buckets.
+     * @param buckets The {@link Bucket}s to write. If more than one falls in
+     *                the same slot, the newest is kept.
+     * @throws IOException If the file cannot be written.
+     */
+    private static void create(@NotNull final Path path, final int bucketCount, @NotNull final List<Bucket> buckets) throws IOException {
+        
+        final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            
+            final long size = HEADER_SIZE + (long) bucketCount * BUCKET_SIZE;
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, bucketCount);
+            header.putInt(12, BUCKET_SIZE);
+            channel.write(header, 0L);
+            channel.write(ByteBuffer.allocate(1), size - 1L);
+            
+            final List<Bucket> sorted = new ArrayList<Bucket>(buckets);
+            sorted.sort(Comparator.comparingLong(Bucket::getMinute));
+            final CRC32 crc = new CRC32();
+            final ByteBuffer bucketBuffer = ByteBuffer.allocate(BUCKET_SIZE);
+            for (final Bucket bucket : sorted) {
+                StatsHistoryFile.encode(bucketBuffer, 0, bucket, crc);
+                bucketBuffer.clear();
+                channel.write(bucketBuffer, HEADER_SIZE + (long) Math.floorMod(bucket.getMinute(), bucketCount) * BUCKET_SIZE);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    /**
+     * Gets the number of buckets in this {@link StatsHistoryFile}, which is
+     * the number of minutes of history that it can hold.
+     * 
+     * @return The number of buckets.
+     */
+    public int getBucketCount() {
+        return this.bucketCount;
+    }
+    
+    /**
+     * Reads the {@link Bucket} of the given minute.
+     * 
+     * @param minute The epoch minute.
+     * @return The {@link Bucket}, or {@code null} if the minute has not been
+     *         written, has since been overwritten, or failed its checksum.
+     */
+    @Nullable
+    public synchronized Bucket read(final long minute) {
+        final Bucket bucket = StatsHistoryFile.decode(this.buffer, this.getOffset(minute), this.crc);
+        return bucket != null && bucket.getMinute() == minute ? bucket : null;
+    }
+    
+    /**
+     * Writes the given {@link Bucket} to its slot, and forces it to disk. If
+     * a {@link Bucket} of the same minute has already been written (such as
+     * before a restart), the two are added together.
+     * 
+     * @param bucket The {@link Bucket} to write.
+     */
+    public synchronized void write(@NotNull final Bucket bucket) {
+        
+        final Bucket existing = this.read(bucket.getMinute());
+        final int offset = this.getOffset(bucket.getMinute());
+        this.buffer.putLong(offset, EMPTY);
+        StatsHistoryFile.encode(this.buffer, offset, existing != null ? existing.add(bucket) : bucket, this.crc);
+        this.buffer.force(offset, BUCKET_SIZE);
+    }
+    
+    /**
+     * Closes this {@link StatsHistoryFile}. The mapping itself is released
+     * once it is no longer referenced.
+     * 
+     * @throws IOException If the {@link FileChannel} cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        this.channel.close();
+    }
+    
+    /**
+     * Gets the offset of the slot of the given minute.
+     * 
+     * @param minute The epoch minute.
+     * @return The offset of the slot.
+     */
+    private int getOffset(final long minute) {
+        return HEADER_SIZE + Math.floorMod(minute, this.bucketCount) * BUCKET_SIZE;
+    }
+    
+    /**
+     * Decodes the {@link Bucket} at the given offset, validating its
+     * checksum.
+     * 
+     * @param buffer The {@link ByteBuffer} to read from.
+     * @param offset The offset of the bucket.
+     * @param crc The {@link CRC32} to validate the checksum with.
+     * @return The {@link Bucket}, or {@code null} if the slot is empty, or
+     *         failed its checksum.
+     */
+    @Nullable
+    private static Bucket decode(@NotNull final ByteBuffer buffer, final int offset, @NotNull final CRC32 crc) {
+        
+        final long minute = buffer.getLong(offset);
+        final int entryCount = buffer.getInt(offset + 12);
+        if (minute == EMPTY || entryCount < 0 || entryCount > MAX_ENTRIES) {
+            return null;
+        }
+        if (buffer.getInt(offset + 8) != StatsHistoryFile.checksum(buffer, offset, entryCount, crc)) {
+            return null;
+        }
+        
+        final Map<String, int[]> worlds = new LinkedHashMap<String, int[]>();
+        final Map<String, int[]> types = new LinkedHashMap<String, int[]>();
+        final byte[] name = new byte[MAX_NAME_LENGTH];
+        for (int index = 0; index < entryCount; index++) {
+            final int entryOffset = offset + BUCKET_HEADER_SIZE + index * ENTRY_SIZE;
+            final int nameLength = Math.min(buffer.get(entryOffset + 1) & 0xFF, MAX_NAME_LENGTH);
+            for (int nameIndex = 0; nameIndex < nameLength; nameIndex++) {
+                name[nameIndex] = buffer.get(entryOffset + 2 + nameIndex);
+            }
+            final int[] counts = new int[] {buffer.getInt(entryOffset + 24), buffer.getInt(entryOffset + 28)};
+            final Map<String, int[]> entries = buffer.get(entryOffset) == ENTRY_WORLD ? worlds : types;
+            entries.merge(new String(name, 0, nameLength, StandardCharsets.UTF_8), counts, Bucket::sum);
+        }
+        return new Bucket(minute, buffer.getInt(offset + 16), buffer.getInt(offset + 20), worlds, types);
+    }
+    
+    /**
+     * Encodes the given {@link Bucket} at the given offset, writing its
+     * minute last.
+     * 
+     * @param buffer The {@link ByteBuffer} to write to.
+     * @param offset The offset of the bucket.
+     * @param bucket The {@link Bucket} to write.
+     * @param crc The {@link CRC32} to compute the checksum with.
+     */
+    private static void encode(@NotNull final ByteBuffer buffer, final int offset, @NotNull final Bucket bucket, @NotNull final CRC32 crc) {
+        
+        final List<Map.Entry<String, int[]>> worlds = StatsHistoryFile.busiest(bucket.getWorlds(), MAX_WORLD_ENTRIES);
+        final List<Map.Entry<String, int[]>> types = StatsHistoryFile.busiest(bucket.getTypes(), MAX_ENTRIES - worlds.size());
+        int entryCount = 0;
+        for (final Map.Entry<String, int[]> entry : worlds) {
+            StatsHistoryFile.encodeEntry(buffer, offset + BUCKET_HEADER_SIZE + entryCount * ENTRY_SIZE, ENTRY_WORLD, entry.getKey(), entry.getValue());
+            entryCount++;
+        }
+        for (final Map.Entry<String, int[]> entry : types) {
+            StatsHistoryFile.encodeEntry(buffer, offset + BUCKET_HEADER_SIZE + entryCount * ENTRY_SIZE, ENTRY_TYPE, entry.getKey(), entry.getValue());
+            entryCount++;
+        }
+        
+        buffer.putInt(offset + 12, entryCount);
+        buffer.putInt(offset + 16, bucket.getEvaluated());
+        buffer.putInt(offset + 20, bucket.getDenied());
+        buffer.putLong(offset, bucket.getMinute());
+        buffer.putInt(offset + 8, StatsHistoryFile.checksum(buffer, offset, entryCount, crc));
+    }
+    
+    /**
+     * Encodes a single entry of a bucket.
+     * 
+     * @param buffer The {@link ByteBuffer} to write to.
+     * @param offset The offset of the entry.
+     * @param kind The kind of the entry.
+     * @param name The name of the entry, which is truncated to fit.
+     * @param counts The number of evaluated and denied spawns.
+     */
+    private static void encodeEntry(@NotNull final ByteBuffer buffer, final int offset, final byte kind, @NotNull final String name, final int[] counts) {
+        
+        String truncated = name;
+        byte[] bytes = truncated.getBytes(StandardCharsets.UTF_8);
+        while (bytes.length > MAX_NAME_LENGTH) {
+            truncated = truncated.substring(0, truncated.length() - 1);
+            bytes = truncated.getBytes(StandardCharsets.UTF_8);
+        }
+        
+        buffer.put(offset, kind);
+        buffer.put(offset + 1, (byte) bytes.length);
+        for (int index = 0; index < MAX_NAME_LENGTH; index++) {
+            buffer.put(offset + 2 + index, index < bytes.length ? bytes[index] : 0);
+        }
+        buffer.putInt(offset + 24, counts[0]);
+        buffer.putInt(offset + 28, counts[1]);
+    }
+    
+    /**
+     * Computes the checksum of the bucket at the given offset, covering its
+     * minute and everything after the checksum, up to its last entry.
+     * 
+     * @param buffer The {@link ByteBuffer} to read from.
+     * @param offset The offset of the bucket.
+     * @param entryCount The number of entries in the bucket.
+     * @param crc The {@link CRC32} to compute the checksum with.
+     * @return The checksum.
+     */
+    private static int checksum(@NotNull final ByteBuffer buffer, final int offset, final int entryCount, @NotNull final CRC32 crc) {
+        crc.reset();
+        crc.update(buffer.duplicate().limit(offset + 8).position(offset));
+        crc.update(buffer.duplicate().limit(offset + BUCKET_HEADER_SIZE + entryCount * ENTRY_SIZE).position(offset + 12));
+        return (int) crc.getValue();
+    }
+    
+    /**
+     * Gets the entries with the most denied spawns (and then the most
+     * evaluated spawns), up to the given number.
+     * 
+     * @param entries The entries, keyed by name.
+     * @param limit The maximum number of entries.
+     * @return The busiest entries.
+     */
+    @NotNull
+    private static List<Map.Entry<String, int[]>> busiest(@NotNull final Map<String, int[]> entries, final int limit) {
+        final List<Map.Entry<String, int[]>> sorted = new ArrayList<Map.Entry<String, int[]>>(entries.entrySet());
+        sorted.sort(Comparator.comparing((Map.Entry<String, int[]> entry) -> entry.getValue()[1]).thenComparing(entry -> entry.getValue()[0]).reversed());
+        return sorted.size() > limit ? sorted.subList(0, limit) : sorted;
+    }
+    
+    /**
+     * Represents the statistics of a single minute.
+     */
+    public static final class Bucket {
+        
+        private final long minute;
+        private final int evaluated;
+        private final int denied;
+        private final Map<String, int[]> worlds;
+        private final Map<String, int[]> types;
+        
+        /**
+         * Constructs a new {@link Bucket}.
+         * 
+         * @param minute The epoch minute that the {@link Bucket} covers.
+         * @param evaluated The number of evaluated spawns.
+         * @param denied The number of denied spawns.
+         * @param worlds The number of evaluated and denied spawns of each
+         *               world, keyed by world name.
+         * @param types The number of evaluated and denied spawns of each
+         *              entity type, keyed by entity type name.
+         */
+        public Bucket(final long minute, final int evaluated, final int denied, @NotNull final Map<String, int[]> worlds, @NotNull final Map<String, int[]> types) {
+            this.minute = minute;
+            this.evaluated = evaluated;
+            this.denied = denied;
+            this.worlds = Collections.unmodifiableMap(worlds);
+            this.types = Collections.unmodifiableMap(types);
+        }
+        
+        /**
+         * Gets the epoch minute that this {@link Bucket} covers.
+         * 
+         * @return The epoch minute.
+         */
+        public long getMinute() {
+            return this.minute;
+        }
+        
+        /**
+         * Gets the number of evaluated spawns in the minute.
+         * 
+         * @return The number of evaluated spawns.
+         */
+        public int getEvaluated() {
+            return this.evaluated;
+        }
+        
+        /**
+         * Gets the number of denied spawns in the minute.
+         * 
+         * @return The number of denied spawns.
+         */
+        public int getDenied() {
+            return this.denied;
+        }
+        
+        /**
+         * Gets the number of evaluated and denied spawns of each world in
+         * the minute. Only the busiest worlds are kept.
+         * 
+         * @return The counts, keyed by world name.
+         */
+        @NotNull
+        public Map<String, int[]> getWorlds() {
+            return this.worlds;
+        }
+        
+        /**
+         * Gets the number of evaluated and denied spawns of each entity type
+         * in the minute. Only the busiest entity types are kept.
+         * 
+         * @return The counts, keyed by entity type name.
+         */
+        @NotNull
+        public Map<String, int[]> getTypes() {
+            return this.types;
+        }
+        
+        /**
+         * Adds the counts of the given {@link Bucket} of the same minute to
+         * the counts of this {@link Bucket}.
+         * 
+         * @param other The other {@link Bucket}.
+         * @return A new {@link Bucket} with the combined counts.
+         */
+        @NotNull
+        private Bucket add(@NotNull final Bucket other) {
+            final Map<String, int[]> worlds = new LinkedHashMap<String, int[]>(this.worlds);
+            other.worlds.forEach((name, counts) -> worlds.merge(name, counts, Bucket::sum));
+            final Map<String, int[]> types = new LinkedHashMap<String, int[]>(this.types);
+            other.types.forEach((name, counts) -> types.merge(name, counts, Bucket::sum));
+            return new Bucket(this.minute, Bucket.saturate((long) this.evaluated + other.evaluated), Bucket.saturate((long) this.denied + other.denied), worlds, types);
+        }
+        
+        /**
+         * Adds two sets of evaluated and denied counts together.
+         * 
+         * @param first The first counts.
+         * @param second The second counts.
+         * @return The combined counts.
+         */
+        @NotNull
+        private static int[] sum(@NotNull final int[] first, @NotNull final int[] second) {
+            return new int[] {Bucket.saturate((long) first[0] + second[0]), Bucket.saturate((long) first[1] + second[1])};
+        }
+        
+        /**
+         * Limits a count to the range of an {@code int}.
+         * 
+         * @param count The count.
+         * @return The count, or {@link Integer#MAX_VALUE} if it is larger.
+         */
+        public static int saturate(final long count) {
+            return (int) Math.min(count, Integer.MAX_VALUE);
+        }
+    }
+}
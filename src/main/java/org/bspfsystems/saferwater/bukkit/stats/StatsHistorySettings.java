@@ -0,0 +1,88 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.stats;
+
+/**
+ * Represents the immutable settings of the {@link StatsHistory}.
+ */
+public final class StatsHistorySettings {
+    
+    /**
+     * The maximum number of days of history that can be kept.
+     */
+    public static final int MAX_DAYS = 30;
+    
+    /**
+     * The default {@link StatsHistorySettings}, with the history disabled,
+     * and 7 days kept once it is enabled.
+     */
+    public static final StatsHistorySettings DEFAULT = new StatsHistorySettings(false, 7);
+    
+    private final boolean enabled;
+    private final int days;
+    
+    /**
+     * Constructs a new {@link StatsHistorySettings}.
+     * 
+     * @param enabled If {@code true}, the statistics of each minute will be
+     *                written to the history file.
+     * @param days The number of days of history to keep.
+     * @throws IllegalArgumentException If the number of days is not between
+     *                                  {@code 1} and {@link #MAX_DAYS}.
+     */
+    public StatsHistorySettings(final boolean enabled, final int days) throws IllegalArgumentException {
+        if (days <= 0 || days > MAX_DAYS) {
+            throw new IllegalArgumentException("Days must be between 1 and " + MAX_DAYS + ": " + days);
+        }
+        this.enabled = enabled;
+        this.days = days;
+    }
+    
+    /**
+     * Checks if the statistics of each minute will be written to the history
+     * file.
+     * 
+     * @return {@code true} if the history is enabled, {@code false}
+     *         otherwise.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+    
+    /**
+     * Gets the number of days of history to keep.
+     * 
+     * @return The number of days.
+     */
+    public int getDays() {
+        return this.days;
+    }
+    
+    /**
+     * Gets the number of per-minute buckets that are needed to keep the
+     * configured number of days of history.
+     * 
+     * @return The number of buckets.
+     */
+    public int getBucketCount() {
+        return this.days * 24 * 60;
+    }
+}
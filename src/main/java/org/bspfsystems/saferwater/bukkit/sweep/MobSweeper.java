@@ -0,0 +1,476 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.sweep;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.bspfsystems.saferwater.bukkit.SaferWaterPlugin;
+import org.bspfsystems.saferwater.bukkit.listener.SaferWaterListener;
+import org.bspfsystems.saferwater.bukkit.scheduler.TaskScheduler;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnFilter;
+import org.bspfsystems.saferwater.bukkit.water.BlockSource;
+import org.bspfsystems.saferwater.bukkit.water.WaterFloorIndex;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Creature;
+import org.bukkit.entity.Entity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents a background sweep of the loaded chunks, removing any filtered
+ * {@link Creature}s that are already in water where they would be denied a
+ * spawn, for example if they spawned before the configuration was changed or
+ * a light source was placed, or were loaded in with their chunk.
+ * <p>
+ * Each {@link Creature} is decided with the same {@link SpawnDecider} as a
+ * spawn at its position, reading from the same {@link BlockSource} of the
+ * {@link WaterFloorIndex}. Spawn reasons are not known for mobs that already
+ * exist, so only their {@link org.bukkit.entity.EntityType}s are filtered.
+ * <p>
+ * A pass over the loaded chunks (as tracked by the {@link WaterFloorIndex})
+ * is spread over as many ticks as it takes: each tick, a cursor is advanced
+ * through the chunks and their entities until either the per-tick number of
+ * entities or the per-tick time budget has been used up. On a
+ * single-threaded server, the cursor resumes from the next entity of a
+ * partly-swept chunk. On a region-threaded server, each chunk is swept on
+ * the thread that owns it, and only a bounded number of chunks are
+ * dispatched per tick. The chunks dispatched in a tick share that tick's
+ * limits between them, and a chunk that runs out of them is resumed from its
+ * next entity in a later tick. Once a pass is complete, the next one starts
+ * after the configured interval.
+ */
+public final class MobSweeper {
+    
+    private static final int REGION_CHUNKS_PER_TICK = 16;
+    
+    private final SaferWaterPlugin saferWaterPlugin;
+    private final TaskScheduler scheduler;
+    private final LongAdder examined;
+    private final LongAdder removed;
+    private final Queue<PendingChunk> pendingChunks;
+    
+    private volatile MobSweeperSettings settings;
+    private TaskScheduler.Task sweepTask;
+    
+    private World[] passWorlds;
+    private long[][] passChunks;
+    private int worldCursor;
+    private int chunkCursor;
+    private Entity[] chunkEntities;
+    private int entityCursor;
+    private int waitTicks;
+    private long passStartNanos;
+    
+    private volatile int passChunkTotal;
+    private volatile int passChunksSwept;
+    private volatile long passes;
+    private volatile long lastPassNanos;
+    
+    /**
+     * Represents the per-tick limits that are shared by the chunks that are
+     * dispatched in the same tick on a region-threaded server, as they are
+     * swept in parallel on the threads that own them.
+     */
+    private static final class TickAllowance {
+        
+        private final AtomicInteger entities;
+        private final AtomicLong nanos;
+        
+        /**
+         * Constructs a new {@link TickAllowance}.
+         * 
+         * @param settings The {@link MobSweeperSettings} of the tick.
+         */
+        private TickAllowance(@NotNull final MobSweeperSettings settings) {
+            this.entities = new AtomicInteger(settings.getEntitiesPerTick());
+            this.nanos = new AtomicLong(settings.getBudgetNanos());
+        }
+    }
+    
+    /**
+     * Represents a chunk on a region-threaded server that ran out of the
+     * limits of the tick that it was dispatched in, and is to be resumed in a
+     * later tick.
+     */
+    private static final class PendingChunk {
+        
+        private final World world;
+        private final int chunkX;
+        private final int chunkZ;
+        private final int entityIndex;
+        
+        /**
+         * Constructs a new {@link PendingChunk}.
+         * 
+         * @param world The {@link World} of the chunk.
+         * @param chunkX The chunk X coordinate.
+         * @param chunkZ The chunk Z coordinate.
+         * @param entityIndex The index of the next entity to sweep.
+         */
+        private PendingChunk(@NotNull final World world, final int chunkX, final int chunkZ, final int entityIndex) {
+            this.world = world;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.entityIndex = entityIndex;
+        }
+    }
+    
+    /**
+     * Constructs a new {@link MobSweeper}, using the
+     * {@link MobSweeperSettings#DEFAULT} settings.
+     * 
+     * @param saferWaterPlugin The {@link SaferWaterPlugin}.
+     * @param scheduler The {@link TaskScheduler} that the per-tick task is
+     *                  run with.
+     */
+    public MobSweeper(@NotNull final SaferWaterPlugin saferWaterPlugin, @NotNull final TaskScheduler scheduler) {
+        this.saferWaterPlugin = saferWaterPlugin;
+        this.scheduler = scheduler;
+        this.examined = new LongAdder();
+        this.removed = new LongAdder();
+        this.pendingChunks = new ConcurrentLinkedQueue<PendingChunk>();
+        this.settings = MobSweeperSettings.DEFAULT;
+        this.passes = 0L;
+        this.lastPassNanos = -1L;
+    }
+    
+    /**
+     * Applies new {@link MobSweeperSettings}, starting or stopping the
+     * per-tick task as needed. A pass that is in progress carries on with
+     * the new settings.
+     * 
+     * @param settings The new {@link MobSweeperSettings}.
+     */
+    public synchronized void configure(@NotNull final MobSweeperSettings settings) {
+        this.settings = settings;
+        if (settings.isEnabled() && this.sweepTask == null) {
+            this.sweepTask = this.scheduler.runGlobalTimer(this::sweep, 1L, 1L);
+        } else if (!settings.isEnabled()) {
+            this.stop();
+        }
+    }
+    
+    /**
+     * Stops the per-tick task, abandoning any pass that is in progress.
+     */
+    public synchronized void stop() {
+        if (this.sweepTask == null) {
+            return;
+        }
+        this.sweepTask.cancel();
+        this.sweepTask = null;
+        this.endPass(false);
+    }
+    
+    /**
+     * Checks if the loaded chunks are being swept.
+     * 
+     * @return {@code true} if the sweeper is enabled, {@code false}
+     *         otherwise.
+     */
+    public boolean isEnabled() {
+        return this.settings.isEnabled();
+    }
+    
+    /**
+     * Checks if a pass over the loaded chunks is in progress.
+     * 
+     * @return {@code true} if a pass is in progress, {@code false} if the
+     *         sweeper is waiting for the next pass, or is disabled.
+     */
+    public boolean isPassInProgress() {
+        return this.passChunkTotal > 0;
+    }
+    
+    /**
+     * Gets the number of chunks in the current pass.
+     * 
+     * @return The number of chunks, or {@code 0} if no pass is in progress.
+     */
+    public int getPassChunkTotal() {
+        return this.passChunkTotal;
+    }
+    
+    /**
+     * Gets the number of chunks of the current pass that have been swept
+     * (or dispatched to be swept, on a region-threaded server).
+     * 
+     * @return The number of swept chunks.
+     */
+    public int getPassChunksSwept() {
+        return this.passChunksSwept;
+    }
+    
+    /**
+     * Gets the number of passes over the loaded chunks that have been
+     * completed.
+     * 
+     * @return The number of completed passes.
+     */
+    public long getPasses() {
+        return this.passes;
+    }
+    
+    /**
+     * Gets the time taken by the last completed pass.
+     * 
+     * @return The time taken, in nanoseconds, or {@code -1} if no pass has
+     *         been completed yet.
+     */
+    public long getLastPassNanos() {
+        return this.lastPassNanos;
+    }
+    
+    /**
+     * Gets the number of filtered {@link Creature}s that have been checked.
+     * 
+     * @return The number of checked {@link Creature}s.
+     */
+    public long getExamined() {
+        return this.examined.sum();
+    }
+    
+    /**
+     * Gets the number of {@link Creature}s that have been removed.
+     * 
+     * @return The number of removed {@link Creature}s.
+     */
+    public long getRemoved() {
+        return this.removed.sum();
+    }
+    
+    /**
+     * Resets the counters of checked and removed {@link Creature}s.
+     */
+    public void resetCounters() {
+        this.examined.reset();
+        this.removed.reset();
+    }
+    
+    /**
+     * Advances the sweep by a single tick, stopping once either the per-tick
+     * number of entities or the per-tick time budget has been used up.
+     * <p>
+     * On a region-threaded server, the chunks are only dispatched here, and
+     * share a single {@link TickAllowance} of the per-tick limits. Chunks
+     * that ran out of the limits of an earlier tick are dispatched first.
+     */
+    private void sweep() {
+        
+        if (this.waitTicks > 0) {
+            this.waitTicks--;
+            return;
+        }
+        if (this.passChunks == null) {
+            this.beginPass();
+        }
+        
+        final MobSweeperSettings settings = this.settings;
+        final boolean regionized = this.scheduler.isRegionized();
+        final TickAllowance allowance = regionized ? new TickAllowance(settings) : null;
+        final long startNanos = System.nanoTime();
+        int entities = 0;
+        int dispatched = 0;
+        if (regionized) {
+            PendingChunk pendingChunk;
+            while (dispatched < REGION_CHUNKS_PER_TICK && (pendingChunk = this.pendingChunks.poll()) != null) {
+                final PendingChunk chunk = pendingChunk;
+                this.scheduler.runAtChunk(chunk.world, chunk.chunkX, chunk.chunkZ, () -> this.sweepChunk(chunk.world, chunk.chunkX, chunk.chunkZ, chunk.entityIndex, settings, allowance));
+                dispatched++;
+            }
+        }
+        while (entities < settings.getEntitiesPerTick() && System.nanoTime() - startNanos < settings.getBudgetNanos()) {
+            
+            if (this.chunkEntities != null) {
+                if (this.entityCursor < this.chunkEntities.length) {
+                    this.sweepEntity(this.chunkEntities[this.entityCursor++], settings);
+                    entities++;
+                    continue;
+                }
+                this.chunkEntities = null;
+                this.passChunksSwept++;
+            }
+            
+            if (regionized && dispatched == REGION_CHUNKS_PER_TICK) {
+                return;
+            }
+            if (this.worldCursor == this.passWorlds.length) {
+                if (regionized && !this.pendingChunks.isEmpty()) {
+                    return;
+                }
+                this.endPass(true);
+                return;
+            }
+            if (this.chunkCursor == this.passChunks[this.worldCursor].length) {
+                this.worldCursor++;
+                this.chunkCursor = 0;
+                continue;
+            }
+            
+            final World world = this.passWorlds[this.worldCursor];
+            final long key = this.passChunks[this.worldCursor][this.chunkCursor++];
+            final int chunkX = (int) (key >> 32);
+            final int chunkZ = (int) key;
+            if (regionized) {
+                this.scheduler.runAtChunk(world, chunkX, chunkZ, () -> this.sweepChunk(world, chunkX, chunkZ, 0, settings, allowance));
+                this.passChunksSwept++;
+                dispatched++;
+            } else if (world.isChunkLoaded(chunkX, chunkZ)) {
+                this.chunkEntities = world.getChunkAt(chunkX, chunkZ).getEntities();
+                this.entityCursor = 0;
+            } else {
+                this.passChunksSwept++;
+            }
+        }
+    }
+    
+    /**
+     * Begins a new pass over the chunks that are currently loaded in every
+     * {@link World}.
+     */
+    private void beginPass() {
+        
+        final WaterFloorIndex waterFloorIndex = this.saferWaterPlugin.getWaterFloorIndex();
+        final List<World> worlds = this.saferWaterPlugin.getServer().getWorlds();
+        this.passWorlds = worlds.toArray(new World[0]);
+        this.passChunks = new long[this.passWorlds.length][];
+        int total = 0;
+        for (int index = 0; index < this.passWorlds.length; index++) {
+            this.passChunks[index] = waterFloorIndex.getLoadedChunks(this.passWorlds[index]);
+            total += this.passChunks[index].length;
+        }
+        this.worldCursor = 0;
+        this.chunkCursor = 0;
+        this.chunkEntities = null;
+        this.entityCursor = 0;
+        this.passChunksSwept = 0;
+        this.passChunkTotal = total;
+        this.passStartNanos = System.nanoTime();
+    }
+    
+    /**
+     * Ends the current pass, if any, and waits for the configured interval
+     * before the next one.
+     * 
+     * @param completed If {@code true}, the pass was completed, rather than
+     *                  abandoned.
+     */
+    private void endPass(final boolean completed) {
+        if (completed) {
+            this.lastPassNanos = System.nanoTime() - this.passStartNanos;
+            this.passes++;
+        }
+        this.passWorlds = null;
+        this.passChunks = null;
+        this.chunkEntities = null;
+        if (!completed) {
+            this.pendingChunks.clear();
+        }
+        this.passChunkTotal = 0;
+        this.passChunksSwept = 0;
+        this.waitTicks = this.settings.getPassIntervalTicks();
+    }
+    
+    /**
+     * Sweeps a single chunk on a region-threaded server, from the given
+     * entity onward, within what is left of the per-tick limits that it
+     * shares with the other chunks dispatched in the same tick. Must be
+     * called on the thread that owns the chunk. If the limits run out, the
+     * chunk is queued to be resumed from its next entity in a later tick.
+     * 
+     * @param world The {@link World} of the chunk.
+     * @param chunkX The chunk X coordinate.
+     * @param chunkZ The chunk Z coordinate.
+     * @param entityIndex The index of the first entity to sweep.
+     * @param settings The {@link MobSweeperSettings} of the tick that the
+     *                 chunk was dispatched in.
+     * @param allowance The {@link TickAllowance} of the tick that the chunk
+     *                  was dispatched in.
+     */
+    private void sweepChunk(@NotNull final World world, final int chunkX, final int chunkZ, final int entityIndex, @NotNull final MobSweeperSettings settings, @NotNull final TickAllowance allowance) {
+        
+        if (!world.isChunkLoaded(chunkX, chunkZ)) {
+            return;
+        }
+        final Entity[] entities = world.getChunkAt(chunkX, chunkZ).getEntities();
+        final long startNanos = System.nanoTime();
+        try {
+            for (int index = entityIndex; index < entities.length; index++) {
+                if (allowance.nanos.get() - (System.nanoTime() - startNanos) <= 0L || allowance.entities.getAndDecrement() <= 0) {
+                    this.pendingChunks.add(new PendingChunk(world, chunkX, chunkZ, index));
+                    return;
+                }
+                this.sweepEntity(entities[index], settings);
+            }
+        } finally {
+            allowance.nanos.addAndGet(startNanos - System.nanoTime());
+        }
+    }
+    
+    /**
+     * Checks a single {@link Entity}, and removes it if it is a filtered
+     * {@link Creature} in water where it would be denied a spawn (as
+     * decided by {@link SaferWaterListener#onCreatureSpawn}). Must be called
+     * on the thread that owns the {@link Entity}.
+     * 
+     * @param entity The {@link Entity}, which may have been removed since it
+     *               was listed.
+     * @param settings The current {@link MobSweeperSettings}.
+     */
+    private void sweepEntity(@Nullable final Entity entity, @NotNull final MobSweeperSettings settings) {
+        
+        if (!(entity instanceof Creature) || !entity.isValid()) {
+            return;
+        }
+        final Creature creature = (Creature) entity;
+        if (settings.isOnlyDespawnable() && (!creature.getRemoveWhenFarAway() || creature.getCustomName() != null)) {
+            return;
+        }
+        
+        final Location location = creature.getLocation();
+        final World world = location.getWorld();
+        if (world == null) {
+            return;
+        }
+        final int x = location.getBlockX();
+        final int y = location.getBlockY();
+        final int z = location.getBlockZ();
+        final SpawnDecider spawnDecider = this.saferWaterPlugin.getSpawnProfileTable().getDecider(world, x, y, z);
+        final SpawnFilter spawnFilter = spawnDecider.getSpawnFilter();
+        if (!spawnFilter.isFiltered(creature.getType())) {
+            return;
+        }
+        
+        this.examined.increment();
+        final BlockSource blockSource = this.saferWaterPlugin.getWaterFloorIndex().getBlockSource(world);
+        if (SpawnDecider.getOutcome(spawnDecider.decideWater(blockSource, x, y, z)) != SpawnDecider.DENIED) {
+            return;
+        }
+        creature.remove();
+        this.removed.increment();
+    }
+}
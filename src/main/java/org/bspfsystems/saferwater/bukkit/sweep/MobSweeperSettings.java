@@ -0,0 +1,124 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.sweep;
+
+/**
+ * Represents the immutable settings of the {@link MobSweeper}.
+ */
+public final class MobSweeperSettings {
+    
+    /**
+     * The largest time budget, in nanoseconds, which is a whole tick.
+     */
+    public static final long MAX_BUDGET_NANOS = 50_000_000L;
+    
+    /**
+     * The default {@link MobSweeperSettings}, with the sweeper disabled.
+     */
+    public static final MobSweeperSettings DEFAULT = new MobSweeperSettings(false, 100, 250_000L, 1200, true);
+    
+    private final boolean enabled;
+    private final int entitiesPerTick;
+    private final long budgetNanos;
+    private final int passIntervalTicks;
+    private final boolean onlyDespawnable;
+    
+    /**
+     * Constructs a new {@link MobSweeperSettings}.
+     * 
+     * @param enabled If {@code true}, the loaded chunks are swept.
+     * @param entitiesPerTick The number of entities that may be checked in
+     *                        each tick.
+     * @param budgetNanos The time that may be spent sweeping in each tick, in
+     *                    nanoseconds.
+     * @param passIntervalTicks The number of ticks between the end of a pass
+     *                          over the loaded chunks and the start of the
+     *                          next one.
+     * @param onlyDespawnable If {@code true}, only mobs that would despawn
+     *                        naturally are removed.
+     * @throws IllegalArgumentException If any of the values are out of range.
+     */
+    public MobSweeperSettings(final boolean enabled, final int entitiesPerTick, final long budgetNanos, final int passIntervalTicks, final boolean onlyDespawnable) throws IllegalArgumentException {
+        if (entitiesPerTick <= 0) {
+            throw new IllegalArgumentException("Entities per tick must be positive: " + entitiesPerTick);
+        }
+        if (budgetNanos <= 0L || budgetNanos > MAX_BUDGET_NANOS) {
+            throw new IllegalArgumentException("Budget must be between 1 and " + MAX_BUDGET_NANOS + " nanoseconds: " + budgetNanos);
+        }
+        if (passIntervalTicks < 0) {
+            throw new IllegalArgumentException("Pass interval cannot be negative: " + passIntervalTicks);
+        }
+        this.enabled = enabled;
+        this.entitiesPerTick = entitiesPerTick;
+        this.budgetNanos = budgetNanos;
+        this.passIntervalTicks = passIntervalTicks;
+        this.onlyDespawnable = onlyDespawnable;
+    }
+    
+    /**
+     * Checks if the loaded chunks are swept.
+     * 
+     * @return {@code true} if the sweeper is enabled, {@code false}
+     *         otherwise.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+    
+    /**
+     * Gets the number of entities that may be checked in each tick.
+     * 
+     * @return The number of entities per tick.
+     */
+    public int getEntitiesPerTick() {
+        return this.entitiesPerTick;
+    }
+    
+    /**
+     * Gets the time that may be spent sweeping in each tick.
+     * 
+     * @return The budget, in nanoseconds.
+     */
+    public long getBudgetNanos() {
+        return this.budgetNanos;
+    }
+    
+    /**
+     * Gets the number of ticks between the end of a pass over the loaded
+     * chunks and the start of the next one.
+     * 
+     * @return The pass interval, in ticks.
+     */
+    public int getPassIntervalTicks() {
+        return this.passIntervalTicks;
+    }
+    
+    /**
+     * Checks if only mobs that would despawn naturally are removed, leaving
+     * named, tamed, and otherwise persistent mobs alone.
+     * 
+     * @return {@code true} if only despawnable mobs are removed,
+     *         {@code false} if every mob may be removed.
+     */
+    public boolean isOnlyDespawnable() {
+        return this.onlyDespawnable;
+    }
+}
@@ -0,0 +1,135 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.water;
+
+import org.bukkit.World;
+
+/**
+ * Represents a source of block information for the column scans, addressed
+ * by absolute block coordinates.
+ * <p>
+ * Implementations must not allocate when returning a kind, so that a scan can
+ * be performed without creating any {@link org.bukkit.block.Block}s.
+ */
+public interface BlockSource {
+    
+    /**
+     * Returned by {@link #getSectionKind(int, int, int)} when a section is
+     * not known to be uniform, and must be read block by block.
+     */
+    byte SECTION_MIXED = 0;
+    
+    /**
+     * Returned by {@link #getSectionKind(int, int, int)} when every block of
+     * a section is {@link WaterKind#WATER}.
+     */
+    byte SECTION_WATER = 1;
+    
+    /**
+     * Returned by {@link #getSectionKind(int, int, int)} when no block of a
+     * section is {@link WaterKind#WATER} or {@link WaterKind#CORAL}.
+     */
+    byte SECTION_DRY = 2;
+    
+    /**
+     * Gets the resolved {@link WaterKind} of the block at the given
+     * coordinates. Positions outside of the {@link World} are
+     * {@link WaterKind#OTHER}.
+     * 
+     * @param x The block X coordinate.
+     * @param y The block Y coordinate.
+     * @param z The block Z coordinate.
+     * @return The resolved kind of the block, never
+     *         {@link WaterKind#WATERLOGGABLE}.
+     */
+    byte getKind(int x, int y, int z);
+    
+    /**
+     * Gets the light level of the block at the given coordinates.
+     * 
+     * @param x The block X coordinate.
+     * @param y The block Y coordinate.
+     * @param z The block Z coordinate.
+     * @return The light level of the block (0-15).
+     */
+    int getLightLevel(int x, int y, int z);
+    
+    /**
+     * Gets the light level that reaches the block at the given coordinates
+     * from the sky.
+     * 
+     * @param x The block X coordinate.
+     * @param y The block Y coordinate.
+     * @param z The block Z coordinate.
+     * @return The sky light level of the block (0-15).
+     */
+    int getSkyLightLevel(int x, int y, int z);
+    
+    /**
+     * Gets the light level that reaches the block at the given coordinates
+     * from light-emitting blocks.
+     * 
+     * @param x The block X coordinate.
+     * @param y The block Y coordinate.
+     * @param z The block Z coordinate.
+     * @return The block light level of the block (0-15).
+     */
+    int getBlockLightLevel(int x, int y, int z);
+    
+    /**
+     * Gets the minimum Y of the {@link World} (inclusive).
+     * 
+     * @return The minimum Y.
+     */
+    int getMinHeight();
+    
+    /**
+     * Gets the already-known floor Y for the water block at the given
+     * coordinates, if this {@link BlockSource} is backed by an index.
+     * 
+     * @param x The block X coordinate.
+     * @param y The block Y coordinate.
+     * @param z The block Z coordinate.
+     * @return The known floor Y, or {@link ChunkWaterFloor#UNKNOWN} if it is
+     *         not known and the column must be scanned.
+     */
+    default int getIndexedFloorY(final int x, final int y, final int z) {
+        return ChunkWaterFloor.UNKNOWN;
+    }
+    
+    /**
+     * Gets a summary of the 16x16x16 section of blocks that contains the
+     * given column at the given section Y, if this {@link BlockSource} keeps
+     * one, so that the scans can skip over the whole section at once.
+     * 
+     * @param x The block X coordinate.
+     * @param sectionY The section Y coordinate (the block Y shifted right by
+     *                 4).
+     * @param z The block Z coordinate.
+     * @return {@link #SECTION_WATER} if every block of the section is water,
+     *         {@link #SECTION_DRY} if none of them are water or coral, or
+     *         {@link #SECTION_MIXED} if the section is not known to be
+     *         either.
+     */
+    default byte getSectionKind(final int x, final int sectionY, final int z) {
+        return SECTION_MIXED;
+    }
+}
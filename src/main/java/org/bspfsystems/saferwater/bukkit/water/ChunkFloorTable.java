@@ -0,0 +1,306 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.water;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.UnaryOperator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents the {@link ChunkWaterFloor}s of the loaded chunks of a single
+ * {@link org.bukkit.World}, keyed by their packed chunk coordinates.
+ * <p>
+ * The entries are kept in a primitive open-addressing table with linear
+ * probing, so that looking up a chunk does not box its key. Lookups are
+ * optimistic reads of a {@link StampedLock}, and only take the read lock if
+ * the table was written to at the same time. Chunks are only added, replaced,
+ * or removed as they are loaded, captured, changed, or unloaded, so all
+ * writes share a single write lock.
+ */
+final class ChunkFloorTable {
+    
+    private static final int INITIAL_CAPACITY = 256;
+    
+    private final StampedLock lock;
+    private Table table;
+    private int size;
+    
+    /**
+     * Represents a single generation of the table, which is replaced as a
+     * whole when it grows, so that a lookup always reads keys and values of
+     * the same length.
+     */
+    private static final class Table {
+        
+        private final long[] keys;
+        private final ChunkWaterFloor[] values;
+        private final int mask;
+        
+        /**
+         * Constructs a new, empty {@link Table}.
+         * 
+         * @param capacity The capacity, a power of 2.
+         */
+        private Table(final int capacity) {
+            this.keys = new long[capacity];
+            this.values = new ChunkWaterFloor[capacity];
+            this.mask = capacity - 1;
+        }
+        
+        /**
+         * Finds the index of the given key.
+         * 
+         * @param key The packed chunk key.
+         * @return The index of the key, or {@code -1} if it is not present.
+         */
+        private int indexOf(final long key) {
+            for (int index = ChunkFloorTable.hash(key) & this.mask; this.values[index] != null; index = (index + 1) & this.mask) {
+                if (this.keys[index] == key) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+    }
+    
+    /**
+     * Constructs a new, empty {@link ChunkFloorTable}.
+     */
+    ChunkFloorTable() {
+        this.lock = new StampedLock();
+        this.table = new Table(INITIAL_CAPACITY);
+        this.size = 0;
+    }
+    
+    /**
+     * Spreads the bits of a packed chunk key, so that neighbouring chunks do
+     * not probe into each other.
+     * 
+     * @param key The packed chunk key.
+     * @return The hash of the key.
+     */
+    private static int hash(final long key) {
+        final long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+    
+    /**
+     * Gets the {@link ChunkWaterFloor} of the given chunk.
+     * 
+     * @param key The packed chunk key.
+     * @return The {@link ChunkWaterFloor}, or {@code null} if the chunk is not
+     *         loaded.
+     */
+    @Nullable
+    ChunkWaterFloor get(final long key) {
+        
+        final long optimisticStamp = this.lock.tryOptimisticRead();
+        final Table table = this.table;
+        ChunkWaterFloor floor = ChunkFloorTable.find(table, key);
+        if (this.lock.validate(optimisticStamp)) {
+            return floor;
+        }
+        
+        final long stamp = this.lock.readLock();
+        try {
+            floor = ChunkFloorTable.find(this.table, key);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+        return floor;
+    }
+    
+    /**
+     * Finds the {@link ChunkWaterFloor} of the given chunk in the given
+     * {@link Table}, which may be being written to at the same time. The
+     * probe is bounded by the capacity of the {@link Table}, so that it ends
+     * even if it reads a {@link Table} that is being changed.
+     * 
+     * @param table The {@link Table} to read.
+     * @param key The packed chunk key.
+     * @return The {@link ChunkWaterFloor}, or {@code null} if it was not
+     *         found.
+     */
+    @Nullable
+    private static ChunkWaterFloor find(@NotNull final Table table, final long key) {
+        int index = ChunkFloorTable.hash(key) & table.mask;
+        for (int probes = 0; probes <= table.mask; probes++) {
+            final ChunkWaterFloor floor = table.values[index];
+            if (floor == null) {
+                return null;
+            }
+            if (table.keys[index] == key) {
+                return floor;
+            }
+            index = (index + 1) & table.mask;
+        }
+        return null;
+    }
+    
+    /**
+     * Adds or replaces the {@link ChunkWaterFloor} of the given chunk.
+     * 
+     * @param key The packed chunk key.
+     * @param floor The {@link ChunkWaterFloor}.
+     */
+    void put(final long key, @NotNull final ChunkWaterFloor floor) {
+        final long stamp = this.lock.writeLock();
+        try {
+            this.putLocked(key, floor);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Adds or replaces the {@link ChunkWaterFloor} of the given chunk, growing
+     * the table if it would become more than half full. Must be called while
+     * holding the write lock.
+     * 
+     * @param key The packed chunk key.
+     * @param floor The {@link ChunkWaterFloor}.
+     */
+    private void putLocked(final long key, @NotNull final ChunkWaterFloor floor) {
+        
+        Table table = this.table;
+        final int existing = table.indexOf(key);
+        if (existing != -1) {
+            table.values[existing] = floor;
+            return;
+        }
+        
+        if ((this.size + 1) * 2 > table.keys.length) {
+            final Table grown = new Table(table.keys.length * 2);
+            for (int index = 0; index < table.keys.length; index++) {
+                if (table.values[index] != null) {
+                    ChunkFloorTable.insert(grown, table.keys[index], table.values[index]);
+                }
+            }
+            this.table = grown;
+            table = grown;
+        }
+        ChunkFloorTable.insert(table, key, floor);
+        this.size++;
+    }
+    
+    /**
+     * Inserts a key that is not yet present into the first free index of its
+     * probe sequence.
+     * 
+     * @param table The {@link Table} to insert into.
+     * @param key The packed chunk key.
+     * @param floor The {@link ChunkWaterFloor}.
+     */
+    private static void insert(@NotNull final Table table, final long key, @NotNull final ChunkWaterFloor floor) {
+        int index = ChunkFloorTable.hash(key) & table.mask;
+        while (table.values[index] != null) {
+            index = (index + 1) & table.mask;
+        }
+        table.keys[index] = key;
+        table.values[index] = floor;
+    }
+    
+    /**
+     * Removes the {@link ChunkWaterFloor} of the given chunk, shifting any
+     * later entries of the same probe sequence back into the freed index.
+     * 
+     * @param key The packed chunk key.
+     */
+    void remove(final long key) {
+        
+        final long stamp = this.lock.writeLock();
+        try {
+            final Table table = this.table;
+            int free = table.indexOf(key);
+            if (free == -1) {
+                return;
+            }
+            
+            int index = free;
+            while (true) {
+                index = (index + 1) & table.mask;
+                if (table.values[index] == null) {
+                    break;
+                }
+                final int home = ChunkFloorTable.hash(table.keys[index]) & table.mask;
+                if (((index - home) & table.mask) >= ((index - free) & table.mask)) {
+                    table.keys[free] = table.keys[index];
+                    table.values[free] = table.values[index];
+                    free = index;
+                }
+            }
+            table.keys[free] = 0L;
+            table.values[free] = null;
+            this.size--;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Replaces the {@link ChunkWaterFloor} of the given chunk with the result
+     * of the given function, if the chunk is loaded. The function is called
+     * while holding the write lock, so that it is serialized with every other
+     * change to the table.
+     * 
+     * @param key The packed chunk key.
+     * @param function The function, which is given the current
+     *                 {@link ChunkWaterFloor}, and returns its replacement.
+     */
+    void update(final long key, @NotNull final UnaryOperator<ChunkWaterFloor> function) {
+        final long stamp = this.lock.writeLock();
+        try {
+            final Table table = this.table;
+            final int index = table.indexOf(key);
+            if (index != -1) {
+                table.values[index] = function.apply(table.values[index]);
+            }
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Gets the packed keys of all loaded chunks.
+     * 
+     * @return A snapshot of the keys.
+     */
+    @NotNull
+    long[] getKeys() {
+        
+        final long stamp = this.lock.readLock();
+        try {
+            final Table table = this.table;
+            final long[] keys = new long[this.size];
+            int count = 0;
+            for (int index = 0; index < table.keys.length; index++) {
+                if (table.values[index] != null) {
+                    keys[count++] = table.keys[index];
+                }
+            }
+            return Arrays.copyOf(keys, count);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+}
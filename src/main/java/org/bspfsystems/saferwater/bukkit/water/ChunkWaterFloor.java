@@ -0,0 +1,411 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.water;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.bukkit.ChunkSnapshot;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents the water floor of every column in a single chunk.
+ * <p>
+ * Each column is stored as a sorted list of water runs, packed into a single
+ * {@code int[]}. A run covers every water block from its floor Y up to its top
+ * Y, and every water block in the run shares the same floor (the block whose
+ * light level determines if a spawn is denied). The floor of a run is the
+ * same {@link org.bukkit.block.Block} that walking downward from any water
+ * block in the run would find.
+ * <p>
+ * The sky light and block light of the floor of each run are kept alongside
+ * it, as they were when the chunk was captured, so that a spawn can be
+ * decided from the index without reading the light from the
+ * {@link org.bukkit.World} (which creates a {@link org.bukkit.block.Block}
+ * for every read).
+ * <p>
+ * The run data is immutable. Only the per-column invalidation bits may change,
+ * when a block in a column changes after the data was computed.
+ */
+public final class ChunkWaterFloor {
+    
+    /**
+     * Returned when a column has no known water floor at a given Y.
+     */
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+    
+    /**
+     * Returned when the light of a floor is not known.
+     */
+    public static final int UNKNOWN_LIGHT = -1;
+    
+    private final int[] offsets;
+    private final int[] runs;
+    private final byte[] floorLights;
+    private final int capturedTick;
+    private final AtomicLongArray invalid;
+    private final AtomicLongArray changed;
+    private final AtomicLongArray modified;
+    private final AtomicLongArray verified;
+    private volatile boolean capturing;
+    
+    /**
+     * Constructs a new {@link ChunkWaterFloor}.
+     * 
+     * @param offsets The start index into the runs for each column, with an
+     *                extra trailing entry.
+     * @param runs The packed runs for all columns.
+     * @param floorLights The packed light of the floor of each run.
+     * @param capturedTick The tick that the chunk was captured on.
+     * @param placeholder {@code true} if this is a placeholder, and all
+     *                    columns start as invalid, {@code false} otherwise.
+     */
+    private ChunkWaterFloor(final int[] offsets, final int[] runs, final byte[] floorLights, final int capturedTick, final boolean placeholder) {
+        this.offsets = offsets;
+        this.runs = runs;
+        this.floorLights = floorLights;
+        this.capturedTick = capturedTick;
+        this.invalid = new AtomicLongArray(4);
+        this.changed = new AtomicLongArray(4);
+        this.modified = placeholder ? new AtomicLongArray(4) : null;
+        this.verified = placeholder ? new AtomicLongArray(4) : null;
+        if (placeholder) {
+            for (int index = 0; index < 4; index++) {
+                this.invalid.set(index, -1L);
+            }
+        }
+        this.capturing = false;
+    }
+    
+    /**
+     * Creates a placeholder {@link ChunkWaterFloor} for a chunk that has been
+     * loaded but not yet computed. Every column is invalid.
+     * 
+     * @return The placeholder {@link ChunkWaterFloor}.
+     */
+    @NotNull
+    public static ChunkWaterFloor placeholder() {
+        return new ChunkWaterFloor(new int[257], new int[0], new byte[0], 0, true);
+    }
+    
+    /**
+     * Computes the {@link ChunkWaterFloor} from the given
+     * {@link ChunkSnapshot}. This may be called off of the main thread.
+     * 
+     * @param snapshot The {@link ChunkSnapshot} to compute from.
+     * @param minY The minimum Y of the world (inclusive).
+     * @param maxY The maximum Y of the world (exclusive).
+     * @param capturedTick The tick that the {@link ChunkSnapshot} was
+     *                     captured on.
+     * @return The computed {@link ChunkWaterFloor}.
+     */
+    @NotNull
+    public static ChunkWaterFloor compute(@NotNull final ChunkSnapshot snapshot, final int minY, final int maxY, final int capturedTick) {
+        
+        final SnapshotBlockSource source = new SnapshotBlockSource(snapshot, minY, maxY);
+        final int baseX = snapshot.getX() << 4;
+        final int baseZ = snapshot.getZ() << 4;
+        final byte[] kinds = new byte[maxY - minY];
+        final int[] columnRuns = new int[WaterColumn.getMaxRuns(kinds.length)];
+        final int[] offsets = new int[257];
+        int[] runs = new int[256];
+        byte[] floorLights = new byte[256];
+        int size = 0;
+        
+        for (int column = 0; column < 256; column++) {
+            
+            final int x = baseX + (column & 15);
+            final int z = baseZ + (column >> 4);
+            for (int y = minY; y < maxY; y++) {
+                
+                // A section without water or coral ends any downward walk
+                // that reaches it at its top block, whether its blocks are
+                // air or not, so it can be read as if it were solid.
+                final byte sectionKind = (y & 15) == 0 ? source.getSectionKind(x, y >> 4, z) : BlockSource.SECTION_MIXED;
+                if (sectionKind != BlockSource.SECTION_MIXED) {
+                    Arrays.fill(kinds, y - minY, y - minY + 16, sectionKind == BlockSource.SECTION_WATER ? WaterKind.WATER : WaterKind.OTHER);
+                    y += 15;
+                    continue;
+                }
+                kinds[y - minY] = source.getKind(x, y, z);
+            }
+            
+            offsets[column] = size;
+            final int count = WaterColumn.findRuns(kinds, kinds.length, minY, columnRuns);
+            if (size + count > runs.length) {
+                runs = Arrays.copyOf(runs, Math.max(runs.length * 2, size + count));
+                floorLights = Arrays.copyOf(floorLights, runs.length);
+            }
+            System.arraycopy(columnRuns, 0, runs, size, count);
+            for (int index = 0; index < count; index++) {
+                final int floorY = WaterColumn.getFloor(columnRuns[index]);
+                floorLights[size + index] = (byte) ((source.getSkyLightLevel(x, floorY, z) << 4) | source.getBlockLightLevel(x, floorY, z));
+            }
+            size += count;
+        }
+        
+        offsets[256] = size;
+        return new ChunkWaterFloor(offsets, Arrays.copyOf(runs, size), Arrays.copyOf(floorLights, size), capturedTick, false);
+    }
+    
+    /**
+     * Gets the water floor Y for the water block at the given position in
+     * this chunk.
+     * 
+     * @param x The X coordinate within the chunk (0-15).
+     * @param y The Y coordinate.
+     * @param z The Z coordinate within the chunk (0-15).
+     * @return The water floor Y, or {@link #UNKNOWN} if the column is
+     *         invalid, or if the position is not a known water block.
+     */
+    public int getFloorY(final int x, final int y, final int z) {
+        
+        final int column = (z << 4) | x;
+        if ((this.invalid.get(column >> 6) & (1L << (column & 63))) != 0L) {
+            return UNKNOWN;
+        }
+        
+        for (int index = this.offsets[column]; index < this.offsets[column + 1]; index++) {
+            final int run = this.runs[index];
+            final int floor = WaterColumn.getFloor(run);
+            if (y < floor) {
+                return UNKNOWN;
+            }
+            if (y <= WaterColumn.getTop(run)) {
+                return floor;
+            }
+        }
+        return UNKNOWN;
+    }
+    
+    /**
+     * Gets the light of the given floor in this chunk, as it was when the
+     * chunk was captured.
+     * 
+     * @param x The X coordinate within the chunk (0-15).
+     * @param floorY The Y coordinate of the floor.
+     * @param z The Z coordinate within the chunk (0-15).
+     * @return The packed light of the floor, to be read with
+     *         {@link #getSkyLight(int)} and {@link #getBlockLight(int)}, or
+     *         {@link #UNKNOWN_LIGHT} if the column is invalid, or if the
+     *         position is not the floor of a known run of water.
+     */
+    public int getFloorLight(final int x, final int floorY, final int z) {
+        
+        final int column = (z << 4) | x;
+        if ((this.invalid.get(column >> 6) & (1L << (column & 63))) != 0L) {
+            return UNKNOWN_LIGHT;
+        }
+        
+        for (int index = this.offsets[column]; index < this.offsets[column + 1]; index++) {
+            final int floor = WaterColumn.getFloor(this.runs[index]);
+            if (floorY < floor) {
+                return UNKNOWN_LIGHT;
+            }
+            if (floorY == floor) {
+                return this.floorLights[index] & 0xFF;
+            }
+        }
+        return UNKNOWN_LIGHT;
+    }
+    
+    /**
+     * Gets the sky light level from the packed light of a floor.
+     * 
+     * @param floorLight The packed light, from
+     *                   {@link #getFloorLight(int, int, int)}.
+     * @return The sky light level (0-15).
+     */
+    public static int getSkyLight(final int floorLight) {
+        return floorLight >>> 4;
+    }
+    
+    /**
+     * Gets the block light level from the packed light of a floor.
+     * 
+     * @param floorLight The packed light, from
+     *                   {@link #getFloorLight(int, int, int)}.
+     * @return The block light level (0-15).
+     */
+    public static int getBlockLight(final int floorLight) {
+        return floorLight & 15;
+    }
+    
+    /**
+     * Gets the tick that this chunk was captured on, which is {@code 0} for a
+     * placeholder.
+     * 
+     * @return The tick that this chunk was captured on.
+     */
+    public int getCapturedTick() {
+        return this.capturedTick;
+    }
+    
+    /**
+     * Checks if the given column has changed since the last capture of this
+     * chunk started.
+     * 
+     * @param x The X coordinate within the chunk (0-15).
+     * @param z The Z coordinate within the chunk (0-15).
+     * @return {@code true} if the column has changed, {@code false}
+     *         otherwise.
+     */
+    public boolean isChanged(final int x, final int z) {
+        final int column = (z << 4) | x;
+        return (this.changed.get(column >> 6) & (1L << (column & 63))) != 0L;
+    }
+    
+    /**
+     * Checks if the given column has no live data yet, but has not changed
+     * since the chunk was loaded, so that it may be answered from data that
+     * was computed while the chunk was unloaded.
+     * 
+     * @param x The X coordinate within the chunk (0-15).
+     * @param z The Z coordinate within the chunk (0-15).
+     * @return {@code true} if this is a placeholder, and the column has not
+     *         changed since the chunk was loaded, {@code false} otherwise.
+     */
+    public boolean isUnchangedPlaceholder(final int x, final int z) {
+        if (this.modified == null) {
+            return false;
+        }
+        final int column = (z << 4) | x;
+        return (this.modified.get(column >> 6) & (1L << (column & 63))) == 0L;
+    }
+    
+    /**
+     * Checks if the given column of this placeholder has been checked against
+     * the {@link org.bukkit.World}, so that the data that was computed while
+     * the chunk was unloaded may be used for it without checking it again.
+     * 
+     * @param x The X coordinate within the chunk (0-15).
+     * @param z The Z coordinate within the chunk (0-15).
+     * @return {@code true} if this is a placeholder, and the column has been
+     *         verified, {@code false} otherwise.
+     */
+    public boolean isVerifiedPlaceholder(final int x, final int z) {
+        if (this.verified == null) {
+            return false;
+        }
+        final int column = (z << 4) | x;
+        return (this.verified.get(column >> 6) & (1L << (column & 63))) != 0L;
+    }
+    
+    /**
+     * Marks the given column of this placeholder as verified, after the data
+     * that was computed while the chunk was unloaded has been found to still
+     * match the {@link org.bukkit.World}.
+     * 
+     * @param x The X coordinate within the chunk (0-15).
+     * @param z The Z coordinate within the chunk (0-15).
+     */
+    public void verifyPlaceholder(final int x, final int z) {
+        if (this.verified == null) {
+            return;
+        }
+        final int column = (z << 4) | x;
+        final long bit = 1L << (column & 63);
+        this.verified.getAndAccumulate(column >> 6, bit, (current, update) -> current | update);
+    }
+    
+    /**
+     * Marks the given column of this placeholder as modified, after the data
+     * that was computed while the chunk was unloaded has been found to no
+     * longer match the {@link org.bukkit.World}, so that it is no longer
+     * used for the column. Unlike {@link #invalidate(int, int)}, the column
+     * is not marked as changed, so that a capture in progress still answers
+     * it.
+     * 
+     * @param x The X coordinate within the chunk (0-15).
+     * @param z The Z coordinate within the chunk (0-15).
+     */
+    public void rejectPlaceholder(final int x, final int z) {
+        if (this.modified == null) {
+            return;
+        }
+        final int column = (z << 4) | x;
+        final long bit = 1L << (column & 63);
+        this.modified.getAndAccumulate(column >> 6, bit, (current, update) -> current | update);
+    }
+    
+    /**
+     * Marks the given column as invalid and changed, so that it will no
+     * longer be used until the chunk has been recomputed.
+     * 
+     * @param x The X coordinate within the chunk (0-15).
+     * @param z The Z coordinate within the chunk (0-15).
+     */
+    public void invalidate(final int x, final int z) {
+        final int column = (z << 4) | x;
+        final long bit = 1L << (column & 63);
+        this.invalid.getAndAccumulate(column >> 6, bit, (current, update) -> current | update);
+        this.changed.getAndAccumulate(column >> 6, bit, (current, update) -> current | update);
+        if (this.modified != null) {
+            this.modified.getAndAccumulate(column >> 6, bit, (current, update) -> current | update);
+        }
+    }
+    
+    /**
+     * Begins a capture of this chunk, clearing the changed columns. Only one
+     * capture of a chunk may be in progress at a time.
+     * <p>
+     * Callers must serialize this with {@link #invalidate(int, int)} and
+     * {@link #merge(ChunkWaterFloor)} (for example, by calling them within
+     * the compute operations of the owning map).
+     * 
+     * @return {@code true} if the capture may begin, {@code false} if another
+     *         capture is already in progress.
+     */
+    public boolean beginCapture() {
+        if (this.capturing) {
+            return false;
+        }
+        this.capturing = true;
+        for (int index = 0; index < 4; index++) {
+            this.changed.set(index, 0L);
+        }
+        return true;
+    }
+    
+    /**
+     * Ends a capture of this chunk that did not produce any data.
+     */
+    public void abortCapture() {
+        this.capturing = false;
+    }
+    
+    /**
+     * Ends a capture of this chunk, carrying any columns that changed since
+     * the capture began over to the newly-computed data as invalid.
+     * 
+     * @param computed The {@link ChunkWaterFloor} computed by the capture.
+     * @return The given computed {@link ChunkWaterFloor}, which replaces this
+     *         one.
+     */
+    @NotNull
+    public ChunkWaterFloor merge(@NotNull final ChunkWaterFloor computed) {
+        for (int index = 0; index < 4; index++) {
+            final long bits = this.changed.get(index);
+            computed.invalid.set(index, bits);
+            computed.changed.set(index, bits);
+        }
+        return computed;
+    }
+}
@@ -0,0 +1,125 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.water;
+
+import org.bukkit.Material;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Finds the floor of a body of water by scanning a single column of blocks
+ * downward.
+ * <p>
+ * The search continues while the checked block is not {@link Material#AIR},
+ * and any of the checked block or the 2 blocks below it are
+ * {@link Material#WATER}, waterlogged, or one of the coral block variants
+ * (underground caves close to the bottom of the body of water terminate the
+ * search early). The floor is the lowest {@link Material#WATER} (or
+ * waterlogged block) that was checked.
+ * <p>
+ * Each Y is read at most once, using a sliding window of the 3 kinds that
+ * each step needs, and no objects are allocated during the scan. Each time
+ * the scan enters a new section, the {@link BlockSource} is asked for a
+ * summary of it, and a section that is all water is skipped over at once,
+ * as every step through it would continue and move the floor down.
+ */
+public final class ColumnScanner {
+    
+    /**
+     * Prevents instantiation of this utility class.
+     */
+    private ColumnScanner() {
+        throw new UnsupportedOperationException("ColumnScanner cannot be instantiated.");
+    }
+    
+    /**
+     * Checks if the block at the given coordinates is {@link Material#WATER}
+     * or is waterlogged, meaning a spawn there is a water spawn.
+     * 
+     * @param source The {@link BlockSource} to read from.
+     * @param x The block X coordinate.
+     * @param y The block Y coordinate.
+     * @param z The block Z coordinate.
+     * @return {@code true} if the block is water, {@code false} otherwise.
+     */
+    public static boolean isWater(@NotNull final BlockSource source, final int x, final int y, final int z) {
+        return source.getKind(x, y, z) == WaterKind.WATER;
+    }
+    
+    /**
+     * Finds the floor of the body of water that contains the given water
+     * block, checking no lower than the given Y.
+     * 
+     * @param source The {@link BlockSource} to read from.
+     * @param x The block X coordinate.
+     * @param y The block Y coordinate of the water block to start from.
+     * @param z The block Z coordinate.
+     * @param lowestY The lowest Y that may be checked (the 2 blocks below it
+     *                may still be read to decide whether to continue).
+     * @return The Y of the floor, which is the starting Y if no lower water
+     *         is found.
+     */
+    public static int findFloorY(@NotNull final BlockSource source, final int x, final int y, final int z, final int lowestY) {
+        
+        int floorY = y;
+        int checkY = y - 1;
+        if (checkY < lowestY) {
+            return floorY;
+        }
+        
+        byte kind = source.getKind(x, checkY, z);
+        byte below = source.getKind(x, checkY - 1, z);
+        byte belowBelow = source.getKind(x, checkY - 2, z);
+        
+        // Forces the section of the first checked block to be summarized,
+        // even though the scan may start part of the way down it.
+        int sectionY = (checkY >> 4) + 1;
+        
+        while (kind != WaterKind.AIR && (WaterKind.isWaterLike(kind) || WaterKind.isWaterLike(below) || WaterKind.isWaterLike(belowBelow))) {
+            if ((checkY >> 4) != sectionY) {
+                sectionY = checkY >> 4;
+                final int sectionMinY = sectionY << 4;
+                if (sectionMinY >= lowestY && source.getSectionKind(x, sectionY, z) == BlockSource.SECTION_WATER) {
+                    floorY = sectionMinY;
+                    checkY = sectionMinY - 1;
+                    if (checkY < lowestY) {
+                        break;
+                    }
+                    kind = source.getKind(x, checkY, z);
+                    below = source.getKind(x, checkY - 1, z);
+                    belowBelow = source.getKind(x, checkY - 2, z);
+                    continue;
+                }
+            }
+            if (kind == WaterKind.WATER) {
+                floorY = checkY;
+            }
+            checkY--;
+            if (checkY < lowestY) {
+                break;
+            }
+            kind = below;
+            below = belowBelow;
+            belowBelow = source.getKind(x, checkY - 2, z);
+        }
+        
+        return floorY;
+    }
+}
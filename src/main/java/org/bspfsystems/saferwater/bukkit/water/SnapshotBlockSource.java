@@ -0,0 +1,230 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.water;
+
+import java.util.Arrays;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a {@link BlockSource} that reads from a single
+ * {@link ChunkSnapshot}, so that columns can be scanned off of the thread
+ * that owns the chunk.
+ * <p>
+ * Positions outside of the captured chunk are {@link WaterKind#OTHER}. A
+ * {@link ChunkSnapshot} does not know the time of day, so the light level is
+ * the brighter of the block light and the sky light darkened by the amount
+ * given when the {@link ChunkSnapshot} was captured, as from
+ * {@link WorldBlockSource#getSkyDarkening(World)}. Without it, the sky light
+ * is read as in full daylight.
+ * <p>
+ * Each section is summarized the first time that a scan asks for it, and the
+ * summary is kept for as long as this {@link SnapshotBlockSource} is, so that
+ * the columns of the chunk that are scanned after the first one can skip it.
+ * Sections that the {@link ChunkSnapshot} reports as empty are summarized
+ * without reading any blocks; any other section is read until it is found to
+ * be mixed. A {@link SnapshotBlockSource} must only be used by one thread at
+ * a time.
+ */
+public final class SnapshotBlockSource implements BlockSource {
+    
+    private static final byte SECTION_UNKNOWN = -1;
+    
+    private final ChunkSnapshot snapshot;
+    private final int baseX;
+    private final int baseZ;
+    private final int minY;
+    private final int maxY;
+    private final int skyDarkening;
+    private final byte[] sectionKinds;
+    
+    /**
+     * Constructs a new {@link SnapshotBlockSource}, whose light levels are
+     * read as in full daylight.
+     * 
+     * @param snapshot The {@link ChunkSnapshot} to read from.
+     * @param minY The minimum Y of the {@link World} (inclusive).
+     * @param maxY The maximum Y of the {@link World} (exclusive).
+     */
+    public SnapshotBlockSource(@NotNull final ChunkSnapshot snapshot, final int minY, final int maxY) {
+        this(snapshot, minY, maxY, 0);
+    }
+    
+    /**
+     * Constructs a new {@link SnapshotBlockSource}.
+     * 
+     * @param snapshot The {@link ChunkSnapshot} to read from.
+     * @param minY The minimum Y of the {@link World} (inclusive).
+     * @param maxY The maximum Y of the {@link World} (exclusive).
+     * @param skyDarkening The amount that the sky light of the {@link World}
+     *                     was darkened by when the {@link ChunkSnapshot} was
+     *                     captured (0-11).
+     */
+    public SnapshotBlockSource(@NotNull final ChunkSnapshot snapshot, final int minY, final int maxY, final int skyDarkening) {
+        this.snapshot = snapshot;
+        this.baseX = snapshot.getX() << 4;
+        this.baseZ = snapshot.getZ() << 4;
+        this.minY = minY;
+        this.maxY = maxY;
+        this.skyDarkening = skyDarkening;
+        this.sectionKinds = new byte[Math.max(0, (maxY - minY) >> 4)];
+        Arrays.fill(this.sectionKinds, SECTION_UNKNOWN);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getKind(final int x, final int y, final int z) {
+        final int localX = x - this.baseX;
+        final int localZ = z - this.baseZ;
+        if (y < this.minY || y >= this.maxY || (localX & ~15) != 0 || (localZ & ~15) != 0) {
+            return WaterKind.OTHER;
+        }
+        return this.getLocalKind(localX, y, localZ);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Sections outside of the captured chunk, or that are only partly within
+     * the height of the {@link World}, are always
+     * {@link BlockSource#SECTION_MIXED}.
+     */
+    @Override
+    public byte getSectionKind(final int x, final int sectionY, final int z) {
+        
+        final int sectionMinY = sectionY << 4;
+        if (((x - this.baseX) & ~15) != 0 || ((z - this.baseZ) & ~15) != 0 || sectionMinY < this.minY || sectionMinY + 16 > this.maxY || ((sectionMinY - this.minY) & 15) != 0) {
+            return SECTION_MIXED;
+        }
+        
+        final int index = (sectionMinY - this.minY) >> 4;
+        byte sectionKind = this.sectionKinds[index];
+        if (sectionKind == SECTION_UNKNOWN) {
+            sectionKind = this.summarize(index, sectionMinY);
+            this.sectionKinds[index] = sectionKind;
+        }
+        return sectionKind;
+    }
+    
+    /**
+     * Summarizes a single section of the {@link ChunkSnapshot}, stopping as
+     * soon as it is found to be mixed.
+     * 
+     * @param index The index of the section in the {@link ChunkSnapshot},
+     *              counted from the minimum Y.
+     * @param sectionMinY The lowest Y of the section.
+     * @return The summary of the section.
+     */
+    private byte summarize(final int index, final int sectionMinY) {
+        
+        if (this.snapshot.isSectionEmpty(index)) {
+            return SECTION_DRY;
+        }
+        
+        boolean water = false;
+        boolean dry = false;
+        for (int y = sectionMinY; y < sectionMinY + 16; y++) {
+            for (int localZ = 0; localZ < 16; localZ++) {
+                for (int localX = 0; localX < 16; localX++) {
+                    final byte kind = this.getLocalKind(localX, y, localZ);
+                    if (kind == WaterKind.WATER) {
+                        water = true;
+                    } else if (kind == WaterKind.CORAL) {
+                        return SECTION_MIXED;
+                    } else {
+                        dry = true;
+                    }
+                    if (water && dry) {
+                        return SECTION_MIXED;
+                    }
+                }
+            }
+        }
+        return water ? SECTION_WATER : SECTION_DRY;
+    }
+    
+    /**
+     * Gets the resolved {@link WaterKind} of the block at the given position
+     * within the captured chunk, without checking the bounds.
+     * 
+     * @param localX The X coordinate within the chunk (0-15).
+     * @param y The Y coordinate.
+     * @param localZ The Z coordinate within the chunk (0-15).
+     * @return The resolved kind of the block.
+     */
+    private byte getLocalKind(final int localX, final int y, final int localZ) {
+        final byte kind = WaterKind.of(this.snapshot.getBlockType(localX, y, localZ));
+        if (kind != WaterKind.WATERLOGGABLE) {
+            return kind;
+        }
+        return WaterKind.resolve(kind, this.snapshot.getBlockData(localX, y, localZ));
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getLightLevel(final int x, final int y, final int z) {
+        final int localX = x - this.baseX;
+        final int localZ = z - this.baseZ;
+        if (y < this.minY || y >= this.maxY || (localX & ~15) != 0 || (localZ & ~15) != 0) {
+            return 0;
+        }
+        return Math.max(this.snapshot.getBlockEmittedLight(localX, y, localZ), this.snapshot.getBlockSkyLight(localX, y, localZ) - this.skyDarkening);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSkyLightLevel(final int x, final int y, final int z) {
+        final int localX = x - this.baseX;
+        final int localZ = z - this.baseZ;
+        if (y < this.minY || y >= this.maxY || (localX & ~15) != 0 || (localZ & ~15) != 0) {
+            return 0;
+        }
+        return this.snapshot.getBlockSkyLight(localX, y, localZ);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getBlockLightLevel(final int x, final int y, final int z) {
+        final int localX = x - this.baseX;
+        final int localZ = z - this.baseZ;
+        if (y < this.minY || y >= this.maxY || (localX & ~15) != 0 || (localZ & ~15) != 0) {
+            return 0;
+        }
+        return this.snapshot.getBlockEmittedLight(localX, y, localZ);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMinHeight() {
+        return this.minY;
+    }
+}
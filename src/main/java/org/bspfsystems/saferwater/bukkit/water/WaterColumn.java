@@ -0,0 +1,162 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.water;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Finds the water runs of a single column from the resolved
+ * {@link WaterKind}s of its blocks.
+ * <p>
+ * A run covers every water block from its floor Y up to its top Y, and every
+ * water block in the run shares the same floor. Runs are packed into a single
+ * {@code int}, with the top Y in the upper 16 bits and the floor Y in the
+ * lower 16 bits.
+ * <p>
+ * This class does not use the Bukkit API, so that it can also be used by the
+ * offline region analyzer, which runs without a server. For the same reason,
+ * it does not call {@link WaterKind#isWaterLike(byte)}, which would load every
+ * {@link org.bukkit.Material}.
+ */
+public final class WaterColumn {
+    
+    /**
+     * Used in place of a packed run where there is no water.
+     */
+    public static final int NO_WATER = Integer.MIN_VALUE;
+    
+    /**
+     * Prevents instantiation of this utility class.
+     */
+    private WaterColumn() {
+        throw new UnsupportedOperationException("WaterColumn cannot be instantiated.");
+    }
+    
+    /**
+     * Gets the maximum number of runs that a column of the given height can
+     * have, which is the minimum length of the array given to
+     * {@link #findRuns(byte[], int, int, int[])}.
+     * 
+     * @param height The height of the column.
+     * @return The maximum number of runs.
+     */
+    public static int getMaxRuns(final int height) {
+        return (height + 1) / 2;
+    }
+    
+    /**
+     * Finds the runs of a single column, from the bottom up.
+     * 
+     * @param kinds The resolved kinds of the blocks in the column, from the
+     *              bottom up.
+     * @param height The number of kinds to read.
+     * @param minY The Y of the first kind.
+     * @param runs The array to write the packed runs into, with a length of
+     *             at least {@link #getMaxRuns(int)}.
+     * @return The number of runs that were written.
+     */
+    public static int findRuns(@NotNull final byte[] kinds, final int height, final int minY, @NotNull final int[] runs) {
+        
+        int size = 0;
+        
+        // Bottom-up, track the lowest water block that a downward walk
+        // starting at the block below would find.
+        int lowestBelow = NO_WATER;
+        int runFloor = NO_WATER;
+        int runTop = NO_WATER;
+        for (int index = 0; index < height; index++) {
+            
+            final byte kind = kinds[index];
+            final int y = index + minY;
+            
+            if (kind == WaterKind.WATER) {
+                final int floor = lowestBelow != NO_WATER ? lowestBelow : y;
+                if (floor == runFloor) {
+                    runTop = y;
+                } else {
+                    if (runFloor != NO_WATER) {
+                        runs[size++] = WaterColumn.pack(runFloor, runTop);
+                    }
+                    runFloor = floor;
+                    runTop = y;
+                }
+            }
+            
+            final boolean continues = kind != WaterKind.AIR
+                    && (WaterColumn.isWaterLike(kind)
+                    || (index >= 1 && WaterColumn.isWaterLike(kinds[index - 1]))
+                    || (index >= 2 && WaterColumn.isWaterLike(kinds[index - 2])));
+            if (!continues) {
+                lowestBelow = NO_WATER;
+            } else if (lowestBelow == NO_WATER && kind == WaterKind.WATER) {
+                lowestBelow = y;
+            }
+        }
+        
+        if (runFloor != NO_WATER) {
+            runs[size++] = WaterColumn.pack(runFloor, runTop);
+        }
+        return size;
+    }
+    
+    /**
+     * Checks if the given kind allows the search for the floor to continue.
+     * This is the same as {@link WaterKind#isWaterLike(byte)}.
+     * 
+     * @param kind The resolved kind.
+     * @return {@code true} if the kind is {@link WaterKind#WATER} or
+     *         {@link WaterKind#CORAL}, {@code false} otherwise.
+     */
+    private static boolean isWaterLike(final byte kind) {
+        return kind == WaterKind.WATER || kind == WaterKind.CORAL;
+    }
+    
+    /**
+     * Packs the floor and top Y of a run into a single {@code int}.
+     * 
+     * @param floor The floor Y of the run.
+     * @param top The top Y of the run.
+     * @return The packed run.
+     */
+    public static int pack(final int floor, final int top) {
+        return (top << 16) | (floor & 0xFFFF);
+    }
+    
+    /**
+     * Gets the floor Y of a packed run.
+     * 
+     * @param run The packed run.
+     * @return The floor Y.
+     */
+    public static int getFloor(final int run) {
+        return (short) run;
+    }
+    
+    /**
+     * Gets the top Y of a packed run.
+     * 
+     * @param run The packed run.
+     * @return The top Y.
+     */
+    public static int getTop(final int run) {
+        return run >> 16;
+    }
+}
@@ -0,0 +1,557 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.water;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import org.bspfsystems.saferwater.bukkit.offline.FloorIndexFile;
+import org.bspfsystems.saferwater.bukkit.offline.RegionAnalyzer;
+import org.bspfsystems.saferwater.bukkit.scheduler.TaskScheduler;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents an index of the water floor for every column of every loaded
+ * chunk.
+ * <p>
+ * Chunks are captured as {@link ChunkSnapshot}s on the thread that owns them
+ * (a bounded number per tick), and the water floors are computed from the
+ * {@link ChunkSnapshot}s on a dedicated background thread. Block changes
+ * invalidate the affected column immediately, and queue the chunk to be
+ * recomputed. Any column that is not currently valid returns
+ * {@link ChunkWaterFloor#UNKNOWN}, and the caller is expected to fall back to
+ * walking the blocks directly.
+ * <p>
+ * If a {@link FloorIndexFile} has been written for a {@link World} by the
+ * {@link RegionAnalyzer}, it is mapped when the index starts, and answers the
+ * columns of chunks that have been loaded but not yet captured. Once a column
+ * has changed, no longer matches the {@link FloorIndexFile}, or its chunk has
+ * been computed, the {@link FloorIndexFile} is no longer used for it.
+ */
+public final class WaterFloorIndex {
+    
+    private static final int CAPTURES_PER_TICK = 16;
+    private static final int MAX_LIGHT_AGE_TICKS = 600;
+    private static final String FLOOR_FILES_DIRECTORY = "floors";
+    
+    private final Plugin plugin;
+    private final TaskScheduler scheduler;
+    private final Map<String, FloorIndexFile> floorFiles;
+    private final Map<UUID, WorldIndex> worlds;
+    private final Map<UUID, WorldBlockSource> blockSources;
+    private final ExecutorService executor;
+    
+    private TaskScheduler.Task captureTask;
+    
+    /**
+     * Represents the indexed chunks of a single {@link World}, along with the
+     * chunks that are waiting to be captured.
+     * <p>
+     * This is also the {@link BlockSource} for the {@link World}, answering
+     * floor lookups from the indexed chunks, and reading any other block
+     * information directly from the {@link World}.
+     * <p>
+     * The light of an indexed floor is answered from the light that was
+     * captured with its chunk, darkened as the {@link World} currently is,
+     * for up to {@link #MAX_LIGHT_AGE_TICKS} ticks. Light can change without
+     * any block in the column changing (such as a torch placed nearby), so
+     * once the captured light is older than that, it is read from the
+     * {@link World} again, and the chunk is queued to be captured again.
+     * <p>
+     * On region-threaded servers, chunks are loaded and changed on many
+     * threads at once, so the pending chunks are guarded by their own
+     * monitor. They are never read when deciding a spawn.
+     */
+    private static final class WorldIndex implements BlockSource {
+        
+        private final World world;
+        private final WorldBlockSource blockSource;
+        private final FloorIndexFile floorFile;
+        private final ChunkFloorTable chunks;
+        private final Set<Long> pending;
+        
+        private volatile int tick;
+        private volatile int skyDarkening;
+        
+        /**
+         * Constructs a new {@link WorldIndex}.
+         * 
+         * @param world The {@link World}.
+         * @param floorFile The {@link FloorIndexFile} of the {@link World}, or
+         *                  {@code null} if there is none.
+         */
+        private WorldIndex(@NotNull final World world, @Nullable final FloorIndexFile floorFile) {
+            this.world = world;
+            this.blockSource = new WorldBlockSource(world);
+            this.floorFile = floorFile;
+            this.chunks = new ChunkFloorTable();
+            this.pending = Collections.synchronizedSet(new LinkedHashSet<Long>());
+            this.tick = 1;
+            this.skyDarkening = WorldBlockSource.getSkyDarkening(world);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public byte getKind(final int x, final int y, final int z) {
+            return this.blockSource.getKind(x, y, z);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getLightLevel(final int x, final int y, final int z) {
+            final int floorLight = this.getFloorLight(x, y, z);
+            if (floorLight == ChunkWaterFloor.UNKNOWN_LIGHT) {
+                return this.blockSource.getLightLevel(x, y, z);
+            }
+            return Math.max(ChunkWaterFloor.getBlockLight(floorLight), ChunkWaterFloor.getSkyLight(floorLight) - this.skyDarkening);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getSkyLightLevel(final int x, final int y, final int z) {
+            final int floorLight = this.getFloorLight(x, y, z);
+            if (floorLight == ChunkWaterFloor.UNKNOWN_LIGHT) {
+                return this.blockSource.getSkyLightLevel(x, y, z);
+            }
+            return ChunkWaterFloor.getSkyLight(floorLight);
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getBlockLightLevel(final int x, final int y, final int z) {
+            final int floorLight = this.getFloorLight(x, y, z);
+            if (floorLight == ChunkWaterFloor.UNKNOWN_LIGHT) {
+                return this.blockSource.getBlockLightLevel(x, y, z);
+            }
+            return ChunkWaterFloor.getBlockLight(floorLight);
+        }
+        
+        /**
+         * Gets the captured light of the block at the given coordinates, if
+         * it is the floor of an indexed run of water, and was captured
+         * recently enough. Captured light that is too old is not used, and
+         * its chunk is queued to be captured again.
+         * 
+         * @param x The block X coordinate.
+         * @param y The block Y coordinate.
+         * @param z The block Z coordinate.
+         * @return The packed light of the floor, or
+         *         {@link ChunkWaterFloor#UNKNOWN_LIGHT} if it must be read
+         *         from the {@link World}.
+         */
+        private int getFloorLight(final int x, final int y, final int z) {
+            
+            final long key = WaterFloorIndex.key(x >> 4, z >> 4);
+            final ChunkWaterFloor floor = this.chunks.get(key);
+            if (floor == null) {
+                return ChunkWaterFloor.UNKNOWN_LIGHT;
+            }
+            
+            final int floorLight = floor.getFloorLight(x & 15, y, z & 15);
+            if (floorLight != ChunkWaterFloor.UNKNOWN_LIGHT && this.tick - floor.getCapturedTick() > MAX_LIGHT_AGE_TICKS) {
+                this.pending.add(key);
+                return ChunkWaterFloor.UNKNOWN_LIGHT;
+            }
+            return floorLight;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getMinHeight() {
+            return this.blockSource.getMinHeight();
+        }
+        
+        /**
+         * {@inheritDoc}
+         * <p>
+         * The {@link FloorIndexFile} is only consulted for columns that have
+         * no live data yet, and have not changed since their chunk was
+         * loaded. It may be older than the {@link World}, so the first time
+         * that a column is consulted, its whole run is checked: the top of
+         * the run must still be water, and walking down from it must still
+         * find the same floor. A column that no longer matches is not
+         * consulted again until its chunk has been computed.
+         */
+        @Override
+        public int getIndexedFloorY(final int x, final int y, final int z) {
+            
+            final ChunkWaterFloor floor = this.chunks.get(WaterFloorIndex.key(x >> 4, z >> 4));
+            if (floor == null) {
+                return ChunkWaterFloor.UNKNOWN;
+            }
+            
+            final int floorY = floor.getFloorY(x & 15, y, z & 15);
+            if (floorY != ChunkWaterFloor.UNKNOWN || this.floorFile == null || !floor.isUnchangedPlaceholder(x & 15, z & 15)) {
+                return floorY;
+            }
+            
+            final int run = this.floorFile.getRun(x, y, z);
+            if (run == WaterColumn.NO_WATER) {
+                return ChunkWaterFloor.UNKNOWN;
+            }
+            final int fileFloorY = WaterColumn.getFloor(run);
+            if (floor.isVerifiedPlaceholder(x & 15, z & 15)) {
+                return fileFloorY;
+            }
+            
+            final int topY = WaterColumn.getTop(run);
+            if (!ColumnScanner.isWater(this.blockSource, x, topY, z) || ColumnScanner.findFloorY(this.blockSource, x, topY, z, this.blockSource.getMinHeight()) != fileFloorY) {
+                floor.rejectPlaceholder(x & 15, z & 15);
+                return ChunkWaterFloor.UNKNOWN;
+            }
+            floor.verifyPlaceholder(x & 15, z & 15);
+            return fileFloorY;
+        }
+    }
+    
+    /**
+     * Constructs a new {@link WaterFloorIndex}.
+     * 
+     * @param plugin The {@link Plugin} that owns the index.
+     * @param scheduler The {@link TaskScheduler} that the capture tasks are
+     *                  run with.
+     */
+    public WaterFloorIndex(@NotNull final Plugin plugin, @NotNull final TaskScheduler scheduler) {
+        this.plugin = plugin;
+        this.scheduler = scheduler;
+        this.floorFiles = new ConcurrentHashMap<String, FloorIndexFile>();
+        this.worlds = new ConcurrentHashMap<UUID, WorldIndex>();
+        this.blockSources = new ConcurrentHashMap<UUID, WorldBlockSource>();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "SaferWater Water Floor Index");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Starts the index, mapping any {@link FloorIndexFile}s, queueing all
+     * currently-loaded chunks, and starting the per-tick capture task. Must
+     * be called while the plugin is being enabled.
+     * <p>
+     * Region-threaded servers do not allow the loaded chunks to be listed
+     * from outside of their regions, so only chunks that are loaded after
+     * the index has started are queued there. Until then, the floors of any
+     * other chunks are found by walking the blocks.
+     */
+    public void start() {
+        this.loadFloorFiles();
+        if (!this.scheduler.isRegionized()) {
+            for (final World world : this.plugin.getServer().getWorlds()) {
+                for (final Chunk chunk : world.getLoadedChunks()) {
+                    this.onChunkLoad(chunk);
+                }
+            }
+        }
+        this.captureTask = this.scheduler.runGlobalTimer(this::captureChunks, 1L, 1L);
+    }
+    
+    /**
+     * Stops the index, cancelling the capture task, stopping the background
+     * thread, and freeing all indexed data.
+     */
+    public void stop() {
+        if (this.captureTask != null) {
+            this.captureTask.cancel();
+            this.captureTask = null;
+        }
+        this.executor.shutdownNow();
+        this.worlds.clear();
+        this.blockSources.clear();
+        this.floorFiles.clear();
+    }
+    
+    /**
+     * Maps every {@link FloorIndexFile} in the {@code floors} directory of
+     * the {@link Plugin}, by the name of the {@link World} that it was
+     * written for ({@code <world>.idx}).
+     * <p>
+     * Any {@link FloorIndexFile} that cannot be mapped is skipped, and the
+     * floors of its {@link World} are found as if it did not exist.
+     */
+    private void loadFloorFiles() {
+        
+        final File[] files = new File(this.plugin.getDataFolder(), FLOOR_FILES_DIRECTORY).listFiles((directory, name) -> name.endsWith(FloorIndexFile.EXTENSION));
+        if (files == null) {
+            return;
+        }
+        
+        for (final File file : files) {
+            final String worldName = file.getName().substring(0, file.getName().length() - FloorIndexFile.EXTENSION.length());
+            try {
+                final FloorIndexFile floorFile = FloorIndexFile.open(file.toPath());
+                this.floorFiles.put(worldName, floorFile);
+                this.plugin.getLogger().log(Level.INFO, "Mapped the water floor index of " + floorFile.getChunkCount() + " chunks for world " + worldName + ".");
+            } catch (IOException e) {
+                this.plugin.getLogger().log(Level.WARNING, "Unable to map the water floor index " + file.getName() + ", skipping.");
+                this.plugin.getLogger().log(Level.WARNING, e.getClass().getSimpleName() + " thrown.", e);
+            }
+        }
+    }
+    
+    /**
+     * Packs the chunk coordinates into a single {@code long} key.
+     * 
+     * @param chunkX The chunk X coordinate.
+     * @param chunkZ The chunk Z coordinate.
+     * @return The packed key.
+     */
+    private static long key(final int chunkX, final int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Gets a {@link BlockSource} for the given {@link World}, which answers
+     * {@link BlockSource#getIndexedFloorY(int, int, int)} from this index. The
+     * same instance is reused for every call while the {@link World} is
+     * indexed.
+     * <p>
+     * A {@link World} without any indexed chunks yet is read directly, through
+     * a {@link WorldBlockSource} that is created once and kept until the
+     * {@link World} is unloaded, so that deciding a spawn never allocates.
+     * 
+     * @param world The {@link World}.
+     * @return A {@link BlockSource} for the {@link World}.
+     */
+    @NotNull
+    public BlockSource getBlockSource(@NotNull final World world) {
+        
+        final UUID uid = world.getUID();
+        final WorldIndex worldIndex = this.worlds.get(uid);
+        if (worldIndex != null) {
+            return worldIndex;
+        }
+        
+        final WorldBlockSource blockSource = this.blockSources.get(uid);
+        if (blockSource != null) {
+            return blockSource;
+        }
+        final WorldBlockSource created = new WorldBlockSource(world);
+        final WorldBlockSource existing = this.blockSources.putIfAbsent(uid, created);
+        return existing != null ? existing : created;
+    }
+    
+    /**
+     * Gets the keys of the chunks of the given {@link World} that are
+     * currently loaded, as registered by {@link #onChunkLoad(Chunk)}. This
+     * may be called from any thread, including on a region-threaded server.
+     * <p>
+     * Each key packs the chunk X coordinate into the upper 32 bits, and the
+     * chunk Z coordinate into the lower 32 bits.
+     * 
+     * @param world The {@link World}.
+     * @return A snapshot of the keys of the loaded chunks, which is empty if
+     *         the {@link World} is not indexed.
+     */
+    @NotNull
+    public long[] getLoadedChunks(@NotNull final World world) {
+        final WorldIndex worldIndex = this.worlds.get(world.getUID());
+        if (worldIndex == null) {
+            return new long[0];
+        }
+        return worldIndex.chunks.getKeys();
+    }
+    
+    /**
+     * Registers a newly-loaded {@link Chunk}, queueing it to be captured.
+     * Must be called on the thread that owns the {@link Chunk}.
+     * 
+     * @param chunk The loaded {@link Chunk}.
+     */
+    public void onChunkLoad(@NotNull final Chunk chunk) {
+        final World world = chunk.getWorld();
+        final WorldIndex worldIndex = this.worlds.computeIfAbsent(world.getUID(), uid -> new WorldIndex(world, this.floorFiles.get(world.getName())));
+        final long key = WaterFloorIndex.key(chunk.getX(), chunk.getZ());
+        worldIndex.chunks.put(key, ChunkWaterFloor.placeholder());
+        worldIndex.pending.add(key);
+    }
+    
+    /**
+     * Frees the data of an unloaded {@link Chunk}. Must be called on the
+     * thread that owns the {@link Chunk}.
+     * 
+     * @param chunk The unloaded {@link Chunk}.
+     */
+    public void onChunkUnload(@NotNull final Chunk chunk) {
+        final WorldIndex worldIndex = this.worlds.get(chunk.getWorld().getUID());
+        if (worldIndex == null) {
+            return;
+        }
+        final long key = WaterFloorIndex.key(chunk.getX(), chunk.getZ());
+        worldIndex.chunks.remove(key);
+        worldIndex.pending.remove(key);
+    }
+    
+    /**
+     * Frees the data of all chunks in an unloaded {@link World}.
+     * 
+     * @param world The unloaded {@link World}.
+     */
+    public void onWorldUnload(@NotNull final World world) {
+        this.worlds.remove(world.getUID());
+        this.blockSources.remove(world.getUID());
+    }
+    
+    /**
+     * Invalidates the column containing the given {@link Block}, and queues
+     * its chunk to be recomputed. Must be called on the thread that owns the
+     * {@link Block}.
+     * 
+     * @param block The {@link Block} that changed.
+     */
+    public void onBlockChange(@NotNull final Block block) {
+        
+        final WorldIndex worldIndex = this.worlds.get(block.getWorld().getUID());
+        if (worldIndex == null) {
+            return;
+        }
+        
+        final int x = block.getX();
+        final int z = block.getZ();
+        final long key = WaterFloorIndex.key(x >> 4, z >> 4);
+        final ChunkWaterFloor floor = worldIndex.chunks.get(key);
+        if (floor == null || floor.isChanged(x & 15, z & 15)) {
+            return;
+        }
+        
+        worldIndex.chunks.update(key, current -> {
+            current.invalidate(x & 15, z & 15);
+            return current;
+        });
+        worldIndex.pending.add(key);
+    }
+    
+    /**
+     * Selects a bounded number of pending chunks, and captures each of them
+     * on the thread that owns it. On a single-threaded server, this is the
+     * current thread, so they are captured straight away.
+     */
+    private void captureChunks() {
+        
+        int captured = 0;
+        for (final WorldIndex worldIndex : this.worlds.values()) {
+            worldIndex.tick++;
+            worldIndex.skyDarkening = WorldBlockSource.getSkyDarkening(worldIndex.world);
+        }
+        for (final WorldIndex worldIndex : this.worlds.values()) {
+            
+            synchronized (worldIndex.pending) {
+                final Iterator<Long> iterator = worldIndex.pending.iterator();
+                while (captured < CAPTURES_PER_TICK && iterator.hasNext()) {
+                    
+                    final long key = iterator.next();
+                    if (worldIndex.chunks.get(key) == null) {
+                        iterator.remove();
+                        continue;
+                    }
+                    
+                    final boolean[] began = new boolean[1];
+                    worldIndex.chunks.update(key, current -> {
+                        began[0] = current.beginCapture();
+                        return current;
+                    });
+                    if (!began[0]) {
+                        continue;
+                    }
+                    iterator.remove();
+                    captured++;
+                    
+                    final int chunkX = (int) (key >> 32);
+                    final int chunkZ = (int) key;
+                    this.scheduler.runAtChunk(worldIndex.world, chunkX, chunkZ, () -> this.captureChunk(worldIndex, key, chunkX, chunkZ));
+                }
+            }
+            
+            if (captured >= CAPTURES_PER_TICK) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Captures a single chunk as a {@link ChunkSnapshot}, and submits it to be
+     * computed on the background thread. Must be called on the thread that
+     * owns the chunk, after its capture has begun.
+     * 
+     * @param worldIndex The {@link WorldIndex} of the chunk.
+     * @param key The packed key of the chunk.
+     * @param chunkX The chunk X coordinate.
+     * @param chunkZ The chunk Z coordinate.
+     */
+    private void captureChunk(@NotNull final WorldIndex worldIndex, final long key, final int chunkX, final int chunkZ) {
+        
+        if (!worldIndex.world.isChunkLoaded(chunkX, chunkZ)) {
+            worldIndex.chunks.update(key, current -> {
+                current.abortCapture();
+                return current;
+            });
+            return;
+        }
+        
+        final ChunkSnapshot snapshot = worldIndex.world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false);
+        final int minY = worldIndex.world.getMinHeight();
+        final int maxY = worldIndex.world.getMaxHeight();
+        final int capturedTick = worldIndex.tick;
+        
+        try {
+            this.executor.execute(() -> {
+                try {
+                    final ChunkWaterFloor computed = ChunkWaterFloor.compute(snapshot, minY, maxY, capturedTick);
+                    worldIndex.chunks.update(key, current -> current.merge(computed));
+                } catch (RuntimeException e) {
+                    this.plugin.getLogger().log(Level.WARNING, "Unable to compute the water floor for chunk " + chunkX + ", " + chunkZ + " in " + snapshot.getWorldName() + ".", e);
+                    worldIndex.chunks.update(key, current -> {
+                        current.abortCapture();
+                        return current;
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The index has been stopped.
+        }
+    }
+}
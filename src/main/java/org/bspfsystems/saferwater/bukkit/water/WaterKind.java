@@ -0,0 +1,160 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.water;
+
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Waterlogged;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Classifies {@link Material}s and {@link BlockData} into the kinds of blocks
+ * that matter when searching for the floor of a body of water.
+ * <p>
+ * The classification of each {@link Material} is computed once, so that
+ * {@link BlockData} only needs to be retrieved for {@link Material}s that can
+ * actually be {@link Waterlogged}.
+ */
+public final class WaterKind {
+    
+    /**
+     * Any block that is not otherwise classified.
+     */
+    public static final byte OTHER = 0;
+    
+    /**
+     * Exactly {@link Material#AIR}, which terminates the search for the floor.
+     */
+    public static final byte AIR = 1;
+    
+    /**
+     * {@link Material#WATER}, or a currently-{@link Waterlogged} block.
+     */
+    public static final byte WATER = 2;
+    
+    /**
+     * One of the coral block variants, which continue the search but are not
+     * themselves considered the floor.
+     */
+    public static final byte CORAL = 3;
+    
+    /**
+     * A {@link Material} that may be {@link Waterlogged}, depending on its
+     * {@link BlockData}. This is only returned by {@link #of(Material)}.
+     */
+    public static final byte WATERLOGGABLE = 4;
+    
+    private static final byte[] MATERIAL_KINDS;
+    
+    static {
+        final Material[] materials = Material.values();
+        MATERIAL_KINDS = new byte[materials.length];
+        for (final Material material : materials) {
+            MATERIAL_KINDS[material.ordinal()] = WaterKind.classify(material);
+        }
+    }
+    
+    /**
+     * Prevents instantiation of this utility class.
+     */
+    private WaterKind() {
+        throw new UnsupportedOperationException("WaterKind cannot be instantiated.");
+    }
+    
+    /**
+     * Classifies the given {@link Material}. This is only called once per
+     * {@link Material}, when the table is built.
+     * 
+     * @param material The {@link Material} to classify.
+     * @return The kind of the {@link Material}.
+     */
+    private static byte classify(@NotNull final Material material) {
+        
+        switch (material) {
+            case AIR:
+                return AIR;
+            case WATER:
+                return WATER;
+            case DEAD_TUBE_CORAL_BLOCK:
+            case DEAD_BRAIN_CORAL_BLOCK:
+            case DEAD_BUBBLE_CORAL_BLOCK:
+            case DEAD_FIRE_CORAL_BLOCK:
+            case DEAD_HORN_CORAL_BLOCK:
+            case TUBE_CORAL_BLOCK:
+            case BRAIN_CORAL_BLOCK:
+            case BUBBLE_CORAL_BLOCK:
+            case FIRE_CORAL_BLOCK:
+            case HORN_CORAL_BLOCK:
+                return CORAL;
+            default:
+                break;
+        }
+        
+        if (material.isLegacy() || !material.isBlock()) {
+            return OTHER;
+        }
+        
+        // The declared BlockData type of a Material matches the type that is
+        // created for it, and is available without a running server.
+        final Class<?> dataType = material.data;
+        return dataType != null && Waterlogged.class.isAssignableFrom(dataType) ? WATERLOGGABLE : OTHER;
+    }
+    
+    /**
+     * Gets the kind of the given {@link Material}, which may be
+     * {@link #WATERLOGGABLE} if the {@link BlockData} must be consulted.
+     * 
+     * @param material The {@link Material}.
+     * @return The kind of the {@link Material}.
+     */
+    public static byte of(@NotNull final Material material) {
+        return MATERIAL_KINDS[material.ordinal()];
+    }
+    
+    /**
+     * Resolves the kind of a block from its {@link Material} kind and its
+     * {@link BlockData}. The {@link BlockData} is only inspected if the
+     * {@link Material} kind is {@link #WATERLOGGABLE}.
+     * 
+     * @param materialKind The kind of the {@link Material}, from
+     *                     {@link #of(Material)}.
+     * @param blockData The {@link BlockData} of the block.
+     * @return The resolved kind of the block, never {@link #WATERLOGGABLE}.
+     */
+    public static byte resolve(final byte materialKind, @NotNull final BlockData blockData) {
+        if (materialKind != WATERLOGGABLE) {
+            return materialKind;
+        }
+        return blockData instanceof Waterlogged && ((Waterlogged) blockData).isWaterlogged() ? WATER : OTHER;
+    }
+    
+    /**
+     * Checks if the given kind allows the search for the floor to continue,
+     * meaning it is {@link #WATER} or {@link #CORAL}.
+     * 
+     * @param kind The resolved kind.
+     * @return {@code true} if the kind is {@link #WATER} or {@link #CORAL},
+     *         {@code false} otherwise.
+     */
+    public static boolean isWaterLike(final byte kind) {
+        return kind == WATER || kind == CORAL;
+    }
+}
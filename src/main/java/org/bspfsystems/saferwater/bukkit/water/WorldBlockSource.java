@@ -0,0 +1,141 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.water;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a {@link BlockSource} that reads directly from a live
+ * {@link World}.
+ * <p>
+ * Kinds are read through {@link World#getType(int, int, int)}, so that no
+ * {@link Block} is created, and {@link BlockData} is only read for
+ * {@link Material}s that can be waterlogged.
+ * <p>
+ * The {@link World} only exposes light levels through a {@link Block}, so
+ * every light read creates one. Spawns in indexed chunks read the light of
+ * their floor from the {@link WaterFloorIndex} instead, and only fall back to
+ * a {@link WorldBlockSource} when it is not known.
+ */
+public final class WorldBlockSource implements BlockSource {
+    
+    private final World world;
+    private final int minY;
+    private final int maxY;
+    
+    /**
+     * Constructs a new {@link WorldBlockSource}.
+     * 
+     * @param world The {@link World} to read from.
+     */
+    public WorldBlockSource(@NotNull final World world) {
+        this.world = world;
+        this.minY = world.getMinHeight();
+        this.maxY = world.getMaxHeight();
+    }
+    
+    /**
+     * Gets the amount that the sky light of the given {@link World} is
+     * currently darkened by, from its time of day and its weather, as the
+     * server computes it each tick.
+     * <p>
+     * The server fades rain and thunder in and out over a few seconds, but
+     * only whether it is raining or thundering is known here, so the result
+     * may briefly differ while the weather changes.
+     * 
+     * @param world The {@link World}.
+     * @return The sky darkening (0-11), which is subtracted from the sky
+     *         light of a block to find its combined light level.
+     */
+    public static int getSkyDarkening(@NotNull final World world) {
+        
+        final boolean storm = world.hasStorm();
+        final double rain = storm ? 1.0D - 5.0D / 16.0D : 1.0D;
+        final double thunder = storm && world.isThundering() ? 1.0D - 5.0D / 16.0D : 1.0D;
+        
+        final double day = world.getTime() / 24000.0D - 0.25D;
+        final double dayFraction = day - Math.floor(day);
+        final double timeOfDay = (dayFraction * 2.0D + (0.5D - Math.cos(dayFraction * Math.PI) / 2.0D)) / 3.0D;
+        final double sun = 0.5D + 2.0D * Math.max(-0.25D, Math.min(0.25D, Math.cos(timeOfDay * Math.PI * 2.0D)));
+        return (int) ((1.0D - sun * rain * thunder) * 11.0D);
+    }
+    
+    /**
+     * Gets the {@link World} that this {@link WorldBlockSource} reads from.
+     * 
+     * @return The {@link World}.
+     */
+    @NotNull
+    public World getWorld() {
+        return this.world;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getKind(final int x, final int y, final int z) {
+        if (y < this.minY || y >= this.maxY) {
+            return WaterKind.OTHER;
+        }
+        final byte kind = WaterKind.of(this.world.getType(x, y, z));
+        if (kind != WaterKind.WATERLOGGABLE) {
+            return kind;
+        }
+        return WaterKind.resolve(kind, this.world.getBlockData(x, y, z));
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getLightLevel(final int x, final int y, final int z) {
+        return this.world.getBlockAt(x, y, z).getLightLevel();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSkyLightLevel(final int x, final int y, final int z) {
+        return this.world.getBlockAt(x, y, z).getLightFromSky();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getBlockLightLevel(final int x, final int y, final int z) {
+        return this.world.getBlockAt(x, y, z).getLightFromBlocks();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMinHeight() {
+        return this.minY;
+    }
+}
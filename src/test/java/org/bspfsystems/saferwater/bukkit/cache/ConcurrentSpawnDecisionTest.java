@@ -0,0 +1,811 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.cache;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import org.bspfsystems.saferwater.bukkit.budget.TickBudget;
+import org.bspfsystems.saferwater.bukkit.listener.SaferWaterListener;
+import org.bspfsystems.saferwater.bukkit.listener.SpawnContext;
+import org.bspfsystems.saferwater.bukkit.log.DecisionLog;
+import org.bspfsystems.saferwater.bukkit.record.SpawnRecorder;
+import org.bspfsystems.saferwater.bukkit.scheduler.TaskScheduler;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnFilter;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnProfile;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnProfileTable;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnProfiles;
+import org.bspfsystems.saferwater.bukkit.stats.SpawnStats;
+import org.bspfsystems.saferwater.bukkit.water.ColumnBlockSource;
+import org.bspfsystems.saferwater.bukkit.water.ColumnScanner;
+import org.bspfsystems.saferwater.bukkit.water.WaterFloorIndex;
+import org.bspfsystems.saferwater.bukkit.water.WaterKind;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.block.Block;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Zombie;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the {@link DenialCache}, {@link SpawnProfileTable}, and
+ * {@link SpawnStats} from many threads at once, as spawns are decided in
+ * parallel on region-threaded servers, both directly and through the
+ * {@link SaferWaterListener}.
+ * <p>
+ * The {@link World}s are stand-ins that only know their name, height, and
+ * {@link Biome}s, and every column of blocks is the same
+ * {@link ColumnBlockSource}. The ticks of the {@link DenialCache} are run by
+ * the tests themselves, through a stand-in {@link BukkitScheduler}.
+ */
+public final class ConcurrentSpawnDecisionTest {
+    
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 20_000;
+    private static final int MIN_Y = -64;
+    private static final int MAX_Y = 320;
+    private static final int FLOOR_Y = 40;
+    private static final int SPAWN_Y = 62;
+    private static final int COLUMNS = 8;
+    private static final long TIMEOUT_SECONDS = 60L;
+    
+    /**
+     * A unit of work that is run on each of the threads.
+     */
+    @FunctionalInterface
+    private interface Worker {
+        
+        /**
+         * Runs the work of a single thread.
+         * 
+         * @param thread The index of the thread, from {@code 0}.
+         * @throws Exception If the work fails.
+         */
+        void run(int thread) throws Exception;
+    }
+    
+    /**
+     * A {@link SpawnContext} of a single-threaded stand-in server, whose
+     * components are never ticked, and whose {@link DenialCache} may be
+     * disabled.
+     */
+    private static final class ListenerContext implements SpawnContext {
+        
+        private final SpawnProfileTable spawnProfileTable;
+        private final SpawnStats spawnStats;
+        private final WaterFloorIndex waterFloorIndex;
+        private final DenialCache denialCache;
+        private final ChunkBatchCache chunkBatchCache;
+        private final SpawnerCache spawnerCache;
+        private final TickBudget tickBudget;
+        private final DecisionLog decisionLog;
+        private final SpawnRecorder spawnRecorder;
+        
+        /**
+         * Constructs and starts the components of a new
+         * {@link ListenerContext}.
+         * 
+         * @param spawnProfileTable The {@link SpawnProfileTable} to decide
+         *                          spawns with.
+         * @param denialCached {@code true} if the {@link DenialCache} is
+         *                     enabled, {@code false} otherwise.
+         */
+        private ListenerContext(@NotNull final SpawnProfileTable spawnProfileTable, final boolean denialCached) {
+            
+            final TaskScheduler scheduler = ConcurrentSpawnDecisionTest.newScheduler(new AtomicReference<Runnable>());
+            final Plugin plugin = (Plugin) Proxy.newProxyInstance(Plugin.class.getClassLoader(), new Class<?>[] {Plugin.class}, (proxy, method, args) -> {
+                throw new UnsupportedOperationException(method.getName());
+            });
+            final File dataFolder = new File(System.getProperty("java.io.tmpdir"), "saferwater-" + UUID.randomUUID());
+            
+            this.spawnProfileTable = spawnProfileTable;
+            this.spawnStats = new SpawnStats();
+            this.waterFloorIndex = new WaterFloorIndex(plugin, scheduler);
+            this.denialCache = new DenialCache(scheduler);
+            this.chunkBatchCache = new ChunkBatchCache(scheduler);
+            this.spawnerCache = new SpawnerCache(scheduler);
+            this.tickBudget = new TickBudget(scheduler);
+            this.decisionLog = new DecisionLog(dataFolder, Logger.getAnonymousLogger());
+            this.spawnRecorder = new SpawnRecorder(dataFolder, Logger.getAnonymousLogger());
+            
+            this.denialCache.configure(new DenialCacheSettings(denialCached, DenialCacheSettings.DEFAULT.getMaxEntries(), DenialCacheSettings.DEFAULT.getTtlTicks()));
+            this.denialCache.start();
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @NotNull
+        public SpawnProfileTable getSpawnProfileTable() {
+            return this.spawnProfileTable;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @NotNull
+        public SpawnStats getSpawnStats() {
+            return this.spawnStats;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @NotNull
+        public WaterFloorIndex getWaterFloorIndex() {
+            return this.waterFloorIndex;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @NotNull
+        public DenialCache getDenialCache() {
+            return this.denialCache;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @NotNull
+        public ChunkBatchCache getChunkBatchCache() {
+            return this.chunkBatchCache;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @NotNull
+        public SpawnerCache getSpawnerCache() {
+            return this.spawnerCache;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @NotNull
+        public TickBudget getTickBudget() {
+            return this.tickBudget;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @NotNull
+        public DecisionLog getDecisionLog() {
+            return this.decisionLog;
+        }
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @NotNull
+        public SpawnRecorder getSpawnRecorder() {
+            return this.spawnRecorder;
+        }
+        
+        /**
+         * Not called, as no {@link World} is loaded during the test.
+         * 
+         * @param world The loaded {@link World}.
+         * @throws UnsupportedOperationException Always.
+         */
+        @Override
+        public void onWorldLoad(@NotNull final World world) throws UnsupportedOperationException {
+            throw new UnsupportedOperationException("onWorldLoad");
+        }
+        
+        /**
+         * Not called, as no {@link World} is unloaded during the test.
+         * 
+         * @param world The unloaded {@link World}.
+         * @throws UnsupportedOperationException Always.
+         */
+        @Override
+        public void onWorldUnload(@NotNull final World world) throws UnsupportedOperationException {
+            throw new UnsupportedOperationException("onWorldUnload");
+        }
+        
+        /**
+         * Not called, as no commands are sent during the test.
+         * 
+         * @param player The {@link Player} the commands are sent to.
+         * @param commands The names of the commands sent to the
+         *                 {@link Player}.
+         * @throws UnsupportedOperationException Always.
+         */
+        @Override
+        public void onPlayerCommandSend(@NotNull final Player player, @NotNull final Collection<String> commands) throws UnsupportedOperationException {
+            throw new UnsupportedOperationException("onPlayerCommandSend");
+        }
+        
+        /**
+         * Stops the started components.
+         */
+        private void stop() {
+            this.denialCache.stop();
+            this.waterFloorIndex.stop();
+        }
+    }
+    
+    /**
+     * Checks that a denial recorded on one thread is always seen by the same
+     * thread straight away, and that an invalidation is never lost, while the
+     * other threads keep moving the entries around it in the same tables.
+     * An invalidation leaves its entry in place, so once the threads are
+     * done, every section that was ever denied must still be held, and must
+     * expire after its time to live.
+     * 
+     * @throws InterruptedException If the test is interrupted.
+     */
+    @Test
+    public void testInvalidationsAreNeverLost() throws InterruptedException {
+        
+        final int ttlTicks = 100;
+        final int columns = 32;
+        final AtomicReference<Runnable> tick = new AtomicReference<Runnable>();
+        final DenialCache denialCache = new DenialCache(ConcurrentSpawnDecisionTest.newScheduler(tick));
+        denialCache.configure(new DenialCacheSettings(true, 1 << 16, ttlTicks));
+        denialCache.start();
+        
+        final World world = ConcurrentSpawnDecisionTest.newWorld("world", Biome.OCEAN);
+        final SpawnDecider spawnDecider = new SpawnDecider(SpawnFilter.EMPTY, 0, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL);
+        ConcurrentSpawnDecisionTest.runThreads(thread -> {
+            for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                
+                final int x = (thread << 4) + 3;
+                final int y = ((iteration & 7) << 4) + 5;
+                final int z = ((iteration % columns) << 4) + 7;
+                denialCache.recordDenied(world, spawnDecider, x, y, z);
+                if (!denialCache.isDenied(world, spawnDecider, x, y, z)) {
+                    throw new AssertionError("Denial lost at " + x + ", " + y + ", " + z);
+                }
+                denialCache.invalidate(world, x, y, z);
+                if (denialCache.isDenied(world, spawnDecider, x, y, z)) {
+                    throw new AssertionError("Invalidation lost at " + x + ", " + y + ", " + z);
+                }
+            }
+            for (int column = 0; column < columns; column++) {
+                denialCache.recordDenied(world, spawnDecider, (thread << 4) + 3, SPAWN_Y, (column << 4) + 7);
+            }
+        });
+        
+        final long calls = (long) THREADS * ITERATIONS;
+        Assertions.assertEquals(calls, denialCache.getHits());
+        Assertions.assertEquals(calls, denialCache.getMisses());
+        Assertions.assertEquals(calls, denialCache.getInvalidations());
+        Assertions.assertEquals(0L, denialCache.getEvictions());
+        final Set<Integer> sections = new HashSet<Integer>();
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            sections.add(((iteration & 7) << 8) | (iteration % columns));
+        }
+        for (int column = 0; column < columns; column++) {
+            sections.add(((SPAWN_Y >> 4) << 8) | column);
+        }
+        Assertions.assertEquals(THREADS * sections.size(), denialCache.getSize());
+        
+        for (int count = 1; count < ttlTicks; count++) {
+            tick.get().run();
+        }
+        Assertions.assertTrue(denialCache.isDenied(world, spawnDecider, 3, SPAWN_Y, 7));
+        tick.get().run();
+        for (int thread = 0; thread < THREADS; thread++) {
+            for (int column = 0; column < columns; column++) {
+                Assertions.assertFalse(denialCache.isDenied(world, spawnDecider, (thread << 4) + 3, SPAWN_Y, (column << 4) + 7));
+            }
+        }
+        denialCache.stop();
+    }
+    
+    /**
+     * Checks a small {@link DenialCache} that keeps filling up, expiring,
+     * and evicting entries while the ticks run on their own thread. No
+     * {@link SpawnDecider} may ever be denied from an entry recorded by
+     * another, every lookup must be counted exactly once, and the cache may
+     * never hold more than its maximum number of entries.
+     * 
+     * @throws InterruptedException If the test is interrupted.
+     */
+    @Test
+    public void testChurnKeepsCountersAndBounds() throws InterruptedException {
+        
+        final int maxEntries = 64;
+        final int ttlTicks = 3;
+        final AtomicReference<Runnable> tick = new AtomicReference<Runnable>();
+        final DenialCache denialCache = new DenialCache(ConcurrentSpawnDecisionTest.newScheduler(tick));
+        denialCache.configure(new DenialCacheSettings(true, maxEntries, ttlTicks));
+        denialCache.start();
+        
+        final World world = ConcurrentSpawnDecisionTest.newWorld("world", Biome.OCEAN);
+        final SpawnDecider recorded = new SpawnDecider(SpawnFilter.EMPTY, 0, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL);
+        final SpawnDecider other = new SpawnDecider(SpawnFilter.EMPTY, 0, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL);
+        final AtomicLong lookups = new AtomicLong();
+        final AtomicBoolean ticking = new AtomicBoolean(true);
+        final Thread ticker = new Thread(() -> {
+            while (ticking.get()) {
+                tick.get().run();
+                Thread.yield();
+            }
+        }, "Ticker");
+        ticker.start();
+        
+        try {
+            ConcurrentSpawnDecisionTest.runThreads(thread -> {
+                long count = 0L;
+                for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                    
+                    final int x = ((iteration * 31 + thread) & 15) << 4;
+                    final int y = (iteration % 20) << 4;
+                    final int z = ((iteration * 17) & 7) << 4;
+                    denialCache.recordDenied(world, recorded, x, y, z);
+                    denialCache.isDenied(world, recorded, x, y, z);
+                    count++;
+                    if (denialCache.isDenied(world, other, x, y, z)) {
+                        throw new AssertionError("Denied from another decider at " + x + ", " + y + ", " + z);
+                    }
+                    count++;
+                    if ((iteration & 15) == 0) {
+                        denialCache.invalidate(world, x, y, z);
+                    }
+                    if (denialCache.getSize() > maxEntries) {
+                        throw new AssertionError("Too many entries: " + denialCache.getSize());
+                    }
+                }
+                lookups.addAndGet(count);
+            });
+        } finally {
+            ticking.set(false);
+            ticker.join();
+        }
+        
+        Assertions.assertEquals(lookups.get(), denialCache.getHits() + denialCache.getMisses());
+        Assertions.assertTrue(denialCache.getSize() <= maxEntries);
+        
+        for (int count = 0; count < ttlTicks; count++) {
+            tick.get().run();
+        }
+        for (int x = 0; x < 256; x += 16) {
+            for (int y = 0; y < 320; y += 16) {
+                for (int z = 0; z < 128; z += 16) {
+                    Assertions.assertFalse(denialCache.isDenied(world, recorded, x, y, z));
+                }
+            }
+        }
+        denialCache.stop();
+    }
+    
+    /**
+     * Decides the same spawns from many threads, as the listener does, while
+     * the {@link World}s are bound to and unbound from the
+     * {@link SpawnProfileTable} on another thread. Every spawn must be decided
+     * by the {@link SpawnDecider} of its {@link World} and {@link Biome}, the
+     * {@link DenialCache} must never change a decision, and the
+     * {@link SpawnStats} must hold exactly the counts of a single-threaded
+     * run.
+     * 
+     * @throws InterruptedException If the test is interrupted.
+     */
+    @Test
+    public void testDecisionsAndStatsMatchSingleThreadedRun() throws InterruptedException {
+        
+        final Map<Biome, SpawnProfile> biomeProfiles = new EnumMap<Biome, SpawnProfile>(Biome.class);
+        biomeProfiles.put(Biome.DEEP_OCEAN, new SpawnProfile(null, SpawnProfile.INHERIT, SpawnDecider.MAX_LIGHT_LEVEL, Collections.emptyMap()));
+        final SpawnProfiles spawnProfiles = SpawnProfiles.compile(new SpawnDecider(SpawnFilter.EMPTY, 0, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL), biomeProfiles, Collections.singletonMap("lit", new SpawnProfile(null, SpawnProfile.INHERIT, 0, Collections.emptyMap())));
+        final World[] worlds = {
+                ConcurrentSpawnDecisionTest.newWorld("world", Biome.OCEAN, Biome.DEEP_OCEAN),
+                ConcurrentSpawnDecisionTest.newWorld("lit", Biome.DEEP_OCEAN, Biome.PLAINS, Biome.RIVER)
+        };
+        final ColumnBlockSource source = new ColumnBlockSource(MIN_Y, MAX_Y)
+                .fill(MIN_Y, 39, WaterKind.OTHER)
+                .fill(40, SPAWN_Y, WaterKind.WATER)
+                .light(40, 7, 0);
+        final EntityType[] types = {EntityType.ZOMBIE, EntityType.DROWNED, EntityType.GUARDIAN};
+        final SpawnReason[] reasons = {SpawnReason.NATURAL, SpawnReason.SPAWNER, SpawnReason.REINFORCEMENTS};
+        
+        final Map<String, long[]> expected = new HashMap<String, long[]>();
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            final World world = worlds[iteration & 1];
+            final int x = (iteration % 48) << 4;
+            final SpawnDecider spawnDecider = spawnProfiles.getDecider(world.getName(), world.getBiome(x, SPAWN_Y, 0));
+            final int category = ConcurrentSpawnDecisionTest.toCategory(spawnDecider.decideWater(source, x, SPAWN_Y, 0));
+            expected.computeIfAbsent(world.getName(), name -> new long[SpawnStats.CATEGORIES])[category] += THREADS;
+        }
+        
+        final AtomicReference<Runnable> tick = new AtomicReference<Runnable>();
+        final DenialCache denialCache = new DenialCache(ConcurrentSpawnDecisionTest.newScheduler(tick));
+        denialCache.start();
+        final SpawnStats spawnStats = new SpawnStats();
+        final AtomicReference<SpawnProfileTable> spawnProfileTable = new AtomicReference<SpawnProfileTable>(spawnProfiles.bind(List.of(worlds)));
+        final AtomicBoolean rebinding = new AtomicBoolean(true);
+        final Thread rebinder = new Thread(() -> {
+            int count = 0;
+            while (rebinding.get()) {
+                final World world = worlds[count++ & 1];
+                spawnProfileTable.set(spawnProfileTable.get().withoutWorld(world));
+                tick.get().run();
+                spawnProfileTable.set(spawnProfileTable.get().withWorld(world));
+            }
+        }, "Rebinder");
+        rebinder.start();
+        
+        try {
+            ConcurrentSpawnDecisionTest.runThreads(thread -> {
+                for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                    
+                    final long startNanos = System.nanoTime();
+                    final World world = worlds[iteration & 1];
+                    final int x = (iteration % 48) << 4;
+                    final SpawnDecider spawnDecider = spawnProfileTable.get().getDecider(world, x, SPAWN_Y, 0);
+                    if (spawnDecider != spawnProfiles.getDecider(world.getName(), world.getBiome(x, SPAWN_Y, 0))) {
+                        throw new AssertionError("Wrong decider in " + world.getName() + " at " + x);
+                    }
+                    
+                    final int category;
+                    if (spawnDecider.isInScope(x, SPAWN_Y, 0) && denialCache.isDenied(world, spawnDecider, x, SPAWN_Y, 0) && ColumnScanner.isWater(source, x, SPAWN_Y, 0)) {
+                        category = SpawnStats.DENIED;
+                    } else {
+                        category = ConcurrentSpawnDecisionTest.toCategory(spawnDecider.decideWater(source, x, SPAWN_Y, 0));
+                        if (category == SpawnStats.DENIED) {
+                            denialCache.recordDenied(world, spawnDecider, x, SPAWN_Y, 0);
+                        }
+                    }
+                    spawnStats.record(types[(iteration + thread) % types.length], reasons[iteration % reasons.length], world, category, System.nanoTime() - startNanos);
+                }
+            });
+        } finally {
+            rebinding.set(false);
+            rebinder.join();
+        }
+        
+        final long total = (long) THREADS * ITERATIONS;
+        final Map<String, long[]> worldCounts = spawnStats.getWorldCounts();
+        Assertions.assertEquals(expected.keySet(), worldCounts.keySet());
+        final long[] expectedTotals = new long[SpawnStats.CATEGORIES];
+        for (final Map.Entry<String, long[]> entry : expected.entrySet()) {
+            Assertions.assertArrayEquals(entry.getValue(), worldCounts.get(entry.getKey()), entry::getKey);
+            for (int category = 0; category < SpawnStats.CATEGORIES; category++) {
+                expectedTotals[category] += entry.getValue()[category];
+            }
+        }
+        Assertions.assertArrayEquals(expectedTotals, spawnStats.getTotals());
+        Assertions.assertTrue(expectedTotals[SpawnStats.DENIED] > 0L && expectedTotals[SpawnStats.ALLOWED] > 0L);
+        
+        long typeTotal = 0L;
+        for (final long[] counts : spawnStats.getTypeCounts().values()) {
+            typeTotal += SpawnStats.total(counts);
+        }
+        long reasonTotal = 0L;
+        for (final long[] counts : spawnStats.getReasonCounts().values()) {
+            reasonTotal += SpawnStats.total(counts);
+        }
+        Assertions.assertEquals(total, typeTotal);
+        Assertions.assertEquals(total, reasonTotal);
+        Assertions.assertEquals(total, spawnStats.getLatencies().getCount());
+        Assertions.assertEquals(total, denialCache.getHits() + denialCache.getMisses());
+        denialCache.stop();
+    }
+    
+    /**
+     * Decides the same spawns through two {@link SaferWaterListener}s from
+     * many threads, one with the {@link DenialCache} and one without it,
+     * while another thread keeps lighting and darkening the floors of their
+     * columns and invalidating them, as a block change does. Whenever no
+     * floor changed while a spawn was being decided, both
+     * {@link SaferWaterListener}s must have decided it from the current
+     * floor, so a cached denial must never outlive the change that lit or
+     * darkened its floor.
+     * <p>
+     * The spawns are for {@link SpawnReason#REINFORCEMENTS}, which are not
+     * batched by the {@link ChunkBatchCache}, so that each is decided from
+     * the blocks as they are at the time.
+     * 
+     * @throws InterruptedException If the test is interrupted.
+     */
+    @Test
+    public void testListenerDecisionsAgreeUnderInvalidation() throws InterruptedException {
+        
+        final AtomicIntegerArray lit = new AtomicIntegerArray(COLUMNS);
+        final AtomicLongArray versions = new AtomicLongArray(COLUMNS);
+        final World world = ConcurrentSpawnDecisionTest.newWorld("world", lit);
+        final SpawnDecider spawnDecider = new SpawnDecider(SpawnFilter.compile(List.of(Zombie.class), SpawnFilter.getDefaultReasons()), 0, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL);
+        final SpawnProfileTable spawnProfileTable = SpawnProfiles.compile(spawnDecider, Collections.emptyMap(), Collections.emptyMap()).bind(List.of(world));
+        final ListenerContext cachedContext = new ListenerContext(spawnProfileTable, true);
+        final ListenerContext uncachedContext = new ListenerContext(spawnProfileTable, false);
+        final SaferWaterListener cachedListener = new SaferWaterListener(cachedContext);
+        final SaferWaterListener uncachedListener = new SaferWaterListener(uncachedContext);
+        final DenialCache denialCache = cachedContext.getDenialCache();
+        
+        final Location[] locations = new Location[COLUMNS];
+        for (int column = 0; column < COLUMNS; column++) {
+            locations[column] = new Location(world, (column << 4) + 3.5D, SPAWN_Y, 7.5D);
+            lit.set(column, column & 1);
+        }
+        
+        final AtomicBoolean changing = new AtomicBoolean(true);
+        final Thread changer = new Thread(() -> {
+            int count = 0;
+            while (changing.get()) {
+                final int column = count++ % COLUMNS;
+                versions.incrementAndGet(column);
+                lit.set(column, 1 - lit.get(column));
+                denialCache.invalidate(world, (column << 4) + 3, FLOOR_Y - 1, 7);
+                versions.incrementAndGet(column);
+                Thread.yield();
+            }
+        }, "Changer");
+        changer.start();
+        
+        final LongAdder checkedDenied = new LongAdder();
+        final LongAdder checkedAllowed = new LongAdder();
+        try {
+            ConcurrentSpawnDecisionTest.runThreads(thread -> {
+                for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                    
+                    final int column = (iteration + thread) % COLUMNS;
+                    final long version = versions.get(column);
+                    final boolean expected = lit.get(column) == 1;
+                    final boolean cached = cachedListener.onPreCreatureSpawn(EntityType.ZOMBIE, SpawnReason.REINFORCEMENTS, locations[column], null);
+                    final boolean uncached = uncachedListener.onPreCreatureSpawn(EntityType.ZOMBIE, SpawnReason.REINFORCEMENTS, locations[column], null);
+                    if ((version & 1L) != 0L || versions.get(column) != version) {
+                        continue;
+                    }
+                    
+                    if (cached != expected || uncached != expected) {
+                        throw new AssertionError("Column " + column + " with a " + (expected ? "lit" : "dark") + " floor was " + (cached ? "denied" : "allowed") + " with the cache and " + (uncached ? "denied" : "allowed") + " without it");
+                    }
+                    (expected ? checkedDenied : checkedAllowed).increment();
+                }
+            });
+        } finally {
+            changing.set(false);
+            changer.join();
+        }
+        
+        for (int column = 0; column < COLUMNS; column++) {
+            final boolean expected = lit.get(column) == 1;
+            Assertions.assertEquals(expected, cachedListener.onPreCreatureSpawn(EntityType.ZOMBIE, SpawnReason.REINFORCEMENTS, locations[column], null));
+            Assertions.assertEquals(expected, uncachedListener.onPreCreatureSpawn(EntityType.ZOMBIE, SpawnReason.REINFORCEMENTS, locations[column], null));
+        }
+        Assertions.assertTrue(checkedDenied.sum() > 0L && checkedAllowed.sum() > 0L);
+        Assertions.assertTrue(denialCache.getHits() > 0L && denialCache.getInvalidations() > 0L);
+        Assertions.assertEquals(0L, uncachedContext.getDenialCache().getHits());
+        cachedContext.stop();
+        uncachedContext.stop();
+    }
+    
+    /**
+     * Runs the given {@link Worker} on {@link #THREADS} threads, all started
+     * at once, and fails if any of them fails or does not finish in time.
+     * 
+     * @param worker The {@link Worker} to run.
+     * @throws InterruptedException If the test is interrupted.
+     */
+    private static void runThreads(@NotNull final Worker worker) throws InterruptedException {
+        
+        final CountDownLatch start = new CountDownLatch(1);
+        final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int index = 0; index < THREADS; index++) {
+            final int thread = index;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    worker.run(thread);
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }, "Worker " + thread));
+        }
+        
+        threads.forEach(Thread::start);
+        start.countDown();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        for (final Thread thread : threads) {
+            thread.join(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            Assertions.assertFalse(thread.isAlive(), () -> thread.getName() + " did not finish");
+        }
+        
+        final Throwable failure = failures.peek();
+        if (failure != null) {
+            Assertions.fail(failures.size() + " thread(s) failed", failure);
+        }
+    }
+    
+    /**
+     * Gets the {@link SpawnStats} category of a decision, as the listener
+     * counts it.
+     * 
+     * @param decision The packed decision.
+     * @return The category.
+     */
+    private static int toCategory(final long decision) {
+        final int outcome = SpawnDecider.getOutcome(decision);
+        if (outcome == SpawnDecider.DENIED) {
+            return SpawnStats.DENIED;
+        }
+        return outcome == SpawnDecider.DRY ? SpawnStats.SKIPPED_DRY : SpawnStats.ALLOWED;
+    }
+    
+    /**
+     * Creates a stand-in {@link World} with the given name, whose
+     * {@link Biome}s repeat along the X axis, one per chunk.
+     * 
+     * @param name The name of the {@link World}.
+     * @param biomes The {@link Biome}s of consecutive chunks.
+     * @return The stand-in {@link World}.
+     */
+    @NotNull
+    static World newWorld(@NotNull final String name, @NotNull final Biome... biomes) {
+        
+        final UUID uniqueId = UUID.nameUUIDFromBytes(name.getBytes());
+        return (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[] {World.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                case "toString":
+                    return name;
+                case "getUID":
+                    return uniqueId;
+                case "getMinHeight":
+                    return MIN_Y;
+                case "getMaxHeight":
+                    return MAX_Y;
+                case "getBiome":
+                    return biomes[Math.floorMod((Integer) args[0] >> 4, biomes.length)];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+    
+    /**
+     * Creates a stand-in {@link World} with the given name, holding a body
+     * of water between {@link #FLOOR_Y} and {@link #SPAWN_Y} over stone in
+     * every column. The floor of each chunk along the X axis is fully lit if
+     * its entry in the given {@link AtomicIntegerArray} is {@code 1}, and
+     * dark otherwise.
+     * 
+     * @param name The name of the {@link World}.
+     * @param lit The lit state of the floors of consecutive chunks.
+     * @return The stand-in {@link World}.
+     */
+    @NotNull
+    private static World newWorld(@NotNull final String name, @NotNull final AtomicIntegerArray lit) {
+        
+        final UUID uniqueId = UUID.nameUUIDFromBytes(name.getBytes());
+        final Block[] blocks = {ConcurrentSpawnDecisionTest.newBlock(0), ConcurrentSpawnDecisionTest.newBlock(SpawnDecider.MAX_LIGHT_LEVEL)};
+        return (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[] {World.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                case "toString":
+                    return name;
+                case "getUID":
+                    return uniqueId;
+                case "getMinHeight":
+                    return MIN_Y;
+                case "getMaxHeight":
+                    return MAX_Y;
+                case "getBiome":
+                    return Biome.OCEAN;
+                case "getType":
+                    final int y = (Integer) args[1];
+                    return y < FLOOR_Y ? Material.STONE : y <= SPAWN_Y ? Material.WATER : Material.AIR;
+                case "getBlockAt":
+                    return blocks[lit.get(Math.floorMod((Integer) args[0] >> 4, lit.length()))];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+    
+    /**
+     * Creates a stand-in {@link Block} that is lit by the sky to the given
+     * light level.
+     * 
+     * @param lightLevel The light level.
+     * @return The stand-in {@link Block}.
+     */
+    @NotNull
+    private static Block newBlock(final int lightLevel) {
+        return (Block) Proxy.newProxyInstance(Block.class.getClassLoader(), new Class<?>[] {Block.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getLightLevel":
+                case "getLightFromSky":
+                    return (byte) lightLevel;
+                case "getLightFromBlocks":
+                    return (byte) 0;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+    
+    /**
+     * Creates a {@link TaskScheduler} for a single-threaded stand-in server,
+     * whose repeating task is handed to the given {@link AtomicReference}
+     * instead of being run.
+     * 
+     * @param timer The {@link AtomicReference} that receives the repeating
+     *              task.
+     * @return The {@link TaskScheduler}.
+     */
+    @NotNull
+    static TaskScheduler newScheduler(@NotNull final AtomicReference<Runnable> timer) {
+        
+        final BukkitTask task = (BukkitTask) Proxy.newProxyInstance(BukkitTask.class.getClassLoader(), new Class<?>[] {BukkitTask.class}, (proxy, method, args) -> null);
+        final BukkitScheduler scheduler = (BukkitScheduler) Proxy.newProxyInstance(BukkitScheduler.class.getClassLoader(), new Class<?>[] {BukkitScheduler.class}, (proxy, method, args) -> {
+            if (!method.getName().equals("runTaskTimer")) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            timer.set((Runnable) args[1]);
+            return task;
+        });
+        final Server server = (Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[] {Server.class}, (proxy, method, args) -> scheduler);
+        final Plugin plugin = (Plugin) Proxy.newProxyInstance(Plugin.class.getClassLoader(), new Class<?>[] {Plugin.class}, (proxy, method, args) -> server);
+        return TaskScheduler.create(plugin, Logger.getAnonymousLogger());
+    }
+}
@@ -0,0 +1,289 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.cache;
+
+import java.util.concurrent.atomic.AtomicReference;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnDecider;
+import org.bspfsystems.saferwater.bukkit.spawn.SpawnFilter;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Tests the tables of a single {@link DenialCache.Segment}, with keys chosen
+ * so that they share (or neighbour) the same home index, and the column
+ * stamps of the {@link DenialCache} itself.
+ * <p>
+ * The {@link DenialCache.Segment}s of these tests hold 8 entries, in a table
+ * of 16 indexes.
+ */
+public final class DenialCacheTest {
+    
+    private static final int MAX_ENTRIES = 8;
+    private static final int MASK = 15;
+    private static final int EXPIRY = 100;
+    
+    private static final SpawnDecider SPAWN_DECIDER = new SpawnDecider(SpawnFilter.EMPTY, 0, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL);
+    
+    /**
+     * Checks that removing the first entry of a probe run shifts the later
+     * entries of the run back, including an entry whose home is after the
+     * removed one, and that the run may wrap around the end of the table.
+     * 
+     * @param home The home index of the probe run.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {3, 14, 15})
+    public void testRemoveAtShiftsProbeRun(final int home) {
+        
+        final long[] keys = DenialCacheTest.keysWithHome(1, home, 3);
+        final long next = DenialCacheTest.keysWithHome(1, (home + 1) & MASK, 1)[0];
+        final DenialCache.Segment segment = new DenialCache.Segment(MAX_ENTRIES);
+        for (final long key : keys) {
+            DenialCacheTest.put(segment, key, 0L, 0);
+        }
+        DenialCacheTest.put(segment, next, 0L, 0);
+        Assertions.assertEquals((home + 3) & MASK, DenialCacheTest.indexOf(segment, next));
+        
+        segment.removeAt(DenialCacheTest.indexOf(segment, keys[0]));
+        Assertions.assertEquals(-1, DenialCacheTest.indexOf(segment, keys[0]));
+        Assertions.assertEquals(home, DenialCacheTest.indexOf(segment, keys[1]));
+        Assertions.assertEquals((home + 1) & MASK, DenialCacheTest.indexOf(segment, keys[2]));
+        Assertions.assertEquals((home + 2) & MASK, DenialCacheTest.indexOf(segment, next));
+        Assertions.assertEquals(3, segment.getSize());
+        
+        segment.removeAt(DenialCacheTest.indexOf(segment, keys[2]));
+        Assertions.assertEquals(home, DenialCacheTest.indexOf(segment, keys[1]));
+        Assertions.assertEquals((home + 1) & MASK, DenialCacheTest.indexOf(segment, next));
+        Assertions.assertEquals(2, segment.getSize());
+    }
+    
+    /**
+     * Checks that removing an entry does not shift a later entry of the same
+     * run back past its own home index.
+     */
+    @Test
+    public void testRemoveAtKeepsEntriesAtTheirHome() {
+        
+        final int home = 6;
+        final long[] keys = DenialCacheTest.keysWithHome(1, home, 2);
+        final long later = DenialCacheTest.keysWithHome(1, home + 2, 1)[0];
+        final DenialCache.Segment segment = new DenialCache.Segment(MAX_ENTRIES);
+        DenialCacheTest.put(segment, keys[0], 0L, 0);
+        DenialCacheTest.put(segment, keys[1], 0L, 0);
+        DenialCacheTest.put(segment, later, 0L, 0);
+        
+        segment.removeAt(DenialCacheTest.indexOf(segment, keys[0]));
+        Assertions.assertEquals(home, DenialCacheTest.indexOf(segment, keys[1]));
+        Assertions.assertEquals(home + 2, DenialCacheTest.indexOf(segment, later));
+        Assertions.assertEquals(-1, DenialCacheTest.indexOf(segment, DenialCacheTest.keysWithHome(1, home + 1, 1)[0]));
+    }
+    
+    /**
+     * Checks that purging the expired entries rehashes the rest back to the
+     * front of their probe runs, with their expiries and change numbers.
+     */
+    @Test
+    public void testPurgeExpiredRehashes() {
+        
+        final int home = 9;
+        final long[] keys = DenialCacheTest.keysWithHome(1, home, 3);
+        final DenialCache.Segment segment = new DenialCache.Segment(MAX_ENTRIES);
+        Assertions.assertFalse(segment.put(keys[0], DenialCache.hash(keys[0]), SPAWN_DECIDER, 5, 0L, 0));
+        DenialCacheTest.put(segment, keys[1], 2L, 0);
+        DenialCacheTest.put(segment, keys[2], 3L, 0);
+        
+        segment.purgeExpired(10);
+        Assertions.assertEquals(2, segment.getSize());
+        Assertions.assertEquals(-1, DenialCacheTest.indexOf(segment, keys[0]));
+        Assertions.assertEquals(home, DenialCacheTest.indexOf(segment, keys[1]));
+        Assertions.assertEquals(home + 1, DenialCacheTest.indexOf(segment, keys[2]));
+        Assertions.assertEquals(DenialCache.HIT, DenialCacheTest.lookup(segment, keys[1], EXPIRY - 1, 2L));
+        Assertions.assertEquals(DenialCache.STALE, DenialCacheTest.lookup(segment, keys[1], EXPIRY - 1, 3L));
+        Assertions.assertEquals(DenialCache.HIT, DenialCacheTest.lookup(segment, keys[2], EXPIRY - 1, 3L));
+        Assertions.assertEquals(DenialCache.MISS, DenialCacheTest.lookup(segment, keys[2], EXPIRY, 3L));
+    }
+    
+    /**
+     * Checks that removing the entries of a {@link World} slot rehashes the
+     * entries of the other slots that were interleaved with them.
+     */
+    @Test
+    public void testRemoveSlotRehashes() {
+        
+        final int home = 0;
+        final long[] removed = DenialCacheTest.keysWithHome(1, home, 2);
+        final long[] kept = DenialCacheTest.keysWithHome(2, home, 2);
+        final DenialCache.Segment segment = new DenialCache.Segment(MAX_ENTRIES);
+        for (int index = 0; index < 2; index++) {
+            DenialCacheTest.put(segment, removed[index], 0L, 0);
+            DenialCacheTest.put(segment, kept[index], 0L, 0);
+        }
+        
+        segment.removeSlot(1);
+        Assertions.assertEquals(2, segment.getSize());
+        Assertions.assertEquals(home, DenialCacheTest.indexOf(segment, kept[0]));
+        Assertions.assertEquals(home + 1, DenialCacheTest.indexOf(segment, kept[1]));
+        Assertions.assertEquals(-1, DenialCacheTest.indexOf(segment, removed[0]));
+        Assertions.assertEquals(-1, DenialCacheTest.indexOf(segment, removed[1]));
+    }
+    
+    /**
+     * Checks that a full {@link DenialCache.Segment} purges its expired
+     * entries before it evicts a live one.
+     */
+    @Test
+    public void testFullSegmentPurgesBeforeEvicting() {
+        
+        final long[] keys = DenialCacheTest.keysWithHome(1, 4, MAX_ENTRIES + 2);
+        final DenialCache.Segment segment = new DenialCache.Segment(MAX_ENTRIES);
+        for (int index = 0; index < MAX_ENTRIES; index++) {
+            Assertions.assertFalse(segment.put(keys[index], DenialCache.hash(keys[index]), SPAWN_DECIDER, index == 0 ? 5 : EXPIRY, 0L, 0));
+        }
+        
+        Assertions.assertFalse(segment.put(keys[MAX_ENTRIES], DenialCache.hash(keys[MAX_ENTRIES]), SPAWN_DECIDER, EXPIRY, 0L, 10));
+        Assertions.assertEquals(-1, DenialCacheTest.indexOf(segment, keys[0]));
+        Assertions.assertEquals(MAX_ENTRIES, segment.getSize());
+        
+        Assertions.assertTrue(segment.put(keys[MAX_ENTRIES + 1], DenialCache.hash(keys[MAX_ENTRIES + 1]), SPAWN_DECIDER, EXPIRY, 0L, 10));
+        Assertions.assertEquals(MAX_ENTRIES, segment.getSize());
+        Assertions.assertNotEquals(-1, DenialCacheTest.indexOf(segment, keys[MAX_ENTRIES + 1]));
+        for (int index = 1; index <= MAX_ENTRIES + 1; index++) {
+            final int found = DenialCacheTest.indexOf(segment, keys[index]);
+            if (found != -1) {
+                Assertions.assertEquals(DenialCache.HIT, DenialCacheTest.lookup(segment, keys[index], 10, 0L));
+            }
+        }
+    }
+    
+    /**
+     * Checks that a block change only stops the cached denial of its chunk
+     * section from being used in its own column, and that a later denial in
+     * the column is used again.
+     */
+    @Test
+    public void testInvalidateOnlyAffectsColumn() {
+        
+        final DenialCache denialCache = new DenialCache(ConcurrentSpawnDecisionTest.newScheduler(new AtomicReference<Runnable>()));
+        denialCache.start();
+        final World world = ConcurrentSpawnDecisionTest.newWorld("world", Biome.OCEAN);
+        
+        denialCache.recordDenied(world, SPAWN_DECIDER, 3, 62, 7);
+        denialCache.invalidate(world, 19, 62, 7);
+        Assertions.assertTrue(denialCache.isDenied(world, SPAWN_DECIDER, 3, 62, 7));
+        
+        denialCache.invalidate(world, 3, 10, 7);
+        Assertions.assertFalse(denialCache.isDenied(world, SPAWN_DECIDER, 3, 62, 7));
+        Assertions.assertTrue(denialCache.isDenied(world, SPAWN_DECIDER, 4, 62, 7));
+        Assertions.assertTrue(denialCache.isDenied(world, SPAWN_DECIDER, 3, 50, 8));
+        Assertions.assertEquals(1L, denialCache.getInvalidations());
+        Assertions.assertEquals(1, denialCache.getSize());
+        
+        denialCache.recordDenied(world, SPAWN_DECIDER, 3, 60, 7);
+        Assertions.assertTrue(denialCache.isDenied(world, SPAWN_DECIDER, 3, 62, 7));
+        Assertions.assertEquals(4L, denialCache.getHits());
+        denialCache.stop();
+    }
+    
+    /**
+     * Checks that a denial decided before a block change in its column is not
+     * used, even if it is only cached after the block change.
+     */
+    @Test
+    public void testDenialDecidedBeforeChange() {
+        
+        final DenialCache denialCache = new DenialCache(ConcurrentSpawnDecisionTest.newScheduler(new AtomicReference<Runnable>()));
+        denialCache.start();
+        final World world = ConcurrentSpawnDecisionTest.newWorld("world", Biome.OCEAN);
+        
+        final long change = denialCache.getChange();
+        denialCache.invalidate(world, 3, 10, 7);
+        denialCache.recordDenied(world, SPAWN_DECIDER, 3, 62, 7, change);
+        Assertions.assertFalse(denialCache.isDenied(world, SPAWN_DECIDER, 3, 62, 7));
+        
+        denialCache.recordDenied(world, SPAWN_DECIDER, 3, 62, 7, denialCache.getChange());
+        Assertions.assertTrue(denialCache.isDenied(world, SPAWN_DECIDER, 3, 62, 7));
+        denialCache.stop();
+    }
+    
+    /**
+     * Finds the given number of keys of the given {@link World} slot whose
+     * home index is the given index.
+     * 
+     * @param slot The {@link World} slot.
+     * @param home The home index.
+     * @param count The number of keys to find.
+     * @return The keys.
+     */
+    @NotNull
+    private static long[] keysWithHome(final int slot, final int home, final int count) {
+        final long[] keys = new long[count];
+        int found = 0;
+        for (int chunkX = 0; found < count; chunkX++) {
+            final long key = DenialCache.key(slot, chunkX, 0, 0);
+            if ((DenialCache.hash(key) & MASK) == home) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+    
+    /**
+     * Inserts the given key, which must not evict another entry.
+     * 
+     * @param segment The {@link DenialCache.Segment} to insert into.
+     * @param key The packed key.
+     * @param change The sequence number of block changes of the entry.
+     * @param currentTick The current tick.
+     */
+    private static void put(@NotNull final DenialCache.Segment segment, final long key, final long change, final int currentTick) {
+        Assertions.assertFalse(segment.put(key, DenialCache.hash(key), SPAWN_DECIDER, EXPIRY, change, currentTick));
+    }
+    
+    /**
+     * Finds the index of the given key.
+     * 
+     * @param segment The {@link DenialCache.Segment} to search.
+     * @param key The packed key.
+     * @return The index, or {@code -1} if the key is not present.
+     */
+    private static int indexOf(@NotNull final DenialCache.Segment segment, final long key) {
+        return segment.indexOf(key, DenialCache.hash(key));
+    }
+    
+    /**
+     * Looks up the given key for {@link #SPAWN_DECIDER}.
+     * 
+     * @param segment The {@link DenialCache.Segment} to search.
+     * @param key The packed key.
+     * @param currentTick The current tick.
+     * @param columnStamp The sequence number of the last change to the
+     *                    column.
+     * @return The result of the lookup.
+     */
+    private static int lookup(@NotNull final DenialCache.Segment segment, final long key, final int currentTick, final long columnStamp) {
+        return segment.lookup(key, DenialCache.hash(key), SPAWN_DECIDER, currentTick, columnStamp);
+    }
+}
@@ -0,0 +1,147 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.offline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.bspfsystems.saferwater.bukkit.water.WaterColumn;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that a {@link FloorIndexFile} written by the {@link RegionAnalyzer}
+ * reads back the same water runs, and that files of another version are
+ * rejected.
+ * <p>
+ * Three chunks are written, in a different order from their keys and from
+ * their slots in the chunk data, each with a single water run in one column.
+ */
+public final class FloorIndexFileTest {
+    
+    private static final int[][] CHUNKS = {
+        {5, -3, 2},
+        {-2, 7, 0},
+        {0, 0, 1}
+    };
+    private static final int FLOOR_Y = -20;
+    private static final int TOP_Y = 62;
+    
+    @TempDir
+    Path directory;
+    
+    /**
+     * Checks that every run reads back from the chunk, column, and Y that it
+     * was written for, and nowhere else.
+     * 
+     * @throws IOException If the file cannot be written or read.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        
+        final FloorIndexFile file = FloorIndexFile.open(this.write());
+        Assertions.assertEquals(CHUNKS.length, file.getChunkCount());
+        
+        for (final int[] chunk : CHUNKS) {
+            final int x = (chunk[0] << 4) + chunk[2];
+            final int z = (chunk[1] << 4) + 15 - chunk[2];
+            final int run = WaterColumn.pack(FLOOR_Y + chunk[2], TOP_Y);
+            Assertions.assertEquals(run, file.getRun(x, FLOOR_Y + chunk[2], z));
+            Assertions.assertEquals(run, file.getRun(x, TOP_Y, z));
+            Assertions.assertEquals(WaterColumn.NO_WATER, file.getRun(x, FLOOR_Y + chunk[2] - 1, z));
+            Assertions.assertEquals(WaterColumn.NO_WATER, file.getRun(x, TOP_Y + 1, z));
+            Assertions.assertEquals(WaterColumn.NO_WATER, file.getRun(x + 1, TOP_Y, z));
+        }
+        Assertions.assertEquals(WaterColumn.NO_WATER, file.getRun(16 * 100, TOP_Y, 0));
+    }
+    
+    /**
+     * Checks that a file with a different version in its header is not
+     * opened.
+     * 
+     * @throws IOException If the file cannot be written.
+     */
+    @Test
+    public void testOtherVersionIsRejected() throws IOException {
+        
+        final Path path = this.write();
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            final ByteBuffer version = ByteBuffer.allocate(4).putInt(0, 2);
+            FloorIndexFile.writeFully(channel.position(4L), version);
+        }
+        
+        final IOException exception = Assertions.assertThrows(IOException.class, () -> FloorIndexFile.open(path));
+        Assertions.assertTrue(exception.getMessage().contains("version 2"), exception::getMessage);
+    }
+    
+    /**
+     * Checks that a file that is not a water floor index is not opened.
+     * 
+     * @throws IOException If the file cannot be written.
+     */
+    @Test
+    public void testOtherMagicIsRejected() throws IOException {
+        
+        final Path path = this.write();
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            FloorIndexFile.writeFully(channel.position(0L), ByteBuffer.allocate(4));
+        }
+        Assertions.assertThrows(IOException.class, () -> FloorIndexFile.open(path));
+    }
+    
+    /**
+     * Writes the {@link #CHUNKS} to a new {@link FloorIndexFile}.
+     * 
+     * @return The {@link Path} of the written file.
+     * @throws IOException If the file cannot be written.
+     */
+    @NotNull
+    private Path write() throws IOException {
+        
+        final long[] keys = new long[CHUNKS.length];
+        final int[] slots = new int[CHUNKS.length];
+        final Path dataPath = this.directory.resolve("chunks.tmp");
+        try (final FileChannel data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            
+            for (int index = 0; index < CHUNKS.length; index++) {
+                final int[] chunk = CHUNKS[index];
+                keys[index] = FloorIndexFile.key(chunk[0], chunk[1]);
+                slots[index] = chunk[2];
+                
+                final ByteBuffer runs = ByteBuffer.allocate(256 * 4);
+                for (int column = 0; column < 256; column++) {
+                    runs.putInt(WaterColumn.NO_WATER);
+                }
+                runs.putInt(((15 - chunk[2]) << 4 | chunk[2]) * 4, WaterColumn.pack(FLOOR_Y + chunk[2], TOP_Y));
+                runs.flip();
+                FloorIndexFile.writeFully(data.position((long) chunk[2] * 256 * 4), runs);
+            }
+            
+            final Path path = this.directory.resolve("world" + FloorIndexFile.EXTENSION);
+            FloorIndexFile.write(path, keys, slots, CHUNKS.length, data);
+            return path;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.offline;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import org.bspfsystems.saferwater.bukkit.water.WaterColumn;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Tests that the {@link RegionAnalyzer} decodes the block states of a
+ * hand-built chunk, read back through the {@link NbtReader}, into the water
+ * runs of its columns.
+ * <p>
+ * The chunk has two sections. The lower one has a palette of air, stone,
+ * a number of filler blocks, and water (last, so that it needs every bit of
+ * its entry), with its entries packed into longs without spanning them. The
+ * upper one is uniformly air, and has no block state data at all.
+ */
+public final class RegionAnalyzerTest {
+    
+    private static final byte TAG_END = 0;
+    private static final byte TAG_BYTE = 1;
+    private static final byte TAG_STRING = 8;
+    private static final byte TAG_LIST = 9;
+    private static final byte TAG_COMPOUND = 10;
+    private static final byte TAG_LONG_ARRAY = 12;
+    
+    private static final int AIR = 0;
+    private static final int STONE = 1;
+    
+    /**
+     * Checks the decoded runs of a column of water over stone, a column of
+     * water at the bottom of the chunk in the last entry of a long, and a
+     * column without water, for palettes of 4, 5, and 7 bits per entry.
+     * 
+     * @param fillers The number of filler blocks in the palette.
+     * @throws IOException If the chunk cannot be read or analyzed.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {0, 14, 62})
+    public void testDecodesPalette(final int fillers) throws IOException {
+        
+        final int water = fillers + 2;
+        final int bits = Math.max(4, 32 - Integer.numberOfLeadingZeros(water));
+        final int perLong = 64 / bits;
+        final long[] data = new long[(4096 + perLong - 1) / perLong];
+        for (int y = 0; y < 16; y++) {
+            RegionAnalyzerTest.set(data, bits, 3, y, 5, y == 0 ? STONE : water);
+            RegionAnalyzerTest.set(data, bits, 11, y, 0, y <= 2 ? water : AIR);
+            RegionAnalyzerTest.set(data, bits, 0, y, 0, y == 0 ? STONE : AIR);
+        }
+        
+        final Map<String, Object> root = NbtReader.readRoot(ByteBuffer.wrap(RegionAnalyzerTest.writeChunk(fillers, data)));
+        final int[] runs = new int[256];
+        Assertions.assertTrue(new RegionAnalyzer.ChunkAnalyzer().analyze((List<?>) root.get("sections"), runs, 0));
+        
+        Assertions.assertEquals(WaterColumn.pack(1, 15), runs[(5 << 4) | 3]);
+        Assertions.assertEquals(WaterColumn.pack(0, 2), runs[11]);
+        Assertions.assertEquals(WaterColumn.NO_WATER, runs[0]);
+    }
+    
+    /**
+     * Sets the palette entry of a block in the packed block state data of a
+     * section.
+     * 
+     * @param data The packed block state data.
+     * @param bits The number of bits per entry.
+     * @param x The X coordinate within the section.
+     * @param y The Y coordinate within the section.
+     * @param z The Z coordinate within the section.
+     * @param entry The palette entry.
+     */
+    private static void set(@NotNull final long[] data, final int bits, final int x, final int y, final int z, final int entry) {
+        final int perLong = 64 / bits;
+        final int index = (y << 8) | (z << 4) | x;
+        data[index / perLong] |= (long) entry << ((index % perLong) * bits);
+    }
+    
+    /**
+     * Writes the NBT data of the chunk.
+     * 
+     * @param fillers The number of filler blocks in the palette of the lower
+     *                section.
+     * @param data The packed block state data of the lower section.
+     * @return The NBT data.
+     * @throws IOException If the data cannot be written.
+     */
+    @NotNull
+    private static byte[] writeChunk(final int fillers, @NotNull final long[] data) throws IOException {
+        
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(TAG_COMPOUND);
+        output.writeUTF("");
+        output.writeByte(TAG_STRING);
+        output.writeUTF("Status");
+        output.writeUTF("minecraft:full");
+        output.writeByte(TAG_LIST);
+        output.writeUTF("sections");
+        output.writeByte(TAG_COMPOUND);
+        output.writeInt(2);
+        
+        output.writeByte(TAG_BYTE);
+        output.writeUTF("Y");
+        output.writeByte(0);
+        output.writeByte(TAG_COMPOUND);
+        output.writeUTF("block_states");
+        output.writeByte(TAG_LIST);
+        output.writeUTF("palette");
+        output.writeByte(TAG_COMPOUND);
+        output.writeInt(fillers + 3);
+        RegionAnalyzerTest.writeBlock(output, "minecraft:air");
+        RegionAnalyzerTest.writeBlock(output, "minecraft:stone");
+        for (int filler = 0; filler < fillers; filler++) {
+            RegionAnalyzerTest.writeBlock(output, "minecraft:filler_" + filler);
+        }
+        RegionAnalyzerTest.writeBlock(output, "minecraft:water");
+        output.writeByte(TAG_LONG_ARRAY);
+        output.writeUTF("data");
+        output.writeInt(data.length);
+        for (final long value : data) {
+            output.writeLong(value);
+        }
+        output.writeByte(TAG_END);
+        output.writeByte(TAG_END);
+        
+        output.writeByte(TAG_BYTE);
+        output.writeUTF("Y");
+        output.writeByte(1);
+        output.writeByte(TAG_COMPOUND);
+        output.writeUTF("block_states");
+        output.writeByte(TAG_LIST);
+        output.writeUTF("palette");
+        output.writeByte(TAG_COMPOUND);
+        output.writeInt(1);
+        RegionAnalyzerTest.writeBlock(output, "minecraft:air");
+        output.writeByte(TAG_END);
+        output.writeByte(TAG_END);
+        
+        output.writeByte(TAG_END);
+        output.flush();
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Writes the payload of a block palette entry with the given name.
+     * 
+     * @param output The {@link DataOutputStream} to write to.
+     * @param name The name of the block.
+     * @throws IOException If the entry cannot be written.
+     */
+    private static void writeBlock(@NotNull final DataOutputStream output, @NotNull final String name) throws IOException {
+        output.writeByte(TAG_STRING);
+        output.writeUTF("Name");
+        output.writeUTF(name);
+        output.writeByte(TAG_END);
+    }
+}
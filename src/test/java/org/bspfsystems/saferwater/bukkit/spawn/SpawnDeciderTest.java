@@ -0,0 +1,354 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.spawn;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Random;
+import org.bspfsystems.saferwater.bukkit.water.ChunkWaterFloor;
+import org.bspfsystems.saferwater.bukkit.water.ColumnBlockSource;
+import org.bspfsystems.saferwater.bukkit.water.ColumnScanner;
+import org.bspfsystems.saferwater.bukkit.water.WaterKind;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Waterlogged;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Tests that a {@link SpawnDecider} decides a spawn alike whether the floor
+ * of its body of water is scanned or already indexed, and that it applies
+ * its {@link SpawnRules} at the right {@link SpawnRule.Stage}.
+ */
+public final class SpawnDeciderTest {
+    
+    private static final int MIN_Y = -64;
+    private static final int MAX_Y = 320;
+    private static final int COLUMNS = 2_000;
+    
+    /**
+     * Checks randomized columns with the given maximum scan depth, comparing
+     * the decision of each water spawn in them from a scan, from the index,
+     * and from the index alone.
+     * 
+     * @param maxScanDepth The maximum scan depth.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2, 5, 16, 40})
+    public void testIndexedFloorMatchesScan(final int maxScanDepth) {
+        
+        final Random random = new Random(maxScanDepth);
+        final SpawnDecider spawnDecider = new SpawnDecider(SpawnFilter.EMPTY, maxScanDepth, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL);
+        for (int column = 0; column < COLUMNS; column++) {
+            
+            final ColumnBlockSource source = SpawnDeciderTest.randomColumn(random);
+            for (int y = 0; y < 100; y++) {
+                if (source.getKind(0, y, 0) != WaterKind.WATER) {
+                    continue;
+                }
+                
+                final int spawnY = y;
+                source.index(ChunkWaterFloor.UNKNOWN);
+                final long scanned = spawnDecider.decideWater(source, 0, spawnY, 0);
+                source.index(ColumnScanner.findFloorY(source, 0, spawnY, 0, MIN_Y));
+                Assertions.assertEquals(scanned, spawnDecider.decideWater(source, 0, spawnY, 0), () -> "decideWater at Y " + spawnY + " with depth " + maxScanDepth);
+                Assertions.assertEquals(scanned, spawnDecider.decideIndexedWater(source, 0, spawnY, 0), () -> "decideIndexedWater at Y " + spawnY + " with depth " + maxScanDepth);
+            }
+        }
+    }
+    
+    /**
+     * Checks that a deep indexed floor is clamped to the maximum scan depth.
+     */
+    @Test
+    public void testIndexedFloorIsClamped() {
+        
+        final ColumnBlockSource source = new ColumnBlockSource(MIN_Y, MAX_Y)
+                .fill(MIN_Y, 9, WaterKind.OTHER)
+                .fill(10, 62, WaterKind.WATER)
+                .light(10, 15, 0)
+                .index(10);
+        
+        final SpawnDecider unbounded = new SpawnDecider(SpawnFilter.EMPTY, 0, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL);
+        Assertions.assertEquals(10, SpawnDecider.getFloorY(unbounded.decideWater(source, 0, 62, 0)));
+        Assertions.assertEquals(SpawnDecider.DENIED, SpawnDecider.getOutcome(unbounded.decideWater(source, 0, 62, 0)));
+        
+        final SpawnDecider bounded = new SpawnDecider(SpawnFilter.EMPTY, 8, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL);
+        Assertions.assertEquals(54, SpawnDecider.getFloorY(bounded.decideWater(source, 0, 62, 0)));
+        Assertions.assertEquals(SpawnDecider.ALLOWED, SpawnDecider.getOutcome(bounded.decideWater(source, 0, 62, 0)));
+        Assertions.assertEquals(54, SpawnDecider.getFloorY(bounded.decideIndexedWater(source, 0, 62, 0)));
+    }
+    
+    /**
+     * Checks that waterlogged slabs and stairs continue the search and become
+     * the floor, that the same blocks without water end it, and that
+     * seagrass (which is not {@link Waterlogged}) is treated like any other
+     * block, as the original walk did.
+     */
+    @Test
+    public void testWaterloggedBlocks() {
+        
+        final SpawnDecider spawnDecider = new SpawnDecider(SpawnFilter.EMPTY, 0, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL);
+        
+        final ColumnBlockSource slab = SpawnDeciderTest.waterColumn()
+                .fill(39, 39, SpawnDeciderTest.kindOf(Material.OAK_SLAB, true));
+        SpawnDeciderTest.assertFloorY(spawnDecider, slab, 39);
+        
+        final ColumnBlockSource drySlab = SpawnDeciderTest.waterColumn()
+                .fill(39, 39, SpawnDeciderTest.kindOf(Material.OAK_SLAB, false));
+        SpawnDeciderTest.assertFloorY(spawnDecider, drySlab, 40);
+        
+        final ColumnBlockSource stairs = SpawnDeciderTest.waterColumn()
+                .fill(35, 39, SpawnDeciderTest.kindOf(Material.OAK_STAIRS, true));
+        SpawnDeciderTest.assertFloorY(spawnDecider, stairs, 35);
+        
+        final ColumnBlockSource mixedStairs = SpawnDeciderTest.waterColumn()
+                .fill(39, 39, SpawnDeciderTest.kindOf(Material.OAK_STAIRS, false))
+                .fill(38, 38, SpawnDeciderTest.kindOf(Material.OAK_STAIRS, true));
+        SpawnDeciderTest.assertFloorY(spawnDecider, mixedStairs, 38);
+        
+        final ColumnBlockSource seagrass = SpawnDeciderTest.waterColumn()
+                .fill(39, 39, SpawnDeciderTest.kindOf(Material.SEAGRASS, false));
+        SpawnDeciderTest.assertFloorY(spawnDecider, seagrass, 40);
+        
+        final ColumnBlockSource seagrassOverWater = SpawnDeciderTest.waterColumn()
+                .fill(39, 39, SpawnDeciderTest.kindOf(Material.SEAGRASS, false))
+                .fill(38, 38, WaterKind.WATER);
+        SpawnDeciderTest.assertFloorY(spawnDecider, seagrassOverWater, 38);
+    }
+    
+    /**
+     * Checks that a {@link YRangeRule} denies spawns at both of its bounds,
+     * exempts spawns just outside of them before the floor is looked for, and
+     * cannot be built with its bounds reversed.
+     */
+    @Test
+    public void testYRangeRuleBoundaries() {
+        
+        final ColumnBlockSource source = SpawnDeciderTest.waterColumn().light(40, 15, 0);
+        final SpawnDecider spawnDecider = SpawnDeciderTest.ruled(45, 55, LightSource.COMBINED, 1, 0);
+        Assertions.assertEquals(SpawnRule.Stage.POSITION, new YRangeRule(45, 55).getStage());
+        Assertions.assertEquals(1, new SpawnRules(SpawnFilter.getDefaultReasons(), Collections.emptyList(), 45, 55, LightSource.COMBINED, 1).compileRules(SpawnRule.Stage.POSITION).length);
+        
+        for (final int y : new int[] {44, 56}) {
+            Assertions.assertFalse(spawnDecider.isInScope(0, y, 0), () -> "isInScope at Y " + y);
+            source.index(ChunkWaterFloor.UNKNOWN);
+            Assertions.assertEquals(SpawnDecider.EXEMPT, SpawnDecider.getOutcome(spawnDecider.decideWater(source, 0, y, 0)), () -> "decideWater at Y " + y);
+            Assertions.assertEquals(0, SpawnDecider.getFloorY(spawnDecider.decideWater(source, 0, y, 0)), () -> "floor of decideWater at Y " + y);
+            source.index(40);
+            Assertions.assertEquals(SpawnDecider.EXEMPT, SpawnDecider.getOutcome(spawnDecider.decideIndexedWater(source, 0, y, 0)), () -> "decideIndexedWater at Y " + y);
+        }
+        for (final int y : new int[] {45, 55}) {
+            Assertions.assertTrue(spawnDecider.isInScope(0, y, 0), () -> "isInScope at Y " + y);
+            source.index(ChunkWaterFloor.UNKNOWN);
+            Assertions.assertEquals(SpawnDecider.DENIED, SpawnDecider.getOutcome(spawnDecider.decideWater(source, 0, y, 0)), () -> "decideWater at Y " + y);
+            source.index(40);
+            Assertions.assertEquals(SpawnDecider.DENIED, SpawnDecider.getOutcome(spawnDecider.decideIndexedWater(source, 0, y, 0)), () -> "decideIndexedWater at Y " + y);
+        }
+        
+        final SpawnDecider single = SpawnDeciderTest.ruled(50, 50, LightSource.COMBINED, 1, 0);
+        Assertions.assertFalse(single.isInScope(0, 49, 0));
+        Assertions.assertTrue(single.isInScope(0, 50, 0));
+        Assertions.assertFalse(single.isInScope(0, 51, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new YRangeRule(51, 50));
+    }
+    
+    /**
+     * Checks that a {@link WaterDepthRule} is only checked once the floor has
+     * been found, counts the spawn block itself, exempts a spawn without
+     * reading the light of its floor, and is checked against the floor as
+     * clamped by the maximum scan depth.
+     */
+    @Test
+    public void testWaterDepthRuleAtFloorStage() {
+        
+        final ColumnBlockSource source = SpawnDeciderTest.waterColumn().light(40, 15, 0).light(60, 15, 0);
+        final SpawnDecider spawnDecider = SpawnDeciderTest.ruled(Integer.MIN_VALUE, Integer.MAX_VALUE, LightSource.COMBINED, 5, 0);
+        Assertions.assertEquals(SpawnRule.Stage.FLOOR, new WaterDepthRule(5).getStage());
+        Assertions.assertEquals(0, spawnDecider.getSpawnRules().compileRules(SpawnRule.Stage.POSITION).length);
+        Assertions.assertTrue(spawnDecider.hasFloorRules());
+        Assertions.assertTrue(spawnDecider.isInScope(0, 43, 0));
+        
+        source.index(ChunkWaterFloor.UNKNOWN);
+        final long shallow = spawnDecider.decideWater(source, 0, 43, 0);
+        Assertions.assertEquals(SpawnDecider.EXEMPT, SpawnDecider.getOutcome(shallow));
+        Assertions.assertEquals(40, SpawnDecider.getFloorY(shallow));
+        Assertions.assertEquals(0, SpawnDecider.getLightLevel(shallow));
+        final long deep = spawnDecider.decideWater(source, 0, 44, 0);
+        Assertions.assertEquals(SpawnDecider.DENIED, SpawnDecider.getOutcome(deep));
+        Assertions.assertEquals(15, SpawnDecider.getLightLevel(deep));
+        
+        source.index(40);
+        Assertions.assertEquals(shallow, spawnDecider.decideIndexedWater(source, 0, 43, 0));
+        Assertions.assertEquals(deep, spawnDecider.decideIndexedWater(source, 0, 44, 0));
+        
+        final SpawnDecider bounded = SpawnDeciderTest.ruled(Integer.MIN_VALUE, Integer.MAX_VALUE, LightSource.COMBINED, 5, 2);
+        final long clamped = bounded.decideIndexedWater(source, 0, 62, 0);
+        Assertions.assertEquals(SpawnDecider.EXEMPT, SpawnDecider.getOutcome(clamped));
+        Assertions.assertEquals(60, SpawnDecider.getFloorY(clamped));
+        source.index(ChunkWaterFloor.UNKNOWN);
+        Assertions.assertEquals(clamped, bounded.decideWater(source, 0, 62, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new WaterDepthRule(0));
+    }
+    
+    /**
+     * Checks that the floor is compared against the minimum light level with
+     * the light of the given {@link LightSource}, with the floor lit more from
+     * the sky than from blocks, and the other way around.
+     * 
+     * @param lightSource The {@link LightSource} to decide with.
+     */
+    @ParameterizedTest
+    @EnumSource(LightSource.class)
+    public void testLightSource(final LightSource lightSource) {
+        
+        final SpawnDecider spawnDecider = SpawnDeciderTest.ruled(Integer.MIN_VALUE, Integer.MAX_VALUE, lightSource, 1, 0);
+        final int[][] levels = {
+            {12, 4},
+            {3, 9}
+        };
+        for (final int[] level : levels) {
+            
+            final int expected;
+            if (lightSource == LightSource.SKY) {
+                expected = level[0];
+            } else if (lightSource == LightSource.BLOCK) {
+                expected = level[1];
+            } else {
+                expected = Math.max(level[0], level[1]);
+            }
+            
+            final ColumnBlockSource source = SpawnDeciderTest.waterColumn().light(40, level[0], level[1]).light(62, 15, 15);
+            Assertions.assertEquals(expected, lightSource.getLightLevel(source, 0, 40, 0));
+            final long decision = spawnDecider.decideWater(source, 0, 62, 0);
+            Assertions.assertEquals(expected, SpawnDecider.getLightLevel(decision), () -> lightSource + " with sky " + level[0] + " and block " + level[1]);
+            Assertions.assertEquals(expected >= 5 ? SpawnDecider.DENIED : SpawnDecider.ALLOWED, SpawnDecider.getOutcome(decision), () -> lightSource + " with sky " + level[0] + " and block " + level[1]);
+        }
+    }
+    
+    /**
+     * Builds a {@link SpawnDecider} with the given {@link SpawnRules}, and a
+     * minimum light level of {@code 5}.
+     * 
+     * @param minY The lowest Y at which spawns are checked.
+     * @param maxY The highest Y at which spawns are checked.
+     * @param lightSource The {@link LightSource} of the light level of the
+     *                    floor.
+     * @param minWaterDepth The minimum depth of water at which spawns are
+     *                      checked.
+     * @param maxScanDepth The maximum scan depth.
+     * @return The {@link SpawnDecider}.
+     */
+    @NotNull
+    private static SpawnDecider ruled(final int minY, final int maxY, @NotNull final LightSource lightSource, final int minWaterDepth, final int maxScanDepth) {
+        final SpawnRules spawnRules = new SpawnRules(SpawnFilter.getDefaultReasons(), Collections.emptyList(), minY, maxY, lightSource, minWaterDepth);
+        return new SpawnDecider(SpawnFilter.EMPTY, spawnRules, maxScanDepth, 5);
+    }
+    
+    /**
+     * Builds a column of water between Y {@code 40} and {@code 62}, over
+     * solid blocks, in the dark.
+     * 
+     * @return The column.
+     */
+    @NotNull
+    private static ColumnBlockSource waterColumn() {
+        return new ColumnBlockSource(MIN_Y, MAX_Y)
+                .fill(MIN_Y, 39, WaterKind.OTHER)
+                .fill(40, 62, WaterKind.WATER);
+    }
+    
+    /**
+     * Resolves the {@link WaterKind} of a block of the given
+     * {@link Material}, as it is read from a {@link org.bukkit.World}.
+     * 
+     * @param material The {@link Material} of the block.
+     * @param waterlogged {@code true} if the block is waterlogged, if it can
+     *                    be.
+     * @return The resolved kind of the block.
+     */
+    private static byte kindOf(@NotNull final Material material, final boolean waterlogged) {
+        
+        final byte materialKind = WaterKind.of(material);
+        if (materialKind != WaterKind.WATERLOGGABLE) {
+            return WaterKind.resolve(materialKind, (BlockData) Proxy.newProxyInstance(BlockData.class.getClassLoader(), new Class<?>[] {BlockData.class}, (proxy, method, args) -> {
+                throw new UnsupportedOperationException(method.getName());
+            }));
+        }
+        return WaterKind.resolve(materialKind, (BlockData) Proxy.newProxyInstance(Waterlogged.class.getClassLoader(), new Class<?>[] {Waterlogged.class}, (proxy, method, args) -> {
+            if (method.getName().equals("isWaterlogged")) {
+                return waterlogged;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }));
+    }
+    
+    /**
+     * Asserts that a spawn at the top of the given column finds the given
+     * floor, and is decided alike from a scan and from the index.
+     * 
+     * @param spawnDecider The {@link SpawnDecider} to decide with.
+     * @param source The column.
+     * @param floorY The expected floor Y.
+     */
+    private static void assertFloorY(@NotNull final SpawnDecider spawnDecider, @NotNull final ColumnBlockSource source, final int floorY) {
+        
+        source.index(ChunkWaterFloor.UNKNOWN);
+        final long scanned = spawnDecider.decideWater(source, 0, 62, 0);
+        Assertions.assertEquals(floorY, SpawnDecider.getFloorY(scanned));
+        Assertions.assertEquals(floorY, ColumnScanner.findFloorY(source, 0, 62, 0, MIN_Y));
+        source.index(floorY);
+        Assertions.assertEquals(scanned, spawnDecider.decideIndexedWater(source, 0, 62, 0));
+    }
+    
+    /**
+     * Builds a random column of water, coral, air, and solid blocks between
+     * Y {@code 0} and {@code 100}, with random light levels, over solid
+     * blocks.
+     * 
+     * @param random The {@link Random} to build the column with.
+     * @return The column.
+     */
+    @NotNull
+    private static ColumnBlockSource randomColumn(@NotNull final Random random) {
+        
+        final ColumnBlockSource source = new ColumnBlockSource(MIN_Y, MAX_Y).fill(MIN_Y, -1, WaterKind.OTHER);
+        for (int y = 0; y < 100; y++) {
+            final int roll = random.nextInt(20);
+            final byte kind;
+            if (roll < 14) {
+                kind = WaterKind.WATER;
+            } else if (roll < 16) {
+                kind = WaterKind.CORAL;
+            } else if (roll < 18) {
+                kind = WaterKind.OTHER;
+            } else {
+                kind = WaterKind.AIR;
+            }
+            source.fill(y, y, kind).light(y, random.nextInt(3) == 0 ? random.nextInt(16) : 0, 0);
+        }
+        return source;
+    }
+}
@@ -0,0 +1,231 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.spawn;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import org.bspfsystems.saferwater.bukkit.water.ColumnBlockSource;
+import org.bspfsystems.saferwater.bukkit.water.ColumnScanner;
+import org.bspfsystems.saferwater.bukkit.water.WaterKind;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Tests that scanning a column of water and deciding a water spawn do not
+ * allocate, once they have been warmed up.
+ * <p>
+ * The allocations of the current thread are read from the
+ * {@link com.sun.management.ThreadMXBean} before and after a large number of
+ * calls, and must average out to (practically) nothing per call.
+ */
+public final class SpawnDecisionAllocationTest {
+    
+    private static final int WARMUP_CALLS = 50_000;
+    private static final int MEASURED_CALLS = 200_000;
+    private static final long MAX_ALLOCATED_BYTES = 1024L;
+    private static final int MIN_Y = -64;
+    private static final int MAX_Y = 320;
+    private static final int SPAWN_Y = 62;
+    
+    private static com.sun.management.ThreadMXBean threadBean;
+    private static volatile long sink;
+    
+    /**
+     * The columns of water that the calls are measured against, each with the
+     * floor that is expected to be found below {@link #SPAWN_Y}.
+     */
+    enum Scenario {
+        
+        /**
+         * A 3-deep lake with a lit floor.
+         */
+        SHALLOW_LAKE(60) {
+            @NotNull
+            @Override
+            ColumnBlockSource build() {
+                return Scenario.base(59)
+                        .fill(60, SPAWN_Y, WaterKind.WATER)
+                        .light(60, 7, 0);
+            }
+        },
+        
+        /**
+         * A 90-deep ocean with a dark floor, spanning several
+         * sections that are all water.
+         */
+        DEEP_OCEAN(-27) {
+            @NotNull
+            @Override
+            ColumnBlockSource build() {
+                return Scenario.base(-28)
+                        .fill(-27, SPAWN_Y, WaterKind.WATER);
+            }
+        },
+        
+        /**
+         * Alternating coral blocks and water, with a lit floor
+         * below the coral.
+         */
+        CORAL_STACK(40) {
+            @NotNull
+            @Override
+            ColumnBlockSource build() {
+                final ColumnBlockSource source = Scenario.base(39)
+                        .fill(40, SPAWN_Y, WaterKind.WATER)
+                        .light(40, 0, 12);
+                for (int y = 41; y < 56; y += 2) {
+                    source.fill(y, y, WaterKind.CORAL);
+                }
+                return source;
+            }
+        };
+        
+        private final int floorY;
+        
+        /**
+         * Constructs a new {@link Scenario}.
+         * 
+         * @param floorY The expected floor Y.
+         */
+        Scenario(final int floorY) {
+            this.floorY = floorY;
+        }
+        
+        /**
+         * Builds the column of this {@link Scenario}.
+         * 
+         * @return The column.
+         */
+        @NotNull
+        abstract ColumnBlockSource build();
+        
+        /**
+         * Builds a column of solid blocks up to the given Y, with air above
+         * it.
+         * 
+         * @param solidY The highest Y of the solid blocks.
+         * @return The column.
+         */
+        @NotNull
+        private static ColumnBlockSource base(final int solidY) {
+            return new ColumnBlockSource(MIN_Y, MAX_Y).fill(MIN_Y, solidY, WaterKind.OTHER);
+        }
+    }
+    
+    /**
+     * A single call whose allocations are measured.
+     */
+    @FunctionalInterface
+    private interface Call {
+        
+        /**
+         * Makes the call.
+         * 
+         * @return The result of the call, so that it is not optimized away.
+         */
+        long call();
+    }
+    
+    /**
+     * Skips the tests if the JVM cannot measure the allocations of a thread.
+     */
+    @BeforeAll
+    public static void setUpThreadBean() {
+        Assumptions.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean, "No com.sun.management.ThreadMXBean");
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threadBean.isThreadAllocatedMemorySupported(), "Thread allocation measurement is not supported");
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+    
+    /**
+     * Checks that {@link ColumnScanner#findFloorY(org.bspfsystems.saferwater.bukkit.water.BlockSource, int, int, int, int)}
+     * does not allocate.
+     * 
+     * @param scenario The {@link Scenario}.
+     */
+    @ParameterizedTest
+    @EnumSource(Scenario.class)
+    public void testFindFloorYDoesNotAllocate(@NotNull final Scenario scenario) {
+        
+        final ColumnBlockSource source = scenario.build();
+        Assertions.assertEquals(scenario.floorY, ColumnScanner.findFloorY(source, 0, SPAWN_Y, 0, MIN_Y));
+        SpawnDecisionAllocationTest.assertNoAllocations(() -> ColumnScanner.findFloorY(source, 0, SPAWN_Y, 0, MIN_Y));
+    }
+    
+    /**
+     * Checks that {@link SpawnDecider#decideWater(org.bspfsystems.saferwater.bukkit.water.BlockSource, int, int, int)}
+     * does not allocate, with the default {@link SpawnRules}, with a maximum
+     * scan depth, and with every {@link SpawnRule} enabled.
+     * 
+     * @param scenario The {@link Scenario}.
+     */
+    @ParameterizedTest
+    @EnumSource(Scenario.class)
+    public void testDecideWaterDoesNotAllocate(@NotNull final Scenario scenario) {
+        
+        final ColumnBlockSource source = scenario.build();
+        final SpawnRules allRules = new SpawnRules(SpawnFilter.getDefaultReasons(), Collections.emptyList(), 0, 128, LightSource.SKY, 2);
+        final SpawnDecider[] spawnDeciders = {
+                new SpawnDecider(SpawnFilter.EMPTY, 0, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL),
+                new SpawnDecider(SpawnFilter.EMPTY, 16, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL),
+                new SpawnDecider(SpawnFilter.EMPTY, allRules, 0, SpawnDecider.DEFAULT_MIN_LIGHT_LEVEL)
+        };
+        
+        for (final SpawnDecider spawnDecider : spawnDeciders) {
+            Assertions.assertNotEquals(SpawnDecider.DRY, SpawnDecider.getOutcome(spawnDecider.decideWater(source, 0, SPAWN_Y, 0)));
+            SpawnDecisionAllocationTest.assertNoAllocations(() -> spawnDecider.decideWater(source, 0, SPAWN_Y, 0));
+        }
+        
+        source.index(scenario.floorY);
+        for (final SpawnDecider spawnDecider : spawnDeciders) {
+            SpawnDecisionAllocationTest.assertNoAllocations(() -> spawnDecider.decideWater(source, 0, SPAWN_Y, 0));
+        }
+    }
+    
+    /**
+     * Warms the given {@link Call} up, and then checks that a large number
+     * of calls allocate no more than a small, fixed amount in total, which
+     * leaves room for the measurement itself.
+     * 
+     * @param call The {@link Call} to measure.
+     */
+    private static void assertNoAllocations(@NotNull final Call call) {
+        
+        long result = 0L;
+        for (int count = 0; count < WARMUP_CALLS; count++) {
+            result += call.call();
+        }
+        
+        final long threadId = Thread.currentThread().getId();
+        final long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int count = 0; count < MEASURED_CALLS; count++) {
+            result += call.call();
+        }
+        final long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        sink = result;
+        
+        Assertions.assertTrue(allocated <= MAX_ALLOCATED_BYTES, () -> allocated + " bytes allocated over " + MEASURED_CALLS + " calls (" + ((double) allocated / MEASURED_CALLS) + " bytes per call)");
+    }
+}
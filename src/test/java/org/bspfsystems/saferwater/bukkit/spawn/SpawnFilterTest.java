@@ -0,0 +1,214 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.spawn;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import org.bukkit.entity.Animals;
+import org.bukkit.entity.Creature;
+import org.bukkit.entity.Drowned;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Guardian;
+import org.bukkit.entity.Monster;
+import org.bukkit.entity.WaterMob;
+import org.bukkit.entity.Zombie;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Tests that a compiled {@link SpawnFilter} makes the same decisions as the
+ * {@link Class#isInstance(Object)} checks that it replaced, for every
+ * {@link EntityType} and {@link SpawnReason}.
+ */
+public final class SpawnFilterTest {
+    
+    /**
+     * Gets the configured {@link Creature} {@link Class}es that each table
+     * is compiled from.
+     * 
+     * @return The {@link Creature} {@link Class}es of each case.
+     */
+    @NotNull
+    static Stream<Arguments> mobs() {
+        return Stream.of(
+                Arguments.of(Collections.emptyList()),
+                Arguments.of(List.of(Monster.class)),
+                Arguments.of(List.of(Zombie.class)),
+                Arguments.of(List.of(Drowned.class)),
+                Arguments.of(List.of(Guardian.class, WaterMob.class)),
+                Arguments.of(List.of(Animals.class, Monster.class)),
+                Arguments.of(List.of(Creature.class))
+        );
+    }
+    
+    /**
+     * Checks every {@link EntityType} and {@link SpawnReason} of a compiled
+     * {@link SpawnFilter} against the previous
+     * {@link Class#isInstance(Object)} checks.
+     * 
+     * @param mobs The configured {@link Creature} {@link Class}es.
+     */
+    @ParameterizedTest
+    @MethodSource("mobs")
+    public void testMatchesInstanceChecks(@NotNull final List<Class<? extends Creature>> mobs) {
+        
+        final SpawnFilter spawnFilter = SpawnFilter.compile(mobs, SpawnFilter.getDefaultReasons());
+        for (final EntityType type : EntityType.values()) {
+            
+            final Entity entity = SpawnFilterTest.newEntity(type);
+            boolean anyReason = false;
+            for (final SpawnReason reason : SpawnReason.values()) {
+                final boolean expected = SpawnFilterTest.isWaterSpawnDisabled(mobs, entity, reason);
+                Assertions.assertEquals(expected, spawnFilter.isFiltered(type, reason), () -> type + " for " + reason + " with " + mobs);
+                anyReason |= expected;
+            }
+            Assertions.assertEquals(anyReason, spawnFilter.isFiltered(type), () -> type + " with " + mobs);
+        }
+    }
+    
+    /**
+     * Checks that configuring {@link Monster} filters every hostile
+     * {@link Creature}, including subclasses of subclasses.
+     */
+    @Test
+    public void testMonsterSubclassesAreFiltered() {
+        
+        final SpawnFilter spawnFilter = SpawnFilter.compile(List.of(Monster.class), SpawnFilter.getDefaultReasons());
+        for (final EntityType type : Arrays.asList(EntityType.ZOMBIE, EntityType.DROWNED, EntityType.GUARDIAN, EntityType.ELDER_GUARDIAN)) {
+            Assertions.assertTrue(spawnFilter.isFiltered(type), type::toString);
+            Assertions.assertTrue(spawnFilter.isFiltered(type, SpawnReason.NATURAL), type::toString);
+        }
+        Assertions.assertFalse(spawnFilter.isFiltered(EntityType.COW));
+        Assertions.assertFalse(spawnFilter.isFiltered(EntityType.SQUID));
+    }
+    
+    /**
+     * Checks that {@link EntityType}s that are not configured, are not
+     * {@link Creature}s, or have no {@link Entity} {@link Class} at all are
+     * never filtered.
+     */
+    @Test
+    public void testDisabledTypesPassThrough() {
+        
+        final SpawnFilter spawnFilter = SpawnFilter.compile(List.of(Zombie.class), SpawnFilter.getDefaultReasons());
+        Assertions.assertTrue(spawnFilter.isFiltered(EntityType.ZOMBIE, SpawnReason.NATURAL));
+        Assertions.assertTrue(spawnFilter.isFiltered(EntityType.DROWNED, SpawnReason.NATURAL));
+        for (final EntityType type : Arrays.asList(EntityType.GUARDIAN, EntityType.COW, EntityType.SQUID, EntityType.PLAYER, EntityType.ARMOR_STAND, EntityType.UNKNOWN)) {
+            Assertions.assertFalse(spawnFilter.isFiltered(type), type::toString);
+            for (final SpawnReason reason : SpawnReason.values()) {
+                Assertions.assertFalse(spawnFilter.isFiltered(type, reason), () -> type + " for " + reason);
+            }
+        }
+        
+        for (final EntityType type : EntityType.values()) {
+            Assertions.assertFalse(SpawnFilter.EMPTY.isFiltered(type), type::toString);
+        }
+    }
+    
+    /**
+     * Checks that a Zombie converting into a Drowned is never filtered by
+     * the default {@link SpawnReason}s, even though Drowned are.
+     */
+    @Test
+    public void testDrownedReasonIsExempt() {
+        
+        final SpawnFilter spawnFilter = SpawnFilter.compile(List.of(Monster.class), SpawnFilter.getDefaultReasons());
+        Assertions.assertFalse(spawnFilter.isFiltered(EntityType.DROWNED, SpawnReason.DROWNED));
+        Assertions.assertFalse(spawnFilter.isFiltered(EntityType.ZOMBIE, SpawnReason.DROWNED));
+        Assertions.assertTrue(spawnFilter.isFiltered(EntityType.DROWNED, SpawnReason.NATURAL));
+        Assertions.assertTrue(spawnFilter.isFiltered(EntityType.DROWNED));
+    }
+    
+    /**
+     * Checks that an exempt {@link Creature} {@link Class} is left out of a
+     * broader configured {@link Class}, without exempting its superclasses.
+     */
+    @Test
+    public void testExemptMobsAreNotFiltered() {
+        
+        final SpawnFilter spawnFilter = SpawnFilter.compile(List.of(Monster.class), List.of(Drowned.class), SpawnFilter.getDefaultReasons());
+        Assertions.assertFalse(spawnFilter.isFiltered(EntityType.DROWNED));
+        Assertions.assertTrue(spawnFilter.isFiltered(EntityType.ZOMBIE));
+        Assertions.assertTrue(spawnFilter.isFiltered(EntityType.GUARDIAN));
+    }
+    
+    /**
+     * Decides a spawn the way that it was decided before the
+     * {@link SpawnFilter} existed: only {@link Creature}s are checked,
+     * {@link SpawnReason#DROWNED} conversions are always allowed, and a
+     * {@link Creature} is filtered if it is an instance of any configured
+     * {@link Class}.
+     * 
+     * @param mobs The configured {@link Creature} {@link Class}es.
+     * @param entity The spawned {@link Entity}, or {@code null} if its
+     *               {@link EntityType} has no {@link Entity} {@link Class}.
+     * @param reason The {@link SpawnReason}.
+     * @return {@code true} if the spawn was filtered, {@code false}
+     *         otherwise.
+     */
+    private static boolean isWaterSpawnDisabled(@NotNull final Collection<Class<? extends Creature>> mobs, @Nullable final Entity entity, @NotNull final SpawnReason reason) {
+        
+        if (!(entity instanceof Creature)) {
+            return false;
+        }
+        if (reason == SpawnReason.DROWNED) {
+            return false;
+        }
+        for (final Class<? extends Creature> mob : mobs) {
+            if (mob.isInstance(entity)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Creates a stand-in {@link Entity} of the given {@link EntityType}, which
+     * implements its {@link Entity} interface (and so all of its
+     * superinterfaces), but none of its methods.
+     * 
+     * @param type The {@link EntityType}.
+     * @return The stand-in {@link Entity}, or {@code null} if the
+     *         {@link EntityType} has no {@link Entity} {@link Class}.
+     */
+    @Nullable
+    private static Entity newEntity(@NotNull final EntityType type) {
+        
+        final Class<? extends Entity> entityClass = type.getEntityClass();
+        if (entityClass == null) {
+            return null;
+        }
+        return (Entity) Proxy.newProxyInstance(entityClass.getClassLoader(), new Class<?>[] {entityClass}, (proxy, method, args) -> {
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+}
@@ -0,0 +1,217 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.water;
+
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents an in-memory stand-in for a {@link World}, in which every X/Z
+ * position has the same single column of blocks, stored as resolved
+ * {@link WaterKind}s.
+ * <p>
+ * Nothing is allocated when a block is read. Sections are summarized the
+ * first time that one is asked for after the column was last changed, and
+ * the summary is published as a whole, so that any number of threads may
+ * read a {@link ColumnBlockSource} at once as long as none of them change it.
+ */
+public final class ColumnBlockSource implements BlockSource {
+    
+    private final int minY;
+    private final int maxY;
+    private final byte[] kinds;
+    private final int[] skyLightLevels;
+    private final int[] blockLightLevels;
+    
+    private volatile int indexedFloorY;
+    private volatile byte[] sectionKinds;
+    
+    /**
+     * Constructs a new {@link ColumnBlockSource}, filled with
+     * {@link WaterKind#AIR}.
+     * 
+     * @param minY The minimum Y (inclusive), a multiple of 16.
+     * @param maxY The maximum Y (exclusive), a multiple of 16.
+     */
+    public ColumnBlockSource(final int minY, final int maxY) {
+        this.minY = minY;
+        this.maxY = maxY;
+        this.kinds = new byte[maxY - minY];
+        this.skyLightLevels = new int[maxY - minY];
+        this.blockLightLevels = new int[maxY - minY];
+        this.indexedFloorY = ChunkWaterFloor.UNKNOWN;
+        this.fill(minY, maxY - 1, WaterKind.AIR);
+    }
+    
+    /**
+     * Sets the blocks between the given Ys (both inclusive) to the given
+     * kind.
+     * 
+     * @param fromY The lowest Y to set.
+     * @param toY The highest Y to set.
+     * @param kind The resolved {@link WaterKind} to set.
+     * @return This {@link ColumnBlockSource}.
+     */
+    @NotNull
+    public ColumnBlockSource fill(final int fromY, final int toY, final byte kind) {
+        for (int y = fromY; y <= toY; y++) {
+            this.kinds[y - this.minY] = kind;
+        }
+        this.sectionKinds = null;
+        return this;
+    }
+    
+    /**
+     * Sets the light levels of the block at the given Y.
+     * 
+     * @param y The Y of the block.
+     * @param skyLightLevel The light level from the sky (0-15).
+     * @param blockLightLevel The light level from light-emitting blocks
+     *                        (0-15).
+     * @return This {@link ColumnBlockSource}.
+     */
+    @NotNull
+    public ColumnBlockSource light(final int y, final int skyLightLevel, final int blockLightLevel) {
+        this.skyLightLevels[y - this.minY] = skyLightLevel;
+        this.blockLightLevels[y - this.minY] = blockLightLevel;
+        return this;
+    }
+    
+    /**
+     * Sets the floor Y that is returned as if the column was indexed, or
+     * {@link ChunkWaterFloor#UNKNOWN} if the column must be scanned.
+     * 
+     * @param indexedFloorY The indexed floor Y.
+     * @return This {@link ColumnBlockSource}.
+     */
+    @NotNull
+    public ColumnBlockSource index(final int indexedFloorY) {
+        this.indexedFloorY = indexedFloorY;
+        return this;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getKind(final int x, final int y, final int z) {
+        if (y < this.minY || y >= this.maxY) {
+            return WaterKind.OTHER;
+        }
+        return this.kinds[y - this.minY];
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getLightLevel(final int x, final int y, final int z) {
+        return Math.max(this.getSkyLightLevel(x, y, z), this.getBlockLightLevel(x, y, z));
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSkyLightLevel(final int x, final int y, final int z) {
+        if (y < this.minY || y >= this.maxY) {
+            return 0;
+        }
+        return this.skyLightLevels[y - this.minY];
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getBlockLightLevel(final int x, final int y, final int z) {
+        if (y < this.minY || y >= this.maxY) {
+            return 0;
+        }
+        return this.blockLightLevels[y - this.minY];
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMinHeight() {
+        return this.minY;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getIndexedFloorY(final int x, final int y, final int z) {
+        return this.indexedFloorY;
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every X/Z position has the same column, so a section is summarized
+     * from the 16 blocks of the column within it.
+     */
+    @Override
+    public byte getSectionKind(final int x, final int sectionY, final int z) {
+        
+        byte[] sectionKinds = this.sectionKinds;
+        if (sectionKinds == null) {
+            sectionKinds = new byte[this.kinds.length >> 4];
+            for (int index = 0; index < sectionKinds.length; index++) {
+                sectionKinds[index] = this.summarize(this.minY + (index << 4));
+            }
+            this.sectionKinds = sectionKinds;
+        }
+        final int index = sectionY - (this.minY >> 4);
+        if (index < 0 || index >= sectionKinds.length) {
+            return BlockSource.SECTION_MIXED;
+        }
+        return sectionKinds[index];
+    }
+    
+    /**
+     * Summarizes the 16 blocks of the column from the given Y upward.
+     * 
+     * @param sectionMinY The lowest Y of the section.
+     * @return The summary of the section.
+     */
+    private byte summarize(final int sectionMinY) {
+        
+        boolean water = false;
+        boolean dry = false;
+        for (int y = sectionMinY; y < sectionMinY + 16; y++) {
+            final byte kind = this.getKind(0, y, 0);
+            if (kind == WaterKind.WATER) {
+                water = true;
+            } else if (kind == WaterKind.CORAL) {
+                return BlockSource.SECTION_MIXED;
+            } else {
+                dry = true;
+            }
+        }
+        if (water && dry) {
+            return BlockSource.SECTION_MIXED;
+        }
+        return water ? BlockSource.SECTION_WATER : BlockSource.SECTION_DRY;
+    }
+}
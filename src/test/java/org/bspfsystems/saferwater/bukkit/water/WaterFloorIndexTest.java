@@ -0,0 +1,358 @@
+/* 
+ * This file is part of the SaferWater plugin for
+ * Bukkit servers for Minecraft.
+ * 
+ * Copyright (C) 2021-2024 BSPF Systems, LLC (https://bspfsystems.org/)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bspfsystems.saferwater.bukkit.water;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import org.bspfsystems.saferwater.bukkit.scheduler.TaskScheduler;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the {@link BlockSource} of an indexed {@link World} answers the
+ * floor of a body of water, and the light of that floor, from the
+ * {@link WaterFloorIndex} rather than from the {@link World}.
+ * <p>
+ * A single chunk of a stand-in {@link World}, far enough from the origin
+ * that its key is not a cached {@link Long}, is indexed, holding a body of
+ * water between {@link #FLOOR_Y} and {@link #SPAWN_Y} over stone. Light read
+ * from the {@link World} itself (through a {@link Block}) is always
+ * {@link #WORLD_LIGHT_LEVEL}, so that it can be told apart from the captured
+ * light.
+ */
+public final class WaterFloorIndexTest {
+    
+    private static final int MIN_Y = -64;
+    private static final int MAX_Y = 320;
+    private static final int CHUNK_X = 1000;
+    private static final int CHUNK_Z = -1000;
+    private static final int X = (CHUNK_X << 4) + 5;
+    private static final int Z = (CHUNK_Z << 4) + 5;
+    private static final int FLOOR_Y = 40;
+    private static final int SPAWN_Y = 62;
+    private static final int FLOOR_SKY_LIGHT = 9;
+    private static final int FLOOR_BLOCK_LIGHT = 3;
+    private static final int WORLD_LIGHT_LEVEL = 15;
+    private static final long NOON = 6000L;
+    private static final long MIDNIGHT = 18000L;
+    private static final long TIMEOUT_SECONDS = 10L;
+    
+    private static volatile long sink;
+    
+    private AtomicReference<Runnable> timer;
+    private AtomicLong time;
+    private WaterFloorIndex waterFloorIndex;
+    private World world;
+    private Chunk chunk;
+    
+    /**
+     * Starts a {@link WaterFloorIndex}, and indexes the single chunk of the
+     * stand-in {@link World}.
+     * 
+     * @throws InterruptedException If interrupted while waiting for the
+     *                              chunk to be computed.
+     */
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        
+        this.timer = new AtomicReference<Runnable>();
+        this.time = new AtomicLong(NOON);
+        final Plugin plugin = WaterFloorIndexTest.newPlugin(this.timer);
+        this.waterFloorIndex = new WaterFloorIndex(plugin, TaskScheduler.create(plugin, Logger.getAnonymousLogger()));
+        this.waterFloorIndex.start();
+        
+        this.world = this.newWorld();
+        this.waterFloorIndex.onChunkLoad(this.chunk);
+        this.awaitCapture();
+    }
+    
+    /**
+     * Stops the {@link WaterFloorIndex}.
+     */
+    @AfterEach
+    public void tearDown() {
+        this.waterFloorIndex.stop();
+    }
+    
+    /**
+     * Checks that the floor and its light are answered from the captured
+     * chunk, with the sky light darkened by the current time of day.
+     */
+    @Test
+    public void testFloorLightIsCaptured() {
+        
+        final BlockSource source = this.waterFloorIndex.getBlockSource(this.world);
+        Assertions.assertEquals(FLOOR_Y, source.getIndexedFloorY(X, SPAWN_Y, Z));
+        Assertions.assertEquals(FLOOR_SKY_LIGHT, source.getSkyLightLevel(X, FLOOR_Y, Z));
+        Assertions.assertEquals(FLOOR_BLOCK_LIGHT, source.getBlockLightLevel(X, FLOOR_Y, Z));
+        Assertions.assertEquals(FLOOR_SKY_LIGHT, source.getLightLevel(X, FLOOR_Y, Z));
+        
+        this.time.set(MIDNIGHT);
+        this.timer.get().run();
+        Assertions.assertEquals(FLOOR_SKY_LIGHT, source.getSkyLightLevel(X, FLOOR_Y, Z));
+        Assertions.assertEquals(FLOOR_BLOCK_LIGHT, source.getLightLevel(X, FLOOR_Y, Z));
+        
+        Assertions.assertEquals(WORLD_LIGHT_LEVEL, source.getLightLevel(X, FLOOR_Y + 1, Z));
+    }
+    
+    /**
+     * Checks that captured light that has grown too old is read from the
+     * {@link World} again, until the chunk has been captured again.
+     * 
+     * @throws InterruptedException If interrupted while waiting for the
+     *                              chunk to be computed.
+     */
+    @Test
+    public void testOldFloorLightIsRecaptured() throws InterruptedException {
+        
+        final BlockSource source = this.waterFloorIndex.getBlockSource(this.world);
+        for (int tick = 0; tick < 1_000; tick++) {
+            this.timer.get().run();
+        }
+        Assertions.assertEquals(WORLD_LIGHT_LEVEL, source.getLightLevel(X, FLOOR_Y, Z));
+        Assertions.assertEquals(FLOOR_Y, source.getIndexedFloorY(X, SPAWN_Y, Z));
+        
+        this.timer.get().run();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (source.getLightLevel(X, FLOOR_Y, Z) != FLOOR_SKY_LIGHT) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "The chunk was not captured again");
+            Thread.sleep(1L);
+        }
+    }
+    
+    /**
+     * Checks that looking up an indexed floor and its light, as a spawn in an
+     * indexed chunk does, does not allocate once warmed up.
+     */
+    @Test
+    public void testIndexedLookupsDoNotAllocate() {
+        
+        Assumptions.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean, "No com.sun.management.ThreadMXBean");
+        final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threadBean.isThreadAllocatedMemorySupported(), "Thread allocation measurement is not supported");
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        
+        final BlockSource source = this.waterFloorIndex.getBlockSource(this.world);
+        long result = 0L;
+        for (int count = 0; count < 50_000; count++) {
+            result += WaterFloorIndexTest.lookUp(source, count);
+        }
+        
+        final long threadId = Thread.currentThread().getId();
+        final long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int count = 0; count < 200_000; count++) {
+            result += WaterFloorIndexTest.lookUp(source, count);
+        }
+        final long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        sink = result;
+        
+        Assertions.assertTrue(allocated <= 1024L, () -> allocated + " bytes allocated");
+    }
+    
+    /**
+     * Looks up the floor below the spawn Y in one of the columns of the
+     * chunk, and each light level of that floor.
+     * 
+     * @param source The {@link BlockSource} of the indexed {@link World}.
+     * @param count The number of the call, which selects the column.
+     * @return The sum of the results, so that they are not optimized away.
+     */
+    private static long lookUp(@NotNull final BlockSource source, final int count) {
+        final int x = (CHUNK_X << 4) + (count & 15);
+        final int z = (CHUNK_Z << 4) + ((count >> 4) & 15);
+        final int floorY = source.getIndexedFloorY(x, SPAWN_Y, z);
+        return floorY + source.getLightLevel(x, floorY, z) + source.getSkyLightLevel(x, floorY, z) + source.getBlockLightLevel(x, floorY, z);
+    }
+    
+    /**
+     * Runs the capture task, and waits for the chunk to be computed on the
+     * background thread of the {@link WaterFloorIndex}.
+     * 
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void awaitCapture() throws InterruptedException {
+        
+        this.timer.get().run();
+        final BlockSource source = this.waterFloorIndex.getBlockSource(this.world);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (source.getIndexedFloorY(X, SPAWN_Y, Z) == ChunkWaterFloor.UNKNOWN) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "The chunk was not computed");
+            Thread.sleep(1L);
+        }
+    }
+    
+    /**
+     * Creates the stand-in {@link World}, along with its single
+     * {@link Chunk}.
+     * 
+     * @return The stand-in {@link World}.
+     */
+    @NotNull
+    private World newWorld() {
+        
+        final UUID uniqueId = UUID.randomUUID();
+        final Block block = (Block) Proxy.newProxyInstance(Block.class.getClassLoader(), new Class<?>[] {Block.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getLightLevel":
+                case "getLightFromSky":
+                case "getLightFromBlocks":
+                    return (byte) WORLD_LIGHT_LEVEL;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        final ChunkSnapshot snapshot = (ChunkSnapshot) Proxy.newProxyInstance(ChunkSnapshot.class.getClassLoader(), new Class<?>[] {ChunkSnapshot.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getX":
+                    return CHUNK_X;
+                case "getZ":
+                    return CHUNK_Z;
+                case "getWorldName":
+                    return "world";
+                case "isSectionEmpty":
+                    return false;
+                case "getBlockType":
+                    final int y = (Integer) args[1];
+                    return y < FLOOR_Y ? Material.STONE : y <= SPAWN_Y ? Material.WATER : Material.AIR;
+                case "getBlockSkyLight":
+                    return (Integer) args[1] == FLOOR_Y ? FLOOR_SKY_LIGHT : 0;
+                case "getBlockEmittedLight":
+                    return (Integer) args[1] == FLOOR_Y ? FLOOR_BLOCK_LIGHT : 0;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        
+        final World world = (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[] {World.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                case "toString":
+                    return "world";
+                case "getUID":
+                    return uniqueId;
+                case "getMinHeight":
+                    return MIN_Y;
+                case "getMaxHeight":
+                    return MAX_Y;
+                case "getTime":
+                    return this.time.get();
+                case "hasStorm":
+                case "isThundering":
+                    return false;
+                case "isChunkLoaded":
+                    return true;
+                case "getChunkAt":
+                    return this.chunk;
+                case "getBlockAt":
+                    return block;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        
+        this.chunk = (Chunk) Proxy.newProxyInstance(Chunk.class.getClassLoader(), new Class<?>[] {Chunk.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getX":
+                    return CHUNK_X;
+                case "getZ":
+                    return CHUNK_Z;
+                case "getWorld":
+                    return world;
+                case "getChunkSnapshot":
+                    return snapshot;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        return world;
+    }
+    
+    /**
+     * Creates a stand-in {@link Plugin} of a single-threaded server, whose
+     * repeating task is handed to the given {@link AtomicReference} instead of
+     * being run, and that has no {@link World}s or data folder of its own.
+     * 
+     * @param timer The {@link AtomicReference} that receives the repeating
+     *              task.
+     * @return The stand-in {@link Plugin}.
+     */
+    @NotNull
+    private static Plugin newPlugin(@NotNull final AtomicReference<Runnable> timer) {
+        
+        final BukkitTask task = (BukkitTask) Proxy.newProxyInstance(BukkitTask.class.getClassLoader(), new Class<?>[] {BukkitTask.class}, (proxy, method, args) -> null);
+        final BukkitScheduler scheduler = (BukkitScheduler) Proxy.newProxyInstance(BukkitScheduler.class.getClassLoader(), new Class<?>[] {BukkitScheduler.class}, (proxy, method, args) -> {
+            if (!method.getName().equals("runTaskTimer")) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            timer.set((Runnable) args[1]);
+            return task;
+        });
+        final Server server = (Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[] {Server.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getScheduler":
+                    return scheduler;
+                case "getWorlds":
+                    return Collections.emptyList();
+                case "isPrimaryThread":
+                    return true;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        final File dataFolder = new File(System.getProperty("java.io.tmpdir"), "saferwater-" + UUID.randomUUID());
+        return (Plugin) Proxy.newProxyInstance(Plugin.class.getClassLoader(), new Class<?>[] {Plugin.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getServer":
+                    return server;
+                case "getDataFolder":
+                    return dataFolder;
+                case "getLogger":
+                    return Logger.getAnonymousLogger();
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}